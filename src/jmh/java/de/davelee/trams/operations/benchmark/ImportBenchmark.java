@@ -0,0 +1,142 @@
+package de.davelee.trams.operations.benchmark;
+
+import de.davelee.trams.operations.repository.RouteRepository;
+import de.davelee.trams.operations.repository.StopRepository;
+import de.davelee.trams.operations.repository.StopTimeRepository;
+import de.davelee.trams.operations.service.DepartureBoardService;
+import de.davelee.trams.operations.service.DepartureCache;
+import de.davelee.trams.operations.service.ImportCSVDataService;
+import de.davelee.trams.operations.service.ImportGTFSDataService;
+import de.davelee.trams.operations.service.ImportMetrics;
+import de.davelee.trams.operations.service.ImportResult;
+import de.davelee.trams.operations.service.TimetableIndexService;
+import de.davelee.trams.operations.service.TimetableVersionService;
+import de.davelee.trams.operations.service.TripPatternService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.util.FileSystemUtils;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This class benchmarks the import of GTFS feeds and csv timetables of different sizes. The files are generated once
+ * per trial and the stop times, stops and routes are written to in-memory stand-ins which discard them so that the
+ * benchmark measures reading and converting the files. Each invocation is a complete import so that the benchmark
+ * measures the time of a single import.
+ * @author Dave Lee
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class ImportBenchmark {
+
+    @Param({"1000", "100000", "1000000"})
+    private int numberOfStopTimes;
+
+    private Path gtfsDirectory;
+
+    private Path csvDirectory;
+
+    private List<String> routesToImport;
+
+    private ImportGTFSDataService importGTFSDataService;
+
+    private ImportCSVDataService importCSVDataService;
+
+    /**
+     * Write the synthetic feed and timetables to temporary directories and create the services with in-memory repositories.
+     * @throws IOException if the files could not be written.
+     */
+    @Setup(Level.Trial)
+    public void setUp ( ) throws IOException {
+        gtfsDirectory = Files.createTempDirectory("benchmark-gtfs");
+        SyntheticData.writeGTFSFeed(gtfsDirectory, numberOfStopTimes);
+        csvDirectory = Files.createTempDirectory("benchmark-csv");
+        SyntheticData.writeCSVFiles(csvDirectory, numberOfStopTimes);
+        routesToImport = SyntheticData.getRouteNumbers();
+
+        StopTimeRepository stopTimeRepository = InMemoryRepositories.stopTimeRepository(Collections.emptyList());
+        StopRepository stopRepository = InMemoryRepositories.stopRepository();
+        RouteRepository routeRepository = InMemoryRepositories.routeRepository();
+        //The index is disabled so that it is not rebuilt after each import.
+        //Journeys are stored as stop times.
+        TripPatternService tripPatternService = new TripPatternService();
+        TimetableIndexService timetableIndexService = new TimetableIndexService();
+        ReflectionTestUtils.setField(timetableIndexService, "tripPatternService", tripPatternService);
+        ReflectionTestUtils.setField(timetableIndexService, "indexEnabled", false);
+        ImportMetrics importMetrics = new ImportMetrics(new SimpleMeterRegistry());
+        DepartureCache departureCache = new DepartureCache(0, 0, new SimpleMeterRegistry());
+        //No displays subscribe to departure boards during the benchmark.
+        DepartureBoardService departureBoardService = new DepartureBoardService(60, 30, 1, new SimpleMeterRegistry());
+        //Versioning is disabled so that the stop times are written to the in memory repository directly.
+        TimetableVersionService timetableVersionService = new TimetableVersionService();
+
+        importGTFSDataService = new ImportGTFSDataService();
+        importCSVDataService = new ImportCSVDataService();
+        for ( Object service : List.of(importGTFSDataService, importCSVDataService) ) {
+            ReflectionTestUtils.setField(service, "stopTimeRepository", stopTimeRepository);
+            ReflectionTestUtils.setField(service, "stopRepository", stopRepository);
+            ReflectionTestUtils.setField(service, "routeRepository", routeRepository);
+            ReflectionTestUtils.setField(service, "timetableIndexService", timetableIndexService);
+            ReflectionTestUtils.setField(service, "timetableVersionService", timetableVersionService);
+            ReflectionTestUtils.setField(service, "tripPatternService", tripPatternService);
+            ReflectionTestUtils.setField(service, "importMetrics", importMetrics);
+            ReflectionTestUtils.setField(service, "departureCache", departureCache);
+            ReflectionTestUtils.setField(service, "departureBoardService", departureBoardService);
+            ReflectionTestUtils.setField(service, "importBatchSize", 1000);
+        }
+        ReflectionTestUtils.setField(importGTFSDataService, "tripFingerprintRepository", InMemoryRepositories.tripFingerprintRepository());
+    }
+
+    /**
+     * Delete the temporary directories once the trial is complete.
+     * @throws IOException if the directories could not be deleted.
+     */
+    @TearDown(Level.Trial)
+    public void tearDown ( ) throws IOException {
+        FileSystemUtils.deleteRecursively(gtfsDirectory);
+        FileSystemUtils.deleteRecursively(csvDirectory);
+    }
+
+    /**
+     * Benchmark the import of the synthetic GTFS feed.
+     * @return a <code>boolean</code> which is true iff the import was successful.
+     */
+    @Benchmark
+    public boolean readGTFSFile ( ) {
+        return importGTFSDataService.readGTFSFile(gtfsDirectory.toString(), routesToImport);
+    }
+
+    /**
+     * Benchmark the import of the synthetic csv timetables.
+     * @return a <code>ImportResult</code> object containing the result of the import.
+     */
+    @Benchmark
+    public ImportResult readCSVFile ( ) {
+        LocalDate today = LocalDate.now();
+        return importCSVDataService.readCSVFile(csvDirectory.toString(), today.minusMonths(6).toString(), today.plusMonths(6).toString());
+    }
+
+}
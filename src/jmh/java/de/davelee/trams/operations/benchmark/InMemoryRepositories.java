@@ -0,0 +1,180 @@
+package de.davelee.trams.operations.benchmark;
+
+import de.davelee.trams.operations.model.StopTimeModel;
+import de.davelee.trams.operations.model.VehicleModel;
+import de.davelee.trams.operations.repository.RouteRepository;
+import de.davelee.trams.operations.repository.StopRepository;
+import de.davelee.trams.operations.repository.StopTimeRepository;
+import de.davelee.trams.operations.repository.TripFingerprintRepository;
+import de.davelee.trams.operations.repository.VehicleRepository;
+import org.springframework.data.domain.Pageable;
+
+import java.lang.reflect.Proxy;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * This class creates in-memory stand-ins for the repositories so that the services can be benchmarked without a
+ * database. The stand-ins only implement the methods which the benchmarked services call. Queries are answered from
+ * lists which are seeded once before the benchmark starts and inserts are counted but discarded so that the memory
+ * usage does not grow during the benchmark.
+ * @author Dave Lee
+ */
+public final class InMemoryRepositories {
+
+    private InMemoryRepositories ( ) {
+    }
+
+    /**
+     * Create a stop time repository which answers queries from the supplied stop times.
+     * @param stopTimeModels a <code>List</code> of <code>StopTimeModel</code> objects containing the stop times to return.
+     * @return a <code>StopTimeRepository</code> object which stores the stop times in memory.
+     */
+    public static StopTimeRepository stopTimeRepository ( final List<StopTimeModel> stopTimeModels ) {
+        Map<String, List<StopTimeModel>> stopTimesByStop = stopTimeModels.stream()
+                .collect(Collectors.groupingBy(StopTimeModel::getStopName));
+        Map<String, Function<Object[], Object>> methods = new HashMap<>();
+        methods.put("findAll", args -> stopTimeModels);
+        methods.put("streamAll", args -> stopTimeModels.stream());
+        methods.put("count", args -> (long) stopTimeModels.size());
+        methods.put("findDeparturesByStopNameAndDate", args -> findTimes(stopTimesByStop, "Departure", wholeDay(args)));
+        methods.put("streamDeparturesByStopNameAndDate", args -> findTimes(stopTimesByStop, "Departure", wholeDay(args)).stream());
+        methods.put("findDeparturesByStopNameAndDateAndTimeRange", args -> findTimes(stopTimesByStop, "Departure", args));
+        methods.put("findArrivalsByStopNameAndDateAndTimeRange", args -> findTimes(stopTimesByStop, "Arrival", args));
+        methods.put("findDeparturesByStopNamesAndDateAndTimeRange", args -> findTimesForStops(stopTimesByStop, "Departure", args));
+        methods.put("findArrivalsByStopNamesAndDateAndTimeRange", args -> findTimesForStops(stopTimesByStop, "Arrival", args));
+        methods.put("bulkInsert", args -> ((List<?>) args[0]).size());
+        AtomicInteger nextId = new AtomicInteger();
+        methods.put("reserveIds", args -> nextId.getAndAdd((Integer) args[0]));
+        return createProxy(StopTimeRepository.class, methods);
+    }
+
+    /**
+     * Create a stop repository which contains no stops and discards all inserted stops.
+     * @return a <code>StopRepository</code> object which does not store any stops.
+     */
+    public static StopRepository stopRepository ( ) {
+        Map<String, Function<Object[], Object>> methods = new HashMap<>();
+        methods.put("findAllStopNames", args -> Collections.emptyList());
+        methods.put("insert", args -> args[0]);
+        return createProxy(StopRepository.class, methods);
+    }
+
+    /**
+     * Create a route repository which contains no routes and discards all inserted routes.
+     * @return a <code>RouteRepository</code> object which does not store any routes.
+     */
+    public static RouteRepository routeRepository ( ) {
+        Map<String, Function<Object[], Object>> methods = new HashMap<>();
+        methods.put("findAllRouteNumbers", args -> Collections.emptyList());
+        methods.put("insert", args -> args[0]);
+        return createProxy(RouteRepository.class, methods);
+    }
+
+    /**
+     * Create a trip fingerprint repository which contains no fingerprints and discards all inserted fingerprints.
+     * @return a <code>TripFingerprintRepository</code> object which does not store any fingerprints.
+     */
+    public static TripFingerprintRepository tripFingerprintRepository ( ) {
+        Map<String, Function<Object[], Object>> methods = new HashMap<>();
+        methods.put("findByRouteNumberIn", args -> Collections.emptyList());
+        methods.put("deleteByIdIn", args -> null);
+        methods.put("insert", args -> args[0]);
+        return createProxy(TripFingerprintRepository.class, methods);
+    }
+
+    /**
+     * Create a vehicle repository which returns the supplied vehicles of all types.
+     * @param vehicleModels a <code>List</code> of <code>VehicleModel</code> objects containing the vehicles to return.
+     * @return a <code>VehicleRepository</code> object which stores the vehicles in memory.
+     */
+    public static VehicleRepository vehicleRepository ( final List<VehicleModel> vehicleModels ) {
+        return createProxy(VehicleRepository.class, Map.of("findAll", args -> vehicleModels));
+    }
+
+    /**
+     * This is a private helper method which answers the departure and arrival queries in the same way as the database
+     * by filtering the stop times of the stop by date and time range, sorting them by time and limiting them to the page size.
+     * @param stopTimesByStop a <code>Map</code> containing the stop times grouped by stop name.
+     * @param type a <code>String</code> which can be either Departure or Arrival.
+     * @param args a <code>Object</code> array containing the stop name, day of week, date, from time, to time and page.
+     * @return a <code>List</code> of <code>StopTimeModel</code> objects matching the query.
+     */
+    private static List<StopTimeModel> findTimes ( final Map<String, List<StopTimeModel>> stopTimesByStop, final String type,
+                                                   final Object[] args ) {
+        LocalDate date = (LocalDate) args[2];
+        LocalTime fromTime = (LocalTime) args[3];
+        LocalTime toTime = (LocalTime) args[4];
+        Pageable pageable = (Pageable) args[5];
+        return stopTimesByStop.getOrDefault((String) args[0], Collections.emptyList()).stream()
+                .filter(stopTimeModel -> !stopTimeModel.getTime(type).isBefore(fromTime) && !stopTimeModel.getTime(type).isAfter(toTime))
+                .filter(stopTimeModel -> stopTimeModel.runsOn(date))
+                .sorted(Comparator.comparing(stopTimeModel -> stopTimeModel.getTime(type)))
+                .limit(pageable.isPaged() ? pageable.getPageSize() : Long.MAX_VALUE)
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * This is a private helper method which answers the departure and arrival queries for several stops in the same way
+     * as the database by combining the stop times of each stop and sorting them by time.
+     * @param stopTimesByStop a <code>Map</code> containing the stop times grouped by stop name.
+     * @param type a <code>String</code> which can be either Departure or Arrival.
+     * @param args a <code>Object</code> array containing the stop names, day of week, date, from time, to time and sort.
+     * @return a <code>List</code> of <code>StopTimeModel</code> objects matching the query.
+     */
+    private static List<StopTimeModel> findTimesForStops ( final Map<String, List<StopTimeModel>> stopTimesByStop, final String type,
+                                                           final Object[] args ) {
+        return ((Collection<?>) args[0]).stream()
+                .flatMap(stopName -> findTimes(stopTimesByStop, type, new Object[] { stopName, args[1], args[2], args[3], args[4],
+                        Pageable.unpaged() }).stream())
+                .sorted(Comparator.comparing(stopTimeModel -> stopTimeModel.getTime(type)))
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * This is a private helper method which converts the arguments of a query for all stop times of a date into the
+     * arguments of a time range query covering the whole day.
+     * @param args a <code>Object</code> array containing the stop name, day of week, date and sort.
+     * @return a <code>Object</code> array containing the stop name, day of week, date, from time, to time and page.
+     */
+    private static Object[] wholeDay ( final Object[] args ) {
+        return new Object[] { args[0], args[1], args[2], LocalTime.MIN, LocalTime.MAX, Pageable.unpaged() };
+    }
+
+    /**
+     * This is a private helper method which creates a proxy for the supplied repository interface. Calls to methods
+     * which are not in the supplied map fail so that a benchmark never measures an unintended code path.
+     * @param repositoryInterface a <code>Class</code> containing the repository interface to implement.
+     * @param methods a <code>Map</code> containing the implementation of each supported method by method name.
+     * @param <T> the type of the repository.
+     * @return a <code>T</code> object which implements the repository interface.
+     */
+    private static <T> T createProxy ( final Class<T> repositoryInterface, final Map<String, Function<Object[], Object>> methods ) {
+        return repositoryInterface.cast(Proxy.newProxyInstance(repositoryInterface.getClassLoader(), new Class<?>[] { repositoryInterface },
+                (proxy, method, args) -> {
+                    if ( method.getDeclaringClass() == Object.class ) {
+                        switch ( method.getName() ) {
+                            case "equals": return proxy == args[0];
+                            case "hashCode": return System.identityHashCode(proxy);
+                            default: return "InMemory" + repositoryInterface.getSimpleName();
+                        }
+                    }
+                    Function<Object[], Object> implementation = methods.get(method.getName());
+                    if ( implementation == null ) {
+                        throw new UnsupportedOperationException(repositoryInterface.getSimpleName() + "." + method.getName()
+                                + " is not supported in benchmarks");
+                    }
+                    return implementation.apply(args);
+                }));
+    }
+
+}
@@ -0,0 +1,127 @@
+package de.davelee.trams.operations.benchmark;
+
+import de.davelee.trams.operations.model.StopTimeModel;
+import de.davelee.trams.operations.repository.StopTimeRepository;
+import de.davelee.trams.operations.service.DepartureCache;
+import de.davelee.trams.operations.service.StopTimeService;
+import de.davelee.trams.operations.service.TimetableIndexService;
+import de.davelee.trams.operations.service.TripPatternService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This class benchmarks the retrieval of departures from the <code>StopTimeService</code> for timetables of different
+ * sizes. The stop times are retrieved from an in-memory stand-in for the database so that the benchmark measures the
+ * service itself. The benchmark runs with and without the timetable index to compare both ways of retrieving stop times
+ * and with and without the departure cache.
+ * @author Dave Lee
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class StopTimeServiceBenchmark {
+
+    @Param({"1000", "100000", "1000000"})
+    private int numberOfStopTimes;
+
+    @Param({"true", "false"})
+    private boolean indexEnabled;
+
+    @Param({"false", "true"})
+    private boolean departureCacheEnabled;
+
+    /**
+     * The number of stops which a station display shows at the same time.
+     */
+    private static final int NUMBER_OF_STOPS_PER_BATCH = 20;
+
+    private StopTimeService stopTimeService;
+
+    private String today;
+
+    /**
+     * Seed the in-memory repository with the synthetic timetable and build the timetable index if it is enabled.
+     */
+    @Setup(Level.Trial)
+    public void setUp ( ) {
+        List<StopTimeModel> stopTimeModels = SyntheticData.generateStopTimes(numberOfStopTimes);
+        StopTimeRepository stopTimeRepository = InMemoryRepositories.stopTimeRepository(stopTimeModels);
+        //Journeys are stored as stop times.
+        TripPatternService tripPatternService = new TripPatternService();
+        TimetableIndexService timetableIndexService = new TimetableIndexService();
+        ReflectionTestUtils.setField(timetableIndexService, "tripPatternService", tripPatternService);
+        ReflectionTestUtils.setField(timetableIndexService, "stopTimeRepository", stopTimeRepository);
+        ReflectionTestUtils.setField(timetableIndexService, "indexEnabled", indexEnabled);
+        timetableIndexService.rebuild();
+        stopTimeService = new StopTimeService();
+        ReflectionTestUtils.setField(stopTimeService, "stopTimeRepository", stopTimeRepository);
+        ReflectionTestUtils.setField(stopTimeService, "timetableIndexService", timetableIndexService);
+        ReflectionTestUtils.setField(stopTimeService, "tripPatternService", tripPatternService);
+        ReflectionTestUtils.setField(stopTimeService, "departureCache",
+                new DepartureCache(departureCacheEnabled ? 10000 : 0, 60, new SimpleMeterRegistry()));
+        ReflectionTestUtils.setField(stopTimeService, "maximumStopsPerBatch", NUMBER_OF_STOPS_PER_BATCH);
+        today = LocalDate.now().toString();
+    }
+
+    /**
+     * Benchmark the retrieval of the next departures from a random stop during the day.
+     * @return a <code>List</code> of <code>StopTimeModel</code> objects which is returned to prevent dead code elimination.
+     */
+    @Benchmark
+    public List<StopTimeModel> getTimes ( ) {
+        return stopTimeService.getTimes(randomStopName(), "12:00", "Departure");
+    }
+
+    /**
+     * Benchmark the retrieval of the next departures of several random stops in one batch during the day.
+     * @return a <code>Map</code> of departures per stop which is returned to prevent dead code elimination.
+     */
+    @Benchmark
+    public Map<String, List<StopTimeModel>> getTimesForStops ( ) {
+        List<String> stopNames = new ArrayList<>(NUMBER_OF_STOPS_PER_BATCH);
+        for ( int i = 0; i < NUMBER_OF_STOPS_PER_BATCH; i++ ) {
+            stopNames.add(randomStopName());
+        }
+        return stopTimeService.getTimesForStops(stopNames, "12:00", "Departure", 3, 120);
+    }
+
+    /**
+     * Benchmark the retrieval of all departures of a random stop on the current date.
+     * @return a <code>List</code> of <code>StopTimeModel</code> objects which is returned to prevent dead code elimination.
+     */
+    @Benchmark
+    public List<StopTimeModel> getDeparturesByDate ( ) {
+        return stopTimeService.getDeparturesByDate(randomStopName(), today);
+    }
+
+    /**
+     * This is a private helper method which returns the name of a random stop of the synthetic timetable.
+     * @return a <code>String</code> containing the name of the stop.
+     */
+    private String randomStopName ( ) {
+        return SyntheticData.getStopName(ThreadLocalRandom.current().nextInt(SyntheticData.NUMBER_OF_ROUTES * SyntheticData.STOPS_PER_JOURNEY));
+    }
+
+}
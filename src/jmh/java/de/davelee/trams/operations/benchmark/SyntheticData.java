@@ -0,0 +1,308 @@
+package de.davelee.trams.operations.benchmark;
+
+import de.davelee.trams.operations.model.BusVehicleModel;
+import de.davelee.trams.operations.model.StopTimeModel;
+import de.davelee.trams.operations.model.TrainPowerMode;
+import de.davelee.trams.operations.model.TrainVehicleModel;
+import de.davelee.trams.operations.model.TramVehicleModel;
+import de.davelee.trams.operations.model.VehicleStatus;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+/**
+ * This class generates synthetic timetables, feeds and fleets of a configurable size for the benchmarks. The data is
+ * generated deterministically so that the results of different runs can be compared. Journeys are spread evenly
+ * over the day from 05:00 to 23:59 and every stop time is valid for a year around today on all days of the week.
+ * @author Dave Lee
+ */
+public final class SyntheticData {
+
+    /**
+     * The number of stops which each journey serves.
+     */
+    public static final int STOPS_PER_JOURNEY = 20;
+
+    /**
+     * The number of routes which the stop times are spread across.
+     */
+    public static final int NUMBER_OF_ROUTES = 10;
+
+    private static final int FIRST_DEPARTURE_MINUTE = 5 * 60;
+
+    private static final int SERVICE_MINUTES = 19 * 60;
+
+    private static final int MINUTES_BETWEEN_STOPS = 2;
+
+    private static final int MINUTES_PER_DAY = 24 * 60;
+
+    private static final int ROUTES_AT_LARGE_STOP = 5;
+
+    private SyntheticData ( ) {
+    }
+
+    /**
+     * Return the name of the stop with the supplied number.
+     * @param stopNumber a <code>int</code> containing the number of the stop.
+     * @return a <code>String</code> containing the name of the stop.
+     */
+    public static String getStopName ( final int stopNumber ) {
+        return "Stop " + stopNumber;
+    }
+
+    /**
+     * Return the numbers of all generated routes.
+     * @return a <code>List</code> of <code>String</code> containing the route numbers.
+     */
+    public static List<String> getRouteNumbers ( ) {
+        return IntStream.range(0, NUMBER_OF_ROUTES).mapToObj(SyntheticData::getRouteNumber).collect(Collectors.toList());
+    }
+
+    /**
+     * Generate the supplied number of stop times. Each route serves its own stops so that the number of stops is
+     * <code>NUMBER_OF_ROUTES * STOPS_PER_JOURNEY</code> and every stop has the same number of stop times.
+     * @param numberOfStopTimes a <code>int</code> containing the number of stop times to generate.
+     * @return a <code>List</code> of <code>StopTimeModel</code> objects containing the generated stop times.
+     */
+    public static List<StopTimeModel> generateStopTimes ( final int numberOfStopTimes ) {
+        List<StopTimeModel> stopTimeModels = new ArrayList<>(numberOfStopTimes);
+        LocalDate today = LocalDate.now();
+        List<DayOfWeek> operatingDays = Arrays.asList(DayOfWeek.values());
+        int journeysPerRoute = getJourneysPerRoute(numberOfStopTimes);
+        for ( int route = 0; route < NUMBER_OF_ROUTES; route++ ) {
+            for ( int journey = 0; journey < journeysPerRoute; journey++ ) {
+                for ( int stop = 0; stop < STOPS_PER_JOURNEY; stop++ ) {
+                    LocalTime time = getTime(journey, journeysPerRoute, stop);
+                    stopTimeModels.add(StopTimeModel.builder()
+                            .id(stopTimeModels.size())
+                            .stopName(getStopName(route * STOPS_PER_JOURNEY + stop))
+                            .arrivalTime(time)
+                            .departureTime(time)
+                            .destination(getStopName(route * STOPS_PER_JOURNEY + STOPS_PER_JOURNEY - 1))
+                            .routeNumber(getRouteNumber(route))
+                            .journeyNumber("" + journey)
+                            .validFromDate(today.minusMonths(6))
+                            .validToDate(today.plusMonths(6))
+                            .operatingDays(operatingDays)
+                            .build());
+                }
+            }
+        }
+        return stopTimeModels;
+    }
+
+    /**
+     * Generate the supplied number of departures from one large stop sorted by time. Several routes serve the stop every
+     * minute of the day towards two destinations and each departure is included several times so that the stop contains
+     * many duplicates with the same destination and time.
+     * @param numberOfStopTimes a <code>int</code> containing the number of stop times to generate.
+     * @return a <code>List</code> of <code>StopTimeModel</code> objects containing the generated stop times.
+     */
+    public static List<StopTimeModel> generateLargeStop ( final int numberOfStopTimes ) {
+        List<StopTimeModel> stopTimeModels = new ArrayList<>(numberOfStopTimes);
+        int copiesPerDeparture = Math.max(1, numberOfStopTimes / (MINUTES_PER_DAY * ROUTES_AT_LARGE_STOP));
+        for ( int minute = 0; minute < MINUTES_PER_DAY; minute++ ) {
+            LocalTime time = LocalTime.MIDNIGHT.plusMinutes(minute);
+            for ( int copy = 0; copy < copiesPerDeparture; copy++ ) {
+                for ( int route = 0; route < ROUTES_AT_LARGE_STOP; route++ ) {
+                    stopTimeModels.add(StopTimeModel.builder()
+                            .id(stopTimeModels.size())
+                            .stopName(getStopName(0))
+                            .arrivalTime(time)
+                            .departureTime(time)
+                            .destination(getStopName(route % 2 + 1))
+                            .routeNumber(getRouteNumber(route))
+                            .journeyNumber("" + minute)
+                            .build());
+                }
+            }
+        }
+        return stopTimeModels;
+    }
+
+    /**
+     * Write a GTFS feed containing the supplied number of stop times to the supplied directory.
+     * @param directory a <code>Path</code> containing the directory to write the feed to.
+     * @param numberOfStopTimes a <code>int</code> containing the number of stop times to generate.
+     * @throws IOException if the feed could not be written.
+     */
+    public static void writeGTFSFeed ( final Path directory, final int numberOfStopTimes ) throws IOException {
+        DateTimeFormatter gtfsDateFormatter = DateTimeFormatter.ofPattern("yyyyMMdd");
+        LocalDate today = LocalDate.now();
+        int journeysPerRoute = getJourneysPerRoute(numberOfStopTimes);
+        Files.write(directory.resolve("agency.txt"), Arrays.asList("agency_id,agency_name,agency_url,agency_timezone",
+                "1,Benchmark Transport,http://www.example.com,Europe/Berlin"));
+        Files.write(directory.resolve("calendar.txt"), Arrays.asList(
+                "service_id,monday,tuesday,wednesday,thursday,friday,saturday,sunday,start_date,end_date",
+                "DAILY,1,1,1,1,1,1,1," + today.minusMonths(6).format(gtfsDateFormatter) + "," + today.plusMonths(6).format(gtfsDateFormatter)));
+        Files.write(directory.resolve("routes.txt"), Stream.concat(Stream.of("route_id,agency_id,route_short_name,route_long_name,route_type"),
+                IntStream.range(0, NUMBER_OF_ROUTES).mapToObj(route -> "R" + route + ",1," + getRouteNumber(route) + ",Route " + route + ",3"))
+                .collect(Collectors.toList()));
+        Files.write(directory.resolve("stops.txt"), Stream.concat(Stream.of("stop_id,stop_name,stop_lat,stop_lon"),
+                IntStream.range(0, NUMBER_OF_ROUTES * STOPS_PER_JOURNEY).mapToObj(stop -> "S" + stop + "," + getStopName(stop)
+                        + "," + (50.0 + stop / 1000.0) + "," + (8.0 + stop / 1000.0)))
+                .collect(Collectors.toList()));
+        try ( BufferedWriter tripsWriter = Files.newBufferedWriter(directory.resolve("trips.txt"));
+              BufferedWriter stopTimesWriter = Files.newBufferedWriter(directory.resolve("stop_times.txt")) ) {
+            tripsWriter.write("route_id,service_id,trip_id,trip_headsign\n");
+            stopTimesWriter.write("trip_id,arrival_time,departure_time,stop_id,stop_sequence\n");
+            for ( int route = 0; route < NUMBER_OF_ROUTES; route++ ) {
+                for ( int journey = 0; journey < journeysPerRoute; journey++ ) {
+                    String tripId = "T" + route + "_" + journey;
+                    tripsWriter.write("R" + route + ",DAILY," + tripId + "," + getStopName(route * STOPS_PER_JOURNEY + STOPS_PER_JOURNEY - 1) + "\n");
+                    for ( int stop = 0; stop < STOPS_PER_JOURNEY; stop++ ) {
+                        String time = getTime(journey, journeysPerRoute, stop) + ":00";
+                        stopTimesWriter.write(tripId + "," + time + "," + time + ",S" + (route * STOPS_PER_JOURNEY + stop) + "," + stop + "\n");
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Write one csv timetable per route containing the supplied number of stop times in total to the supplied directory.
+     * @param directory a <code>Path</code> containing the directory to write the csv files to.
+     * @param numberOfStopTimes a <code>int</code> containing the number of stop times to generate.
+     * @throws IOException if the csv files could not be written.
+     */
+    public static void writeCSVFiles ( final Path directory, final int numberOfStopTimes ) throws IOException {
+        int journeysPerRoute = getJourneysPerRoute(numberOfStopTimes);
+        for ( int route = 0; route < NUMBER_OF_ROUTES; route++ ) {
+            String routeNumber = getRouteNumber(route);
+            try ( BufferedWriter writer = Files.newBufferedWriter(directory.resolve(routeNumber.toLowerCase() + ".csv")) ) {
+                writer.write(routeNumber + ": " + getStopName(route * STOPS_PER_JOURNEY) + " <> "
+                        + getStopName(route * STOPS_PER_JOURNEY + STOPS_PER_JOURNEY - 1) + "\n");
+                writer.write("Route:;" + routeNumber);
+                for ( int journey = 1; journey < journeysPerRoute; journey++ ) {
+                    writer.write(";" + routeNumber);
+                }
+                writer.write("\nDays of Operation:");
+                for ( int journey = 0; journey < journeysPerRoute; journey++ ) {
+                    writer.write(";WD,SA,SU");
+                }
+                writer.write("\n");
+                for ( int stop = 0; stop < STOPS_PER_JOURNEY; stop++ ) {
+                    writer.write(getStopName(route * STOPS_PER_JOURNEY + stop));
+                    for ( int journey = 0; journey < journeysPerRoute; journey++ ) {
+                        writer.write(";" + getTime(journey, journeysPerRoute, stop));
+                    }
+                    writer.write("\n");
+                }
+            }
+        }
+    }
+
+    /**
+     * Generate the supplied number of vehicles which are split evenly between buses, trams and trains.
+     * @param numberOfVehicles a <code>int</code> containing the total number of vehicles to generate.
+     * @return a <code>List</code> of <code>BusVehicleModel</code> objects containing the generated buses.
+     */
+    public static List<BusVehicleModel> generateBuses ( final int numberOfVehicles ) {
+        return IntStream.range(0, numberOfVehicles / 3).mapToObj(vehicle -> BusVehicleModel.builder()
+                .fleetNumber("B" + vehicle)
+                .company("Benchmark Transport")
+                .deliveryDate(getDeliveryDate(vehicle))
+                .inspectionDate(getDeliveryDate(vehicle))
+                .seatingCapacity(40)
+                .standingCapacity(60)
+                .modelName("Benchmark Bus")
+                .livery("Green with red text")
+                .vehicleStatus(VehicleStatus.DELIVERED)
+                .registrationNumber("BT-" + vehicle)
+                .build()).collect(Collectors.toList());
+    }
+
+    /**
+     * Generate a third of the supplied number of vehicles as trams.
+     * @param numberOfVehicles a <code>int</code> containing the total number of vehicles to generate.
+     * @return a <code>List</code> of <code>TramVehicleModel</code> objects containing the generated trams.
+     */
+    public static List<TramVehicleModel> generateTrams ( final int numberOfVehicles ) {
+        return IntStream.range(0, numberOfVehicles / 3).mapToObj(vehicle -> TramVehicleModel.builder()
+                .fleetNumber("T" + vehicle)
+                .company("Benchmark Transport")
+                .deliveryDate(getDeliveryDate(vehicle))
+                .inspectionDate(getDeliveryDate(vehicle))
+                .seatingCapacity(50)
+                .standingCapacity(100)
+                .modelName("Benchmark Tram")
+                .livery("Green with red text")
+                .vehicleStatus(VehicleStatus.DELIVERED)
+                .isBidirectional(vehicle % 2 == 0)
+                .build()).collect(Collectors.toList());
+    }
+
+    /**
+     * Generate the remaining vehicles of the supplied number of vehicles as trains.
+     * @param numberOfVehicles a <code>int</code> containing the total number of vehicles to generate.
+     * @return a <code>List</code> of <code>TrainVehicleModel</code> objects containing the generated trains.
+     */
+    public static List<TrainVehicleModel> generateTrains ( final int numberOfVehicles ) {
+        return IntStream.range(0, numberOfVehicles - 2 * (numberOfVehicles / 3)).mapToObj(vehicle -> TrainVehicleModel.builder()
+                .fleetNumber("R" + vehicle)
+                .company("Benchmark Transport")
+                .deliveryDate(getDeliveryDate(vehicle))
+                .inspectionDate(getDeliveryDate(vehicle))
+                .seatingCapacity(80)
+                .standingCapacity(200)
+                .modelName("Benchmark Train")
+                .livery("Green with red text")
+                .vehicleStatus(VehicleStatus.DELIVERED)
+                .powerMode(TrainPowerMode.ELECTRIC)
+                .build()).collect(Collectors.toList());
+    }
+
+    /**
+     * This is a private helper method which returns the route number of the route with the supplied number.
+     * @param route a <code>int</code> containing the number of the route.
+     * @return a <code>String</code> containing the route number.
+     */
+    private static String getRouteNumber ( final int route ) {
+        return "B" + route;
+    }
+
+    /**
+     * This is a private helper method which returns the number of journeys per route so that the total number of
+     * stop times is at least one journey per route and otherwise as close as possible to the supplied number.
+     * @param numberOfStopTimes a <code>int</code> containing the total number of stop times.
+     * @return a <code>int</code> containing the number of journeys of each route.
+     */
+    private static int getJourneysPerRoute ( final int numberOfStopTimes ) {
+        return Math.max(1, numberOfStopTimes / (NUMBER_OF_ROUTES * STOPS_PER_JOURNEY));
+    }
+
+    /**
+     * This is a private helper method which returns the time at which a journey serves a stop. The journeys of a route
+     * are spread evenly over the service day so that several journeys may depart in the same minute for large timetables.
+     * @param journey a <code>int</code> containing the number of the journey.
+     * @param journeysPerRoute a <code>int</code> containing the number of journeys of the route.
+     * @param stop a <code>int</code> containing the position of the stop within the journey.
+     * @return a <code>LocalTime</code> containing the time at which the journey serves the stop.
+     */
+    private static LocalTime getTime ( final int journey, final int journeysPerRoute, final int stop ) {
+        int departureMinute = FIRST_DEPARTURE_MINUTE + (int) ((long) journey * (SERVICE_MINUTES - STOPS_PER_JOURNEY * MINUTES_BETWEEN_STOPS) / journeysPerRoute);
+        return LocalTime.MIDNIGHT.plusMinutes(departureMinute + (long) stop * MINUTES_BETWEEN_STOPS);
+    }
+
+    /**
+     * This is a private helper method which returns a delivery date within the last ten years for the supplied vehicle.
+     * @param vehicle a <code>int</code> containing the number of the vehicle.
+     * @return a <code>LocalDate</code> containing the delivery date of the vehicle.
+     */
+    private static LocalDate getDeliveryDate ( final int vehicle ) {
+        return LocalDate.now().minusDays(vehicle % 3650);
+    }
+
+}
@@ -0,0 +1,70 @@
+package de.davelee.trams.operations.benchmark;
+
+import de.davelee.trams.operations.model.VehicleModel;
+import de.davelee.trams.operations.response.VehicleResponse;
+import de.davelee.trams.operations.service.NextInspectionDueDateCallback;
+import de.davelee.trams.operations.service.VehicleService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This class benchmarks the retrieval of all vehicles from the <code>VehicleService</code> for fleets of different sizes.
+ * The fleet is split evenly between buses, trams and trains which are returned together by an in-memory stand-in for the
+ * database.
+ * @author Dave Lee
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class VehicleServiceBenchmark {
+
+    @Param({"1000", "10000", "100000"})
+    private int numberOfVehicles;
+
+    private VehicleService vehicleService;
+
+    /**
+     * Seed the in-memory repositories with the synthetic fleet.
+     */
+    @Setup(Level.Trial)
+    public void setUp ( ) {
+        vehicleService = new VehicleService();
+        List<VehicleModel> vehicleModels = new ArrayList<>(numberOfVehicles);
+        vehicleModels.addAll(SyntheticData.generateBuses(numberOfVehicles));
+        vehicleModels.addAll(SyntheticData.generateTrams(numberOfVehicles));
+        vehicleModels.addAll(SyntheticData.generateTrains(numberOfVehicles));
+        //Store the next inspection due date in the same way as when the vehicles are written to the database.
+        NextInspectionDueDateCallback nextInspectionDueDateCallback = new NextInspectionDueDateCallback(3, 8, 9);
+        vehicleModels.forEach(vehicleModel -> nextInspectionDueDateCallback.onBeforeConvert(vehicleModel, "vehicleModel"));
+        ReflectionTestUtils.setField(vehicleService, "vehicleRepository", InMemoryRepositories.vehicleRepository(vehicleModels));
+        ReflectionTestUtils.setField(vehicleService, "nextInspectionDueDateCallback", nextInspectionDueDateCallback);
+    }
+
+    /**
+     * Benchmark the retrieval and conversion of all vehicles.
+     * @return a <code>List</code> of <code>VehicleResponse</code> objects which is returned to prevent dead code elimination.
+     */
+    @Benchmark
+    public List<VehicleResponse> retrieveAllVehicles ( ) {
+        return vehicleService.retrieveAllVehicles();
+    }
+
+}
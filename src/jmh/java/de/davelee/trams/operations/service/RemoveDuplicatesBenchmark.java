@@ -0,0 +1,56 @@
+package de.davelee.trams.operations.service;
+
+import de.davelee.trams.operations.benchmark.SyntheticData;
+import de.davelee.trams.operations.model.StopTimeModel;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This class benchmarks the removal of duplicate departures by the <code>StopTimeService</code> on a large synthetic stop
+ * of different sizes. The benchmark is in the same package as the service because the removal is not public.
+ * @author Dave Lee
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class RemoveDuplicatesBenchmark {
+
+    @Param({"10000", "100000", "1000000"})
+    private int numberOfStopTimes;
+
+    private List<StopTimeModel> stopTimeModels;
+
+    /**
+     * Generate the departures of the large stop sorted by time.
+     */
+    @Setup(Level.Trial)
+    public void setUp ( ) {
+        stopTimeModels = SyntheticData.generateLargeStop(numberOfStopTimes);
+    }
+
+    /**
+     * Benchmark the removal of duplicate departures from the large stop.
+     * @return a <code>List</code> of <code>StopTimeModel</code> objects which is returned to prevent dead code elimination.
+     */
+    @Benchmark
+    public List<StopTimeModel> removeDuplicates ( ) {
+        return StopTimeService.removeDuplicates(stopTimeModels, "Departure");
+    }
+
+}
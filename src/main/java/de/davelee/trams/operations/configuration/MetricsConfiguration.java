@@ -0,0 +1,26 @@
+package de.davelee.trams.operations.configuration;
+
+import io.micrometer.core.aop.TimedAspect;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Configure the metrics which are collected in Trams Operations and exposed via the actuator endpoints.
+ * @author Dave Lee
+ */
+@Configuration
+public class MetricsConfiguration {
+
+    /**
+     * Create the aspect which records a timer for every service method annotated with <code>@Timed</code>. The timers
+     * are tagged with the class and method so that each method can be analysed separately.
+     * @param meterRegistry a <code>MeterRegistry</code> object to register the timers with.
+     * @return a <code>TimedAspect</code> object which times the annotated methods.
+     */
+    @Bean
+    public TimedAspect timedAspect ( final MeterRegistry meterRegistry ) {
+        return new TimedAspect(meterRegistry);
+    }
+
+}
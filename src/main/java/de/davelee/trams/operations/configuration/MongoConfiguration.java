@@ -4,18 +4,46 @@ import com.mongodb.ConnectionString;
 import com.mongodb.MongoClientSettings;
 import com.mongodb.client.MongoClient;
 import com.mongodb.client.MongoClients;
+import de.davelee.trams.operations.model.BusVehicleModel;
+import de.davelee.trams.operations.model.TrainVehicleModel;
+import de.davelee.trams.operations.model.TramVehicleModel;
+import de.davelee.trams.operations.model.VehicleModel;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.mongodb.MongoMetricsCommandListener;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationContext;
 import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.ComponentScan;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.FilterType;
+import org.springframework.data.mongodb.MongoDatabaseFactory;
 import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.SimpleMongoClientDatabaseFactory;
+import org.springframework.data.mongodb.core.SimpleReactiveMongoDatabaseFactory;
+import org.springframework.data.mongodb.core.convert.DefaultDbRefResolver;
+import org.springframework.data.mongodb.core.convert.MappingMongoConverter;
+import org.springframework.data.mongodb.core.convert.MongoCustomConversions;
+import org.springframework.data.mongodb.core.mapping.MongoMappingContext;
+import org.springframework.data.mongodb.repository.ReactiveMongoRepository;
 import org.springframework.data.mongodb.repository.config.EnableMongoRepositories;
+import org.springframework.data.mongodb.repository.config.EnableReactiveMongoRepositories;
+
+import java.util.Collections;
+import java.util.Set;
 
 /**
- * Configure the mongo database which is used to store all data in Trams Operations.
+ * Configure the mongo database which is used to store all data in Trams Operations. The data is written and read with
+ * the synchronous driver while the read path which must not block a request thread uses the reactive driver. Both
+ * share the same mapping so that documents are read in the same way.
  * @author Dave Lee
  */
 @Configuration
-@EnableMongoRepositories(basePackages = "de.davelee.trams.operations.repository")
+@EnableMongoRepositories(basePackages = "de.davelee.trams.operations.repository",
+        excludeFilters = @ComponentScan.Filter(type = FilterType.ASSIGNABLE_TYPE, classes = ReactiveMongoRepository.class))
+@EnableReactiveMongoRepositories(basePackages = "de.davelee.trams.operations.repository",
+        includeFilters = @ComponentScan.Filter(type = FilterType.ASSIGNABLE_TYPE, classes = ReactiveMongoRepository.class))
 public class MongoConfiguration {
 
     @Value("${mongo.url}")
@@ -24,15 +52,39 @@ public class MongoConfiguration {
     @Value("${mongo.databaseName}")
     private String mongoDatabaseName;
 
+    @Value("${mongo.autoIndexCreation:true}")
+    private boolean autoIndexCreation;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Autowired
+    private ApplicationContext applicationContext;
+
     /**
      * Create a new client which can communicate with the Mongo Database. The url is provided as a parameter in the Spring
-     * Boot application properties.
+     * Boot application properties. The latency of every command sent to the database is recorded as a metric.
      * @return a <code>MongoClient</code> object containing the connection to the Mongo Database.
      */
     @Bean
     public MongoClient mongo() {
         return MongoClients.create(MongoClientSettings.builder()
                 .applyConnectionString(new ConnectionString(mongoUrl))
+                .addCommandListener(new MongoMetricsCommandListener(meterRegistry))
+                .build());
+    }
+
+    /**
+     * Create a new reactive client which can communicate with the Mongo Database without blocking the calling thread.
+     * The url is provided as a parameter in the Spring Boot application properties. The latency of every command sent
+     * to the database is recorded as a metric.
+     * @return a <code>com.mongodb.reactivestreams.client.MongoClient</code> object containing the reactive connection to the Mongo Database.
+     */
+    @Bean
+    public com.mongodb.reactivestreams.client.MongoClient reactiveMongo() {
+        return com.mongodb.reactivestreams.client.MongoClients.create(MongoClientSettings.builder()
+                .applyConnectionString(new ConnectionString(mongoUrl))
+                .addCommandListener(new MongoMetricsCommandListener(meterRegistry))
                 .build());
     }
 
@@ -44,6 +96,45 @@ public class MongoConfiguration {
      */
     @Bean
     public MongoTemplate mongoTemplate() throws Exception {
-        return new MongoTemplate(mongo(), mongoDatabaseName);
+        MongoDatabaseFactory mongoDatabaseFactory = new SimpleMongoClientDatabaseFactory(mongo(), mongoDatabaseName);
+        return new MongoTemplate(mongoDatabaseFactory, mappingMongoConverter(mongoDatabaseFactory));
+    }
+
+    /**
+     * Create a new template which can be used for querying the database without blocking the calling thread. The template
+     * uses the same mapping as the synchronous template.
+     * @throws Exception <code>Exception</code> object if not able to connect to the database.
+     * @return a <code>ReactiveMongoTemplate</code> object containing the template for querying the database reactively.
+     */
+    @Bean
+    public ReactiveMongoTemplate reactiveMongoTemplate() throws Exception {
+        return new ReactiveMongoTemplate(new SimpleReactiveMongoDatabaseFactory(reactiveMongo(), mongoDatabaseName),
+                mongoTemplate().getConverter());
+    }
+
+    /**
+     * This is a private helper method which creates the converter between documents and models. The indexes declared
+     * on the models are created at startup unless automatic index creation has been disabled in the Spring Boot application
+     * properties. The vehicle models are registered at startup so that the type aliases of vehicles can be resolved when
+     * all vehicles are read together. The mapping context can access the beans of the application so that the stop time
+     * model can resolve its collection from the bean which holds the active version of the timetable.
+     * @param mongoDatabaseFactory a <code>MongoDatabaseFactory</code> object containing the database to convert documents for.
+     * @return a <code>MappingMongoConverter</code> object containing the converter.
+     */
+    private MappingMongoConverter mappingMongoConverter ( final MongoDatabaseFactory mongoDatabaseFactory ) {
+        MongoCustomConversions mongoCustomConversions = new MongoCustomConversions(Collections.emptyList());
+        //Create the mapping context with the desired index creation setting.
+        MongoMappingContext mongoMappingContext = new MongoMappingContext();
+        mongoMappingContext.setSimpleTypeHolder(mongoCustomConversions.getSimpleTypeHolder());
+        mongoMappingContext.setAutoIndexCreation(autoIndexCreation);
+        mongoMappingContext.setApplicationContext(applicationContext);
+        mongoMappingContext.setInitialEntitySet(Set.of(VehicleModel.class, BusVehicleModel.class, TrainVehicleModel.class, TramVehicleModel.class));
+        mongoMappingContext.afterPropertiesSet();
+        //Create the converter based on the mapping context.
+        MappingMongoConverter mappingMongoConverter = new MappingMongoConverter(new DefaultDbRefResolver(mongoDatabaseFactory), mongoMappingContext);
+        mappingMongoConverter.setCustomConversions(mongoCustomConversions);
+        mappingMongoConverter.setCodecRegistryProvider(mongoDatabaseFactory);
+        mappingMongoConverter.afterPropertiesSet();
+        return mappingMongoConverter;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,135 @@
+package de.davelee.trams.operations.controller;
+
+import de.davelee.trams.operations.model.RouteModel;
+import de.davelee.trams.operations.model.StopModel;
+import de.davelee.trams.operations.model.StopTimeModel;
+import de.davelee.trams.operations.response.VehicleResponse;
+import de.davelee.trams.operations.service.RouteService;
+import de.davelee.trams.operations.service.StopService;
+import de.davelee.trams.operations.service.StopTimeService;
+import de.davelee.trams.operations.service.VehicleService;
+import io.micrometer.core.annotation.Timed;
+import io.swagger.annotations.Api;
+import io.swagger.annotations.ApiOperation;
+import io.swagger.annotations.ApiResponse;
+import io.swagger.annotations.ApiResponses;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.web.bind.annotation.CrossOrigin;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * This class provides REST endpoints for the most frequent reads which do not block a request thread while the data is
+ * read from the database. The request thread is released as soon as the query has been sent and the response is written
+ * once the reactive driver has returned the data, so that many more requests can wait for the database at the same time
+ * than there are request threads. The endpoints return the same data as the corresponding endpoints of the
+ * <code>TramsOperationsRestController</code>. The application runs on the servlet stack rather than WebFlux, so Spring MVC
+ * serves the returned <code>Mono</code> and <code>Flux</code> objects through servlet async requests.
+ * @author Dave Lee
+ */
+@RestController
+@Timed(histogram = true)
+@Api(value="/trams-operations/reactive")
+@RequestMapping(value="/trams-operations/reactive")
+public class TramsOperationsReactiveController {
+
+    @Autowired
+    private StopTimeService stopTimeService;
+
+    @Autowired
+    private RouteService routeService;
+
+    @Autowired
+    private StopService stopService;
+
+    @Autowired
+    private VehicleService vehicleService;
+
+    /**
+     * Return the next 3 departures for this stop within the next 2 hours.
+     * @param stopName a <code>String</code> containing the name of the stop to retrieve departures from.
+     * @param startingTime a <code>String</code> containing the time to start retrieving departures from which may be null if current time should be used.
+     * @return a <code>Mono</code> containing a <code>List</code> of <code>StopTimeModel</code> objects which is empty if
+     * there are no departures in next 2 hours.
+     */
+    @GetMapping("/departures")
+    @CrossOrigin
+    @ApiOperation(value = "Get latest departures", notes="Return the next departures without blocking.")
+    @ApiResponses(value = {@ApiResponse(code=200,message="Successfully returned departures")})
+    public Mono<List<StopTimeModel>> getDepartures ( final String stopName, final String startingTime ) {
+        return stopTimeService.getTimesReactive(stopName, startingTime, "Departure");
+    }
+
+    /**
+     * Return the next 3 arrivals for this stop within the next 2 hours.
+     * @param stopName a <code>String</code> containing the name of the stop to retrieve arrivals for.
+     * @param startingTime a <code>String</code> containing the time to start retrieving arrivals from which may be null if current time should be used.
+     * @return a <code>Mono</code> containing a <code>List</code> of <code>StopTimeModel</code> objects which is empty if
+     * there are no arrivals in next 2 hours.
+     */
+    @GetMapping("/arrivals")
+    @CrossOrigin
+    @ApiOperation(value = "Get latest arrivals", notes="Return the next arrivals without blocking.")
+    @ApiResponses(value = {@ApiResponse(code=200,message="Successfully returned arrivals")})
+    public Mono<List<StopTimeModel>> getArrivals ( final String stopName, final String startingTime ) {
+        return stopTimeService.getTimesReactive(stopName, startingTime, "Arrival");
+    }
+
+    /**
+     * Return all routes currently stored in the database.
+     * @return a <code>Flux</code> of <code>RouteModel</code> objects which is empty if there are no routes in the database.
+     */
+    @GetMapping("/routes")
+    @CrossOrigin
+    @ApiOperation(value = "Get routes", notes="Return all routes without blocking")
+    @ApiResponses(value = {@ApiResponse(code=200,message="Successfully returned routes")})
+    public Flux<RouteModel> getRoutes ( ) {
+        return routeService.getRoutesReactive();
+    }
+
+    /**
+     * Return all stops currently stored in the database.
+     * @return a <code>Flux</code> of <code>StopModel</code> objects which is empty if there are no stops in the database.
+     */
+    @GetMapping("/stops")
+    @CrossOrigin
+    @ApiOperation(value = "Get stops", notes="Return all stops without blocking")
+    @ApiResponses(value = {@ApiResponse(code=200,message="Successfully returned stops")})
+    public Flux<StopModel> getStops ( ) {
+        return stopService.getStopsReactive();
+    }
+
+    /**
+     * Endpoint to retrieve vehicle fleet information.
+     * @return a <code>Flux</code> of <code>VehicleResponse</code> objects which is empty if there are no vehicles in the database.
+     */
+    @GetMapping("/vehicles")
+    @CrossOrigin
+    @ApiOperation(value = "Get vehicles", notes="Return all vehicles in the fleet without blocking")
+    @ApiResponses(value = {@ApiResponse(code=200,message="Successfully returned vehicles")})
+    public Flux<VehicleResponse> getVehicles ( ) {
+        return vehicleService.retrieveVehiclesReactive(null, null);
+    }
+
+    /**
+     * Endpoint to retrieve vehicle information that starts with the supplied company name and starts with the supplied
+     * fleet number.
+     * @param company a <code>String</code> containing the name of the company to search for.
+     * @param fleetNumber a <code>String</code> containing the fleet number to search for.
+     * @return a <code>Flux</code> of <code>VehicleResponse</code> objects which is empty if there are no vehicles found.
+     */
+    @GetMapping("/vehiclesCompanyFleetNumber")
+    @CrossOrigin
+    @ApiOperation(value = "Get vehicles", notes="Return all vehicles matching company and fleet number without blocking")
+    @ApiResponses(value = {@ApiResponse(code=200,message="Successfully returned vehicles")})
+    public Flux<VehicleResponse> getVehiclesByCompanyAndFleetNumber ( final Optional<String> company, final String fleetNumber ) {
+        return vehicleService.retrieveVehiclesReactive(company.orElse(null), fleetNumber);
+    }
+
+}
@@ -1,40 +1,67 @@
 package de.davelee.trams.operations.controller;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import de.davelee.trams.operations.model.*;
 import de.davelee.trams.operations.request.ImportZipRequest;
+import de.davelee.trams.operations.response.ImportJobResponse;
 import de.davelee.trams.operations.response.VehicleResponse;
 import de.davelee.trams.operations.service.*;
+import io.micrometer.core.annotation.Timed;
 import io.swagger.annotations.Api;
 import io.swagger.annotations.ApiOperation;
 import io.swagger.annotations.ApiResponse;
 import io.swagger.annotations.ApiResponses;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import java.time.LocalDate;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
 
 /**
  * This class provides REST endpoints which can be called by other clients wishing to communicate with the Trams Operations Module.
+ * The latency of each endpoint is recorded with a histogram so that percentiles can be calculated per endpoint.
  * @author Dave Lee
  */
 @RestController
+@Timed(histogram = true)
 @Api(value="/trams-operations")
 @RequestMapping(value="/trams-operations")
 public class TramsOperationsRestController {
 
+    /**
+     * The media type for responses which contain one JSON object per line and are written while they are read from the database.
+     */
+    private static final String NDJSON_MEDIA_TYPE = "application/x-ndjson";
+
+    /**
+     * The response header containing the cursor to retrieve the next page which is missing on the last page.
+     */
+    private static final String NEXT_CURSOR_HEADER = "Next-Cursor";
+
     @Autowired
     private StopTimeService stopTimeService;
 
     @Autowired
-    private ImportGTFSDataService gtfsDataService;
+    private DepartureBoardService departureBoardService;
 
     @Autowired
-    private ImportCSVDataService csvDataService;
+    private ImportJobService importJobService;
+
+    @Autowired
+    private TimetableVersionService timetableVersionService;
 
     @Autowired
     private RouteService routeService;
@@ -48,6 +75,9 @@ public class TramsOperationsRestController {
     @Autowired
     private VehicleService vehicleService;
 
+    @Autowired
+    private ObjectMapper objectMapper;
+
     /**
      * Return the next 3 departures for this stop within the next 2 hours.
      * @param stopName a <code>String</code> containing the name of the stop to retrieve departures from.
@@ -64,6 +94,51 @@ public class TramsOperationsRestController {
         return stopTimeService.getDepartures(stopName, startingTime);
     }
 
+    /**
+     * Return the next departures or arrivals for each of the supplied stops in one request so that a display showing
+     * several stops does not need one request per stop.
+     * @param stopNames a <code>List</code> of <code>String</code> containing the names of the stops to retrieve departures from.
+     * @param startingTime a <code>String</code> containing the time to start retrieving departures from which may be empty if current time should be used.
+     * @param type a <code>String</code> which can be either Departure or Arrival and may be empty to return departures.
+     * @param count a <code>Integer</code> containing the maximum number of departures per stop which may be empty to return 3 departures.
+     * @param window a <code>Integer</code> containing the number of minutes to return departures for which may be empty to use 2 hours.
+     * @return a <code>ResponseEntity</code> containing a <code>Map</code> with the departures of each stop or bad request if the
+     * parameters are not valid.
+     */
+    @GetMapping("/departuresForStops")
+    @CrossOrigin
+    @ApiOperation(value = "Get latest departures for several stops", notes="Return the next departures or arrivals of each stop.")
+    @ApiResponses(value = {@ApiResponse(code=200,message="Successfully returned departures"), @ApiResponse(code=400,message="Stops, type, count or window were not valid")})
+    public ResponseEntity<Map<String, List<StopTimeModel>>> getDeparturesForStops ( @RequestParam final List<String> stopNames,
+                                                                                   final Optional<String> startingTime, final Optional<String> type,
+                                                                                   final Optional<Integer> count, final Optional<Integer> window ) {
+        try {
+            return ResponseEntity.ok(stopTimeService.getTimesForStops(stopNames, startingTime.orElse(null), type.orElse("Departure"),
+                    count.orElse(3), window.orElse(120)));
+        } catch ( IllegalArgumentException illegalArgumentException ) {
+            return ResponseEntity.badRequest().build();
+        }
+    }
+
+    /**
+     * Subscribe to the live departure boards of the supplied stops. The board of each stop is sent as a server-sent event
+     * immediately and afterwards every time that the next departures of the stop change.
+     * @param stopNames a <code>List</code> of <code>String</code> containing the names of the stops to subscribe to.
+     * @return a <code>ResponseEntity</code> containing a <code>SseEmitter</code> which sends the departure boards or bad
+     * request if no or too many stops were supplied.
+     */
+    @GetMapping(value = "/departureBoards", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    @CrossOrigin
+    @ApiOperation(value = "Subscribe to departure boards", notes="Send the next departures of each stop whenever they change.")
+    @ApiResponses(value = {@ApiResponse(code=200,message="Successfully subscribed to departure boards"), @ApiResponse(code=400,message="Stops were not valid")})
+    public ResponseEntity<SseEmitter> subscribeDepartureBoards ( @RequestParam final List<String> stopNames ) {
+        try {
+            return ResponseEntity.ok(departureBoardService.subscribe(stopNames));
+        } catch ( IllegalArgumentException illegalArgumentException ) {
+            return ResponseEntity.badRequest().build();
+        }
+    }
+
     /**
      * Return the next 3 arrivals for this stop within the next 2 hours.
      * @param stopName a <code>String</code> containing the name of the stop to retrieve arrivals for.
@@ -97,6 +172,22 @@ public class TramsOperationsRestController {
         return stopTimeService.getDeparturesByDate(stopName, date);
     }
 
+    /**
+     * Stream all departures for this stop on the supplied date with one departure per line so that the first departures
+     * are written before all departures have been read from the database.
+     * @param stopName a <code>String</code> containing the name of the stop to retrieve departures from.
+     * @param date a <code>String</code> containing the date in format YYYY-mm-dd.
+     * @return a <code>ResponseEntity</code> object containing the streamed departures.
+     */
+    @GetMapping(value = "/departuresByDate", produces = NDJSON_MEDIA_TYPE)
+    @CrossOrigin
+    @ApiOperation(value = "Stream all departures for a particular date and stop", notes="Stream all departures" +
+            " for this stop and date.")
+    @ApiResponses(value = {@ApiResponse(code=200,message="Successfully streamed departures")})
+    public ResponseEntity<StreamingResponseBody> streamDeparturesByDate ( final String stopName, final String date ) {
+        return toNdjsonResponse(() -> stopTimeService.streamDeparturesByDate(stopName, date));
+    }
+
     /**
      * Return all routes currently stored in the database.
      * @return a <code>List</code> of <code>RouteModel</code> objects which may be null if there are no routes in the database.
@@ -127,31 +218,83 @@ public class TramsOperationsRestController {
      * Upload a zip file containing files either fulfilling the GTFS specification or the CSV specification.
      * Optionally a list of routes can be provided which should be imported and may be null if all routes should be imported.
      * Optionally a valid from and valid to date can also be provided (which are only read in the csv import).
+     * Optionally a GTFS file can be imported incrementally so that only the trips which have changed since the last import are written.
      * The GTFS specification is specified here: https://developers.google.com/transit/gtfs
+     * The file is imported in the background and the status of the import can be retrieved with the returned job id.
+     * The uploaded file is deleted when the import has finished or if the import could not be started.
      * @param importZipRequest a <code>ImportZipRequest</code> containing the zip file, list of routes to import
      *                            and valid from and valid to dates.
-     * @return a <code>ResponseEntity</code> object which returns the http status of this method if it was successful or not.
+     * @return a <code>ResponseEntity</code> object containing the import job which was started or the http status if it could not be started.
      */
     @PostMapping("/uploadDataFile")
     @CrossOrigin
     @ApiOperation(value = "Upload Data file", notes="Upload a GTFS or CSV Zip file to TraMS")
-    @ApiResponses(value = {@ApiResponse(code=200,message="Successfully imported GTFS/CSV Data"), @ApiResponse(code=422,message="Entity could not be processed because zip file was not valid")})
-    public ResponseEntity<Void> handleFileUpload(@ModelAttribute final ImportZipRequest importZipRequest) {
-        String folderName = fileSystemStorageService.store(importZipRequest.getZipFile());
+    @ApiResponses(value = {@ApiResponse(code=202,message="Successfully started import of GTFS/CSV Data"), @ApiResponse(code=422,message="Entity could not be processed because zip file was not valid"),
+            @ApiResponse(code=503,message="Import could not be started because too many imports are waiting")})
+    public ResponseEntity<ImportJobResponse> handleFileUpload(@ModelAttribute final ImportZipRequest importZipRequest) {
+        String archivePath = fileSystemStorageService.storeArchive(importZipRequest.getZipFile());
         List<String> routesToImport =  importZipRequest.getRoutesToImport() != null ?
                                         Arrays.asList(importZipRequest.getRoutesToImport().split(",")) : new ArrayList<>();
-        if ( importZipRequest.getFileFormat().contentEquals("General Transit Feed Specification (GTFS)")) {
-            if (gtfsDataService.readGTFSFile(folderName, routesToImport)) {
-                return ResponseEntity.ok().build();
-            }
-        } else if ( importZipRequest.getFileFormat().contentEquals("Comma Separated Value (CSV)")) {
-            if (csvDataService.readCSVFile(folderName, importZipRequest.getValidFromDate(), importZipRequest.getValidToDate())) {
-                return ResponseEntity.ok().build();
+        try {
+            if ( importZipRequest.getFileFormat().contentEquals("General Transit Feed Specification (GTFS)")) {
+                return ResponseEntity.accepted().body(convertToImportJobResponse(importJobService.submitGTFSImport(archivePath, routesToImport,
+                        importZipRequest.isIncremental())));
+            } else if ( importZipRequest.getFileFormat().contentEquals("Comma Separated Value (CSV)")) {
+                return ResponseEntity.accepted().body(convertToImportJobResponse(importJobService.submitCSVImport(archivePath,
+                        importZipRequest.getValidFromDate(), importZipRequest.getValidToDate())));
             }
+        } catch ( RejectedExecutionException rejectedExecutionException ) {
+            //The import will never run so the uploaded file is not needed anymore.
+            fileSystemStorageService.delete(archivePath);
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).build();
         }
+        fileSystemStorageService.delete(archivePath);
         return ResponseEntity.unprocessableEntity().build();
     }
 
+    /**
+     * Return the status of the import job with the supplied id.
+     * @param jobId a <code>String</code> containing the id of the import job which was returned when the file was uploaded.
+     * @return a <code>ResponseEntity</code> object containing the phase, progress and outcome of the import job or not found if the job does not exist.
+     */
+    @GetMapping("/importJob")
+    @CrossOrigin
+    @ApiOperation(value = "Get import job", notes="Return the status of an import job")
+    @ApiResponses(value = {@ApiResponse(code=200,message="Successfully returned import job"), @ApiResponse(code=404,message="Import job was not found")})
+    public ResponseEntity<ImportJobResponse> getImportJob ( final String jobId ) {
+        return importJobService.getImportJob(jobId)
+                .map(importJob -> ResponseEntity.ok(convertToImportJobResponse(importJob)))
+                .orElse(ResponseEntity.notFound().build());
+    }
+
+    /**
+     * Make the previous version of the timetable the active version again so that the last import can be undone quickly.
+     * @return a <code>ResponseEntity</code> object which is ok if the timetable was rolled back or conflict if there is no previous version.
+     */
+    @PostMapping("/rollbackTimetable")
+    @CrossOrigin
+    @ApiOperation(value = "Roll back timetable", notes="Make the previous version of the timetable active again")
+    @ApiResponses(value = {@ApiResponse(code=200,message="Successfully rolled back timetable"), @ApiResponse(code=409,message="There is no previous version of the timetable")})
+    public ResponseEntity<Void> rollbackTimetable ( ) {
+        return timetableVersionService.rollback() ? ResponseEntity.ok().build() : ResponseEntity.status(HttpStatus.CONFLICT).build();
+    }
+
+    /**
+     * This is a private helper method which converts an import job into a response containing its current status.
+     * @param importJob a <code>ImportJob</code> object containing the job to convert.
+     * @return a <code>ImportJobResponse</code> object containing the current status of the job.
+     */
+    private ImportJobResponse convertToImportJobResponse ( final ImportJob importJob ) {
+        return ImportJobResponse.builder()
+                .jobId(importJob.getId())
+                .phase(importJob.getProgress().getPhase().name())
+                .rowsProcessed(importJob.getProgress().getRowsProcessed())
+                .rowsPerSecond(importJob.getProgress().getRowsPerSecond())
+                .successful(importJob.getSuccessful())
+                .message(importJob.getMessage())
+                .build();
+    }
+
     /**
      * Endpoint to retrieve vehicle fleet information.
      * @return a <code>List</code> of <code>VehicleResponse</code> objects which may be null if there are no vehicles in the database.
@@ -185,6 +328,131 @@ public class TramsOperationsRestController {
         }
     }
 
+    /**
+     * Endpoint to retrieve all vehicles whose next inspection is due within the supplied number of days including vehicles
+     * whose inspection is already overdue. The vehicles are sorted by the date on which the inspection is due.
+     * @param days a <code>int</code> containing the number of days from today within which the inspection must be due.
+     * @return a <code>ResponseEntity</code> object containing the vehicles due for inspection or bad request if the number of days is negative.
+     */
+    @GetMapping("/vehiclesDueForInspection")
+    @CrossOrigin
+    @ApiOperation(value = "Get vehicles due for inspection", notes="Return all vehicles due for inspection within the supplied number of days")
+    @ApiResponses(value = {@ApiResponse(code=200,message="Successfully returned vehicles"), @ApiResponse(code=400,message="Number of days was negative")})
+    public ResponseEntity<List<VehicleResponse>> getVehiclesDueForInspection ( final int days ) {
+        if ( days < 0 ) {
+            return ResponseEntity.badRequest().build();
+        }
+        return ResponseEntity.ok(vehicleService.retrieveVehiclesDueForInspection(days));
+    }
+
+    /**
+     * Endpoint to retrieve one page of vehicle fleet information. The vehicles are sorted by company, fleet number and id.
+     * @param cursor a <code>String</code> containing the cursor returned with the previous page which may be empty for the first page.
+     * @param limit a <code>int</code> containing the maximum number of vehicles to return.
+     * @return a <code>ResponseEntity</code> object containing the vehicles on the page and the cursor for the next page
+     * in the Next-Cursor header or bad request if the limit or cursor is not valid.
+     */
+    @GetMapping(value = "/vehicles", params = "limit")
+    @CrossOrigin
+    @ApiOperation(value = "Get page of vehicles", notes="Return one page of vehicles in the fleet")
+    @ApiResponses(value = {@ApiResponse(code=200,message="Successfully returned vehicles"), @ApiResponse(code=400,message="Limit or cursor was not valid")})
+    public ResponseEntity<List<VehicleResponse>> getVehiclePage ( final Optional<String> cursor, final int limit ) {
+        return getVehiclePage(null, null, cursor, limit);
+    }
+
+    /**
+     * Endpoint to stream all vehicle fleet information with one vehicle per line as the vehicles are read from the database.
+     * @return a <code>ResponseEntity</code> object containing the streamed vehicles.
+     */
+    @GetMapping(value = "/vehicles", produces = NDJSON_MEDIA_TYPE)
+    @CrossOrigin
+    @ApiOperation(value = "Stream vehicles", notes="Stream all vehicles in the fleet")
+    @ApiResponses(value = {@ApiResponse(code=200,message="Successfully streamed vehicles")})
+    public ResponseEntity<StreamingResponseBody> streamVehicles ( ) {
+        return toNdjsonResponse(() -> vehicleService.streamVehicles(null, null));
+    }
+
+    /**
+     * Endpoint to retrieve one page of vehicle information that starts with the supplied company name and starts with
+     * the supplied fleet number. The vehicles are sorted by company, fleet number and id.
+     * @param company a <code>String</code> containing the name of the company to search for.
+     * @param fleetNumber a <code>String</code> containing the fleet number to search for.
+     * @param cursor a <code>String</code> containing the cursor returned with the previous page which may be empty for the first page.
+     * @param limit a <code>int</code> containing the maximum number of vehicles to return.
+     * @return a <code>ResponseEntity</code> object containing the vehicles on the page and the cursor for the next page
+     * in the Next-Cursor header or bad request if the limit or cursor is not valid.
+     */
+    @GetMapping(value = "/vehiclesCompanyFleetNumber", params = "limit")
+    @CrossOrigin
+    @ApiOperation(value = "Get page of vehicles", notes="Return one page of vehicles matching company and fleet number")
+    @ApiResponses(value = {@ApiResponse(code=200,message="Successfully returned vehicles"), @ApiResponse(code=400,message="Limit or cursor was not valid")})
+    public ResponseEntity<List<VehicleResponse>> getVehiclePageByCompanyAndFleetNumber ( final Optional<String> company, final String fleetNumber,
+                                                                                       final Optional<String> cursor, final int limit ) {
+        return getVehiclePage(company.orElse(null), fleetNumber, cursor, limit);
+    }
+
+    /**
+     * Endpoint to stream vehicle information that starts with the supplied company name and starts with the supplied
+     * fleet number with one vehicle per line as the vehicles are read from the database.
+     * @param company a <code>String</code> containing the name of the company to search for.
+     * @param fleetNumber a <code>String</code> containing the fleet number to search for.
+     * @return a <code>ResponseEntity</code> object containing the streamed vehicles.
+     */
+    @GetMapping(value = "/vehiclesCompanyFleetNumber", produces = NDJSON_MEDIA_TYPE)
+    @CrossOrigin
+    @ApiOperation(value = "Stream vehicles", notes="Stream all vehicles matching company and fleet number")
+    @ApiResponses(value = {@ApiResponse(code=200,message="Successfully streamed vehicles")})
+    public ResponseEntity<StreamingResponseBody> streamVehiclesByCompanyAndFleetNumber ( final Optional<String> company, final String fleetNumber ) {
+        return toNdjsonResponse(() -> vehicleService.streamVehicles(company.orElse(null), fleetNumber));
+    }
+
+    /**
+     * This is a private helper method which retrieves one page of vehicles and returns the cursor for the next page as a header.
+     * @param company a <code>String</code> containing the name of the company to search for which may be null.
+     * @param fleetNumber a <code>String</code> containing the fleet number to search for which may be null.
+     * @param cursor a <code>String</code> containing the cursor returned with the previous page which may be empty for the first page.
+     * @param limit a <code>int</code> containing the maximum number of vehicles to return.
+     * @return a <code>ResponseEntity</code> object containing the vehicles on the page or bad request if the limit or cursor is not valid.
+     */
+    private ResponseEntity<List<VehicleResponse>> getVehiclePage ( final String company, final String fleetNumber,
+                                                                   final Optional<String> cursor, final int limit ) {
+        if ( limit < 1 ) {
+            return ResponseEntity.badRequest().build();
+        }
+        final VehiclePage vehiclePage;
+        try {
+            vehiclePage = vehicleService.retrieveVehiclePage(company, fleetNumber, cursor.orElse(null), limit);
+        } catch ( IllegalArgumentException illegalArgumentException ) {
+            return ResponseEntity.badRequest().build();
+        }
+        ResponseEntity.BodyBuilder responseBuilder = ResponseEntity.ok();
+        if ( vehiclePage.getNextCursor() != null ) {
+            responseBuilder.header(NEXT_CURSOR_HEADER, vehiclePage.getNextCursor());
+        }
+        return responseBuilder.body(vehiclePage.getVehicles());
+    }
+
+    /**
+     * This is a private helper method which writes the objects of the supplied stream to the response with one JSON
+     * object per line. The stream is only opened once the response is written and is closed afterwards so that no
+     * list of all objects is held in memory.
+     * @param streamSupplier a <code>Supplier</code> which opens the stream of objects to write.
+     * @return a <code>ResponseEntity</code> object containing the body which writes the objects.
+     */
+    private ResponseEntity<StreamingResponseBody> toNdjsonResponse ( final Supplier<Stream<?>> streamSupplier ) {
+        return ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType(NDJSON_MEDIA_TYPE))
+                .body(outputStream -> {
+                    try ( Stream<?> stream = streamSupplier.get() ) {
+                        Iterator<?> iterator = stream.iterator();
+                        while ( iterator.hasNext() ) {
+                            outputStream.write(objectMapper.writeValueAsBytes(iterator.next()));
+                            outputStream.write('\n');
+                        }
+                    }
+                });
+    }
+
     /**
      * Temporary endpoint to add test data which will be removed as soon as data can be added through normal endpoints.
      * @return a <code>ResponseEntity</code> object which returns the http status of this method if it was successful or not.
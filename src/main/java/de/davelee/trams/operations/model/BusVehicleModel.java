@@ -4,6 +4,8 @@ import lombok.Builder;
 import lombok.Getter;
 import lombok.Setter;
 import lombok.ToString;
+import org.springframework.data.annotation.TypeAlias;
+import org.springframework.data.mongodb.core.mapping.Document;
 
 import java.time.LocalDate;
 
@@ -11,6 +13,8 @@ import java.time.LocalDate;
  * This class represents a bus. A bus has a registration number as well as all other attributes of a vehicle.
  * @author Dave Lee
  */
+@Document(collection = "vehicleModel")
+@TypeAlias("bus")
 @Getter
 @Setter
 @ToString
@@ -0,0 +1,49 @@
+package de.davelee.trams.operations.model;
+
+/**
+ * This class represents the various phases that an import of a GTFS or CSV file goes through.
+ * @author Dave Lee
+ */
+public enum ImportPhase {
+
+    /**
+     * Import is waiting for a free worker.
+     */
+    QUEUED,
+
+    /**
+     * Routes, stops and calendars are being read from the file.
+     */
+    READING,
+
+    /**
+     * Trips are being compared with the stored trips and only the trips which have changed are written.
+     */
+    COMPARING,
+
+    /**
+     * Stop times are being written to the database.
+     */
+    WRITING,
+
+    /**
+     * The indexes of the new timetable version are being built and the version is being activated.
+     */
+    ACTIVATING,
+
+    /**
+     * The timetable index is being rebuilt with the imported stop times.
+     */
+    INDEXING,
+
+    /**
+     * Import has finished successfully.
+     */
+    COMPLETED,
+
+    /**
+     * Import has finished but was not successful.
+     */
+    FAILED
+
+}
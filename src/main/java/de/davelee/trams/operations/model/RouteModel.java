@@ -1,11 +1,15 @@
 package de.davelee.trams.operations.model;
 
 import lombok.*;
+import org.springframework.data.mongodb.core.index.Indexed;
+import org.springframework.data.mongodb.core.mapping.Document;
 
 /**
  * This class represents a route. A route can contain an id, a route number and an agency who runs the route on a regular basis.
+ * The route number of a route is unique.
  * @author Dave Lee
  */
+@Document
 @Builder
 @Getter
 @Setter
@@ -20,6 +24,7 @@ public class RouteModel {
     /**
      * The number of the route which can contain either alphabetical and alphanumeric characters.
      */
+    @Indexed(unique = true)
     private String routeNumber;
 
     /**
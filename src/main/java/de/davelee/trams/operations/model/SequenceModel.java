@@ -0,0 +1,34 @@
+package de.davelee.trams.operations.model;
+
+import lombok.Builder;
+import lombok.Getter;
+import lombok.Setter;
+import lombok.ToString;
+import org.springframework.data.annotation.TypeAlias;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+/**
+ * This class represents a sequence which allocates unique ids across all imports and instances. Ids are reserved by
+ * incrementing the next value of the sequence atomically within the database so that two imports which run at the
+ * same time never receive the same ids.
+ * @author Dave Lee
+ */
+@Document
+@TypeAlias("sequence")
+@Builder
+@Getter
+@Setter
+@ToString
+public class SequenceModel {
+
+    /**
+     * The name of the sequence.
+     */
+    private String id;
+
+    /**
+     * The next id which has not been reserved yet.
+     */
+    private int nextValue;
+
+}
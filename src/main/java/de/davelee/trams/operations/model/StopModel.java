@@ -4,11 +4,14 @@ import lombok.Builder;
 import lombok.Getter;
 import lombok.Setter;
 import lombok.ToString;
+import org.springframework.data.mongodb.core.index.Indexed;
+import org.springframework.data.mongodb.core.mapping.Document;
 
 /**
- * This class represents a stop. A stop can contain an id, a name, a latitude and a longitude.
+ * This class represents a stop. A stop can contain an id, a name, a latitude and a longitude. The name of a stop is unique.
  * @author Dave Lee
  */
+@Document
 @Builder
 @Getter
 @Setter
@@ -23,6 +26,7 @@ public class StopModel {
     /**
      * The name of the stop.
      */
+    @Indexed(unique = true)
     private String name;
 
     /**
@@ -1,9 +1,18 @@
 package de.davelee.trams.operations.model;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Getter;
+import lombok.NoArgsConstructor;
 import lombok.Setter;
 import lombok.ToString;
+import org.springframework.data.annotation.Transient;
+import org.springframework.data.annotation.TypeAlias;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.index.CompoundIndexes;
+import org.springframework.data.mongodb.core.mapping.Document;
+import org.springframework.data.mongodb.core.mapping.Field;
 
 import java.time.DayOfWeek;
 import java.time.LocalDate;
@@ -13,10 +22,24 @@ import java.util.List;
 /**
  * This class represents a departure and/or arrival at a particular stop. A stop time can contain an id, a name, an arrival and/or departure time, a destination,
  * the number of the route, the date from which this stop occurs (inclusive), the date until which this stop occurs (inclusive), the days on which this stop
- * takes place and the journey number.
+ * takes place, the dates on which this stop additionally takes place or does not take place and the journey number. Stop times are stored in a compact form:
+ * the names of the stop, route and destination are stored as short ids, the operating days as a mask and the times as the minute of the day
+ * (0–1439) in their own fields so that no other model is affected. The names, times and operating days are restored when a stop time is read so that stop times are returned in the same form as before. A short type alias is stored instead of the class name.
+ * Stop times are indexed by stop, time and operating day so that departures and arrivals can be filtered, sorted and limited in the database.
+ * Each version of the timetable is stored in its own collection and the collection of the active version is resolved for every query.
  * @author Dave Lee
  */
+@Document(collection = "#{@stopTimeCollections.getActiveCollectionName()}")
+@TypeAlias("stopTime")
+@CompoundIndexes({
+        @CompoundIndex(name = "stopId_departureTime_operatingDayMask", def = "{'stopId': 1, 'departureTime': 1, 'operatingDayMask': 1, 'validFromDate': 1, 'validToDate': 1}"),
+        @CompoundIndex(name = "stopId_arrivalTime_operatingDayMask", def = "{'stopId': 1, 'arrivalTime': 1, 'operatingDayMask': 1, 'validFromDate': 1, 'validToDate': 1}"),
+        @CompoundIndex(name = "stopId_additionalDates_departureTime", def = "{'stopId': 1, 'additionalDates': 1, 'departureTime': 1}"),
+        @CompoundIndex(name = "stopId_additionalDates_arrivalTime", def = "{'stopId': 1, 'additionalDates': 1, 'arrivalTime': 1}")
+})
 @Builder
+@NoArgsConstructor
+@AllArgsConstructor
 @Getter
 @Setter
 @ToString
@@ -28,30 +51,72 @@ public class StopTimeModel {
     private int id;
 
     /**
-     * The name of the stop where the journey will arrive or depart.
+     * The name of the stop where the journey will arrive or depart which is stored as the stop id.
      */
+    @Transient
     private String stopName;
 
     /**
-     * The arrival time when the journey will arrive which may be null if journey starts here.
+     * The short id of the stop name which is stored instead of the stop name.
      */
+    @JsonIgnore
+    @ToString.Exclude
+    private int stopId;
+
+    /**
+     * The arrival time when the journey will arrive which may be null if journey starts here. The arrival time is stored as the arrival minutes.
+     */
+    @Transient
     private LocalTime arrivalTime;
 
     /**
-     * The departure time when the journey will depart which may be null if journey ends here.
+     * The minute of the day (0–1439) of the arrival time which is stored instead of the arrival time.
+     */
+    @JsonIgnore
+    @ToString.Exclude
+    @Field("arrivalTime")
+    private Integer arrivalMinutes;
+
+    /**
+     * The departure time when the journey will depart which may be null if journey ends here. The departure time is stored as the departure minutes.
      */
+    @Transient
     private LocalTime departureTime;
 
     /**
-     * The destination of this journey which may be equal to the stop name if the journey ends here.
+     * The minute of the day (0–1439) of the departure time which is stored instead of the departure time.
      */
+    @JsonIgnore
+    @ToString.Exclude
+    @Field("departureTime")
+    private Integer departureMinutes;
+
+    /**
+     * The destination of this journey which may be equal to the stop name if the journey ends here. The destination is stored as the destination id.
+     */
+    @Transient
     private String destination;
 
     /**
-     * The number of the route which this journey is a part of.
+     * The short id of the destination which is stored instead of the destination.
+     */
+    @JsonIgnore
+    @ToString.Exclude
+    private int destinationId;
+
+    /**
+     * The number of the route which this journey is a part of which is stored as the route id.
      */
+    @Transient
     private String routeNumber;
 
+    /**
+     * The short id of the route number which is stored instead of the route number.
+     */
+    @JsonIgnore
+    @ToString.Exclude
+    private int routeId;
+
     /**
      * The date from which this stop occurs (inclusive).
      */
@@ -63,10 +128,28 @@ public class StopTimeModel {
     private LocalDate validToDate;
 
     /**
-     * The days on which this stop takes place.
+     * The days on which this stop takes place which are stored as the operating day mask.
      */
+    @Transient
     private List<DayOfWeek> operatingDays;
 
+    /**
+     * The mask of the days on which this stop takes place which is stored instead of the operating days. Monday is the lowest bit.
+     */
+    @JsonIgnore
+    @ToString.Exclude
+    private int operatingDayMask;
+
+    /**
+     * The dates on which this stop takes place in addition to the operating days which may be null if there are no additional dates.
+     */
+    private List<LocalDate> additionalDates;
+
+    /**
+     * The dates on which this stop does not take place despite the operating days which may be null if there are no excluded dates.
+     */
+    private List<LocalDate> excludedDates;
+
     /**
      * The number of the journey which can contain both alphanumeric and alphabetical characters.
      */
@@ -85,4 +168,21 @@ public class StopTimeModel {
         }
     }
 
+    /**
+     * Return true iff this stop takes place on the supplied date. A stop takes place on a date which is not excluded and
+     * which is either an additional date or lies within the validity of the stop on one of its operating days.
+     * @param date a <code>LocalDate</code> object containing the date to check.
+     * @return a <code>boolean</code> which is true iff the stop takes place on the supplied date.
+     */
+    public boolean runsOn ( final LocalDate date ) {
+        if ( excludedDates != null && excludedDates.contains(date) ) {
+            return false;
+        }
+        if ( additionalDates != null && additionalDates.contains(date) ) {
+            return true;
+        }
+        return operatingDays != null && operatingDays.contains(date.getDayOfWeek()) && validFromDate != null && validToDate != null
+                && !date.isBefore(validFromDate) && !date.isAfter(validToDate);
+    }
+
 }
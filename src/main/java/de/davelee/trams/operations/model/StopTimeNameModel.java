@@ -0,0 +1,34 @@
+package de.davelee.trams.operations.model;
+
+import lombok.Builder;
+import lombok.Getter;
+import lombok.Setter;
+import lombok.ToString;
+import org.springframework.data.mongodb.core.index.Indexed;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+/**
+ * This class represents a name which is used by stop times. A name can contain a short numeric id and the name of a stop,
+ * route or destination. Stop times store the id instead of the name so that their documents and indexes remain small.
+ * The name is unique.
+ * @author Dave Lee
+ */
+@Document
+@Builder
+@Getter
+@Setter
+@ToString
+public class StopTimeNameModel {
+
+    /**
+     * The short id of the name which is always greater than 0.
+     */
+    private int id;
+
+    /**
+     * The name of the stop, route or destination.
+     */
+    @Indexed(unique = true)
+    private String name;
+
+}
@@ -0,0 +1,20 @@
+package de.davelee.trams.operations.model;
+
+/**
+ * This class represents the ways in which imported timetables can be stored in the database.
+ * @author Dave Lee
+ */
+public enum TimetableStorageMode {
+
+    /**
+     * Every departure and arrival of every journey at every stop is stored as a separate stop time.
+     */
+    STOP_TIMES,
+
+    /**
+     * Every journey is stored once as a trip containing the times at its stops. Journeys which call at the same stops
+     * in the same order share a single trip pattern.
+     */
+    TRIP_PATTERNS
+
+}
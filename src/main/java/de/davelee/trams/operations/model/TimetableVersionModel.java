@@ -0,0 +1,71 @@
+package de.davelee.trams.operations.model;
+
+import lombok.Builder;
+import lombok.Getter;
+import lombok.Setter;
+import lombok.ToString;
+import org.springframework.data.annotation.TypeAlias;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.LocalDateTime;
+import java.util.Map;
+
+/**
+ * This class represents the pointer to the active version of the timetable. Each version of the timetable is stored in
+ * its own stop time collection. The pointer contains the number of the latest version, the name of the collection which
+ * is currently active and the name of the collection of the previous version which is kept so that the timetable can
+ * be rolled back quickly. The pointer also records the staging collection of the import which is currently running so
+ * that only one import can create a new version at a time, and the collections of older versions which are dropped once
+ * no instance reads them anymore.
+ * @author Dave Lee
+ */
+@Document
+@TypeAlias("timetableVersion")
+@Builder
+@Getter
+@Setter
+@ToString
+public class TimetableVersionModel {
+
+    /**
+     * The id of the pointer as there is only one pointer.
+     */
+    private String id;
+
+    /**
+     * The number of the latest version which was created.
+     */
+    private int version;
+
+    /**
+     * The name of the stop time collection of the active version.
+     */
+    private String collectionName;
+
+    /**
+     * The name of the stop time collection of the previous version which may be null if there is no previous version.
+     */
+    private String previousCollectionName;
+
+    /**
+     * The date and time when the active version was activated.
+     */
+    private LocalDateTime activatedDateTime;
+
+    /**
+     * The name of the stop time collection which an import is currently writing to which is null if no import is running.
+     */
+    private String stagingCollectionName;
+
+    /**
+     * The date and time when the import which is currently running started writing to the staging collection.
+     */
+    private LocalDateTime stagingStartedDateTime;
+
+    /**
+     * The names of the stop time collections of older versions with the date and time when they were replaced which may
+     * be null if there are no older versions.
+     */
+    private Map<String, LocalDateTime> retiredCollections;
+
+}
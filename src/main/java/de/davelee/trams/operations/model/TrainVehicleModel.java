@@ -4,6 +4,8 @@ import lombok.Builder;
 import lombok.Getter;
 import lombok.Setter;
 import lombok.ToString;
+import org.springframework.data.annotation.TypeAlias;
+import org.springframework.data.mongodb.core.mapping.Document;
 
 import java.time.LocalDate;
 
@@ -11,6 +13,8 @@ import java.time.LocalDate;
  * This class represents a train. A train has all attributes of a vehicle and also a power mode.
  * @author Dave Lee
  */
+@Document(collection = "vehicleModel")
+@TypeAlias("train")
 @Getter
 @Setter
 @ToString
@@ -4,6 +4,8 @@ import lombok.Builder;
 import lombok.Getter;
 import lombok.Setter;
 import lombok.ToString;
+import org.springframework.data.annotation.TypeAlias;
+import org.springframework.data.mongodb.core.mapping.Document;
 
 import java.time.LocalDate;
 
@@ -11,6 +13,8 @@ import java.time.LocalDate;
  * This class represents a tram. A tram has all attributes of a vehicle and can optionally be bidirectional.
  * @author Dave Lee
  */
+@Document(collection = "vehicleModel")
+@TypeAlias("tram")
 @Getter
 @Setter
 @ToString
@@ -0,0 +1,55 @@
+package de.davelee.trams.operations.model;
+
+import lombok.Builder;
+import lombok.Getter;
+import lombok.Setter;
+import lombok.ToString;
+import org.springframework.data.annotation.TypeAlias;
+import org.springframework.data.mongodb.core.index.Indexed;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.util.List;
+
+/**
+ * This class represents the fingerprint of a trip which was imported from a GTFS feed. A trip fingerprint contains the
+ * id of the trip in the feed, the route number, a fingerprint of the stop times of the trip, a fingerprint of the
+ * calendar of the trip and the ids of the stop times which were written for the trip. The ids are stored as ranges
+ * which each consist of the first id and the number of consecutive ids so that a trip usually needs a single range.
+ * The fingerprints are compared with the fingerprints of an updated feed so that only changed trips are written again.
+ * @author Dave Lee
+ */
+@Document
+@TypeAlias("tripFingerprint")
+@Builder
+@Getter
+@Setter
+@ToString
+public class TripFingerprintModel {
+
+    /**
+     * The id of the trip in the GTFS feed.
+     */
+    private String id;
+
+    /**
+     * The number of the route which the trip is a part of.
+     */
+    @Indexed
+    private String routeNumber;
+
+    /**
+     * The fingerprint of the route, destination and stop times of the trip.
+     */
+    private String tripFingerprint;
+
+    /**
+     * The fingerprint of the validity, operating days and exceptions of the service of the trip.
+     */
+    private String calendarFingerprint;
+
+    /**
+     * The ranges of the ids of the stop times of the trip as pairs of the first id and the number of consecutive ids.
+     */
+    private List<Integer> stopTimeIdRanges;
+
+}
@@ -0,0 +1,103 @@
+package de.davelee.trams.operations.model;
+
+import lombok.Builder;
+import lombok.Getter;
+import lombok.Setter;
+import lombok.ToString;
+import org.springframework.data.annotation.TypeAlias;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.index.CompoundIndexes;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.LocalDate;
+import java.util.List;
+
+/**
+ * This class represents a journey which is stored once instead of as one stop time per stop. A trip can contain an id,
+ * the id of its trip pattern, the journey number, the short ids of the route and destination, the start time, the
+ * arrival and departure offsets at each stop of the trip pattern, the date from which this trip runs (inclusive), the
+ * date until which this trip runs (inclusive), the mask of days on which this trip runs and the dates on which this trip
+ * additionally runs or does not run. Trips are indexed by trip pattern and operating day so that the trips which call
+ * at a stop on a date can be found with an indexed query.
+ * @author Dave Lee
+ */
+@Document
+@TypeAlias("trip")
+@CompoundIndexes({
+        @CompoundIndex(name = "patternId_operatingDayMask", def = "{'patternId': 1, 'operatingDayMask': 1, 'validFromDate': 1, 'validToDate': 1}"),
+        @CompoundIndex(name = "patternId_additionalDates", def = "{'patternId': 1, 'additionalDates': 1}")
+})
+@Builder
+@Getter
+@Setter
+@ToString
+public class TripModel {
+
+    /**
+     * The id of the trip which is assigned by the database.
+     */
+    private String id;
+
+    /**
+     * The id of the trip pattern containing the stops of this trip.
+     */
+    private String patternId;
+
+    /**
+     * The number of the journey which can contain both alphanumeric and alphabetical characters.
+     */
+    private String journeyNumber;
+
+    /**
+     * The short id of the number of the route which this journey is a part of.
+     */
+    private int routeId;
+
+    /**
+     * The short id of the destination of this journey.
+     */
+    private int destinationId;
+
+    /**
+     * The time at which this trip starts as the minute of the day (0–1439).
+     */
+    private int startTime;
+
+    /**
+     * The arrival time at each stop of the trip pattern in minutes after the start time. An offset is null if the trip
+     * does not arrive at the stop because it starts there.
+     */
+    private List<Integer> arrivalOffsets;
+
+    /**
+     * The departure time at each stop of the trip pattern in minutes after the start time. An offset is null if the trip
+     * does not depart from the stop because it ends there.
+     */
+    private List<Integer> departureOffsets;
+
+    /**
+     * The date from which this trip runs (inclusive).
+     */
+    private LocalDate validFromDate;
+
+    /**
+     * The date until which this trip runs (inclusive).
+     */
+    private LocalDate validToDate;
+
+    /**
+     * The mask of the days on which this trip runs. Monday is the lowest bit.
+     */
+    private int operatingDayMask;
+
+    /**
+     * The dates on which this trip runs in addition to the operating days which may be null if there are no additional dates.
+     */
+    private List<LocalDate> additionalDates;
+
+    /**
+     * The dates on which this trip does not run despite the operating days which may be null if there are no excluded dates.
+     */
+    private List<LocalDate> excludedDates;
+
+}
@@ -0,0 +1,39 @@
+package de.davelee.trams.operations.model;
+
+import lombok.Builder;
+import lombok.Getter;
+import lombok.Setter;
+import lombok.ToString;
+import org.springframework.data.annotation.TypeAlias;
+import org.springframework.data.mongodb.core.index.Indexed;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.util.List;
+
+/**
+ * This class represents the sequence of stops which a journey calls at. A trip pattern can contain an id and the short
+ * ids of its stops in the order in which they are called at. The id is derived from the stops so that all journeys which
+ * call at the same stops in the same order share a single trip pattern. Trip patterns are indexed by stop so that the
+ * trip patterns calling at a stop can be found with an indexed query.
+ * @author Dave Lee
+ */
+@Document
+@TypeAlias("tripPattern")
+@Builder
+@Getter
+@Setter
+@ToString
+public class TripPatternModel {
+
+    /**
+     * The id of the trip pattern which is derived from its stops.
+     */
+    private String id;
+
+    /**
+     * The short ids of the stop names in the order in which the stops are called at.
+     */
+    @Indexed
+    private List<Integer> stopIds;
+
+}
@@ -1,23 +1,36 @@
 package de.davelee.trams.operations.model;
 
 import lombok.*;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.index.Indexed;
+import org.springframework.data.mongodb.core.mapping.Document;
+
 import java.time.LocalDate;
 
 /**
  * This class represents a vehicle. A vehicle can contain a fleet number and company,
  * a delivery date, an inspection date, a seating capacity, a standing capacity, a model name,
- * a livery and a status.
+ * a livery and a status. All types of vehicles are stored together in a single collection and the type of each
+ * vehicle is stored as a type alias so that all vehicles can be retrieved with a single query.
  * @author Dave Lee
  */
+@Document(collection = "vehicleModel")
+@CompoundIndex(name = "company_fleetNumber_id", def = "{'company': 1, 'fleetNumber': 1, '_id': 1}")
 @Getter
 @Setter
-@AllArgsConstructor
 @ToString
 public class VehicleModel {
 
+    /**
+     * The id of this vehicle which is generated by the database.
+     */
+    @ToString.Exclude
+    private String id;
+
     /**
      * The fleet number of this vehicle.
      */
+    @Indexed
     private String fleetNumber;
 
     /**
@@ -65,4 +78,39 @@ public class VehicleModel {
      */
     private String allocatedTour;
 
+    /**
+     * The date on which the next inspection of this vehicle is due which is calculated whenever the vehicle is stored.
+     */
+    @Indexed
+    @ToString.Exclude
+    private LocalDate nextInspectionDueDate;
+
+    /**
+     * Create a new vehicle with the supplied attributes. The id is generated when the vehicle is stored in the database.
+     * @param fleetNumber a <code>String</code> containing the fleet number of the vehicle
+     * @param company a <code>String</code> containing the name of the company that the vehicle belongs to.
+     * @param deliveryDate a <code>LocalDate</code> object containing the delivery date of vehicle
+     * @param inspectionDate a <code>LocalDate</code> object containing the inspection date of vehicle
+     * @param seatingCapacity a <code>int</code> containing the seating capacity of the vehicle
+     * @param standingCapacity a <code>int</code> containing the standing capacity of the vehicle
+     * @param modelName a <code>String</code> containing the name of the model of this vehicle
+     * @param livery a <code>String</code> containing the livery of this vehicle
+     * @param vehicleStatus a <code>VehicleStatus</code> object containing the current status of this vehicle
+     * @param allocatedTour a <code>String</code> containing the allocated tour of this vehicle
+     */
+    public VehicleModel ( final String fleetNumber, final String company, final LocalDate deliveryDate, final LocalDate inspectionDate,
+                          final int seatingCapacity, final int standingCapacity, final String modelName, final String livery,
+                          final VehicleStatus vehicleStatus, final String allocatedTour ) {
+        this.fleetNumber = fleetNumber;
+        this.company = company;
+        this.deliveryDate = deliveryDate;
+        this.inspectionDate = inspectionDate;
+        this.seatingCapacity = seatingCapacity;
+        this.standingCapacity = standingCapacity;
+        this.modelName = modelName;
+        this.livery = livery;
+        this.vehicleStatus = vehicleStatus;
+        this.allocatedTour = allocatedTour;
+    }
+
 }
@@ -0,0 +1,12 @@
+package de.davelee.trams.operations.repository;
+
+import de.davelee.trams.operations.model.RouteModel;
+import org.springframework.data.mongodb.repository.ReactiveMongoRepository;
+
+/**
+ * This class enables as part of Spring Data non-blocking access to the route objects stored in the Mongo DB.
+ * @author Dave Lee
+ */
+public interface ReactiveRouteRepository extends ReactiveMongoRepository<RouteModel, String> {
+
+}
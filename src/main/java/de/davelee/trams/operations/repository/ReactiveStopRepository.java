@@ -0,0 +1,12 @@
+package de.davelee.trams.operations.repository;
+
+import de.davelee.trams.operations.model.StopModel;
+import org.springframework.data.mongodb.repository.ReactiveMongoRepository;
+
+/**
+ * This class enables as part of Spring Data non-blocking access to the stop objects stored in the Mongo DB.
+ * @author Dave Lee
+ */
+public interface ReactiveStopRepository extends ReactiveMongoRepository<StopModel, String> {
+
+}
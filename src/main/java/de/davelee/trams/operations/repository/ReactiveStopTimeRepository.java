@@ -0,0 +1,52 @@
+package de.davelee.trams.operations.repository;
+
+import de.davelee.trams.operations.model.StopTimeModel;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.mongodb.repository.Query;
+import org.springframework.data.mongodb.repository.ReactiveMongoRepository;
+import reactor.core.publisher.Flux;
+
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.LocalTime;
+
+/**
+ * This class enables as part of Spring Data non-blocking access to the stop time objects stored in the Mongo DB. The
+ * queries are the same as in the <code>StopTimeRepository</code> so that both return the same stop times.
+ * @author Dave Lee
+ */
+public interface ReactiveStopTimeRepository extends ReactiveMongoRepository<StopTimeModel, String> {
+
+    /**
+     * Find all departures for a particular stop name which run on the supplied day and date and depart within the supplied time range (inclusive).
+     * A departure runs on the date if the date is not excluded and is either an additional date or lies within the validity on one of the operating days.
+     * @param stopName a <code>String</code> containing the name of the stop to find departures for.
+     * @param operatingDay a <code>DayOfWeek</code> containing the day on which the departures must run.
+     * @param date a <code>LocalDate</code> containing the date which must lie within the validity of the departures.
+     * @param fromTime a <code>LocalTime</code> containing the earliest departure time to find.
+     * @param toTime a <code>LocalTime</code> containing the latest departure time to find.
+     * @param pageable a <code>Pageable</code> object containing the sorting and the maximum number of departures to find.
+     * @return a <code>Flux</code> of <code>StopTimeModel</code> objects containing the departures matching the criteria.
+     */
+    @Query("{ 'stopId': ?#{@stopTimeNameService.getId([0])}, 'excludedDates': { $ne: ?2 }, 'departureTime': { $gte: ?#{T(de.davelee.trams.operations.repository.StopTimeConverters).toMinutes([3])}, $lte: ?#{T(de.davelee.trams.operations.repository.StopTimeConverters).toMinutes([4])} }, " +
+            "$or: [ { 'operatingDayMask': { $bitsAllSet: ?#{T(de.davelee.trams.operations.repository.StopTimeConverters).toMask([1])} }, 'validFromDate': { $lte: ?2 }, 'validToDate': { $gte: ?2 } }, { 'additionalDates': ?2 } ] }")
+    Flux<StopTimeModel> findDeparturesByStopNameAndDateAndTimeRange(final String stopName, final DayOfWeek operatingDay, final LocalDate date,
+                                                                    final LocalTime fromTime, final LocalTime toTime, final Pageable pageable );
+
+    /**
+     * Find all arrivals for a particular stop name which run on the supplied day and date and arrive within the supplied time range (inclusive).
+     * An arrival runs on the date if the date is not excluded and is either an additional date or lies within the validity on one of the operating days.
+     * @param stopName a <code>String</code> containing the name of the stop to find arrivals for.
+     * @param operatingDay a <code>DayOfWeek</code> containing the day on which the arrivals must run.
+     * @param date a <code>LocalDate</code> containing the date which must lie within the validity of the arrivals.
+     * @param fromTime a <code>LocalTime</code> containing the earliest arrival time to find.
+     * @param toTime a <code>LocalTime</code> containing the latest arrival time to find.
+     * @param pageable a <code>Pageable</code> object containing the sorting and the maximum number of arrivals to find.
+     * @return a <code>Flux</code> of <code>StopTimeModel</code> objects containing the arrivals matching the criteria.
+     */
+    @Query("{ 'stopId': ?#{@stopTimeNameService.getId([0])}, 'excludedDates': { $ne: ?2 }, 'arrivalTime': { $gte: ?#{T(de.davelee.trams.operations.repository.StopTimeConverters).toMinutes([3])}, $lte: ?#{T(de.davelee.trams.operations.repository.StopTimeConverters).toMinutes([4])} }, " +
+            "$or: [ { 'operatingDayMask': { $bitsAllSet: ?#{T(de.davelee.trams.operations.repository.StopTimeConverters).toMask([1])} }, 'validFromDate': { $lte: ?2 }, 'validToDate': { $gte: ?2 } }, { 'additionalDates': ?2 } ] }")
+    Flux<StopTimeModel> findArrivalsByStopNameAndDateAndTimeRange(final String stopName, final DayOfWeek operatingDay, final LocalDate date,
+                                                                  final LocalTime fromTime, final LocalTime toTime, final Pageable pageable );
+
+}
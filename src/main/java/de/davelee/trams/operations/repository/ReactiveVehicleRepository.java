@@ -0,0 +1,19 @@
+package de.davelee.trams.operations.repository;
+
+import de.davelee.trams.operations.model.VehicleModel;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.repository.ReactiveMongoRepository;
+import reactor.core.publisher.Flux;
+
+/**
+ * This class enables as part of Spring Data non-blocking access to the vehicle objects of all types stored in the Mongo DB.
+ * The type of each vehicle is determined by the type alias stored with it in the same way as in the <code>VehicleRepository</code>.
+ * @author Dave Lee
+ */
+public interface ReactiveVehicleRepository extends ReactiveMongoRepository<VehicleModel, String> {
+
+    Flux<VehicleModel> findByCompanyStartsWithAndFleetNumberStartsWith ( final String company, final String fleetNumber, final Sort sort );
+
+    Flux<VehicleModel> findByFleetNumberStartsWith ( final String fleetNumber, final Sort sort );
+
+}
@@ -2,10 +2,21 @@ package de.davelee.trams.operations.repository;
 
 import de.davelee.trams.operations.model.RouteModel;
 import org.springframework.data.mongodb.repository.MongoRepository;
+import org.springframework.data.mongodb.repository.Query;
+
+import java.util.List;
 
 /**
  * This class enables as part of Spring Data access to the route objects stored in the Mongo DB.
  * @author Dave Lee
  */
 public interface RouteRepository extends MongoRepository<RouteModel, String> {
+
+    /**
+     * Find all routes but only return the route number of each route.
+     * @return a <code>List</code> of <code>RouteModel</code> objects which only contain the route number of the route.
+     */
+    @Query(value = "{}", fields = "{ 'routeNumber': 1 }")
+    List<RouteModel> findAllRouteNumbers ( );
+
 }
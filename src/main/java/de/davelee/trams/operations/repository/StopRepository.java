@@ -2,10 +2,21 @@ package de.davelee.trams.operations.repository;
 
 import de.davelee.trams.operations.model.StopModel;
 import org.springframework.data.mongodb.repository.MongoRepository;
+import org.springframework.data.mongodb.repository.Query;
+
+import java.util.List;
 
 /**
  * This class enables as part of Spring Data access to the stop objects stored in the Mongo DB.
  * @author Dave Lee
  */
 public interface StopRepository extends MongoRepository<StopModel, String> {
+
+    /**
+     * Find all stops but only return the name of each stop.
+     * @return a <code>List</code> of <code>StopModel</code> objects which only contain the name of the stop.
+     */
+    @Query(value = "{}", fields = "{ 'name': 1 }")
+    List<StopModel> findAllStopNames ( );
+
 }
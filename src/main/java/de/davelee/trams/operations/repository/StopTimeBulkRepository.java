@@ -0,0 +1,46 @@
+package de.davelee.trams.operations.repository;
+
+import de.davelee.trams.operations.model.StopTimeModel;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.data.util.Pair;
+
+import java.util.List;
+
+/**
+ * This interface provides bulk write access to the stop time objects stored in the Mongo DB and the allocation of their
+ * ids which is not offered by Spring Data repositories directly.
+ * @author Dave Lee
+ */
+public interface StopTimeBulkRepository {
+
+    /**
+     * Insert all supplied stop times into the database in a single unordered bulk write.
+     * @param stopTimeModels a <code>List</code> of <code>StopTimeModel</code> objects to insert.
+     * @return a <code>int</code> containing the number of stop times which were inserted.
+     */
+    int bulkInsert ( final List<StopTimeModel> stopTimeModels );
+
+    /**
+     * Delete all stop times which match one of the supplied queries in a single unordered bulk write.
+     * @param queries a <code>List</code> of <code>Query</code> objects each selecting the stop times to delete.
+     * @return a <code>int</code> containing the number of stop times which were deleted.
+     */
+    int bulkDelete ( final List<Query> queries );
+
+    /**
+     * Apply each of the supplied updates to all stop times which match its query in a single unordered bulk write.
+     * @param updates a <code>List</code> of <code>Pair</code> objects containing the query selecting the stop times and the update to apply.
+     * @return a <code>int</code> containing the number of stop times which were modified.
+     */
+    int bulkUpdate ( final List<Pair<Query, Update>> updates );
+
+    /**
+     * Reserve the supplied number of consecutive ids for new stop times. The ids are reserved atomically within the
+     * database so that no other import can receive the same ids and they always follow the ids of the stored stop times.
+     * @param count a <code>int</code> containing the number of ids to reserve.
+     * @return a <code>int</code> containing the first of the reserved ids.
+     */
+    int reserveIds ( final int count );
+
+}
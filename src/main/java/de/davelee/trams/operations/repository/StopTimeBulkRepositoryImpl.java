@@ -0,0 +1,124 @@
+package de.davelee.trams.operations.repository;
+
+import de.davelee.trams.operations.model.SequenceModel;
+import de.davelee.trams.operations.model.StopTimeModel;
+import de.davelee.trams.operations.service.StopTimeNameService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.data.util.Pair;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * This class implements bulk write access to the stop time objects stored in the Mongo DB using the mongo template. The
+ * stop times are written to the staging collection while an import is running and to the active collection otherwise.
+ * The ids of new stop times are reserved from a sequence which is stored in the database.
+ * @author Dave Lee
+ */
+public class StopTimeBulkRepositoryImpl implements StopTimeBulkRepository {
+
+    /**
+     * The name of the sequence which allocates the ids of the stop times.
+     */
+    private static final String SEQUENCE_ID = "stopTimes";
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    @Autowired
+    private StopTimeCollections stopTimeCollections;
+
+    @Autowired
+    private StopTimeNameService stopTimeNameService;
+
+    //True iff the sequence has been moved past the ids of the stored stop times since the application started.
+    private volatile boolean sequenceInitialised;
+
+    /**
+     * Insert all supplied stop times into the database in a single unordered bulk write. As the bulk write is unordered,
+     * the database can insert the stop times in parallel and does not stop at the first error. The ids of all names used
+     * by the stop times are created before the bulk write so that the stop times can be converted from memory.
+     * @param stopTimeModels a <code>List</code> of <code>StopTimeModel</code> objects to insert.
+     * @return a <code>int</code> containing the number of stop times which were inserted.
+     */
+    @Override
+    public int bulkInsert ( final List<StopTimeModel> stopTimeModels ) {
+        if ( stopTimeModels.isEmpty() ) {
+            return 0;
+        }
+        List<String> names = new ArrayList<>(stopTimeModels.size() * 3);
+        for ( StopTimeModel stopTimeModel : stopTimeModels ) {
+            names.add(stopTimeModel.getStopName());
+            names.add(stopTimeModel.getRouteNumber());
+            names.add(stopTimeModel.getDestination());
+        }
+        stopTimeNameService.createIds(names);
+        return mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, StopTimeModel.class, stopTimeCollections.getWriteCollectionName())
+                .insert(stopTimeModels)
+                .execute()
+                .getInsertedCount();
+    }
+
+    /**
+     * Delete all stop times which match one of the supplied queries in a single unordered bulk write.
+     * @param queries a <code>List</code> of <code>Query</code> objects each selecting the stop times to delete.
+     * @return a <code>int</code> containing the number of stop times which were deleted.
+     */
+    @Override
+    public int bulkDelete ( final List<Query> queries ) {
+        if ( queries.isEmpty() ) {
+            return 0;
+        }
+        return mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, StopTimeModel.class, stopTimeCollections.getWriteCollectionName())
+                .remove(queries)
+                .execute()
+                .getDeletedCount();
+    }
+
+    /**
+     * Apply each of the supplied updates to all stop times which match its query in a single unordered bulk write.
+     * @param updates a <code>List</code> of <code>Pair</code> objects containing the query selecting the stop times and the update to apply.
+     * @return a <code>int</code> containing the number of stop times which were modified.
+     */
+    @Override
+    public int bulkUpdate ( final List<Pair<Query, Update>> updates ) {
+        if ( updates.isEmpty() ) {
+            return 0;
+        }
+        return mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, StopTimeModel.class, stopTimeCollections.getWriteCollectionName())
+                .updateMulti(updates)
+                .execute()
+                .getModifiedCount();
+    }
+
+    /**
+     * Reserve the supplied number of consecutive ids for new stop times by incrementing the sequence atomically within
+     * the database. Before the first ids are reserved, the sequence is moved past the highest id of the stored stop
+     * times so that stop times which were imported before the sequence existed keep their ids. The sequence is never
+     * moved backwards so this is safe even if other instances reserve ids at the same time.
+     * @param count a <code>int</code> containing the number of ids to reserve.
+     * @return a <code>int</code> containing the first of the reserved ids.
+     */
+    @Override
+    public int reserveIds ( final int count ) {
+        Query sequenceQuery = Query.query(Criteria.where("id").is(SEQUENCE_ID));
+        if ( !sequenceInitialised ) {
+            StopTimeModel lastStopTimeModel = mongoTemplate.findOne(new Query().with(Sort.by(Sort.Direction.DESC, "id")).limit(1),
+                    StopTimeModel.class, stopTimeCollections.getActiveCollectionName());
+            mongoTemplate.upsert(sequenceQuery, new Update().max("nextValue", lastStopTimeModel != null ? lastStopTimeModel.getId() + 1 : 0),
+                    SequenceModel.class);
+            sequenceInitialised = true;
+        }
+        SequenceModel sequenceModel = mongoTemplate.findAndModify(sequenceQuery, new Update().inc("nextValue", count),
+                FindAndModifyOptions.options().returnNew(true).upsert(true), SequenceModel.class);
+        return sequenceModel.getNextValue() - count;
+    }
+
+}
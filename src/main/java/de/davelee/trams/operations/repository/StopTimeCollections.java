@@ -0,0 +1,75 @@
+package de.davelee.trams.operations.repository;
+
+import org.springframework.stereotype.Component;
+
+/**
+ * This class contains the names of the collections which store the stop times of the versions of the timetable. The
+ * stop time model resolves its collection from the active collection name of this bean for every query so that all
+ * reads switch to a new version at once. The active collection name is kept up to date with the pointer to the active
+ * version which is stored in the database. Stop times are written to the staging collection while an import is running
+ * and to the active collection otherwise.
+ * @author Dave Lee
+ */
+@Component
+public class StopTimeCollections {
+
+    /**
+     * The name of the collection which stored the stop times before versions were introduced.
+     */
+    public static final String DEFAULT_COLLECTION_NAME = "stopTimeModel";
+
+    private volatile String activeCollectionName = DEFAULT_COLLECTION_NAME;
+
+    private volatile String stagingCollectionName;
+
+    /**
+     * Return the name of the collection which stores the supplied version of the timetable.
+     * @param version a <code>int</code> containing the number of the version.
+     * @return a <code>String</code> containing the name of the collection.
+     */
+    public static String getVersionCollectionName ( final int version ) {
+        return version > 0 ? DEFAULT_COLLECTION_NAME + "_v" + version : DEFAULT_COLLECTION_NAME;
+    }
+
+    /**
+     * Return the name of the collection of the active version which is read by all queries.
+     * @return a <code>String</code> containing the name of the active collection.
+     */
+    public String getActiveCollectionName ( ) {
+        return activeCollectionName;
+    }
+
+    /**
+     * Set the name of the collection of the active version which is read by all queries.
+     * @param collectionName a <code>String</code> containing the name of the active collection.
+     */
+    public void setActiveCollectionName ( final String collectionName ) {
+        activeCollectionName = collectionName;
+    }
+
+    /**
+     * Return the name of the collection which an import is currently writing to.
+     * @return a <code>String</code> containing the name of the staging collection which is null if no import is running.
+     */
+    public String getStagingCollectionName ( ) {
+        return stagingCollectionName;
+    }
+
+    /**
+     * Set the name of the collection which an import is currently writing to.
+     * @param collectionName a <code>String</code> containing the name of the staging collection which may be null once the import has finished.
+     */
+    public void setStagingCollectionName ( final String collectionName ) {
+        stagingCollectionName = collectionName;
+    }
+
+    /**
+     * Return the name of the collection which stop times are written to.
+     * @return a <code>String</code> containing the name of the staging collection if an import is running or the active collection otherwise.
+     */
+    public String getWriteCollectionName ( ) {
+        String collectionName = stagingCollectionName;
+        return collectionName != null ? collectionName : activeCollectionName;
+    }
+
+}
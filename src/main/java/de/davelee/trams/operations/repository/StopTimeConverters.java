@@ -0,0 +1,105 @@
+package de.davelee.trams.operations.repository;
+
+import java.time.DayOfWeek;
+import java.time.LocalTime;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * This class contains the methods which convert the times and days of stop times to the compact form which is stored in
+ * the Mongo DB and back again. Times are stored as the minute of the day (0–1439) and days are
+ * stored as a mask of operating days. The conversion is only applied to the fields of stop times and trips which store
+ * the compact form so that times and days of other models are stored unchanged. Queries convert their times and days
+ * with these methods.
+ * @author Dave Lee
+ */
+public final class StopTimeConverters {
+
+    /**
+     * The number of minutes in an hour.
+     */
+    private static final int MINUTES_PER_HOUR = 60;
+
+    /**
+     * Private constructor as this class only contains static methods.
+     */
+    private StopTimeConverters ( ) {
+    }
+
+    /**
+     * Return the bit which represents the supplied day in the mask of operating days. Monday is the lowest bit.
+     * @param dayOfWeek a <code>DayOfWeek</code> containing the day to return the bit for.
+     * @return a <code>int</code> containing the bit of the day.
+     */
+    public static int toMask ( final DayOfWeek dayOfWeek ) {
+        return 1 << (dayOfWeek.getValue() - 1);
+    }
+
+    /**
+     * Return the mask of operating days which contains the supplied days.
+     * @param daysOfWeek a <code>Collection</code> of <code>DayOfWeek</code> containing the days which may be null if there are no days.
+     * @return a <code>int</code> containing the mask of the days.
+     */
+    public static int toMask ( final Collection<DayOfWeek> daysOfWeek ) {
+        int mask = 0;
+        if ( daysOfWeek != null ) {
+            for ( DayOfWeek dayOfWeek : daysOfWeek ) {
+                mask |= toMask(dayOfWeek);
+            }
+        }
+        return mask;
+    }
+
+    /**
+     * Return the days which are contained in the supplied mask of operating days in the order of the week.
+     * @param mask a <code>int</code> containing the mask of the days.
+     * @return a <code>List</code> of <code>DayOfWeek</code> containing the days of the mask.
+     */
+    public static List<DayOfWeek> toDaysOfWeek ( final int mask ) {
+        DayOfWeek[] daysOfWeek = new DayOfWeek[Integer.bitCount(mask & 0x7F)];
+        int index = 0;
+        for ( DayOfWeek dayOfWeek : DayOfWeek.values() ) {
+            if ( (mask & toMask(dayOfWeek)) != 0 ) {
+                daysOfWeek[index++] = dayOfWeek;
+            }
+        }
+        return List.of(daysOfWeek);
+    }
+
+    /**
+     * Return the minute of the day (0–1439) for the supplied time. Seconds are not stored.
+     * @param localTime a <code>LocalTime</code> containing the time to convert.
+     * @return a <code>int</code> containing the minute of the day (0–1439).
+     */
+    public static int toMinutes ( final LocalTime localTime ) {
+        return localTime.getHour() * MINUTES_PER_HOUR + localTime.getMinute();
+    }
+
+    /**
+     * Return the time for the supplied minute of the day (0–1439).
+     * @param minutes a <code>int</code> containing the minute of the day (0–1439).
+     * @return a <code>LocalTime</code> containing the time.
+     */
+    public static LocalTime toLocalTime ( final int minutes ) {
+        return LocalTime.of(minutes / MINUTES_PER_HOUR, minutes % MINUTES_PER_HOUR);
+    }
+
+    /**
+     * Return the minute of the day (0–1439) for the supplied time which may be null.
+     * @param localTime a <code>LocalTime</code> containing the time to convert which may be null.
+     * @return a <code>Integer</code> containing the minute of the day (0–1439) or null if no time was supplied.
+     */
+    public static Integer toNullableMinutes ( final LocalTime localTime ) {
+        return localTime != null ? toMinutes(localTime) : null;
+    }
+
+    /**
+     * Return the time for the supplied minute of the day (0–1439) which may be null.
+     * @param minutes a <code>Integer</code> containing the minute of the day (0–1439) which may be null.
+     * @return a <code>LocalTime</code> containing the time or null if no minutes were supplied.
+     */
+    public static LocalTime toNullableLocalTime ( final Integer minutes ) {
+        return minutes != null ? toLocalTime(minutes) : null;
+    }
+
+}
@@ -0,0 +1,19 @@
+package de.davelee.trams.operations.repository;
+
+import de.davelee.trams.operations.model.StopTimeNameModel;
+import org.springframework.data.mongodb.repository.MongoRepository;
+
+/**
+ * This class enables as part of Spring Data access to the names used by stop times stored in the Mongo DB.
+ * @author Dave Lee
+ */
+public interface StopTimeNameRepository extends MongoRepository<StopTimeNameModel, Integer> {
+
+    /**
+     * Find the stored name which matches the supplied name.
+     * @param name a <code>String</code> containing the name to find.
+     * @return a <code>StopTimeNameModel</code> object containing the name and its id which may be null if the name has not been stored.
+     */
+    StopTimeNameModel findByName ( final String name );
+
+}
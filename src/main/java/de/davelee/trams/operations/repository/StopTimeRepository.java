@@ -1,22 +1,136 @@
 package de.davelee.trams.operations.repository;
 
 import de.davelee.trams.operations.model.StopTimeModel;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
 import org.springframework.data.mongodb.repository.MongoRepository;
+import org.springframework.data.mongodb.repository.Query;
 import org.springframework.data.repository.query.Param;
 
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.Collection;
 import java.util.List;
+import java.util.stream.Stream;
 
 /**
- * This class enables as part of Spring Data access to the stop time objects stored in the Mongo DB.
+ * This class enables as part of Spring Data access to the stop time objects stored in the Mongo DB. Stop names are
+ * converted to their short ids by the <code>StopTimeNameService</code>, times are converted to the stored minutes and
+ * operating days are matched against the stored mask of operating days.
  * @author Dave Lee
  */
-public interface StopTimeRepository extends MongoRepository<StopTimeModel, String> {
+public interface StopTimeRepository extends MongoRepository<StopTimeModel, String>, StopTimeBulkRepository {
 
     /**
      * Find all departures and/or arrivals for a particular stop name.
      * @param stopName a <code>String</code> containing the name of the stop to find departures and/or arrivals for.
      * @return a <code>List</code> of <code>StopTimeModel</code> objects containing the deparatures and/or arrivals matching the stop name.
      */
+    @Query("{ 'stopId': ?#{@stopTimeNameService.getId([0])} }")
     List<StopTimeModel> findByStopName(@Param("stopName") final String stopName );
 
+    /**
+     * Find all departures for a particular stop name which run on the supplied day and date and depart within the supplied time range (inclusive).
+     * A departure runs on the date if the date is not excluded and is either an additional date or lies within the validity on one of the operating days.
+     * @param stopName a <code>String</code> containing the name of the stop to find departures for.
+     * @param operatingDay a <code>DayOfWeek</code> containing the day on which the departures must run.
+     * @param date a <code>LocalDate</code> containing the date which must lie within the validity of the departures.
+     * @param fromTime a <code>LocalTime</code> containing the earliest departure time to find.
+     * @param toTime a <code>LocalTime</code> containing the latest departure time to find.
+     * @param pageable a <code>Pageable</code> object containing the sorting and the maximum number of departures to find.
+     * @return a <code>List</code> of <code>StopTimeModel</code> objects containing the departures matching the criteria.
+     */
+    @Query("{ 'stopId': ?#{@stopTimeNameService.getId([0])}, 'excludedDates': { $ne: ?2 }, 'departureTime': { $gte: ?#{T(de.davelee.trams.operations.repository.StopTimeConverters).toMinutes([3])}, $lte: ?#{T(de.davelee.trams.operations.repository.StopTimeConverters).toMinutes([4])} }, " +
+            "$or: [ { 'operatingDayMask': { $bitsAllSet: ?#{T(de.davelee.trams.operations.repository.StopTimeConverters).toMask([1])} }, 'validFromDate': { $lte: ?2 }, 'validToDate': { $gte: ?2 } }, { 'additionalDates': ?2 } ] }")
+    List<StopTimeModel> findDeparturesByStopNameAndDateAndTimeRange(final String stopName, final DayOfWeek operatingDay, final LocalDate date,
+                                                                    final LocalTime fromTime, final LocalTime toTime, final Pageable pageable );
+
+    /**
+     * Find all arrivals for a particular stop name which run on the supplied day and date and arrive within the supplied time range (inclusive).
+     * An arrival runs on the date if the date is not excluded and is either an additional date or lies within the validity on one of the operating days.
+     * @param stopName a <code>String</code> containing the name of the stop to find arrivals for.
+     * @param operatingDay a <code>DayOfWeek</code> containing the day on which the arrivals must run.
+     * @param date a <code>LocalDate</code> containing the date which must lie within the validity of the arrivals.
+     * @param fromTime a <code>LocalTime</code> containing the earliest arrival time to find.
+     * @param toTime a <code>LocalTime</code> containing the latest arrival time to find.
+     * @param pageable a <code>Pageable</code> object containing the sorting and the maximum number of arrivals to find.
+     * @return a <code>List</code> of <code>StopTimeModel</code> objects containing the arrivals matching the criteria.
+     */
+    @Query("{ 'stopId': ?#{@stopTimeNameService.getId([0])}, 'excludedDates': { $ne: ?2 }, 'arrivalTime': { $gte: ?#{T(de.davelee.trams.operations.repository.StopTimeConverters).toMinutes([3])}, $lte: ?#{T(de.davelee.trams.operations.repository.StopTimeConverters).toMinutes([4])} }, " +
+            "$or: [ { 'operatingDayMask': { $bitsAllSet: ?#{T(de.davelee.trams.operations.repository.StopTimeConverters).toMask([1])} }, 'validFromDate': { $lte: ?2 }, 'validToDate': { $gte: ?2 } }, { 'additionalDates': ?2 } ] }")
+    List<StopTimeModel> findArrivalsByStopNameAndDateAndTimeRange(final String stopName, final DayOfWeek operatingDay, final LocalDate date,
+                                                                  final LocalTime fromTime, final LocalTime toTime, final Pageable pageable );
+
+    /**
+     * Find all departures for the supplied stop names which run on the supplied day and date and depart within the supplied
+     * time range (inclusive) with a single query. A departure runs on the date if the date is not excluded and is either
+     * an additional date or lies within the validity on one of the operating days.
+     * @param stopNames a <code>Collection</code> of <code>String</code> containing the names of the stops to find departures for.
+     * @param operatingDay a <code>DayOfWeek</code> containing the day on which the departures must run.
+     * @param date a <code>LocalDate</code> containing the date which must lie within the validity of the departures.
+     * @param fromTime a <code>LocalTime</code> containing the earliest departure time to find.
+     * @param toTime a <code>LocalTime</code> containing the latest departure time to find.
+     * @param sort a <code>Sort</code> object containing the order in which the departures should be returned.
+     * @return a <code>List</code> of <code>StopTimeModel</code> objects containing the departures of all stops matching the criteria.
+     */
+    @Query("{ 'stopId': { $in: ?#{@stopTimeNameService.getIds([0])} }, 'excludedDates': { $ne: ?2 }, 'departureTime': { $gte: ?#{T(de.davelee.trams.operations.repository.StopTimeConverters).toMinutes([3])}, $lte: ?#{T(de.davelee.trams.operations.repository.StopTimeConverters).toMinutes([4])} }, " +
+            "$or: [ { 'operatingDayMask': { $bitsAllSet: ?#{T(de.davelee.trams.operations.repository.StopTimeConverters).toMask([1])} }, 'validFromDate': { $lte: ?2 }, 'validToDate': { $gte: ?2 } }, { 'additionalDates': ?2 } ] }")
+    List<StopTimeModel> findDeparturesByStopNamesAndDateAndTimeRange(final Collection<String> stopNames, final DayOfWeek operatingDay,
+                                                                     final LocalDate date, final LocalTime fromTime, final LocalTime toTime,
+                                                                     final Sort sort );
+
+    /**
+     * Find all arrivals for the supplied stop names which run on the supplied day and date and arrive within the supplied
+     * time range (inclusive) with a single query. An arrival runs on the date if the date is not excluded and is either
+     * an additional date or lies within the validity on one of the operating days.
+     * @param stopNames a <code>Collection</code> of <code>String</code> containing the names of the stops to find arrivals for.
+     * @param operatingDay a <code>DayOfWeek</code> containing the day on which the arrivals must run.
+     * @param date a <code>LocalDate</code> containing the date which must lie within the validity of the arrivals.
+     * @param fromTime a <code>LocalTime</code> containing the earliest arrival time to find.
+     * @param toTime a <code>LocalTime</code> containing the latest arrival time to find.
+     * @param sort a <code>Sort</code> object containing the order in which the arrivals should be returned.
+     * @return a <code>List</code> of <code>StopTimeModel</code> objects containing the arrivals of all stops matching the criteria.
+     */
+    @Query("{ 'stopId': { $in: ?#{@stopTimeNameService.getIds([0])} }, 'excludedDates': { $ne: ?2 }, 'arrivalTime': { $gte: ?#{T(de.davelee.trams.operations.repository.StopTimeConverters).toMinutes([3])}, $lte: ?#{T(de.davelee.trams.operations.repository.StopTimeConverters).toMinutes([4])} }, " +
+            "$or: [ { 'operatingDayMask': { $bitsAllSet: ?#{T(de.davelee.trams.operations.repository.StopTimeConverters).toMask([1])} }, 'validFromDate': { $lte: ?2 }, 'validToDate': { $gte: ?2 } }, { 'additionalDates': ?2 } ] }")
+    List<StopTimeModel> findArrivalsByStopNamesAndDateAndTimeRange(final Collection<String> stopNames, final DayOfWeek operatingDay,
+                                                                   final LocalDate date, final LocalTime fromTime, final LocalTime toTime,
+                                                                   final Sort sort );
+
+    /**
+     * Find all departures for a particular stop name which run on the supplied day and date. A departure runs on the date
+     * if the date is not excluded and is either an additional date or lies within the validity (inclusive) on one of the operating days.
+     * @param stopName a <code>String</code> containing the name of the stop to find departures for.
+     * @param operatingDay a <code>DayOfWeek</code> containing the day on which the departures must run.
+     * @param date a <code>LocalDate</code> containing the date which must lie within the validity of the departures.
+     * @param sort a <code>Sort</code> object containing the order in which the departures should be returned.
+     * @return a <code>List</code> of <code>StopTimeModel</code> objects containing the departures matching the criteria.
+     */
+    @Query("{ 'stopId': ?#{@stopTimeNameService.getId([0])}, 'excludedDates': { $ne: ?2 }, 'departureTime': { $ne: null }, " +
+            "$or: [ { 'operatingDayMask': { $bitsAllSet: ?#{T(de.davelee.trams.operations.repository.StopTimeConverters).toMask([1])} }, 'validFromDate': { $lte: ?2 }, 'validToDate': { $gte: ?2 } }, { 'additionalDates': ?2 } ] }")
+    List<StopTimeModel> findDeparturesByStopNameAndDate(final String stopName, final DayOfWeek operatingDay, final LocalDate date, final Sort sort );
+
+    /**
+     * Stream all departures for a particular stop name which run on the supplied day and date from a database cursor. A
+     * departure runs on the date if the date is not excluded and is either an additional date or lies within the validity
+     * (inclusive) on one of the operating days. The stream must be closed after use.
+     * @param stopName a <code>String</code> containing the name of the stop to find departures for.
+     * @param operatingDay a <code>DayOfWeek</code> containing the day on which the departures must run.
+     * @param date a <code>LocalDate</code> containing the date which must lie within the validity of the departures.
+     * @param sort a <code>Sort</code> object containing the order in which the departures should be returned.
+     * @return a <code>Stream</code> of <code>StopTimeModel</code> objects containing the departures matching the criteria.
+     */
+    @Query("{ 'stopId': ?#{@stopTimeNameService.getId([0])}, 'excludedDates': { $ne: ?2 }, 'departureTime': { $ne: null }, " +
+            "$or: [ { 'operatingDayMask': { $bitsAllSet: ?#{T(de.davelee.trams.operations.repository.StopTimeConverters).toMask([1])} }, 'validFromDate': { $lte: ?2 }, 'validToDate': { $gte: ?2 } }, { 'additionalDates': ?2 } ] }")
+    Stream<StopTimeModel> streamDeparturesByStopNameAndDate(final String stopName, final DayOfWeek operatingDay, final LocalDate date, final Sort sort );
+
+    /**
+     * Stream all stop times from a database cursor so that all stop times can be processed without holding them in
+     * memory at once. The stream must be closed after use.
+     * @return a <code>Stream</code> of <code>StopTimeModel</code> objects containing all stop times.
+     */
+    @Query("{}")
+    Stream<StopTimeModel> streamAll ( );
+
 }
@@ -0,0 +1,12 @@
+package de.davelee.trams.operations.repository;
+
+import de.davelee.trams.operations.model.TimetableVersionModel;
+import org.springframework.data.mongodb.repository.MongoRepository;
+
+/**
+ * This class enables as part of Spring Data access to the pointer to the active timetable version stored in the Mongo DB.
+ * @author Dave Lee
+ */
+public interface TimetableVersionRepository extends MongoRepository<TimetableVersionModel, String> {
+
+}
@@ -0,0 +1,28 @@
+package de.davelee.trams.operations.repository;
+
+import de.davelee.trams.operations.model.TripFingerprintModel;
+import org.springframework.data.mongodb.repository.MongoRepository;
+
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * This class enables as part of Spring Data access to the trip fingerprint objects stored in the Mongo DB.
+ * @author Dave Lee
+ */
+public interface TripFingerprintRepository extends MongoRepository<TripFingerprintModel, String> {
+
+    /**
+     * Find the fingerprints of all trips which belong to one of the supplied routes.
+     * @param routeNumbers a <code>Collection</code> of <code>String</code> containing the route numbers.
+     * @return a <code>List</code> of <code>TripFingerprintModel</code> objects containing the fingerprints of the trips of the routes.
+     */
+    List<TripFingerprintModel> findByRouteNumberIn ( final Collection<String> routeNumbers );
+
+    /**
+     * Delete the fingerprints of all trips with the supplied ids with a single query.
+     * @param ids a <code>Collection</code> of <code>String</code> containing the ids of the trips.
+     */
+    void deleteByIdIn ( final Collection<String> ids );
+
+}
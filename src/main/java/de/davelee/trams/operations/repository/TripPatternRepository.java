@@ -0,0 +1,22 @@
+package de.davelee.trams.operations.repository;
+
+import de.davelee.trams.operations.model.TripPatternModel;
+import org.springframework.data.mongodb.repository.MongoRepository;
+
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * This class enables as part of Spring Data access to the trip pattern objects stored in the Mongo DB.
+ * @author Dave Lee
+ */
+public interface TripPatternRepository extends MongoRepository<TripPatternModel, String> {
+
+    /**
+     * Find all trip patterns which call at one or more of the supplied stops.
+     * @param stopIds a <code>Collection</code> of <code>Integer</code> containing the short ids of the stop names.
+     * @return a <code>List</code> of <code>TripPatternModel</code> objects containing the trip patterns calling at the stops.
+     */
+    List<TripPatternModel> findByStopIdsIn ( final Collection<Integer> stopIds );
+
+}
@@ -0,0 +1,39 @@
+package de.davelee.trams.operations.repository;
+
+import de.davelee.trams.operations.model.TripModel;
+import org.springframework.data.mongodb.repository.MongoRepository;
+import org.springframework.data.mongodb.repository.Query;
+
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.util.Collection;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * This class enables as part of Spring Data access to the trip objects stored in the Mongo DB.
+ * @author Dave Lee
+ */
+public interface TripRepository extends MongoRepository<TripModel, String> {
+
+    /**
+     * Find all trips of the supplied trip patterns which run on the supplied day and date. A trip runs on the date if the
+     * date is not excluded and is either an additional date or lies within the validity (inclusive) on one of the operating days.
+     * @param patternIds a <code>Collection</code> of <code>String</code> containing the ids of the trip patterns.
+     * @param operatingDay a <code>DayOfWeek</code> containing the day on which the trips must run.
+     * @param date a <code>LocalDate</code> containing the date which must lie within the validity of the trips.
+     * @return a <code>List</code> of <code>TripModel</code> objects containing the trips matching the criteria.
+     */
+    @Query("{ 'patternId': { $in: ?0 }, 'excludedDates': { $ne: ?2 }, " +
+            "$or: [ { 'operatingDayMask': { $bitsAllSet: ?#{T(de.davelee.trams.operations.repository.StopTimeConverters).toMask([1])} }, 'validFromDate': { $lte: ?2 }, 'validToDate': { $gte: ?2 } }, { 'additionalDates': ?2 } ] }")
+    List<TripModel> findByPatternIdsAndDate ( final Collection<String> patternIds, final DayOfWeek operatingDay, final LocalDate date );
+
+    /**
+     * Stream all trips from a database cursor so that all trips can be processed without holding them in memory at once.
+     * The stream must be closed after use.
+     * @return a <code>Stream</code> of <code>TripModel</code> objects containing all trips.
+     */
+    @Query("{}")
+    Stream<TripModel> streamAll ( );
+
+}
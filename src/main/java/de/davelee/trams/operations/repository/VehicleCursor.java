@@ -0,0 +1,90 @@
+package de.davelee.trams.operations.repository;
+
+import de.davelee.trams.operations.model.VehicleModel;
+import lombok.Getter;
+import lombok.ToString;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+ * This class represents the position of a vehicle in the order in which vehicles are returned which is by company, fleet
+ * number and id. A cursor is passed to clients as an opaque token so that the next page of vehicles can be retrieved by
+ * continuing after the last vehicle of the previous page instead of skipping all vehicles of the previous pages.
+ * @author Dave Lee
+ */
+@Getter
+@ToString
+public class VehicleCursor {
+
+    private static final String SEPARATOR = "\u0000";
+
+    /**
+     * The company of the last vehicle which was returned.
+     */
+    private final String company;
+
+    /**
+     * The fleet number of the last vehicle which was returned.
+     */
+    private final String fleetNumber;
+
+    /**
+     * The id of the last vehicle which was returned.
+     */
+    private final String id;
+
+    /**
+     * Create a new cursor pointing to the supplied position.
+     * @param company a <code>String</code> containing the company of the last vehicle which was returned.
+     * @param fleetNumber a <code>String</code> containing the fleet number of the last vehicle which was returned.
+     * @param id a <code>String</code> containing the id of the last vehicle which was returned.
+     */
+    private VehicleCursor ( final String company, final String fleetNumber, final String id ) {
+        this.company = company;
+        this.fleetNumber = fleetNumber;
+        this.id = id;
+    }
+
+    /**
+     * Create a new cursor pointing to the supplied vehicle.
+     * @param vehicleModel a <code>VehicleModel</code> object containing the last vehicle which was returned.
+     * @return a <code>VehicleCursor</code> object pointing to the supplied vehicle.
+     */
+    public static VehicleCursor of ( final VehicleModel vehicleModel ) {
+        return new VehicleCursor(nullToEmpty(vehicleModel.getCompany()), nullToEmpty(vehicleModel.getFleetNumber()), vehicleModel.getId());
+    }
+
+    /**
+     * Convert the supplied token back into a cursor.
+     * @param token a <code>String</code> containing the token which was returned by <code>toToken</code>.
+     * @return a <code>VehicleCursor</code> object containing the position encoded in the token.
+     * @throws IllegalArgumentException if the token is not a valid cursor.
+     */
+    public static VehicleCursor fromToken ( final String token ) {
+        final String[] parts = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8).split(SEPARATOR, -1);
+        if ( parts.length != 3 || parts[2].isEmpty() ) {
+            throw new IllegalArgumentException("Invalid vehicle cursor: " + token);
+        }
+        return new VehicleCursor(parts[0], parts[1], parts[2]);
+    }
+
+    /**
+     * Convert this cursor into an opaque token which can be safely included in urls.
+     * @return a <code>String</code> containing the token.
+     */
+    public String toToken ( ) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString((company + SEPARATOR + fleetNumber + SEPARATOR + id)
+                .getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * This is a private helper method which replaces a missing value with an empty string.
+     * @param value a <code>String</code> which may be null.
+     * @return a <code>String</code> which is empty if the value was null.
+     */
+    private static String nullToEmpty ( final String value ) {
+        return value != null ? value : "";
+    }
+
+}
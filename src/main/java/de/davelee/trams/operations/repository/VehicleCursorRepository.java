@@ -0,0 +1,34 @@
+package de.davelee.trams.operations.repository;
+
+import de.davelee.trams.operations.model.VehicleModel;
+
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * This interface provides keyset paginated and streamed access to the vehicle objects stored in the Mongo DB. Vehicles
+ * are always returned in order of company, fleet number and id.
+ * @author Dave Lee
+ */
+public interface VehicleCursorRepository {
+
+    /**
+     * Return the vehicles which follow the supplied cursor and match the supplied company and fleet number prefixes.
+     * @param company a <code>String</code> containing the prefix of the company which may be null to match all companies.
+     * @param fleetNumber a <code>String</code> containing the prefix of the fleet number which may be null to match all fleet numbers.
+     * @param after a <code>VehicleCursor</code> object pointing to the last vehicle of the previous page which may be null for the first page.
+     * @param limit a <code>int</code> containing the maximum number of vehicles to return.
+     * @return a <code>List</code> of <code>VehicleModel</code> objects containing the matching vehicles.
+     */
+    List<VehicleModel> findVehiclesAfter ( final String company, final String fleetNumber, final VehicleCursor after, final int limit );
+
+    /**
+     * Return all vehicles which match the supplied company and fleet number prefixes as a stream which reads the vehicles
+     * from a database cursor as they are consumed. The stream must be closed after use.
+     * @param company a <code>String</code> containing the prefix of the company which may be null to match all companies.
+     * @param fleetNumber a <code>String</code> containing the prefix of the fleet number which may be null to match all fleet numbers.
+     * @return a <code>Stream</code> of <code>VehicleModel</code> objects containing the matching vehicles.
+     */
+    Stream<VehicleModel> streamVehicles ( final String company, final String fleetNumber );
+
+}
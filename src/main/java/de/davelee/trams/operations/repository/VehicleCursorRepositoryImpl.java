@@ -0,0 +1,84 @@
+package de.davelee.trams.operations.repository;
+
+import de.davelee.trams.operations.model.VehicleModel;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.MongoRegexCreator;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.util.StreamUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * This class implements keyset paginated and streamed access to the vehicle objects stored in the Mongo DB using the
+ * mongo template. A page continues after the last vehicle of the previous page so that the database can start reading
+ * from the index position of the cursor instead of skipping all previous vehicles.
+ * @author Dave Lee
+ */
+public class VehicleCursorRepositoryImpl implements VehicleCursorRepository {
+
+    private static final Sort VEHICLE_SORT = Sort.by("company", "fleetNumber", "id");
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    /**
+     * Return the vehicles which follow the supplied cursor and match the supplied company and fleet number prefixes.
+     * @param company a <code>String</code> containing the prefix of the company which may be null to match all companies.
+     * @param fleetNumber a <code>String</code> containing the prefix of the fleet number which may be null to match all fleet numbers.
+     * @param after a <code>VehicleCursor</code> object pointing to the last vehicle of the previous page which may be null for the first page.
+     * @param limit a <code>int</code> containing the maximum number of vehicles to return.
+     * @return a <code>List</code> of <code>VehicleModel</code> objects containing the matching vehicles.
+     */
+    @Override
+    public List<VehicleModel> findVehiclesAfter ( final String company, final String fleetNumber, final VehicleCursor after, final int limit ) {
+        return mongoTemplate.find(buildQuery(company, fleetNumber, after).limit(limit), VehicleModel.class);
+    }
+
+    /**
+     * Return all vehicles which match the supplied company and fleet number prefixes as a stream which reads the vehicles
+     * from a database cursor as they are consumed. The stream must be closed after use.
+     * @param company a <code>String</code> containing the prefix of the company which may be null to match all companies.
+     * @param fleetNumber a <code>String</code> containing the prefix of the fleet number which may be null to match all fleet numbers.
+     * @return a <code>Stream</code> of <code>VehicleModel</code> objects containing the matching vehicles.
+     */
+    @Override
+    public Stream<VehicleModel> streamVehicles ( final String company, final String fleetNumber ) {
+        return StreamUtils.createStreamFromIterator(mongoTemplate.stream(buildQuery(company, fleetNumber, null), VehicleModel.class));
+    }
+
+    /**
+     * This is a private helper method which builds the query for vehicles matching the supplied prefixes which follow
+     * the supplied cursor sorted by company, fleet number and id.
+     * @param company a <code>String</code> containing the prefix of the company which may be null to match all companies.
+     * @param fleetNumber a <code>String</code> containing the prefix of the fleet number which may be null to match all fleet numbers.
+     * @param after a <code>VehicleCursor</code> object pointing to the last vehicle already returned which may be null.
+     * @return a <code>Query</code> object containing the query to run.
+     */
+    private Query buildQuery ( final String company, final String fleetNumber, final VehicleCursor after ) {
+        List<Criteria> criteria = new ArrayList<>();
+        if ( company != null ) {
+            criteria.add(Criteria.where("company").regex(MongoRegexCreator.INSTANCE
+                    .toRegularExpression(company, MongoRegexCreator.MatchMode.STARTING_WITH)));
+        }
+        if ( fleetNumber != null ) {
+            criteria.add(Criteria.where("fleetNumber").regex(MongoRegexCreator.INSTANCE
+                    .toRegularExpression(fleetNumber, MongoRegexCreator.MatchMode.STARTING_WITH)));
+        }
+        if ( after != null ) {
+            //Continue after the cursor in the order of company, fleet number and id.
+            criteria.add(new Criteria().orOperator(
+                    Criteria.where("company").gt(after.getCompany()),
+                    Criteria.where("company").is(after.getCompany()).and("fleetNumber").gt(after.getFleetNumber()),
+                    Criteria.where("company").is(after.getCompany()).and("fleetNumber").is(after.getFleetNumber())
+                            .and("id").gt(after.getId())));
+        }
+        Query query = criteria.isEmpty() ? new Query() : new Query(new Criteria().andOperator(criteria.toArray(new Criteria[0])));
+        return query.with(VEHICLE_SORT);
+    }
+
+}
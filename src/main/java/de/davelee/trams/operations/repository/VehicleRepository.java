@@ -0,0 +1,22 @@
+package de.davelee.trams.operations.repository;
+
+import de.davelee.trams.operations.model.VehicleModel;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.repository.MongoRepository;
+
+import java.time.LocalDate;
+import java.util.List;
+
+/**
+ * This class enables as part of Spring Data access to the vehicle objects of all types stored in the Mongo DB. The type of
+ * each vehicle is determined by the type alias stored with it so that buses, trains and trams are returned by a single query.
+ * @author Dave Lee
+ */
+public interface VehicleRepository extends MongoRepository<VehicleModel, String>, VehicleCursorRepository {
+
+    List<VehicleModel> findByCompanyStartsWithAndFleetNumberStartsWith ( final String company, final String fleetNumber, final Sort sort );
+
+    List<VehicleModel> findByFleetNumberStartsWith ( final String fleetNumber, final Sort sort );
+
+    List<VehicleModel> findByNextInspectionDueDateLessThanEqual ( final LocalDate date, final Sort sort );
+}
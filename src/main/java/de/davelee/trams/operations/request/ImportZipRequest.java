@@ -7,7 +7,8 @@ import org.springframework.web.multipart.MultipartFile;
 /**
  * This class represents a request to import data from a zip file into TraMS.
  * The data can either be in the GTFS or CSV format and must contain the format in the request.
- * Optionally a list of routes, valid from and valid to dates can be provided.
+ * Optionally a list of routes, valid from and valid to dates can be provided. GTFS files can optionally be imported
+ * incrementally so that only the trips which have changed since the last import are written.
  */
 @Getter
 @Setter
@@ -23,4 +24,6 @@ public class ImportZipRequest {
 
     private String validToDate;
 
+    private boolean incremental;
+
 }
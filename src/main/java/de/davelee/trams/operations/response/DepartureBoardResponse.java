@@ -0,0 +1,27 @@
+package de.davelee.trams.operations.response;
+
+import de.davelee.trams.operations.model.StopTimeModel;
+import lombok.Builder;
+import lombok.Getter;
+import lombok.Setter;
+import lombok.ToString;
+
+import java.util.List;
+
+@Builder
+@Getter
+@Setter
+@ToString
+public class DepartureBoardResponse {
+
+    /**
+     * The name of the stop that the departure board belongs to.
+     */
+    private String stopName;
+
+    /**
+     * The next departures from the stop sorted by departure time.
+     */
+    private List<StopTimeModel> departures;
+
+}
@@ -0,0 +1,44 @@
+package de.davelee.trams.operations.response;
+
+import lombok.Builder;
+import lombok.Getter;
+import lombok.Setter;
+import lombok.ToString;
+
+@Builder
+@Getter
+@Setter
+@ToString
+public class ImportJobResponse {
+
+    /**
+     * The identifier of the import job which can be used to retrieve its status.
+     */
+    private String jobId;
+
+    /**
+     * The phase that the import is currently in.
+     */
+    private String phase;
+
+    /**
+     * The number of rows which have been processed so far.
+     */
+    private long rowsProcessed;
+
+    /**
+     * The average number of rows processed per second.
+     */
+    private double rowsPerSecond;
+
+    /**
+     * Whether the import was successful which is null as long as the import is still running.
+     */
+    private Boolean successful;
+
+    /**
+     * A message describing the outcome of the import which may be null.
+     */
+    private String message;
+
+}
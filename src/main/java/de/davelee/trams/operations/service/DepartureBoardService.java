@@ -0,0 +1,239 @@
+package de.davelee.trams.operations.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import de.davelee.trams.operations.response.DepartureBoardResponse;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * This class pushes live departure boards with server-sent events to displays which have subscribed to one or more stops.
+ * The next departures of a stop are recomputed by a single scheduled task which is shared by all subscribers of the stop
+ * and the board is only sent if it has changed because a departure has left or an import has changed the timetable.
+ * The task of a stop is cancelled as soon as the last subscriber of the stop has disconnected.
+ * @author Dave Lee
+ */
+@Service
+public class DepartureBoardService {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(DepartureBoardService.class);
+
+    /**
+     * The name of the events which contain a departure board.
+     */
+    private static final String EVENT_NAME = "departures";
+
+    @Autowired
+    private StopTimeService stopTimeService;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Value("${departures.batch.maximumStops:50}")
+    private int maximumStopsPerSubscription;
+
+    private final long refreshIntervalInSeconds;
+
+    private final long subscriptionTimeoutInMillis;
+
+    private final ScheduledExecutorService scheduler;
+
+    private final Map<String, DepartureBoard> departureBoards = new ConcurrentHashMap<>();
+
+    private final Counter boardUpdateCounter;
+
+    /**
+     * Create a new service which recomputes the departure boards with the supplied interval.
+     * @param refreshIntervalInSeconds a <code>long</code> containing the number of seconds between two computations of a departure board.
+     * @param subscriptionTimeoutInMinutes a <code>long</code> containing the number of minutes after which a subscription
+     *                                     ends and the display must subscribe again.
+     * @param threads a <code>int</code> containing the number of threads which compute the departure boards.
+     * @param meterRegistry a <code>MeterRegistry</code> object to register the metrics of the departure boards with.
+     */
+    public DepartureBoardService ( @Value("${departures.board.refreshSeconds:15}") final long refreshIntervalInSeconds,
+                                   @Value("${departures.board.timeoutMinutes:30}") final long subscriptionTimeoutInMinutes,
+                                   @Value("${departures.board.threads:1}") final int threads,
+                                   final MeterRegistry meterRegistry ) {
+        this.refreshIntervalInSeconds = refreshIntervalInSeconds;
+        this.subscriptionTimeoutInMillis = TimeUnit.MINUTES.toMillis(subscriptionTimeoutInMinutes);
+        AtomicInteger threadCounter = new AtomicInteger();
+        this.scheduler = Executors.newScheduledThreadPool(Math.max(threads, 1), runnable -> {
+            Thread thread = new Thread(runnable, "departure-board-" + threadCounter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        Gauge.builder("departures.board.stops", departureBoards, Map::size).register(meterRegistry);
+        this.boardUpdateCounter = meterRegistry.counter("departures.board.updates");
+    }
+
+    /**
+     * Subscribe to the departure boards of the supplied stops. The current board of each stop is sent immediately and
+     * afterwards every time that it changes.
+     * @param stopNames a <code>List</code> of <code>String</code> containing the names of the stops to subscribe to.
+     * @return a <code>SseEmitter</code> object which sends the departure boards to the subscriber.
+     * @throws IllegalArgumentException if no or too many stops were supplied.
+     */
+    public SseEmitter subscribe ( final List<String> stopNames ) {
+        final Set<String> distinctStopNames = new LinkedHashSet<>(stopNames);
+        if ( distinctStopNames.isEmpty() || distinctStopNames.size() > maximumStopsPerSubscription ) {
+            throw new IllegalArgumentException("Between 1 and " + maximumStopsPerSubscription + " stops must be supplied");
+        }
+        final SseEmitter sseEmitter = new SseEmitter(subscriptionTimeoutInMillis);
+        sseEmitter.onCompletion(() -> unsubscribe(sseEmitter, distinctStopNames));
+        sseEmitter.onError(throwable -> unsubscribe(sseEmitter, distinctStopNames));
+        //The display subscribes again once the subscription has timed out.
+        sseEmitter.onTimeout(sseEmitter::complete);
+        for ( String stopName : distinctStopNames ) {
+            //Adding the subscriber and creating the board is atomic so that a board is never removed while it is joined.
+            DepartureBoard departureBoard = departureBoards.compute(stopName, (name, existingDepartureBoard) -> {
+                DepartureBoard board = existingDepartureBoard != null ? existingDepartureBoard : openDepartureBoard(name);
+                board.subscribers.add(sseEmitter);
+                return board;
+            });
+            synchronized ( departureBoard ) {
+                if ( departureBoard.content == null ) {
+                    refresh(departureBoard);
+                } else {
+                    send(departureBoard, sseEmitter);
+                }
+            }
+        }
+        return sseEmitter;
+    }
+
+    /**
+     * Recompute the departure boards of all stops which have subscribers and send the boards which have changed. This
+     * method is called after an import has changed the timetable.
+     */
+    public void refreshAll ( ) {
+        departureBoards.values().forEach(this::refresh);
+    }
+
+    /**
+     * Stop computing the departure boards and end all subscriptions when the application shuts down.
+     */
+    @PreDestroy
+    public void shutdown ( ) {
+        scheduler.shutdownNow();
+        departureBoards.values().forEach(departureBoard -> departureBoard.subscribers.forEach(SseEmitter::complete));
+    }
+
+    /**
+     * Remove the supplied subscriber from the departure boards of the supplied stops. The task of a stop is cancelled if
+     * the stop has no more subscribers.
+     * @param sseEmitter a <code>SseEmitter</code> object containing the subscriber to remove.
+     * @param stopNames a <code>Collection</code> of <code>String</code> containing the names of the stops that the subscriber subscribed to.
+     */
+    void unsubscribe ( final SseEmitter sseEmitter, final Collection<String> stopNames ) {
+        for ( String stopName : stopNames ) {
+            departureBoards.computeIfPresent(stopName, (name, departureBoard) -> {
+                departureBoard.subscribers.remove(sseEmitter);
+                if ( departureBoard.subscribers.isEmpty() ) {
+                    departureBoard.refreshTask.cancel(false);
+                    return null;
+                }
+                return departureBoard;
+            });
+        }
+    }
+
+    /**
+     * This is a private helper method which creates the departure board of the supplied stop and schedules its task.
+     * @param stopName a <code>String</code> containing the name of the stop.
+     * @return a <code>DepartureBoard</code> object whose content has not been computed yet.
+     */
+    private DepartureBoard openDepartureBoard ( final String stopName ) {
+        DepartureBoard departureBoard = new DepartureBoard(stopName);
+        departureBoard.refreshTask = scheduler.scheduleWithFixedDelay(() -> refresh(departureBoard), refreshIntervalInSeconds,
+                refreshIntervalInSeconds, TimeUnit.SECONDS);
+        return departureBoard;
+    }
+
+    /**
+     * This is a private helper method which recomputes the supplied departure board and sends it to all subscribers if it has changed.
+     * The departures are retrieved through the departure cache so that the boards of a stop are computed at most once per minute.
+     * @param departureBoard a <code>DepartureBoard</code> object containing the board to recompute.
+     */
+    private void refresh ( final DepartureBoard departureBoard ) {
+        synchronized ( departureBoard ) {
+            try {
+                String content = objectMapper.writeValueAsString(DepartureBoardResponse.builder()
+                        .stopName(departureBoard.stopName)
+                        .departures(stopTimeService.getDepartures(departureBoard.stopName, null))
+                        .build());
+                if ( !content.equals(departureBoard.content) ) {
+                    departureBoard.content = content;
+                    boardUpdateCounter.increment();
+                    departureBoard.subscribers.forEach(sseEmitter -> send(departureBoard, sseEmitter));
+                }
+            } catch ( JsonProcessingException | RuntimeException exception ) {
+                //The task must not end so the board is computed again at the next interval.
+                LOGGER.warn("Departure board for stop " + departureBoard.stopName + " could not be computed", exception);
+            }
+        }
+    }
+
+    /**
+     * This is a private helper method which sends the current content of the supplied departure board to the supplied
+     * subscriber. A subscriber which can no longer be reached is removed from the board.
+     * @param departureBoard a <code>DepartureBoard</code> object containing the board to send.
+     * @param sseEmitter a <code>SseEmitter</code> object containing the subscriber to send the board to.
+     */
+    private void send ( final DepartureBoard departureBoard, final SseEmitter sseEmitter ) {
+        try {
+            sseEmitter.send(SseEmitter.event().name(EVENT_NAME).data(departureBoard.content));
+        } catch ( IOException | IllegalStateException exception ) {
+            departureBoard.subscribers.remove(sseEmitter);
+            sseEmitter.completeWithError(exception);
+        }
+    }
+
+    /**
+     * This class represents the departure board of a stop together with its subscribers and scheduled task.
+     */
+    private static final class DepartureBoard {
+
+        private final String stopName;
+
+        private final Set<SseEmitter> subscribers = new CopyOnWriteArraySet<>();
+
+        private ScheduledFuture<?> refreshTask;
+
+        /**
+         * The departure board which was sent last as JSON which is null until the board has been computed.
+         */
+        private String content;
+
+        /**
+         * Create a new departure board for the supplied stop.
+         * @param stopName a <code>String</code> containing the name of the stop.
+         */
+        private DepartureBoard ( final String stopName ) {
+            this.stopName = stopName;
+        }
+
+    }
+
+}
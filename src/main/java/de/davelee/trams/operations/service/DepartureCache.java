@@ -0,0 +1,160 @@
+package de.davelee.trams.operations.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import de.davelee.trams.operations.model.StopTimeModel;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.time.temporal.ChronoUnit;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * This class caches the departures and arrivals of a stop for a minute. Displays poll the same stops repeatedly but the
+ * next departures of a stop only change once a minute, so the stop times are only retrieved once per stop, type and
+ * minute. The cache is bounded in size and entries expire after a configurable time. All entries are invalidated
+ * whenever an import has completed. The number of hits and misses is exposed as metrics of the cache named departures.
+ * @author Dave Lee
+ */
+@Component
+public class DepartureCache {
+
+    private final Cache<Key, List<StopTimeModel>> cache;
+
+    /**
+     * Create a new cache with the supplied maximum size and expiry time. If either value is not positive then nothing is cached.
+     * @param maximumSize a <code>long</code> containing the maximum number of stop, type and minute combinations to cache.
+     * @param expireAfterSeconds a <code>long</code> containing the number of seconds after which an entry expires.
+     * @param meterRegistry a <code>MeterRegistry</code> object to register the metrics of the cache with.
+     */
+    public DepartureCache ( @Value("${departures.cache.maximumSize:10000}") final long maximumSize,
+                            @Value("${departures.cache.expireAfterSeconds:60}") final long expireAfterSeconds,
+                            final MeterRegistry meterRegistry ) {
+        if ( maximumSize > 0 && expireAfterSeconds > 0 ) {
+            cache = Caffeine.newBuilder()
+                    .maximumSize(maximumSize)
+                    .expireAfterWrite(expireAfterSeconds, TimeUnit.SECONDS)
+                    .recordStats()
+                    .build();
+            CaffeineCacheMetrics.monitor(meterRegistry, cache, "departures");
+        } else {
+            cache = null;
+        }
+    }
+
+    /**
+     * Return the cached stop times for the supplied stop, type and minute or load and cache them if they are not cached yet.
+     * @param stopName a <code>String</code> containing the name of the stop.
+     * @param type a <code>String</code> which can be either Departure or Arrival.
+     * @param date a <code>LocalDate</code> containing the date of the stop times.
+     * @param time a <code>LocalTime</code> containing the time which is truncated to the minute.
+     * @param loader a <code>Supplier</code> which retrieves the stop times if they are not cached.
+     * @return a <code>List</code> of <code>StopTimeModel</code> objects which cannot be modified.
+     */
+    public List<StopTimeModel> get ( final String stopName, final String type, final LocalDate date, final LocalTime time,
+                                     final Supplier<List<StopTimeModel>> loader ) {
+        if ( cache == null ) {
+            return Collections.unmodifiableList(loader.get());
+        }
+        return cache.get(new Key(stopName, type, date, time.truncatedTo(ChronoUnit.MINUTES)),
+                key -> Collections.unmodifiableList(loader.get()));
+    }
+
+    /**
+     * Return the cached stop times for the supplied stop, type and minute without loading them.
+     * @param stopName a <code>String</code> containing the name of the stop.
+     * @param type a <code>String</code> which can be either Departure or Arrival.
+     * @param date a <code>LocalDate</code> containing the date of the stop times.
+     * @param time a <code>LocalTime</code> containing the time which is truncated to the minute.
+     * @return a <code>List</code> of <code>StopTimeModel</code> objects which cannot be modified or null if the stop times are not cached.
+     */
+    public List<StopTimeModel> getIfPresent ( final String stopName, final String type, final LocalDate date, final LocalTime time ) {
+        if ( cache == null ) {
+            return null;
+        }
+        return cache.getIfPresent(new Key(stopName, type, date, time.truncatedTo(ChronoUnit.MINUTES)));
+    }
+
+    /**
+     * Cache the supplied stop times for the supplied stop, type and minute.
+     * @param stopName a <code>String</code> containing the name of the stop.
+     * @param type a <code>String</code> which can be either Departure or Arrival.
+     * @param date a <code>LocalDate</code> containing the date of the stop times.
+     * @param time a <code>LocalTime</code> containing the time which is truncated to the minute.
+     * @param stopTimeModels a <code>List</code> of <code>StopTimeModel</code> objects containing the stop times to cache.
+     * @return a <code>List</code> of <code>StopTimeModel</code> objects which cannot be modified.
+     */
+    public List<StopTimeModel> put ( final String stopName, final String type, final LocalDate date, final LocalTime time,
+                                     final List<StopTimeModel> stopTimeModels ) {
+        List<StopTimeModel> unmodifiableStopTimeModels = Collections.unmodifiableList(stopTimeModels);
+        if ( cache != null ) {
+            cache.put(new Key(stopName, type, date, time.truncatedTo(ChronoUnit.MINUTES)), unmodifiableStopTimeModels);
+        }
+        return unmodifiableStopTimeModels;
+    }
+
+    /**
+     * Remove all cached stop times so that the next request retrieves the stop times from the database again.
+     */
+    public void invalidateAll ( ) {
+        if ( cache != null ) {
+            cache.invalidateAll();
+        }
+    }
+
+    /**
+     * This class represents the key of a cache entry consisting of the stop, type, date and minute.
+     */
+    private static final class Key {
+
+        private final String stopName;
+
+        private final String type;
+
+        private final LocalDate date;
+
+        private final LocalTime minute;
+
+        /**
+         * Create a new key for the supplied stop, type, date and minute.
+         * @param stopName a <code>String</code> containing the name of the stop.
+         * @param type a <code>String</code> which can be either Departure or Arrival.
+         * @param date a <code>LocalDate</code> containing the date of the stop times.
+         * @param minute a <code>LocalTime</code> containing the time truncated to the minute.
+         */
+        private Key ( final String stopName, final String type, final LocalDate date, final LocalTime minute ) {
+            this.stopName = stopName;
+            this.type = type;
+            this.date = date;
+            this.minute = minute;
+        }
+
+        @Override
+        public boolean equals ( final Object object ) {
+            if ( this == object ) {
+                return true;
+            }
+            if ( !(object instanceof Key) ) {
+                return false;
+            }
+            Key key = (Key) object;
+            return Objects.equals(stopName, key.stopName) && Objects.equals(type, key.type)
+                    && Objects.equals(date, key.date) && Objects.equals(minute, key.minute);
+        }
+
+        @Override
+        public int hashCode ( ) {
+            return Objects.hash(stopName, type, date, minute);
+        }
+
+    }
+
+}
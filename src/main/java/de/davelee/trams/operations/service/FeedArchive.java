@@ -0,0 +1,135 @@
+package de.davelee.trams.operations.service;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.FileSystem;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * This class provides access to the files of an uploaded feed which may either be a directory or a zip file. A zip
+ * file is opened as a zip file system so that its entries can be read directly without extracting them to disk
+ * first. Metadata which some operating systems add to zip files is ignored.
+ * @author Dave Lee
+ */
+public class FeedArchive implements Closeable {
+
+    private static final String ZIP_EXTENSION = ".zip";
+
+    private static final String MAC_OS_METADATA_DIRECTORY = "__MACOSX";
+
+    private static final String MAC_OS_METADATA_PREFIX = "._";
+
+    private final FileSystem zipFileSystem;
+
+    private final Path root;
+
+    /**
+     * Create a new feed archive with the supplied root directory.
+     * @param zipFileSystem a <code>FileSystem</code> object for the zip file which may be null if the feed is a directory.
+     * @param root a <code>Path</code> object containing the root directory of the feed.
+     */
+    private FeedArchive ( final FileSystem zipFileSystem, final Path root ) {
+        this.zipFileSystem = zipFileSystem;
+        this.root = root;
+    }
+
+    /**
+     * Open the feed at the supplied location. If the location is a zip file, then it is opened as a zip file system.
+     * @param location a <code>Path</code> object containing the directory or zip file of the feed.
+     * @return a <code>FeedArchive</code> object which must be closed once the feed has been read.
+     * @throws IOException if the zip file could not be opened.
+     */
+    public static FeedArchive open ( final Path location ) throws IOException {
+        if ( isZipFile(location) ) {
+            FileSystem zipFileSystem = FileSystems.newFileSystem(location, (ClassLoader) null);
+            return new FeedArchive(zipFileSystem, zipFileSystem.getPath("/"));
+        }
+        return new FeedArchive(null, location);
+    }
+
+    /**
+     * Return true iff the supplied location is a zip file rather than a directory.
+     * @param location a <code>Path</code> object containing the location to check.
+     * @return a <code>boolean</code> which is true iff the location is a zip file.
+     */
+    public static boolean isZipFile ( final Path location ) {
+        return Files.isRegularFile(location) && location.getFileName().toString().toLowerCase().endsWith(ZIP_EXTENSION);
+    }
+
+    /**
+     * Return the name of the feed which is the name of the directory or zip file without the file extension.
+     * @param location a <code>Path</code> object containing the directory or zip file of the feed.
+     * @return a <code>String</code> containing the name of the feed.
+     */
+    public static String getFeedName ( final Path location ) {
+        String fileName = location.getFileName().toString();
+        return fileName.toLowerCase().endsWith(ZIP_EXTENSION) ? fileName.substring(0, fileName.length() - ZIP_EXTENSION.length()) : fileName;
+    }
+
+    /**
+     * Return the directory within the feed which contains the file with the supplied name. Zip files often contain a
+     * single directory with all files of the feed. If the file cannot be found, then the root of the feed is returned.
+     * @param fileName a <code>String</code> containing the name of the file to search for.
+     * @return a <code>Path</code> object containing the directory of the file.
+     * @throws IOException if the feed could not be read.
+     */
+    public Path findDirectoryContaining ( final String fileName ) throws IOException {
+        try ( Stream<Path> paths = Files.walk(root) ) {
+            Optional<Path> file = paths.filter(this::isFeedFile)
+                    .filter(path -> path.getFileName().toString().contentEquals(fileName))
+                    .findFirst();
+            return file.map(Path::getParent).orElse(root);
+        }
+    }
+
+    /**
+     * Return all files in the feed whose name ends with the supplied extension in alphabetical order.
+     * @param extension a <code>String</code> containing the file extension including the dot e.g. ".csv".
+     * @return a <code>List</code> of <code>Path</code> objects containing the matching files.
+     * @throws IOException if the feed could not be read.
+     */
+    public List<Path> findFiles ( final String extension ) throws IOException {
+        try ( Stream<Path> paths = Files.walk(root) ) {
+            return paths.filter(this::isFeedFile)
+                    .filter(path -> path.getFileName().toString().endsWith(extension))
+                    .sorted()
+                    .collect(Collectors.toList());
+        }
+    }
+
+    /**
+     * Close the zip file system if the feed is a zip file.
+     * @throws IOException if the zip file system could not be closed.
+     */
+    @Override
+    public void close ( ) throws IOException {
+        if ( zipFileSystem != null ) {
+            zipFileSystem.close();
+        }
+    }
+
+    /**
+     * This is a private helper method which determines if the supplied path is a regular file of the feed and not
+     * metadata which was added by the operating system.
+     * @param path a <code>Path</code> object containing the path to check.
+     * @return a <code>boolean</code> which is true iff the path is a file of the feed.
+     */
+    private boolean isFeedFile ( final Path path ) {
+        if ( !Files.isRegularFile(path) || path.getFileName().toString().startsWith(MAC_OS_METADATA_PREFIX) ) {
+            return false;
+        }
+        for ( Path element : root.relativize(path) ) {
+            if ( element.toString().contentEquals(MAC_OS_METADATA_DIRECTORY) ) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+}
@@ -5,10 +5,12 @@ import de.davelee.trams.operations.exception.StorageException;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 import org.springframework.util.FileSystemUtils;
+import org.springframework.util.StringUtils;
 import org.springframework.web.multipart.MultipartFile;
 
 import java.io.*;
 import java.nio.file.*;
+import java.util.UUID;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipInputStream;
 
@@ -56,27 +58,68 @@ public class FileSystemStorageService {
      * @return a <code>String</code> containing the path to the directory where the extracted file contents are stored.
      */
     public String store(final MultipartFile file) {
+        if ( file.getOriginalFilename() == null ) {
+            throw new StorageException("Filename was not valid. Please verify and try again");
+        }
+        return extractZipFile(storeFile(file, file.getOriginalFilename()));
+    }
+
+    /**
+     * Store the supplied file in the configured upload directory without extracting it. The importers read the
+     * entries of the zip file directly so that no extracted copy of the files is written to disk. Every upload is
+     * stored under a new unique name with the extension of the uploaded file so that an upload with the same file name
+     * never replaces a file which a queued import still has to read.
+     * @param file a <code>MultipartFile</code> object containing the file to upload to the directory.
+     * @return a <code>String</code> containing the path to the stored zip file.
+     */
+    public String storeArchive(final MultipartFile file) {
+        if ( file.getOriginalFilename() == null ) {
+            throw new StorageException("Filename was not valid. Please verify and try again");
+        }
+        String extension = StringUtils.getFilenameExtension(file.getOriginalFilename());
+        return storeFile(file, UUID.randomUUID() + (extension != null ? "." + extension : ""));
+    }
+
+    /**
+     * Delete a file which was stored in the configured upload directory once it is no longer needed.
+     * If the file does not exist, then nothing happens.
+     * @param location a <code>String</code> containing the path to the stored file which may be null if no file was stored.
+     */
+    public void delete(final String location) {
+        if ( location == null ) {
+            return;
+        }
+        try {
+            Files.deleteIfExists(Paths.get(location));
+        }
+        catch (IOException e) {
+            throw new StorageException("Failed to delete file.", e);
+        }
+    }
+
+    /**
+     * This is a private helper method which stores the supplied file under the supplied name in the configured upload directory.
+     * @param file a <code>MultipartFile</code> object containing the file to upload to the directory.
+     * @param fileName a <code>String</code> containing the name which the file should be stored under.
+     * @return a <code>String</code> containing the path to the stored file.
+     */
+    private String storeFile(final MultipartFile file, final String fileName) {
         try {
             if (file.isEmpty()) {
                 throw new StorageException("Failed to store empty file.");
-            } else if ( file.getOriginalFilename() == null ) {
-                throw new StorageException("Filename was not valid. Please verify and try again");
             }
             Path destinationFile = this.rootLocation.resolve(
-                    Paths.get(file.getOriginalFilename()))
+                    Paths.get(fileName))
                     .normalize().toAbsolutePath();
             if (!destinationFile.getParent().equals(this.rootLocation.toAbsolutePath())) {
                 // This is a security check
                 throw new StorageException(
                         "Cannot store file outside current directory.");
             }
-            try (InputStream inputStream = file.getInputStream()) {
-                Files.copy(inputStream, destinationFile,
-                        StandardCopyOption.REPLACE_EXISTING);
-                return extractZipFile(destinationFile.toString());
-            } catch ( FileAlreadyExistsException fileAlreadyExistsException ) {
-                return extractZipFile(destinationFile.toString());
-            }
+            //Move the uploaded file to the destination which avoids copying it if it is already stored on disk.
+            Files.deleteIfExists(destinationFile);
+            file.transferTo(destinationFile);
+            return destinationFile.toString();
         }
         catch (IOException e) {
             throw new StorageException("Failed to store file.", e);
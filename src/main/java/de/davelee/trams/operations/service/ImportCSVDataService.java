@@ -1,27 +1,42 @@
 package de.davelee.trams.operations.service;
 
+import de.davelee.trams.operations.model.ImportPhase;
 import de.davelee.trams.operations.model.RouteModel;
 import de.davelee.trams.operations.model.StopModel;
 import de.davelee.trams.operations.model.StopTimeModel;
 import de.davelee.trams.operations.repository.RouteRepository;
 import de.davelee.trams.operations.repository.StopRepository;
 import de.davelee.trams.operations.repository.StopTimeRepository;
+import io.micrometer.core.annotation.Timed;
 import org.apache.commons.csv.CSVFormat;
 import org.apache.commons.csv.CSVParser;
 import org.apache.commons.csv.CSVRecord;
 import org.apache.commons.text.WordUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 import java.io.*;
-import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.time.DayOfWeek;
 import java.time.LocalDate;
 import java.time.LocalTime;
 import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 /**
  * This class provides a service for importing CSV files which match the following specification:
@@ -30,6 +45,12 @@ import java.util.UUID;
 @Service
 public class ImportCSVDataService {
 
+    private static final Logger LOGGER = LoggerFactory.getLogger(ImportCSVDataService.class);
+
+    private static final DateTimeFormatter DATE_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd");
+
+    private static final DateTimeFormatter TIME_FORMATTER = DateTimeFormatter.ofPattern("HH:mm");
+
     @Autowired
     private RouteRepository routeRepository;
 
@@ -39,72 +60,202 @@ public class ImportCSVDataService {
     @Autowired
     private StopTimeRepository stopTimeRepository;
 
-    private int stopTimeCounter;
+    @Autowired
+    private TripPatternService tripPatternService;
+
+    @Autowired
+    private TimetableVersionService timetableVersionService;
+
+    @Autowired
+    private TimetableIndexService timetableIndexService;
+
+    @Autowired
+    private ImportMetrics importMetrics;
+
+    @Autowired
+    private DepartureCache departureCache;
+
+    @Autowired
+    private DepartureBoardService departureBoardService;
+
+    @Value("${import.batchSize:" + StopTimeBatchWriter.DEFAULT_BATCH_SIZE + "}")
+    private int importBatchSize;
+
+    @Value("${import.csv.threads:0}")
+    private int importThreads;
+
+    /**
+     * Read a csv folder or zip file and extract all departures from the supplied file and store them in the mongo db.
+     * The entries of a zip file are read directly without extracting them to disk. The csv files in the folder are
+     * independent of each other and are therefore imported in parallel.
+     * @param directory a <code>String</code> containing the directory or zip file to load the data from.
+     * @param validFromDate a <code>String</code> containing the valid from date in format yyyy-MM-dd
+     * @param validToDate a <code>String</code> containing the valid to date in format yyyy-MM-dd
+     * @return a <code>ImportResult</code> object containing the files which were imported successfully or not.
+     */
+    public ImportResult readCSVFile(final String directory, final String validFromDate, final String validToDate) {
+        return readCSVFile(directory, validFromDate, validToDate, new ImportProgress());
+    }
 
     /**
-     * Read a csv folder and extract all departures from the supplied file and store them in the mongo db.
-     * @param directory a <code>String</code> containing the directory to load the data from.
+     * Read a csv folder or zip file and store all departures in the mongo db as described above while reporting the
+     * phase and the number of stop times written to the supplied progress. If journeys are stored as stop times and
+     * versioning is enabled, the stop times are added to a new version of the timetable which is only activated if all
+     * files were imported successfully.
+     * @param directory a <code>String</code> containing the directory or zip file to load the data from.
      * @param validFromDate a <code>String</code> containing the valid from date in format yyyy-MM-dd
      * @param validToDate a <code>String</code> containing the valid to date in format yyyy-MM-dd
-     * @return a <code>boolean</code> which is true iff the file could be read successfully.
+     * @param importProgress a <code>ImportProgress</code> object which is updated during the import.
+     * @return a <code>ImportResult</code> object containing the files which were imported successfully or not.
      */
-    public boolean readCSVFile(final String directory, final String validFromDate, final String validToDate) {
-        //Set counter for stopTime objects to ensure a valid identifier.
-        stopTimeCounter = 0;
+    @Timed(value = "import.duration", extraTags = {"format", ImportMetrics.CSV_FORMAT})
+    public ImportResult readCSVFile(final String directory, final String validFromDate, final String validToDate,
+                                    final ImportProgress importProgress) {
+        importProgress.setPhase(ImportPhase.READING);
+        ImportResult importResult = new ImportResult();
 
-        //Check that the directory exists - otherwise return false.
+        //Check that the directory exists - otherwise return an unsuccessful result.
         if ( !directory.startsWith("/") && ImportCSVDataService.class.getClassLoader().getResource(directory) == null ) {
-            return false;
+            return importResult;
         }
 
-        //Get all csv files in the directory.
-        final File directoryPath = directory.startsWith("/") ? new File(directory) :
-                                        new File(ImportCSVDataService.class.getClassLoader().getResource(directory).getFile());
-        File[] directoryFiles = directoryPath.listFiles((dir, name) -> name.endsWith(".csv"));
+        //Determine the location of the directory or zip file.
+        final Path location = directory.startsWith("/") ? Paths.get(directory) :
+                                        new File(ImportCSVDataService.class.getClassLoader().getResource(directory).getFile()).toPath();
 
-        //If there are no csv files in the directory then return false.
-        if ( directoryFiles == null || directoryFiles.length == 0 ) {
-            return false;
+        //Determine operator name based on name of zip file.
+        String operatorName = WordUtils.capitalizeFully(FeedArchive.getFeedName(location).replace("-", " "));
+
+        //Parse the validity dates once for all files.
+        final LocalDate validFrom;
+        final LocalDate validTo;
+        try {
+            validFrom = LocalDate.parse(validFromDate, DATE_FORMATTER);
+            validTo = LocalDate.parse(validToDate, DATE_FORMATTER);
+        } catch ( DateTimeParseException dateTimeParseException ) {
+            LOGGER.error("Could not parse validity dates " + validFromDate + " and " + validToDate, dateTimeParseException);
+            return importResult;
         }
 
-        //Determine operator name based on name of zip file.
-        String[] directorySplitPath = directory.split(FileSystems.getDefault().getSeparator());
-        String operatorName = directorySplitPath[directorySplitPath.length-1].replace("-", " ");
-        operatorName = WordUtils.capitalizeFully(operatorName);
-
-        //Loop through all of the files and begin to process them in helper methods.
-        for ( File csvFile : directoryFiles ) {
-            if (!loadCSVFile(csvFile.getAbsolutePath(), operatorName, validFromDate, validToDate)) {
-                return false;
+        //Open the directory or zip file so that the csv files can be read without extracting them.
+        try ( FeedArchive feedArchive = FeedArchive.open(location) ) {
+            //Get all csv files in the directory or zip file.
+            List<Path> csvFiles = feedArchive.findFiles(".csv");
+
+            //If there are no csv files then return an unsuccessful result.
+            if ( csvFiles.isEmpty() ) {
+                return importResult;
             }
+
+            //Start a new import session to detect existing stops and routes which is shared by all files.
+            ImportSession importSession = new ImportSession(stopRepository, routeRepository);
+
+            //Write the stop times into a new version of the timetable which is only activated if all files were imported.
+            final boolean stageVersion = timetableVersionService.isVersioningEnabled() && !tripPatternService.isTripPatternStorage();
+            if ( stageVersion ) {
+                timetableVersionService.createStagingVersion(Collections.emptyList());
+            }
+
+            //Reserve the ids of the stop times from the sequence so that they are unique across all files and imports.
+            StopTimeIdAllocator stopTimeIdAllocator = new StopTimeIdAllocator(stopTimeRepository, importBatchSize);
+
+            //Submit all of the files to a bounded pool of workers which process them in helper methods.
+            importProgress.setPhase(ImportPhase.WRITING);
+            int poolSize = Math.min(importThreads > 0 ? importThreads : Runtime.getRuntime().availableProcessors(), csvFiles.size());
+            ExecutorService executorService = Executors.newFixedThreadPool(poolSize);
+            try {
+                Map<String, Future<Boolean>> futures = new LinkedHashMap<>();
+                for ( Path csvFile : csvFiles ) {
+                    futures.put(csvFile.getFileName().toString(), executorService.submit(() ->
+                            loadCSVFile(csvFile, operatorName, validFrom, validTo, importSession, stopTimeIdAllocator, importProgress)));
+                }
+                //Collect the result of each file.
+                for ( Map.Entry<String, Future<Boolean>> future : futures.entrySet() ) {
+                    importResult.addFile(future.getKey(), waitForFile(future.getKey(), future.getValue()));
+                }
+            } finally {
+                executorService.shutdownNow();
+            }
+            importSession.flush();
+            importResult.setStopTimesImported(stopTimeIdAllocator.getNumberOfIds());
+            if ( stageVersion && importResult.isSuccessful() ) {
+                //Build the indexes of the new version and activate it.
+                importProgress.setPhase(ImportPhase.ACTIVATING);
+                timetableVersionService.activateStagingVersion();
+            } else if ( stageVersion ) {
+                //The stop times of the files which were imported are discarded together with the new version.
+                LOGGER.warn("Discarded {} stop times as not all csv files could be imported", importResult.getStopTimesImported());
+                importResult.setStopTimesImported(0);
+            }
+        } catch ( IOException ioException ) {
+            LOGGER.error("Could not read csv files from " + directory, ioException);
+            return importResult;
+        } finally {
+            //Drop the new version if it was not activated so that no partial timetable is left behind.
+            timetableVersionService.discardStagingVersion();
         }
+        LOGGER.info("Imported {} stop times from {} csv files ({} failed)", importResult.getStopTimesImported(),
+                importResult.getSuccessfulFiles().size(), importResult.getFailedFiles().size());
 
-        //If all csv files could be processed successfully, then return true.
-        return true;
+        //Rebuild the timetable index so that the imported stop times can be retrieved.
+        importProgress.setPhase(ImportPhase.INDEXING);
+        timetableIndexService.rebuild();
+        //Remove all cached departures as they may have changed.
+        departureCache.invalidateAll();
+        //Send the departure boards which have changed to their subscribers.
+        departureBoardService.refreshAll();
 
+        //The result is only successful if all csv files could be processed successfully.
+        return importResult;
+
+    }
+
+    /**
+     * This is a private helper method which waits for the import of a single file to finish and returns if it was successful.
+     * @param fileName a <code>String</code> containing the name of the file which is being imported.
+     * @param future a <code>Future</code> object which returns true iff the file was imported successfully.
+     * @return a <code>boolean</code> which is true iff the file was imported successfully.
+     */
+    private boolean waitForFile ( final String fileName, final Future<Boolean> future ) {
+        try {
+            return future.get();
+        } catch ( ExecutionException executionException ) {
+            LOGGER.error("Could not import csv file " + fileName, executionException.getCause());
+            return false;
+        } catch ( InterruptedException interruptedException ) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
     }
 
     /**
      * This method attempts to load the supplied csv file, read all data and upload it to the database. If it is
-     * successful and data goes into the database, then it returns true. Otherwise it returns false.
-     * @param csvFilePath a <code>String</code> containing the path to the csv file to load.
+     * successful and data goes into the database, then it returns true. Otherwise it returns false. This method may
+     * be called for several files at the same time. The records of the file are read one at a time so that only the
+     * current record has to be held in memory.
+     * @param csvFile a <code>Path</code> containing the csv file to load which may be an entry of a zip file.
      * @param operatorName a <code>String</code> containing the name of the operator.
-     * @param validFromDate a <code>String</code> containing the valid from date in format yyyy-MM-dd
-     * @param validToDate a <code>String</code> containing the valid to date in format yyyy-MM-dd
+     * @param validFromDate a <code>LocalDate</code> containing the date from which the stop times are valid.
+     * @param validToDate a <code>LocalDate</code> containing the date until which the stop times are valid.
+     * @param importSession a <code>ImportSession</code> object which collects the stops and routes to write to the database.
+     * @param stopTimeIdAllocator a <code>StopTimeIdAllocator</code> object which hands out the identifiers of the stop times.
+     * @param importProgress a <code>ImportProgress</code> object to add the number of written stop times to.
      * @return a <code>boolean</code> which is true iff the csv file could be read and processed successfully.
      */
-    private boolean loadCSVFile ( final String csvFilePath, final String operatorName, final String validFromDate,
-                                  final String validToDate ) {
-        try {
-            Reader reader = new FileReader(csvFilePath);
-            CSVParser csvParser = new CSVParser(reader, CSVFormat.DEFAULT.withDelimiter(';').withTrim());
+    private boolean loadCSVFile ( final Path csvFile, final String operatorName, final LocalDate validFromDate,
+                                  final LocalDate validToDate, final ImportSession importSession, final StopTimeIdAllocator stopTimeIdAllocator,
+                                  final ImportProgress importProgress ) {
+        try ( CSVParser csvParser = new CSVParser(new BufferedReader(new InputStreamReader(Files.newInputStream(csvFile))),
+                CSVFormat.DEFAULT.withDelimiter(';').withTrim()) ) {
+            StopTimeBatchWriter stopTimeBatchWriter = createBatchWriter(importProgress);
             String destination = ""; ArrayList<List<DayOfWeek>> operatingDays = new ArrayList<>();
             ArrayList<String> routeNumberList = new ArrayList<>();
-            for(CSVRecord record : csvParser.getRecords()) {
+            long rowsParsed = 0;
+            for(CSVRecord record : csvParser) {
                 if ( record.get(0).startsWith("Route:") ) {
                     for ( int i = 1; i < record.size(); i++ ) {
                         if ( record.get(i).isEmpty() ) continue; //Do not add empty data.
-                        importRoute(record.get(i), operatorName);
+                        importRoute(record.get(i), operatorName, importSession);
                         routeNumberList.add(record.get(i));
                     }
                 }
@@ -119,89 +270,79 @@ public class ImportCSVDataService {
                 else if ( record.get(0).isEmpty() || record.get(0).startsWith("Circulation:")) {
                     continue;
                 } else {
-                    if (!hasStopAlreadyBeenImported(record.get(0))) {
-                        importStop(record.get(0));
+                    if (!importSession.hasStop(record.get(0))) {
+                        importStop(record.get(0), importSession);
                     }
                     for ( int i = 1; i < record.size(); i++ ) {
                         if ( record.get(i).isEmpty() ) continue;
+                        LocalTime time = LocalTime.parse(record.get(i), TIME_FORMATTER);
+                        rowsParsed++;
                         StopTimeModel stopTimeModel = StopTimeModel.builder()
-                            .id(stopTimeCounter)
-                            .departureTime(LocalTime.parse(record.get(i), DateTimeFormatter.ofPattern("HH:mm")))
-                            .arrivalTime(LocalTime.parse(record.get(i), DateTimeFormatter.ofPattern("HH:mm")))
+                            .id(stopTimeIdAllocator.nextId())
+                            .departureTime(time)
+                            .arrivalTime(time)
                             .stopName(record.get(0))
                             .destination(destination)
                             .routeNumber(routeNumberList.get(i-1))
-                            .validFromDate(LocalDate.parse(validFromDate, DateTimeFormatter.ofPattern("yyyy-MM-dd")))
-                            .validToDate(LocalDate.parse(validToDate, DateTimeFormatter.ofPattern("yyyy-MM-dd")))
+                            .validFromDate(validFromDate)
+                            .validToDate(validToDate)
                             .operatingDays(operatingDays.get(i-1))
                             .journeyNumber("" + i)
                             .build();
-                        stopTimeRepository.insert(stopTimeModel);
-                        stopTimeCounter++;
+                        stopTimeBatchWriter.add(stopTimeModel);
                     }
                 }
             }
+            stopTimeBatchWriter.flush();
+            importMetrics.recordImport(ImportMetrics.CSV_FORMAT, rowsParsed, stopTimeBatchWriter);
             return true;
         } catch ( IOException exception ) {
-            exception.printStackTrace();
+            LOGGER.error("Could not read csv file " + csvFile, exception);
             return false;
         }
     }
 
     /**
-     * This is a private helper method which determines if the specified route already exists in the database.
-     * @param routeNumber a <code>String</code> object which contains the route number that should be checked.
-     * @return a <code>boolean</code> which is true iff the route number has already been imported to the database.
+     * This is a private helper method which creates the batch writer for the configured storage mode. Stop times are
+     * either written as they are or collected into trips and trip patterns.
+     * @param importProgress a <code>ImportProgress</code> object to add the number of written stop times to.
+     * @return a <code>StopTimeBatchWriter</code> object which writes the stop times to the database.
      */
-    private boolean hasRouteAlreadyBeenImported ( final String routeNumber ) {
-        for ( RouteModel existingRouteModel : routeRepository.findAll() ) {
-            if ( existingRouteModel.getRouteNumber().contentEquals(routeNumber) ) {
-                return true;
-            }
-        }
-        return false;
-    }
-
-    /**
-     * This is a private helper method which determines if the specified stop already exists in the database.
-     * @param stopName a <code>String</code> object which contains the name of the stop that should be checked.
-     * @return a <code>boolean</code> which is true iff the stop has already been imported to the database.
-     */
-    private boolean hasStopAlreadyBeenImported ( final String stopName ) {
-        for ( StopModel stopModel : stopRepository.findAll() ) {
-            if ( stopModel.getName().contentEquals(stopName) ) {
-                return true;
-            }
+    private StopTimeBatchWriter createBatchWriter ( final ImportProgress importProgress ) {
+        if ( tripPatternService.isTripPatternStorage() ) {
+            return new TripBatchWriter(tripPatternService, importBatchSize, importProgress);
         }
-        return false;
+        return new StopTimeBatchWriter(stopTimeRepository, importBatchSize, importProgress);
     }
 
     /**
-     * This is a private helper method to import the supplied route to the database.
+     * This is a private helper method to import the supplied route to the database if it has not already been imported.
      * @param routeNumber a <code>String</code> object with the route numnber that should be imported.
      * @param operatorName a <code>String</code> object which contains the name of the operator of this route.
+     * @param importSession a <code>ImportSession</code> object which collects the routes to write to the database.
      */
-    private void importRoute (final String routeNumber, final String operatorName ) {
-        if ( !hasRouteAlreadyBeenImported(routeNumber) ) {
+    private void importRoute (final String routeNumber, final String operatorName, final ImportSession importSession ) {
+        if ( !importSession.hasRoute(routeNumber) ) {
             RouteModel routeModel = RouteModel.builder()
                     .routeNumber(routeNumber)
                     .id(UUID.randomUUID().toString())
                     .agency(operatorName)
                     .build();
-            routeRepository.insert( routeModel );
+            importSession.addRoute( routeModel );
         }
     }
 
     /**
      * This is a private helper method to import the supplied stop to the database.
      * @param stopName a <code>String</code> object containing the name of the stop to add.
+     * @param importSession a <code>ImportSession</code> object which collects the stops to write to the database.
      */
-    private void importStop ( final String stopName ) {
+    private void importStop ( final String stopName, final ImportSession importSession ) {
         StopModel stopModel = StopModel.builder()
                 .id(UUID.randomUUID().toString())
                 .name(stopName)
                 .build();
-        stopRepository.insert(stopModel);
+        importSession.addStop(stopModel);
     }
 
     /**
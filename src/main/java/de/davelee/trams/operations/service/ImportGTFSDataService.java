@@ -1,26 +1,49 @@
 package de.davelee.trams.operations.service;
 
+import de.davelee.trams.operations.model.ImportPhase;
 import de.davelee.trams.operations.model.RouteModel;
 import de.davelee.trams.operations.model.StopModel;
 import de.davelee.trams.operations.model.StopTimeModel;
+import de.davelee.trams.operations.model.TripFingerprintModel;
 import de.davelee.trams.operations.repository.RouteRepository;
+import de.davelee.trams.operations.repository.StopTimeConverters;
 import de.davelee.trams.operations.repository.StopTimeRepository;
 import de.davelee.trams.operations.repository.StopRepository;
+import de.davelee.trams.operations.repository.TripFingerprintRepository;
+import io.micrometer.core.annotation.Timed;
+import org.onebusaway.csv_entities.CsvInputSource;
+import org.onebusaway.csv_entities.EntityHandler;
 import org.onebusaway.gtfs.impl.GtfsDaoImpl;
 import org.onebusaway.gtfs.model.*;
+import org.onebusaway.gtfs.model.calendar.ServiceDate;
 import org.onebusaway.gtfs.serialization.GtfsReader;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.data.util.Pair;
 import org.springframework.stereotype.Service;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.time.DayOfWeek;
 import java.time.LocalDate;
 import java.time.LocalTime;
 import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
-import java.util.stream.Collectors;
+import java.util.Map;
+import java.util.Set;
 
 /**
  * This class provides a service for importing GTFS files which match the GTFS specification: https://developers.google.com/transit/gtfs
@@ -29,6 +52,10 @@ import java.util.stream.Collectors;
 @Service
 public class ImportGTFSDataService {
 
+    private static final Logger LOGGER = LoggerFactory.getLogger(ImportGTFSDataService.class);
+
+    private static final String STOP_TIMES_FILE_NAME = "stop_times.txt";
+
     @Autowired
     private RouteRepository routeRepository;
 
@@ -38,119 +65,351 @@ public class ImportGTFSDataService {
     @Autowired
     private StopTimeRepository stopTimeRepository;
 
+    @Autowired
+    private TripPatternService tripPatternService;
+
+    @Autowired
+    private TripFingerprintRepository tripFingerprintRepository;
+
+    @Autowired
+    private TimetableVersionService timetableVersionService;
+
+    @Autowired
+    private TimetableIndexService timetableIndexService;
+
+    @Autowired
+    private ImportMetrics importMetrics;
+
+    @Autowired
+    private DepartureCache departureCache;
+
+    @Autowired
+    private DepartureBoardService departureBoardService;
+
+    @Value("${import.batchSize:" + StopTimeBatchWriter.DEFAULT_BATCH_SIZE + "}")
+    private int importBatchSize;
+
     /**
-     * Read a gtfs folder and extract all departures from the supplied file and store them in the mongo db.
-     * @param directory a <code>String</code> containing the directory to load the data from.
+     * Read a gtfs folder or zip file and extract all departures from the supplied file and store them in the mongo db.
+     * The entries of a zip file are read directly without extracting them to disk. The stop times are streamed row by
+     * row and written to the database in batches so that only the small lookup tables (agencies, routes, stops, trips
+     * and calendars) of the feed are held in memory, regardless of the size of the feed.
+     * @param directory a <code>String</code> containing the directory or zip file to load the data from.
      * @param routesToImport a <code>List</code> of <code>String</code> containing the list of routes to import. If the list is empty then all routes
      *                       should be imported.
      * @return a <code>boolean</code> which is true iff the file could be read successfully.
      */
     public boolean readGTFSFile(final String directory, final List<String> routesToImport) {
-        //Set counter for stopTime objects to ensure a valid identifier.
-        int stopTimeCounter = 0;
+        return readGTFSFile(directory, routesToImport, new ImportProgress());
+    }
 
+    /**
+     * Read a gtfs folder or zip file and store all departures in the mongo db as described above while reporting the
+     * phase and the number of stop times written to the supplied progress.
+     * @param directory a <code>String</code> containing the directory or zip file to load the data from.
+     * @param routesToImport a <code>List</code> of <code>String</code> containing the list of routes to import. If the list is empty then all routes
+     *                       should be imported.
+     * @param importProgress a <code>ImportProgress</code> object which is updated during the import.
+     * @return a <code>boolean</code> which is true iff the file could be read successfully.
+     */
+    public boolean readGTFSFile(final String directory, final List<String> routesToImport, final ImportProgress importProgress) {
+        return readGTFSFile(directory, routesToImport, false, importProgress);
+    }
+
+    /**
+     * Read a gtfs folder or zip file and store all departures in the mongo db as described above. The fingerprints of the
+     * imported trips and their calendars are stored as well. If the import is incremental, then the stop times of each
+     * trip are held in memory until the next trip starts so that the fingerprint of the trip can be compared with the
+     * stored fingerprint and only the trips which are new or have changed are written while the feed is read once. Only
+     * the stop times of trips which are not listed together in the feed have to be read a second time. The stop times of
+     * changed and removed trips are deleted and the stop times of trips whose calendar has changed are updated with bulk
+     * writes. Trips which were imported without fingerprints are regarded as new. Incremental imports are only possible if journeys are stored as stop times. If journeys are stored
+     * as stop times and versioning is enabled, the stop times are written into a new version of the timetable in which the
+     * stop times of the imported routes are replaced. The new version is only activated once the import has finished.
+     * @param directory a <code>String</code> containing the directory or zip file to load the data from.
+     * @param routesToImport a <code>List</code> of <code>String</code> containing the list of routes to import. If the list is empty then all routes
+     *                       should be imported.
+     * @param incremental a <code>boolean</code> which is true iff only the trips which have changed since the last import should be written.
+     * @param importProgress a <code>ImportProgress</code> object which is updated during the import.
+     * @return a <code>boolean</code> which is true iff the file could be read successfully.
+     */
+    @Timed(value = "import.duration", extraTags = {"format", ImportMetrics.GTFS_FORMAT})
+    public boolean readGTFSFile(final String directory, final List<String> routesToImport, final boolean incremental,
+                                final ImportProgress importProgress) {
+        importProgress.setPhase(ImportPhase.READING);
         //Check that the directory exists - otherwise return false.
         if ( !directory.startsWith("/") && ImportGTFSDataService.class.getClassLoader().getResource(directory) == null ) {
             return false;
         }
-        //Create a new reader with directory and a variable to store all data.
-        try {
+        //Open the directory or zip file so that the files can be read without extracting them.
+        Path location = directory.startsWith("/") ? Paths.get(directory) :
+                new File(ImportGTFSDataService.class.getClassLoader().getResource(directory).getFile()).toPath();
+        try ( FeedArchive feedArchive = FeedArchive.open(location) ) {
+            //Create a new reader for the directory containing the feed and a store which does not keep the stop times.
             GtfsReader reader = new GtfsReader();
-            reader.setInputLocation(directory.startsWith("/") ?
-                    new File(directory) :
-                    new File(ImportGTFSDataService.class.getClassLoader().getResource(directory).getFile()));
-            GtfsDaoImpl store = new GtfsDaoImpl();
+            reader.setInputSource(new PathCsvInputSource(feedArchive.findDirectoryContaining(STOP_TIMES_FILE_NAME)));
+            GtfsDaoImpl store = new LookupTableGtfsDao();
             reader.setEntityStore(store);
 
-            //Run the importer for data from the files.
+            //Run the importer for all files except the stop times so that only the lookup tables are loaded.
+            reader.getEntityClasses().remove(StopTime.class);
             reader.run();
 
+            //Start a new import session to detect existing stops and routes.
+            ImportSession importSession = new ImportSession(stopRepository, routeRepository);
+
             //Import the route information.
             if (!routesToImport.isEmpty()) {
                 //Import only the selected routes as long as routesToImport is not empty.
                 for (Route route : store.getAllRoutes()) {
                     if (shouldRouteBeImported(route, routesToImport)) {
-                        importRoute(route, store.getAgencyForId(route.getAgency().getId()));
+                        importRoute(route, store.getAgencyForId(route.getAgency().getId()), importSession);
                     }
                 }
             } else {
                 //Otherwise import all routes as routesToImport is empty.
                 for (Route route : store.getAllRoutes()) {
-                    importRoute(route, store.getAgencyForId(route.getAgency().getId()));
+                    importRoute(route, store.getAgencyForId(route.getAgency().getId()), importSession);
                 }
             }
 
-            //Import the stop time information.
-            for (StopTime stopTime : store.getAllStopTimes()) {
-                if ((!routesToImport.isEmpty() && shouldRouteBeImported(stopTime.getTrip().getRoute(), routesToImport))) {
+            //Resolve the validity and operating days of each service once before importing the stop times.
+            Map<String, ServiceDays> serviceDaysMap = resolveServiceDays(store);
 
-                    //Do not add duplicate stops to the database.
-                    if (!hasStopAlreadyBeenImported(stopTime.getStop().getName())) {
-                        importStop(stopTime.getStop());
-                    }
+            //Fingerprints refer to the ids of the stop times so they are only stored if journeys are stored as stop times.
+            TripFingerprintSession tripFingerprintSession = null;
+            if ( !tripPatternService.isTripPatternStorage() ) {
+                tripFingerprintSession = new TripFingerprintSession(tripFingerprintRepository, routesToImport, resolveCalendarFingerprints(serviceDaysMap));
+            } else if ( incremental ) {
+                LOGGER.warn("Incremental imports require journeys to be stored as stop times so all trips are imported");
+            }
+            final boolean compareTrips = incremental && tripFingerprintSession != null;
 
-                    //Add the StopTime information to the database.
-                    List<ServiceCalendar> serviceCalendarList = store.getAllCalendars().stream().filter(sc -> sc.getServiceId().getId().contentEquals(stopTime.getTrip().getServiceId().getId())).collect(Collectors.toList());
-                    StopTimeModel stopTimeModel = StopTimeModel.builder()
-                            .id(stopTimeCounter)
-                            .departureTime(LocalTime.parse(convertTimeToHoursAndMinutes(stopTime.getDepartureTime()), DateTimeFormatter.ofPattern("HH:mm")))
-                            .arrivalTime(LocalTime.parse(convertTimeToHoursAndMinutes(stopTime.getArrivalTime()), DateTimeFormatter.ofPattern("HH:mm")))
-                            .stopName(stopTime.getStop().getName())
-                            .destination(stopTime.getTrip().getTripHeadsign())
-                            .routeNumber(stopTime.getTrip().getRoute().getShortName())
-                            .journeyNumber(stopTime.getTrip().getId().getId())
-                            .validFromDate( serviceCalendarList.size() == 1 ? LocalDate.of(serviceCalendarList.get(0).getStartDate().getYear(), serviceCalendarList.get(0).getStartDate().getMonth(), serviceCalendarList.get(0).getStartDate().getDay()): null )
-                            .validToDate( serviceCalendarList.size() == 1 ? LocalDate.of(serviceCalendarList.get(0).getEndDate().getYear(), serviceCalendarList.get(0).getEndDate().getMonth(), serviceCalendarList.get(0).getEndDate().getDay()): null )
-                            .operatingDays(serviceCalendarList.size() == 1 ? getOperatingDays(serviceCalendarList.get(0)) : null)
-                            .build();
-                    stopTimeRepository.insert(stopTimeModel);
-                    stopTimeCounter++;
+            //Write the stop times into a new version of the timetable which is only activated once it is complete.
+            final boolean stageVersion = timetableVersionService.isVersioningEnabled() && !tripPatternService.isTripPatternStorage();
+            if ( stageVersion && compareTrips ) {
+                //An incremental import only replaces the changed trips so the stop times of all routes are kept.
+                timetableVersionService.createStagingVersion(Collections.emptyList());
+            } else if ( stageVersion && routesToImport.isEmpty() ) {
+                //An import of the whole feed replaces the whole timetable.
+                timetableVersionService.createEmptyStagingVersion();
+            } else if ( stageVersion ) {
+                //An import of selected routes replaces the stop times of these routes.
+                timetableVersionService.createStagingVersion(routesToImport);
+            }
+
+            //Stream the stop time information and write it in batches.
+            StopTimeBatchWriter stopTimeBatchWriter = createBatchWriter(importProgress);
+            StopTimeHandler stopTimeHandler = new StopTimeHandler(routesToImport, serviceDaysMap, importSession, stopTimeBatchWriter,
+                    tripFingerprintSession, new StopTimeIdAllocator(stopTimeRepository, importBatchSize), compareTrips);
+            reader.addEntityHandler(stopTimeHandler);
+            if ( compareTrips ) {
+                //Compare each trip of the feed with the stored trip once it has been read and only write it if it is new or has changed.
+                importProgress.setPhase(ImportPhase.COMPARING);
+                reader.readEntities(StopTime.class);
+                Set<String> scatteredTripIds = stopTimeHandler.finishComparison();
+                stopTimeBatchWriter.flush();
+                List<String> changedTripIds = removeAndUpdateTrips(tripFingerprintSession, serviceDaysMap, scatteredTripIds);
+                //Trips which were not listed together could only be compared once the whole feed was read so they are written now.
+                Set<String> tripIdsToWrite = new HashSet<>(changedTripIds);
+                tripIdsToWrite.retainAll(scatteredTripIds);
+                if ( !tripIdsToWrite.isEmpty() ) {
+                    importProgress.setPhase(ImportPhase.WRITING);
+                    stopTimeHandler.writeTrips(tripIdsToWrite);
+                    reader.readEntities(StopTime.class);
                 }
+            } else {
+                importProgress.setPhase(ImportPhase.WRITING);
+                reader.readEntities(StopTime.class);
+            }
+            reader.close();
+            stopTimeBatchWriter.flush();
+            if ( stageVersion ) {
+                //Build the indexes of the new version and activate it before the fingerprints refer to its stop times.
+                importProgress.setPhase(ImportPhase.ACTIVATING);
+                timetableVersionService.activateStagingVersion();
+            }
+            if ( tripFingerprintSession != null ) {
+                //The new version no longer contains the trips which were removed from the imported routes.
+                tripFingerprintSession.flush(compareTrips || stageVersion);
             }
+            importMetrics.recordImport(ImportMetrics.GTFS_FORMAT, stopTimeHandler.rowsParsed, stopTimeBatchWriter);
+            importSession.flush();
+            LOGGER.info("Imported {} stop times in {} batches ({} rows/sec)", stopTimeBatchWriter.getRowsWritten(),
+                    stopTimeBatchWriter.getBatchesWritten(), String.format("%.1f", stopTimeBatchWriter.getRowsPerSecond()));
+            //Rebuild the timetable index so that the imported stop times can be retrieved.
+            importProgress.setPhase(ImportPhase.INDEXING);
+            timetableIndexService.rebuild();
+            //Remove all cached departures as they may have changed.
+            departureCache.invalidateAll();
+            //Send the departure boards which have changed to their subscribers.
+            departureBoardService.refreshAll();
             return true;
         } catch ( IOException ioException ) {
             return false;
+        } finally {
+            //Drop the new version if the import did not finish so that no partial timetable is left behind.
+            timetableVersionService.discardStagingVersion();
         }
     }
 
     /**
-     * This is a private helper method which determines that a route should be imported if it is contained in the list
-     * of routes to import.
-     * @param route a <code>Route</code> object which contains the route that would be imported.
-     * @param routesToImport a <code>List</code> of <code>String</code> objects containing the lists which should be imported.
-     * @return a <code>boolean</code> which is true iff the route should be imported.
+     * This is a private helper method which resolves the validity dates, operating days and exceptions of every service
+     * in the feed from the calendars and calendar dates so that each stop time can look up its service directly.
+     * Services which are only defined by calendar dates are valid between their first and last additional date and only
+     * run on the additional dates.
+     * @param store a <code>GtfsDaoImpl</code> object containing the calendars and calendar dates of the feed.
+     * @return a <code>Map</code> with the service id as key and the resolved <code>ServiceDays</code> as value.
      */
-    private boolean shouldRouteBeImported ( final Route route, final List<String> routesToImport ) {
-        for ( String routeNumber : routesToImport ) {
-            if (route.getShortName().contentEquals(routeNumber)) {
-                return true;
+    private Map<String, ServiceDays> resolveServiceDays ( final GtfsDaoImpl store ) {
+        Map<String, ServiceDays> serviceDaysMap = new HashMap<>();
+        //Process the regular calendars first.
+        for ( ServiceCalendar serviceCalendar : store.getAllCalendars() ) {
+            serviceDaysMap.put(serviceCalendar.getServiceId().getId(), new ServiceDays(convertToLocalDate(serviceCalendar.getStartDate()),
+                    convertToLocalDate(serviceCalendar.getEndDate()), getOperatingDays(serviceCalendar)));
+        }
+        //Then add the exceptions.
+        for ( ServiceCalendarDate serviceCalendarDate : store.getAllCalendarDates() ) {
+            ServiceDays serviceDays = serviceDaysMap.computeIfAbsent(serviceCalendarDate.getServiceId().getId(),
+                    serviceId -> new ServiceDays(null, null, new ArrayList<>()));
+            LocalDate date = convertToLocalDate(serviceCalendarDate.getDate());
+            if ( serviceCalendarDate.getExceptionType() == ServiceCalendarDate.EXCEPTION_TYPE_ADD ) {
+                serviceDays.additionalDates = addDate(serviceDays.additionalDates, date);
+                serviceDays.validFromDate = serviceDays.validFromDate == null || date.isBefore(serviceDays.validFromDate) ? date : serviceDays.validFromDate;
+                serviceDays.validToDate = serviceDays.validToDate == null || date.isAfter(serviceDays.validToDate) ? date : serviceDays.validToDate;
+            } else if ( serviceCalendarDate.getExceptionType() == ServiceCalendarDate.EXCEPTION_TYPE_REMOVE ) {
+                serviceDays.excludedDates = addDate(serviceDays.excludedDates, date);
             }
         }
-        return false;
+        return serviceDaysMap;
     }
 
     /**
-     * This is a private helper method which determines if the specified route already exists in the database.
-     * @param route a <code>Route</code> object which contains the route that should be checked.
-     * @return a <code>boolean</code> which is true iff the route has already been imported to the database.
+     * This is a private helper method which returns the fingerprint of the validity, operating days and exceptions of every service.
+     * @param serviceDaysMap a <code>Map</code> with the service id as key and the resolved <code>ServiceDays</code> as value.
+     * @return a <code>Map</code> with the service id as key and the fingerprint of its calendar as value.
      */
-    private boolean hasRouteAlreadyBeenImported ( final Route route ) {
-        for ( RouteModel existingRouteModel : routeRepository.findAll() ) {
-            if ( existingRouteModel.getRouteNumber().contentEquals(route.getShortName()) ) {
-                return true;
+    private Map<String, String> resolveCalendarFingerprints ( final Map<String, ServiceDays> serviceDaysMap ) {
+        Map<String, String> calendarFingerprints = new HashMap<>();
+        for ( Map.Entry<String, ServiceDays> serviceDays : serviceDaysMap.entrySet() ) {
+            calendarFingerprints.put(serviceDays.getKey(), TripFingerprintSession.fingerprint(serviceDays.getValue().validFromDate + "|"
+                    + serviceDays.getValue().validToDate + "|" + serviceDays.getValue().operatingDays + "|"
+                    + serviceDays.getValue().additionalDates + "|" + serviceDays.getValue().excludedDates));
+        }
+        return calendarFingerprints;
+    }
+
+    /**
+     * This is a private helper method which deletes the stop times of the changed and removed trips and updates the
+     * stop times of the trips whose calendar has changed with bulk writes after the trips of the feed have been compared.
+     * The stop times which have already been written for trips which were not listed together in the feed are deleted
+     * as well since these trips could only be compared once the whole feed was read.
+     * @param tripFingerprintSession a <code>TripFingerprintSession</code> object containing the compared fingerprints.
+     * @param serviceDaysMap a <code>Map</code> with the service id as key and the resolved <code>ServiceDays</code> as value.
+     * @param scatteredTripIds a <code>Set</code> of <code>String</code> containing the ids of the trips which were not listed together.
+     * @return a <code>List</code> of <code>String</code> containing the ids of the new and changed trips.
+     */
+    private List<String> removeAndUpdateTrips ( final TripFingerprintSession tripFingerprintSession, final Map<String, ServiceDays> serviceDaysMap,
+                                                final Set<String> scatteredTripIds ) {
+        List<String> changedTripIds = tripFingerprintSession.getChangedTripIds();
+        List<TripFingerprintModel> tripsToDelete = new ArrayList<>(tripFingerprintSession.getReplacedTrips());
+        tripsToDelete.addAll(tripFingerprintSession.getRemovedTrips());
+        List<Query> deletes = new ArrayList<>();
+        for ( TripFingerprintModel tripFingerprintModel : tripsToDelete ) {
+            if ( !tripFingerprintModel.getStopTimeIdRanges().isEmpty() ) {
+                deletes.add(selectStopTimes(tripFingerprintModel.getStopTimeIdRanges()));
             }
         }
-        return false;
+        for ( String scatteredTripId : scatteredTripIds ) {
+            List<Integer> stopTimeIdRanges = tripFingerprintSession.removeStopTimeIds(scatteredTripId);
+            if ( !stopTimeIdRanges.isEmpty() ) {
+                deletes.add(selectStopTimes(stopTimeIdRanges));
+            }
+        }
+        List<TripFingerprintModel> tripsWithChangedCalendar = tripFingerprintSession.getTripsWithChangedCalendar();
+        List<Pair<Query, Update>> updates = new ArrayList<>();
+        for ( TripFingerprintModel tripFingerprintModel : tripsWithChangedCalendar ) {
+            if ( !tripFingerprintModel.getStopTimeIdRanges().isEmpty() ) {
+                ServiceDays serviceDays = serviceDaysMap.getOrDefault(tripFingerprintSession.getServiceId(tripFingerprintModel.getId()), ServiceDays.EMPTY);
+                updates.add(Pair.of(selectStopTimes(tripFingerprintModel.getStopTimeIdRanges()), new Update()
+                        .set("validFromDate", serviceDays.validFromDate)
+                        .set("validToDate", serviceDays.validToDate)
+                        .set("operatingDayMask", StopTimeConverters.toMask(serviceDays.operatingDays))
+                        .set("additionalDates", serviceDays.additionalDates)
+                        .set("excludedDates", serviceDays.excludedDates)));
+            }
+        }
+        //Write the deletes and updates in batches so that each bulk write stays small.
+        final int batchSize = importBatchSize > 0 ? importBatchSize : StopTimeBatchWriter.DEFAULT_BATCH_SIZE;
+        for ( int i = 0; i < deletes.size(); i += batchSize ) {
+            stopTimeRepository.bulkDelete(deletes.subList(i, Math.min(i + batchSize, deletes.size())));
+        }
+        for ( int i = 0; i < updates.size(); i += batchSize ) {
+            stopTimeRepository.bulkUpdate(updates.subList(i, Math.min(i + batchSize, updates.size())));
+        }
+        LOGGER.info("Compared {} trips: {} new or changed, {} with a changed calendar and {} removed", tripFingerprintSession.getNumberOfTrips(),
+                changedTripIds.size(), tripsWithChangedCalendar.size(), tripFingerprintSession.getRemovedTrips().size());
+        return changedTripIds;
+    }
+
+    /**
+     * This is a private helper method which returns the query selecting the stop times of a trip by their ids.
+     * @param stopTimeIdRanges a <code>List</code> of <code>Integer</code> containing the first id and the number of ids of each range.
+     * @return a <code>Query</code> object selecting the stop times of the trip.
+     */
+    private Query selectStopTimes ( final List<Integer> stopTimeIdRanges ) {
+        Criteria[] rangeCriteria = new Criteria[stopTimeIdRanges.size() / 2];
+        for ( int i = 0; i < rangeCriteria.length; i++ ) {
+            int firstId = stopTimeIdRanges.get(2 * i);
+            rangeCriteria[i] = Criteria.where("id").gte(firstId).lt(firstId + stopTimeIdRanges.get(2 * i + 1));
+        }
+        return Query.query(rangeCriteria.length == 1 ? rangeCriteria[0] : new Criteria().orOperator(rangeCriteria));
+    }
+
+    /**
+     * This is a private helper method which adds a date to a list of dates which may be null if it does not exist yet.
+     * @param dates a <code>List</code> of <code>LocalDate</code> objects which may be null.
+     * @param date a <code>LocalDate</code> object containing the date to add.
+     * @return a <code>List</code> of <code>LocalDate</code> objects containing the supplied date.
+     */
+    private List<LocalDate> addDate ( final List<LocalDate> dates, final LocalDate date ) {
+        List<LocalDate> newDates = dates != null ? dates : new ArrayList<>();
+        newDates.add(date);
+        return newDates;
+    }
+
+    /**
+     * This is a private helper method which converts a GTFS service date to a <code>LocalDate</code> object.
+     * @param serviceDate a <code>ServiceDate</code> object containing the date to convert.
+     * @return a <code>LocalDate</code> object containing the same date.
+     */
+    private LocalDate convertToLocalDate ( final ServiceDate serviceDate ) {
+        return LocalDate.of(serviceDate.getYear(), serviceDate.getMonth(), serviceDate.getDay());
     }
 
     /**
-     * This is a private helper method which determines if the specified stop already exists in the database.
-     * @param stopName a <code>String</code> object which contains the name of the stop that should be checked.
-     * @return a <code>boolean</code> which is true iff the stop has already been imported to the database.
+     * This is a private helper method which creates the batch writer for the configured storage mode. Stop times are
+     * either written as they are or collected into trips and trip patterns.
+     * @param importProgress a <code>ImportProgress</code> object to add the number of written stop times to.
+     * @return a <code>StopTimeBatchWriter</code> object which writes the stop times to the database.
+     */
+    private StopTimeBatchWriter createBatchWriter ( final ImportProgress importProgress ) {
+        if ( tripPatternService.isTripPatternStorage() ) {
+            return new TripBatchWriter(tripPatternService, importBatchSize, importProgress);
+        }
+        return new StopTimeBatchWriter(stopTimeRepository, importBatchSize, importProgress);
+    }
+
+    /**
+     * This is a private helper method which determines that a route should be imported if it is contained in the list
+     * of routes to import.
+     * @param route a <code>Route</code> object which contains the route that would be imported.
+     * @param routesToImport a <code>List</code> of <code>String</code> objects containing the lists which should be imported.
+     * @return a <code>boolean</code> which is true iff the route should be imported.
      */
-    private boolean hasStopAlreadyBeenImported ( final String stopName ) {
-        for ( StopModel stopModel : stopRepository.findAll() ) {
-            if ( stopModel.getName().contentEquals(stopName) ) {
+    private boolean shouldRouteBeImported ( final Route route, final List<String> routesToImport ) {
+        for ( String routeNumber : routesToImport ) {
+            if (route.getShortName().contentEquals(routeNumber)) {
                 return true;
             }
         }
@@ -158,13 +417,14 @@ public class ImportGTFSDataService {
     }
 
     /**
-     * This is a private helper method to import the supplied route to the database.
+     * This is a private helper method to import the supplied route to the database if it has not already been imported.
      * @param route a <code>Route</code> object which should be imported.
      * @param agency a <code>Agency</code> object which contains the name of the operator of this route.
+     * @param importSession a <code>ImportSession</code> object which collects the routes to write to the database.
      */
-    private void importRoute ( final Route route, final Agency agency ) {
-        if ( !hasRouteAlreadyBeenImported(route) ) {
-            routeRepository.insert( RouteModel.builder()
+    private void importRoute ( final Route route, final Agency agency, final ImportSession importSession ) {
+        if ( !importSession.hasRoute(route.getShortName()) ) {
+            importSession.addRoute( RouteModel.builder()
                     .routeNumber(route.getShortName())
                     .id(route.getId().getId())
                     .agency(agency.getName())
@@ -175,9 +435,10 @@ public class ImportGTFSDataService {
     /**
      * This is a private helper method to import the supplied stop to the database.
      * @param stop a <code>Stop</code> object which should be imported.
+     * @param importSession a <code>ImportSession</code> object which collects the stops to write to the database.
      */
-    private void importStop ( final Stop stop ) {
-        stopRepository.insert(StopModel.builder()
+    private void importStop ( final Stop stop, final ImportSession importSession ) {
+        importSession.addStop(StopModel.builder()
                 .id(stop.getId().getId())
                 .latitude(stop.getLat())
                 .longitude(stop.getLon())
@@ -245,4 +506,289 @@ public class ImportGTFSDataService {
         return operatingDays;
     }
 
+    /**
+     * This class represents the resolved validity dates, operating days and exceptions of a service in a GTFS feed.
+     */
+    private static final class ServiceDays {
+
+        /**
+         * The service days which are used for stop times whose service could not be found in the feed.
+         */
+        private static final ServiceDays EMPTY = new ServiceDays(null, null, null);
+
+        private LocalDate validFromDate;
+
+        private LocalDate validToDate;
+
+        private final List<DayOfWeek> operatingDays;
+
+        private List<LocalDate> additionalDates;
+
+        private List<LocalDate> excludedDates;
+
+        /**
+         * Create new service days with the supplied validity dates and operating days and without any exceptions.
+         * @param validFromDate a <code>LocalDate</code> object containing the date from which the service runs (inclusive).
+         * @param validToDate a <code>LocalDate</code> object containing the date until which the service runs (inclusive).
+         * @param operatingDays a <code>List</code> of <code>DayOfWeek</code> objects containing the days on which the service runs.
+         */
+        private ServiceDays ( final LocalDate validFromDate, final LocalDate validToDate, final List<DayOfWeek> operatingDays ) {
+            this.validFromDate = validFromDate;
+            this.validToDate = validToDate;
+            this.operatingDays = operatingDays;
+        }
+
+    }
+
+    /**
+     * This class provides the files of a GTFS feed from a directory which may be part of a zip file system.
+     */
+    private static final class PathCsvInputSource implements CsvInputSource {
+
+        private final Path directory;
+
+        /**
+         * Create a new input source which reads the files from the supplied directory.
+         * @param directory a <code>Path</code> object containing the directory of the feed.
+         */
+        private PathCsvInputSource ( final Path directory ) {
+            this.directory = directory;
+        }
+
+        /**
+         * Return true iff the directory contains a file with the supplied name.
+         * @param name a <code>String</code> containing the name of the file.
+         * @return a <code>boolean</code> which is true iff the file exists.
+         */
+        @Override
+        public boolean hasResource ( final String name ) {
+            return Files.isRegularFile(directory.resolve(name));
+        }
+
+        /**
+         * Open the file with the supplied name for reading.
+         * @param name a <code>String</code> containing the name of the file.
+         * @return a <code>InputStream</code> object to read the contents of the file.
+         * @throws IOException if the file could not be opened.
+         */
+        @Override
+        public InputStream getResource ( final String name ) throws IOException {
+            return Files.newInputStream(directory.resolve(name));
+        }
+
+        /**
+         * Nothing needs to be closed since the files are closed by the reader and the directory by the feed archive.
+         */
+        @Override
+        public void close ( ) {
+        }
+
+    }
+
+    /**
+     * This class is a GTFS store which keeps all entities of the feed in memory except the stop times, which are
+     * handled one at a time by the <code>StopTimeHandler</code> while the feed is being read.
+     */
+    private static final class LookupTableGtfsDao extends GtfsDaoImpl {
+
+        /**
+         * Save the supplied entity in memory unless it is a stop time.
+         * @param entity a <code>Object</code> containing the entity which was read from the feed.
+         */
+        @Override
+        public void saveEntity ( final Object entity ) {
+            if ( !(entity instanceof StopTime) ) {
+                super.saveEntity(entity);
+            }
+        }
+
+    }
+
+    /**
+     * This class converts each stop time as soon as it has been read from the feed and adds it to the batch writer so
+     * that the stop times never have to be held in memory together. The stop times are added to the fingerprints of
+     * their trips if fingerprints are stored. If trips are compared, then only the stop times of the current trip are
+     * held in memory until the next trip starts and they are only written if the trip is new or has changed.
+     */
+    private final class StopTimeHandler implements EntityHandler {
+
+        private final List<String> routesToImport;
+
+        private final Map<String, ServiceDays> serviceDaysMap;
+
+        private final ImportSession importSession;
+
+        private final StopTimeBatchWriter stopTimeBatchWriter;
+
+        private final TripFingerprintSession tripFingerprintSession;
+
+        private final StopTimeIdAllocator stopTimeIdAllocator;
+
+        //True iff trips are compared with the stored trips before their stop times are written.
+        private boolean comparing;
+
+        //Ids of the trips whose stop times are written which is null if the stop times of all trips are written.
+        private Set<String> tripIdsToWrite;
+
+        //Id of the trip whose stop times are held in memory while it is compared.
+        private String currentTripId;
+
+        //Stop times of the current trip as they were read from the feed and as they are stored.
+        private final List<StopTime> currentStopTimes = new ArrayList<>();
+
+        private final List<StopTimeModel> currentStopTimeModels = new ArrayList<>();
+
+        //Ids of the trips which have been compared and of those whose stop times were not listed together in the feed.
+        private final Set<String> comparedTripIds = new HashSet<>();
+
+        private final Set<String> scatteredTripIds = new HashSet<>();
+
+        //Number of stop times read from the feed including those of routes which are not imported.
+        private long rowsParsed;
+
+        /**
+         * Create a new handler which imports the stop times of the supplied routes.
+         * @param routesToImport a <code>List</code> of <code>String</code> containing the list of routes to import.
+         * @param serviceDaysMap a <code>Map</code> with the service id as key and the resolved <code>ServiceDays</code> as value.
+         * @param importSession a <code>ImportSession</code> object which collects the stops to write to the database.
+         * @param stopTimeBatchWriter a <code>StopTimeBatchWriter</code> object which writes the stop times to the database.
+         * @param tripFingerprintSession a <code>TripFingerprintSession</code> object which collects the fingerprints of
+         *                               the trips which is null if no fingerprints are stored.
+         * @param stopTimeIdAllocator a <code>StopTimeIdAllocator</code> object which hands out the ids of the written stop times.
+         * @param comparing a <code>boolean</code> which is true iff trips should be compared before they are written.
+         */
+        private StopTimeHandler ( final List<String> routesToImport, final Map<String, ServiceDays> serviceDaysMap,
+                                  final ImportSession importSession, final StopTimeBatchWriter stopTimeBatchWriter,
+                                  final TripFingerprintSession tripFingerprintSession, final StopTimeIdAllocator stopTimeIdAllocator,
+                                  final boolean comparing ) {
+            this.routesToImport = routesToImport;
+            this.serviceDaysMap = serviceDaysMap;
+            this.importSession = importSession;
+            this.stopTimeBatchWriter = stopTimeBatchWriter;
+            this.tripFingerprintSession = tripFingerprintSession;
+            this.stopTimeIdAllocator = stopTimeIdAllocator;
+            this.comparing = comparing;
+        }
+
+        /**
+         * Compare the last trip of the feed once all stop times have been read.
+         * @return a <code>Set</code> of <code>String</code> containing the ids of the trips whose stop times were not
+         * listed together in the feed so that they could not be compared while the feed was read.
+         */
+        private Set<String> finishComparison ( ) {
+            finishTrip();
+            comparing = false;
+            return scatteredTripIds;
+        }
+
+        /**
+         * Write only the stop times of the supplied trips when the stop times are read the next time. The stop times
+         * have already been added to the fingerprints of their trips.
+         * @param tripIds a <code>Set</code> of <code>String</code> containing the ids of the trips to write.
+         */
+        private void writeTrips ( final Set<String> tripIds ) {
+            this.tripIdsToWrite = tripIds;
+        }
+
+        /**
+         * Import the supplied entity if it is a stop time of a route which should be imported.
+         * @param entity a <code>Object</code> containing the entity which was read from the feed.
+         */
+        @Override
+        public void handleEntity ( final Object entity ) {
+            if ( !(entity instanceof StopTime) ) {
+                return;
+            }
+            StopTime stopTime = (StopTime) entity;
+            if ( tripIdsToWrite != null ) {
+                //The stop times are read a second time so they have already been counted.
+                if ( tripIdsToWrite.contains(stopTime.getTrip().getId().getId()) ) {
+                    writeStopTime(stopTime, convertStopTime(stopTime));
+                }
+                return;
+            }
+            rowsParsed++;
+            if ( routesToImport.isEmpty() || shouldRouteBeImported(stopTime.getTrip().getRoute(), routesToImport) ) {
+                final String tripId = stopTime.getTrip().getId().getId();
+                StopTimeModel stopTimeModel = convertStopTime(stopTime);
+                if ( tripFingerprintSession != null ) {
+                    tripFingerprintSession.addStopTime(tripId, stopTime.getTrip().getServiceId().getId(), stopTime.getStopSequence(), stopTimeModel);
+                }
+                if ( !comparing ) {
+                    writeStopTime(stopTime, stopTimeModel);
+                    return;
+                }
+                //Hold the stop times of the trip in memory until the next trip starts.
+                if ( !tripId.equals(currentTripId) ) {
+                    finishTrip();
+                    if ( !comparedTripIds.add(tripId) ) {
+                        scatteredTripIds.add(tripId);
+                    }
+                    currentTripId = tripId;
+                }
+                currentStopTimes.add(stopTime);
+                currentStopTimeModels.add(stopTimeModel);
+            }
+        }
+
+        /**
+         * This is a private helper method which writes the stop times of the current trip if the trip is new or has
+         * changed and then removes them from memory. Trips which were not listed together are not written here as the
+         * fingerprint of the trip is only complete once the whole feed has been read.
+         */
+        private void finishTrip ( ) {
+            if ( currentTripId != null && !scatteredTripIds.contains(currentTripId) && tripFingerprintSession.isChanged(currentTripId) ) {
+                for ( int i = 0; i < currentStopTimes.size(); i++ ) {
+                    writeStopTime(currentStopTimes.get(i), currentStopTimeModels.get(i));
+                }
+            }
+            currentTripId = null;
+            currentStopTimes.clear();
+            currentStopTimeModels.clear();
+        }
+
+        /**
+         * This is a private helper method which converts the supplied stop time into the form in which it is stored.
+         * The id of the stop time is only set once it is written.
+         * @param stopTime a <code>StopTime</code> object which was read from the feed.
+         * @return a <code>StopTimeModel</code> object containing the stop time as it is stored.
+         */
+        private StopTimeModel convertStopTime ( final StopTime stopTime ) {
+            ServiceDays serviceDays = serviceDaysMap.getOrDefault(stopTime.getTrip().getServiceId().getId(), ServiceDays.EMPTY);
+            return StopTimeModel.builder()
+                    .departureTime(LocalTime.parse(convertTimeToHoursAndMinutes(stopTime.getDepartureTime()), DateTimeFormatter.ofPattern("HH:mm")))
+                    .arrivalTime(LocalTime.parse(convertTimeToHoursAndMinutes(stopTime.getArrivalTime()), DateTimeFormatter.ofPattern("HH:mm")))
+                    .stopName(stopTime.getStop().getName())
+                    .destination(stopTime.getTrip().getTripHeadsign())
+                    .routeNumber(stopTime.getTrip().getRoute().getShortName())
+                    .journeyNumber(stopTime.getTrip().getId().getId())
+                    .validFromDate(serviceDays.validFromDate)
+                    .validToDate(serviceDays.validToDate)
+                    .operatingDays(serviceDays.operatingDays)
+                    .additionalDates(serviceDays.additionalDates)
+                    .excludedDates(serviceDays.excludedDates)
+                    .build();
+        }
+
+        /**
+         * This is a private helper method which gives the supplied stop time a new id and adds it to the batch writer.
+         * @param stopTime a <code>StopTime</code> object which was read from the feed.
+         * @param stopTimeModel a <code>StopTimeModel</code> object containing the stop time as it is stored.
+         */
+        private void writeStopTime ( final StopTime stopTime, final StopTimeModel stopTimeModel ) {
+            //Do not add duplicate stops to the database.
+            if (!importSession.hasStop(stopTime.getStop().getName())) {
+                importStop(stopTime.getStop(), importSession);
+            }
+
+            //Add the StopTime information to the database.
+            stopTimeModel.setId(stopTimeIdAllocator.nextId());
+            stopTimeBatchWriter.add(stopTimeModel);
+            if ( tripFingerprintSession != null ) {
+                tripFingerprintSession.addStopTimeId(stopTime.getTrip().getId().getId(), stopTimeModel.getId());
+            }
+        }
+
+    }
+
 }
@@ -0,0 +1,71 @@
+package de.davelee.trams.operations.service;
+
+import de.davelee.trams.operations.model.ImportPhase;
+
+/**
+ * This class represents an import of an uploaded file which runs in the background. It contains the progress of the
+ * import and its outcome once it has finished.
+ * @author Dave Lee
+ */
+public class ImportJob {
+
+    private final String id;
+
+    private final ImportProgress progress = new ImportProgress();
+
+    private volatile Boolean successful;
+
+    private volatile String message;
+
+    /**
+     * Create a new queued import job with the supplied identifier.
+     * @param id a <code>String</code> containing the identifier of the job.
+     */
+    public ImportJob ( final String id ) {
+        this.id = id;
+    }
+
+    /**
+     * Return the identifier of this job.
+     * @return a <code>String</code> containing the identifier.
+     */
+    public String getId ( ) {
+        return id;
+    }
+
+    /**
+     * Return the progress of this job which is updated by the importer.
+     * @return a <code>ImportProgress</code> object containing the progress.
+     */
+    public ImportProgress getProgress ( ) {
+        return progress;
+    }
+
+    /**
+     * Return whether this job was successful.
+     * @return a <code>Boolean</code> which is true iff the import was successful and null if it has not finished yet.
+     */
+    public Boolean getSuccessful ( ) {
+        return successful;
+    }
+
+    /**
+     * Return the message describing the outcome of this job.
+     * @return a <code>String</code> containing the message which may be null if there is nothing to report.
+     */
+    public String getMessage ( ) {
+        return message;
+    }
+
+    /**
+     * Mark this job as finished with the supplied outcome.
+     * @param successful a <code>boolean</code> which is true iff the import was successful.
+     * @param message a <code>String</code> containing a message describing the outcome which may be null.
+     */
+    public void finish ( final boolean successful, final String message ) {
+        this.message = message;
+        this.successful = successful;
+        progress.setPhase(successful ? ImportPhase.COMPLETED : ImportPhase.FAILED);
+    }
+
+}
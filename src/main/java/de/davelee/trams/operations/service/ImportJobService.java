@@ -0,0 +1,172 @@
+package de.davelee.trams.operations.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PreDestroy;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * This class provides a service for running imports of uploaded files in the background. The imports run on a
+ * dedicated bounded pool of workers so that they never use the threads which handle web requests. The most recent
+ * jobs are kept so that their progress and outcome can be retrieved. The uploaded file of a job is deleted as soon as the job has finished.
+ * @author Dave Lee
+ */
+@Service
+public class ImportJobService {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ImportJobService.class);
+
+    private static final int MAX_NUMBER_OF_JOBS_RETAINED = 100;
+
+    @Autowired
+    private ImportGTFSDataService gtfsDataService;
+
+    @Autowired
+    private ImportCSVDataService csvDataService;
+
+    @Autowired
+    private FileSystemStorageService fileSystemStorageService;
+
+    private final ThreadPoolExecutor importExecutor;
+
+    private final Map<String, ImportJob> importJobs = Collections.synchronizedMap(new LinkedHashMap<>() {
+        @Override
+        protected boolean removeEldestEntry ( final Map.Entry<String, ImportJob> eldest ) {
+            return size() > MAX_NUMBER_OF_JOBS_RETAINED;
+        }
+    });
+
+    /**
+     * Create a new service with the supplied number of workers and the maximum number of jobs which may wait for a worker.
+     * Only one import can write a new version of the timetable at a time so only one worker is allowed if versioning is enabled.
+     * @param threads a <code>int</code> containing the number of imports which may run at the same time.
+     * @param queueCapacity a <code>int</code> containing the number of imports which may wait for a free worker.
+     * @param versioningEnabled a <code>boolean</code> which is true iff imports write their stop times into a new version of the timetable.
+     * @throws IllegalArgumentException if more than one worker is configured while versioning is enabled.
+     */
+    public ImportJobService ( @Value("${import.jobs.threads:1}") final int threads,
+                              @Value("${import.jobs.queueCapacity:10}") final int queueCapacity,
+                              @Value("${timetable.versioning.enabled:true}") final boolean versioningEnabled ) {
+        if ( versioningEnabled && threads > 1 ) {
+            throw new IllegalArgumentException("import.jobs.threads must be 1 while timetable versioning is enabled");
+        }
+        AtomicInteger threadCounter = new AtomicInteger();
+        this.importExecutor = new ThreadPoolExecutor(Math.max(threads, 1), Math.max(threads, 1), 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(Math.max(queueCapacity, 1)),
+                runnable -> new Thread(runnable, "import-job-" + threadCounter.incrementAndGet()));
+    }
+
+    /**
+     * Start a background import of the supplied GTFS file.
+     * @param location a <code>String</code> containing the directory or zip file to load the data from.
+     * @param routesToImport a <code>List</code> of <code>String</code> containing the list of routes to import. If the list is empty then all routes
+     *                       should be imported.
+     * @param incremental a <code>boolean</code> which is true iff only the trips which have changed since the last import should be written.
+     * @return a <code>ImportJob</code> object containing the queued job.
+     * @throws RejectedExecutionException if too many imports are already waiting.
+     */
+    public ImportJob submitGTFSImport ( final String location, final List<String> routesToImport, final boolean incremental ) {
+        return submit(location, importJob -> importJob.finish(gtfsDataService.readGTFSFile(location, routesToImport, incremental, importJob.getProgress()), null));
+    }
+
+    /**
+     * Start a background import of the supplied CSV file.
+     * @param location a <code>String</code> containing the directory or zip file to load the data from.
+     * @param validFromDate a <code>String</code> containing the valid from date in format yyyy-MM-dd
+     * @param validToDate a <code>String</code> containing the valid to date in format yyyy-MM-dd
+     * @return a <code>ImportJob</code> object containing the queued job.
+     * @throws RejectedExecutionException if too many imports are already waiting.
+     */
+    public ImportJob submitCSVImport ( final String location, final String validFromDate, final String validToDate ) {
+        return submit(location, importJob -> {
+            ImportResult importResult = csvDataService.readCSVFile(location, validFromDate, validToDate, importJob.getProgress());
+            importJob.finish(importResult.isSuccessful(), importResult.getFailedFiles().isEmpty() ? null :
+                    "Files could not be imported: " + String.join(", ", importResult.getFailedFiles()));
+        });
+    }
+
+    /**
+     * Return the import job with the supplied identifier.
+     * @param id a <code>String</code> containing the identifier of the job.
+     * @return a <code>Optional</code> containing the job which is empty if the job does not exist or is too old.
+     */
+    public Optional<ImportJob> getImportJob ( final String id ) {
+        return Optional.ofNullable(importJobs.get(id));
+    }
+
+    /**
+     * Stop all running imports when the application shuts down.
+     */
+    @PreDestroy
+    public void shutdown ( ) {
+        importExecutor.shutdownNow();
+    }
+
+    /**
+     * This is a private helper method which creates a new job and queues the supplied import for it.
+     * @param location a <code>String</code> containing the uploaded file which is deleted when the job has finished.
+     * @param importTask a <code>Consumer</code> which runs the import and finishes the supplied job.
+     * @return a <code>ImportJob</code> object containing the queued job.
+     */
+    private ImportJob submit ( final String location, final Consumer<ImportJob> importTask ) {
+        ImportJob importJob = new ImportJob(UUID.randomUUID().toString());
+        importJobs.put(importJob.getId(), importJob);
+        try {
+            importExecutor.execute(() -> run(importJob, location, importTask));
+        } catch ( RejectedExecutionException rejectedExecutionException ) {
+            importJobs.remove(importJob.getId());
+            throw rejectedExecutionException;
+        }
+        return importJob;
+    }
+
+    /**
+     * This is a private helper method which runs the supplied import and marks the job as failed if it did not finish.
+     * The uploaded file is deleted afterwards whatever the outcome of the import was.
+     * @param importJob a <code>ImportJob</code> object containing the job to run.
+     * @param location a <code>String</code> containing the uploaded file which the import reads.
+     * @param importTask a <code>Consumer</code> which runs the import and finishes the supplied job.
+     */
+    private void run ( final ImportJob importJob, final String location, final Consumer<ImportJob> importTask ) {
+        try {
+            importTask.accept(importJob);
+        } catch ( RuntimeException exception ) {
+            LOGGER.error("Import job " + importJob.getId() + " failed", exception);
+            importJob.finish(false, exception.getMessage());
+        } finally {
+            deleteUploadedFile(importJob, location);
+        }
+        LOGGER.info("Import job {} finished with phase {} after {} rows", importJob.getId(),
+                importJob.getProgress().getPhase(), importJob.getProgress().getRowsProcessed());
+    }
+
+    /**
+     * This is a private helper method which deletes the uploaded file of the supplied job. A file which cannot be
+     * deleted is only logged so that the outcome of the import is not changed.
+     * @param importJob a <code>ImportJob</code> object containing the job which has finished.
+     * @param location a <code>String</code> containing the uploaded file to delete.
+     */
+    private void deleteUploadedFile ( final ImportJob importJob, final String location ) {
+        try {
+            fileSystemStorageService.delete(location);
+        } catch ( RuntimeException exception ) {
+            LOGGER.warn("Uploaded file of import job " + importJob.getId() + " could not be deleted", exception);
+        }
+    }
+
+}
@@ -0,0 +1,47 @@
+package de.davelee.trams.operations.service;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.stereotype.Component;
+
+/**
+ * This class records the number of stop times which were parsed and written as well as the number of batches which
+ * were written by the imports. The counters are tagged with the format of the imported file so that GTFS and csv
+ * imports can be compared.
+ * @author Dave Lee
+ */
+@Component
+public class ImportMetrics {
+
+    /**
+     * The format tag for GTFS imports.
+     */
+    public static final String GTFS_FORMAT = "gtfs";
+
+    /**
+     * The format tag for csv imports.
+     */
+    public static final String CSV_FORMAT = "csv";
+
+    private final MeterRegistry meterRegistry;
+
+    /**
+     * Create a new import metrics object which registers its counters with the supplied registry.
+     * @param meterRegistry a <code>MeterRegistry</code> object to register the counters with.
+     */
+    public ImportMetrics ( final MeterRegistry meterRegistry ) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    /**
+     * Record the outcome of importing a single file or feed.
+     * @param format a <code>String</code> containing the format of the file which is either gtfs or csv.
+     * @param rowsParsed a <code>long</code> containing the number of stop times which were read from the file.
+     * @param stopTimeBatchWriter a <code>StopTimeBatchWriter</code> object which wrote the stop times of the file.
+     */
+    public void recordImport ( final String format, final long rowsParsed, final StopTimeBatchWriter stopTimeBatchWriter ) {
+        meterRegistry.counter("import.rows.parsed", "format", format).increment(rowsParsed);
+        meterRegistry.counter("import.rows.written", "format", format).increment(stopTimeBatchWriter.getRowsWritten());
+        meterRegistry.counter("import.batches.written", "format", format).increment(stopTimeBatchWriter.getBatchesWritten());
+    }
+
+}
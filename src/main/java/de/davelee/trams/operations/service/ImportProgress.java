@@ -0,0 +1,73 @@
+package de.davelee.trams.operations.service;
+
+import de.davelee.trams.operations.model.ImportPhase;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * This class records the progress of an import so that it can be reported while the import is still running. It may
+ * be updated by several threads of the same import and read by other threads at the same time.
+ * @author Dave Lee
+ */
+public class ImportProgress {
+
+    private volatile ImportPhase phase = ImportPhase.QUEUED;
+
+    private final AtomicLong rowsProcessed = new AtomicLong();
+
+    private volatile long startTime;
+
+    private volatile long endTime;
+
+    /**
+     * Return the phase that the import is currently in.
+     * @return a <code>ImportPhase</code> containing the current phase.
+     */
+    public ImportPhase getPhase ( ) {
+        return phase;
+    }
+
+    /**
+     * Set the phase that the import is currently in. The import is regarded as started as soon as it leaves the
+     * queued phase and as finished as soon as it is completed or failed.
+     * @param phase a <code>ImportPhase</code> containing the new phase.
+     */
+    public void setPhase ( final ImportPhase phase ) {
+        if ( startTime == 0 && phase != ImportPhase.QUEUED ) {
+            startTime = System.nanoTime();
+        }
+        if ( phase == ImportPhase.COMPLETED || phase == ImportPhase.FAILED ) {
+            endTime = System.nanoTime();
+        }
+        this.phase = phase;
+    }
+
+    /**
+     * Add the supplied number of rows to the number of rows which have been processed so far.
+     * @param rows a <code>long</code> containing the number of rows which have just been processed.
+     */
+    public void addRowsProcessed ( final long rows ) {
+        rowsProcessed.addAndGet(rows);
+    }
+
+    /**
+     * Return the number of rows which have been processed so far.
+     * @return a <code>long</code> containing the number of rows processed.
+     */
+    public long getRowsProcessed ( ) {
+        return rowsProcessed.get();
+    }
+
+    /**
+     * Return the average number of rows processed per second since the import started until it finished or now.
+     * @return a <code>double</code> containing the number of rows processed per second.
+     */
+    public double getRowsPerSecond ( ) {
+        if ( startTime == 0 ) {
+            return 0;
+        }
+        final double elapsedSeconds = ((endTime != 0 ? endTime : System.nanoTime()) - startTime) / 1_000_000_000.0;
+        return elapsedSeconds > 0 ? rowsProcessed.get() / elapsedSeconds : 0;
+    }
+
+}
@@ -0,0 +1,85 @@
+package de.davelee.trams.operations.service;
+
+import lombok.ToString;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * This class represents the aggregated result of an import consisting of several files. It contains the files which
+ * were imported successfully, the files which could not be imported and the number of stop times imported.
+ * @author Dave Lee
+ */
+@ToString
+public class ImportResult {
+
+    /**
+     * The names of the files which were imported successfully.
+     */
+    private final List<String> successfulFiles = new ArrayList<>();
+
+    /**
+     * The names of the files which could not be imported.
+     */
+    private final List<String> failedFiles = new ArrayList<>();
+
+    /**
+     * The number of stop times which were imported from all files.
+     */
+    private long stopTimesImported;
+
+    /**
+     * Record the outcome of the import of a single file.
+     * @param fileName a <code>String</code> containing the name of the file.
+     * @param successful a <code>boolean</code> which is true iff the file was imported successfully.
+     */
+    public void addFile ( final String fileName, final boolean successful ) {
+        if ( successful ) {
+            successfulFiles.add(fileName);
+        } else {
+            failedFiles.add(fileName);
+        }
+    }
+
+    /**
+     * Set the number of stop times which were imported from all files.
+     * @param stopTimesImported a <code>long</code> containing the number of stop times imported.
+     */
+    public void setStopTimesImported ( final long stopTimesImported ) {
+        this.stopTimesImported = stopTimesImported;
+    }
+
+    /**
+     * Return the number of stop times which were imported from all files.
+     * @return a <code>long</code> containing the number of stop times imported.
+     */
+    public long getStopTimesImported ( ) {
+        return stopTimesImported;
+    }
+
+    /**
+     * Return the names of the files which were imported successfully.
+     * @return a <code>List</code> of <code>String</code> containing the file names.
+     */
+    public List<String> getSuccessfulFiles ( ) {
+        return Collections.unmodifiableList(successfulFiles);
+    }
+
+    /**
+     * Return the names of the files which could not be imported.
+     * @return a <code>List</code> of <code>String</code> containing the file names.
+     */
+    public List<String> getFailedFiles ( ) {
+        return Collections.unmodifiableList(failedFiles);
+    }
+
+    /**
+     * Return true iff at least one file was imported and no file failed.
+     * @return a <code>boolean</code> which is true iff the whole import was successful.
+     */
+    public boolean isSuccessful ( ) {
+        return !successfulFiles.isEmpty() && failedFiles.isEmpty();
+    }
+
+}
@@ -0,0 +1,161 @@
+package de.davelee.trams.operations.service;
+
+import de.davelee.trams.operations.model.RouteModel;
+import de.davelee.trams.operations.model.StopModel;
+import de.davelee.trams.operations.repository.RouteRepository;
+import de.davelee.trams.operations.repository.StopRepository;
+import org.springframework.dao.DuplicateKeyException;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * This class represents a single import of stops and routes. The names of all existing stops and the numbers of all
+ * existing routes are loaded once when the session is created so that duplicates can be detected in memory. New stops
+ * and routes are collected and written to the database in bulk when the session is flushed. The unique indexes on the
+ * stop name and route number ensure that no duplicates are created if several imports run at the same time. A session
+ * may be shared by several threads of the same import.
+ * @author Dave Lee
+ */
+public class ImportSession {
+
+    private final StopRepository stopRepository;
+
+    private final RouteRepository routeRepository;
+
+    private final Set<String> stopNames = ConcurrentHashMap.newKeySet();
+
+    private final Set<String> routeNumbers = ConcurrentHashMap.newKeySet();
+
+    private final Queue<StopModel> newStops = new ConcurrentLinkedQueue<>();
+
+    private final Queue<RouteModel> newRoutes = new ConcurrentLinkedQueue<>();
+
+    /**
+     * Create a new import session and load the names of all existing stops and the numbers of all existing routes.
+     * @param stopRepository a <code>StopRepository</code> object to load and write the stops.
+     * @param routeRepository a <code>RouteRepository</code> object to load and write the routes.
+     */
+    public ImportSession ( final StopRepository stopRepository, final RouteRepository routeRepository ) {
+        this.stopRepository = stopRepository;
+        this.routeRepository = routeRepository;
+        for ( StopModel stopModel : stopRepository.findAllStopNames() ) {
+            stopNames.add(stopModel.getName());
+        }
+        for ( RouteModel routeModel : routeRepository.findAllRouteNumbers() ) {
+            routeNumbers.add(routeModel.getRouteNumber());
+        }
+    }
+
+    /**
+     * Return true iff a stop with the supplied name already exists in the database or has been added to this session.
+     * @param stopName a <code>String</code> containing the name of the stop that should be checked.
+     * @return a <code>boolean</code> which is true iff the stop has already been imported.
+     */
+    public boolean hasStop ( final String stopName ) {
+        return stopNames.contains(stopName);
+    }
+
+    /**
+     * Return true iff a route with the supplied route number already exists in the database or has been added to this session.
+     * @param routeNumber a <code>String</code> containing the route number that should be checked.
+     * @return a <code>boolean</code> which is true iff the route has already been imported.
+     */
+    public boolean hasRoute ( final String routeNumber ) {
+        return routeNumbers.contains(routeNumber);
+    }
+
+    /**
+     * Add the supplied stop to this session if no stop with the same name has already been imported.
+     * @param stopModel a <code>StopModel</code> object containing the stop to add.
+     * @return a <code>boolean</code> which is true iff the stop was added.
+     */
+    public boolean addStop ( final StopModel stopModel ) {
+        if ( !stopNames.add(stopModel.getName()) ) {
+            return false;
+        }
+        newStops.add(stopModel);
+        return true;
+    }
+
+    /**
+     * Add the supplied route to this session if no route with the same route number has already been imported.
+     * @param routeModel a <code>RouteModel</code> object containing the route to add.
+     * @return a <code>boolean</code> which is true iff the route was added.
+     */
+    public boolean addRoute ( final RouteModel routeModel ) {
+        if ( !routeNumbers.add(routeModel.getRouteNumber()) ) {
+            return false;
+        }
+        newRoutes.add(routeModel);
+        return true;
+    }
+
+    /**
+     * Write all stops and routes which have been added to this session since the last flush to the database in bulk.
+     * If another import has written a stop or route with the same name or route number in the meantime, then the stops
+     * or routes are written individually and the duplicates are skipped.
+     */
+    public void flush ( ) {
+        List<StopModel> stopsToInsert = drain(newStops);
+        if ( !stopsToInsert.isEmpty() ) {
+            try {
+                stopRepository.insert(stopsToInsert);
+            } catch ( DuplicateKeyException duplicateKeyException ) {
+                stopsToInsert.forEach(this::insertStopIfAbsent);
+            }
+        }
+        List<RouteModel> routesToInsert = drain(newRoutes);
+        if ( !routesToInsert.isEmpty() ) {
+            try {
+                routeRepository.insert(routesToInsert);
+            } catch ( DuplicateKeyException duplicateKeyException ) {
+                routesToInsert.forEach(this::insertRouteIfAbsent);
+            }
+        }
+    }
+
+    /**
+     * This is a private helper method to remove all items from the supplied queue and return them as a list.
+     * @param queue a <code>Queue</code> containing the items which have not been written yet.
+     * @param <T> the type of the items in the queue.
+     * @return a <code>List</code> containing the items which were removed from the queue.
+     */
+    private static <T> List<T> drain ( final Queue<T> queue ) {
+        List<T> items = new ArrayList<>();
+        T item;
+        while ( (item = queue.poll()) != null ) {
+            items.add(item);
+        }
+        return items;
+    }
+
+    /**
+     * This is a private helper method to insert a single stop and ignore it if it already exists.
+     * @param stopModel a <code>StopModel</code> object containing the stop to insert.
+     */
+    private void insertStopIfAbsent ( final StopModel stopModel ) {
+        try {
+            stopRepository.insert(stopModel);
+        } catch ( DuplicateKeyException duplicateKeyException ) {
+            //Stop was already imported by another import.
+        }
+    }
+
+    /**
+     * This is a private helper method to insert a single route and ignore it if it already exists.
+     * @param routeModel a <code>RouteModel</code> object containing the route to insert.
+     */
+    private void insertRouteIfAbsent ( final RouteModel routeModel ) {
+        try {
+            routeRepository.insert(routeModel);
+        } catch ( DuplicateKeyException duplicateKeyException ) {
+            //Route was already imported by another import.
+        }
+    }
+
+}
@@ -0,0 +1,84 @@
+package de.davelee.trams.operations.service;
+
+import de.davelee.trams.operations.model.BusVehicleModel;
+import de.davelee.trams.operations.model.TrainVehicleModel;
+import de.davelee.trams.operations.model.TramVehicleModel;
+import de.davelee.trams.operations.model.VehicleModel;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.mapping.event.BeforeConvertCallback;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDate;
+
+/**
+ * This class calculates the date on which the next inspection of a vehicle is due based on its last inspection date and
+ * the inspection period for its type. The date is stored with the vehicle every time that the vehicle is written to the
+ * database so that it always matches the current inspection date and vehicles which are due for inspection can be
+ * found with an indexed query.
+ * @author Dave Lee
+ */
+@Component
+public class NextInspectionDueDateCallback implements BeforeConvertCallback<VehicleModel> {
+
+    private final int busInspectionPeriodInYears;
+
+    private final int trainInspectionPeriodInYears;
+
+    private final int tramInspectionPeriodInYears;
+
+    /**
+     * Create a new callback with the supplied inspection periods.
+     * @param busInspectionPeriodInYears a <code>int</code> containing the number of years within which a bus must be inspected.
+     * @param trainInspectionPeriodInYears a <code>int</code> containing the number of years within which a train must be inspected.
+     * @param tramInspectionPeriodInYears a <code>int</code> containing the number of years within which a tram must be inspected.
+     */
+    public NextInspectionDueDateCallback ( @Value("${bus.inspection.period}") final int busInspectionPeriodInYears,
+                                           @Value("${train.inspection.period}") final int trainInspectionPeriodInYears,
+                                           @Value("${tram.inspection.period}") final int tramInspectionPeriodInYears ) {
+        this.busInspectionPeriodInYears = busInspectionPeriodInYears;
+        this.trainInspectionPeriodInYears = trainInspectionPeriodInYears;
+        this.tramInspectionPeriodInYears = tramInspectionPeriodInYears;
+    }
+
+    /**
+     * Set the next inspection due date of the supplied vehicle before it is written to the database.
+     * @param vehicleModel a <code>VehicleModel</code> object containing the vehicle which is written.
+     * @param collection a <code>String</code> containing the name of the collection that the vehicle is written to.
+     * @return a <code>VehicleModel</code> object containing the vehicle with the next inspection due date.
+     */
+    @Override
+    public VehicleModel onBeforeConvert ( final VehicleModel vehicleModel, final String collection ) {
+        vehicleModel.setNextInspectionDueDate(calculateNextInspectionDueDate(vehicleModel));
+        return vehicleModel;
+    }
+
+    /**
+     * Calculate the date on which the next inspection of the supplied vehicle is due.
+     * @param vehicleModel a <code>VehicleModel</code> object containing the vehicle to calculate the date for.
+     * @return a <code>LocalDate</code> containing the date on which the next inspection is due which is null if the
+     * vehicle has never been inspected.
+     */
+    public LocalDate calculateNextInspectionDueDate ( final VehicleModel vehicleModel ) {
+        if ( vehicleModel.getInspectionDate() == null ) {
+            return null;
+        }
+        return vehicleModel.getInspectionDate().plusYears(getInspectionPeriodInYears(vehicleModel));
+    }
+
+    /**
+     * This is a private helper method which returns the inspection period for the type of the supplied vehicle.
+     * @param vehicleModel a <code>VehicleModel</code> object containing the vehicle to return the period for.
+     * @return a <code>int</code> containing the number of years within which the vehicle must be inspected.
+     */
+    private int getInspectionPeriodInYears ( final VehicleModel vehicleModel ) {
+        if ( vehicleModel instanceof TrainVehicleModel ) {
+            return trainInspectionPeriodInYears;
+        } else if ( vehicleModel instanceof TramVehicleModel ) {
+            return tramInspectionPeriodInYears;
+        } else if ( vehicleModel instanceof BusVehicleModel ) {
+            return busInspectionPeriodInYears;
+        }
+        return 0;
+    }
+
+}
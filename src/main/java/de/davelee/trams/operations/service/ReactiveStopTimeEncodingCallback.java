@@ -0,0 +1,43 @@
+package de.davelee.trams.operations.service;
+
+import de.davelee.trams.operations.model.StopTimeModel;
+import org.bson.Document;
+import org.reactivestreams.Publisher;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.mongodb.core.mapping.event.ReactiveAfterConvertCallback;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+/**
+ * This class restores the names, times and operating days of stop times which were read with the reactive driver in the same
+ * way as the <code>StopTimeEncodingCallback</code>. As long as the names have not been loaded into memory, the stop
+ * times are converted on a thread which may block so that the thread of the reactive driver is never blocked.
+ * @author Dave Lee
+ */
+@Component
+public class ReactiveStopTimeEncodingCallback implements ReactiveAfterConvertCallback<StopTimeModel> {
+
+    @Autowired
+    private StopTimeEncodingCallback stopTimeEncodingCallback;
+
+    @Autowired
+    private StopTimeNameService stopTimeNameService;
+
+    /**
+     * Restore the names, times and operating days of the supplied stop time after it has been read from the database.
+     * @param stopTimeModel a <code>StopTimeModel</code> object containing the stop time which was read.
+     * @param document a <code>Document</code> object containing the stored stop time.
+     * @param collection a <code>String</code> containing the name of the collection that the stop time was read from.
+     * @return a <code>Publisher</code> returning the stop time with the names, times and operating days.
+     */
+    @Override
+    public Publisher<StopTimeModel> onAfterConvert ( final StopTimeModel stopTimeModel, final Document document, final String collection ) {
+        if ( stopTimeNameService.isLoaded() ) {
+            return Mono.just(stopTimeEncodingCallback.onAfterConvert(stopTimeModel, document, collection));
+        }
+        return Mono.fromCallable(() -> stopTimeEncodingCallback.onAfterConvert(stopTimeModel, document, collection))
+                .subscribeOn(Schedulers.boundedElastic());
+    }
+
+}
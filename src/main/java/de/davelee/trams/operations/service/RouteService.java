@@ -1,9 +1,11 @@
 package de.davelee.trams.operations.service;
 
 import de.davelee.trams.operations.model.RouteModel;
+import de.davelee.trams.operations.repository.ReactiveRouteRepository;
 import de.davelee.trams.operations.repository.RouteRepository;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
 
 import java.util.List;
 
@@ -17,6 +19,9 @@ public class RouteService {
     @Autowired
     private RouteRepository routeRepository;
 
+    @Autowired
+    private ReactiveRouteRepository reactiveRouteRepository;
+
     /**
      * Return all routes currently stored in the database.
      * @return a <code>List</code> of <code>RouteModel</code> objects which may be null if there are no routes in the database.
@@ -25,5 +30,13 @@ public class RouteService {
         return routeRepository.findAll();
     }
 
+    /**
+     * Return all routes currently stored in the database without blocking the calling thread.
+     * @return a <code>Flux</code> of <code>RouteModel</code> objects which is empty if there are no routes in the database.
+     */
+    public Flux<RouteModel> getRoutesReactive ( ) {
+        return reactiveRouteRepository.findAll();
+    }
+
 
 }
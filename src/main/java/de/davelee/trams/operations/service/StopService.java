@@ -1,9 +1,11 @@
 package de.davelee.trams.operations.service;
 
 import de.davelee.trams.operations.model.StopModel;
+import de.davelee.trams.operations.repository.ReactiveStopRepository;
 import de.davelee.trams.operations.repository.StopRepository;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
 
 import java.util.List;
 
@@ -17,6 +19,9 @@ public class StopService {
     @Autowired
     private StopRepository stopRepository;
 
+    @Autowired
+    private ReactiveStopRepository reactiveStopRepository;
+
     /**
      * Return all stops currently stored in the database.
      * @return a <code>List</code> of <code>StopModel</code> objects which may be null if there are no stops in the database.
@@ -25,4 +30,12 @@ public class StopService {
         return stopRepository.findAll();
     }
 
+    /**
+     * Return all stops currently stored in the database without blocking the calling thread.
+     * @return a <code>Flux</code> of <code>StopModel</code> objects which is empty if there are no stops in the database.
+     */
+    public Flux<StopModel> getStopsReactive ( ) {
+        return reactiveStopRepository.findAll();
+    }
+
 }
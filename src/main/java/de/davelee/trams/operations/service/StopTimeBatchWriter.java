@@ -0,0 +1,127 @@
+package de.davelee.trams.operations.service;
+
+import de.davelee.trams.operations.model.StopTimeModel;
+import de.davelee.trams.operations.repository.StopTimeRepository;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * This class collects stop times during an import into batches of a fixed size and writes each complete batch to the
+ * database with a single bulk write instead of one write per stop time. The number of stop times and batches written
+ * and the time taken are recorded so that they can be reported when the import finishes.
+ * @author Dave Lee
+ */
+public class StopTimeBatchWriter {
+
+    /**
+     * The batch size which is used if no valid batch size was supplied.
+     */
+    public static final int DEFAULT_BATCH_SIZE = 1000;
+
+    private final StopTimeRepository stopTimeRepository;
+
+    private final int batchSize;
+
+    private final ImportProgress importProgress;
+
+    private final List<StopTimeModel> batch;
+
+    private final long startTime;
+
+    private long rowsWritten;
+
+    private int batchesWritten;
+
+    /**
+     * Create a new batch writer which writes stop times to the supplied repository.
+     * @param stopTimeRepository a <code>StopTimeRepository</code> object to write the stop times to.
+     * @param batchSize a <code>int</code> containing the number of stop times per batch which should be greater than 0.
+     */
+    public StopTimeBatchWriter ( final StopTimeRepository stopTimeRepository, final int batchSize ) {
+        this(stopTimeRepository, batchSize, new ImportProgress());
+    }
+
+    /**
+     * Create a new batch writer which writes stop times to the supplied repository and reports each written batch
+     * to the supplied progress.
+     * @param stopTimeRepository a <code>StopTimeRepository</code> object to write the stop times to.
+     * @param batchSize a <code>int</code> containing the number of stop times per batch which should be greater than 0.
+     * @param importProgress a <code>ImportProgress</code> object to add the number of written stop times to.
+     */
+    public StopTimeBatchWriter ( final StopTimeRepository stopTimeRepository, final int batchSize, final ImportProgress importProgress ) {
+        this.stopTimeRepository = stopTimeRepository;
+        this.batchSize = batchSize > 0 ? batchSize : DEFAULT_BATCH_SIZE;
+        this.importProgress = importProgress;
+        this.batch = new ArrayList<>(this.batchSize);
+        this.startTime = System.nanoTime();
+    }
+
+    /**
+     * Add the supplied stop time to the current batch and write the batch to the database if it is full.
+     * @param stopTimeModel a <code>StopTimeModel</code> object to write to the database.
+     */
+    public void add ( final StopTimeModel stopTimeModel ) {
+        batch.add(stopTimeModel);
+        if ( batch.size() >= batchSize ) {
+            flush();
+        }
+    }
+
+    /**
+     * Write all stop times in the current batch to the database. This method must be called once all stop times have
+     * been added to ensure that the last batch is also written.
+     */
+    public void flush ( ) {
+        if ( batch.isEmpty() ) {
+            return;
+        }
+        stopTimeRepository.bulkInsert(new ArrayList<>(batch));
+        recordBatch(batch.size());
+        batch.clear();
+    }
+
+    /**
+     * Record that a batch containing the supplied number of stop times has been written to the database.
+     * @param numberOfStopTimes a <code>int</code> containing the number of stop times in the batch.
+     */
+    protected void recordBatch ( final int numberOfStopTimes ) {
+        rowsWritten += numberOfStopTimes;
+        batchesWritten++;
+        importProgress.addRowsProcessed(numberOfStopTimes);
+    }
+
+    /**
+     * Return the number of stop times which are written to the database in each batch.
+     * @return a <code>int</code> containing the number of stop times per batch.
+     */
+    protected int getBatchSize ( ) {
+        return batchSize;
+    }
+
+    /**
+     * Return the number of stop times which have been written to the database so far.
+     * @return a <code>long</code> containing the number of stop times written.
+     */
+    public long getRowsWritten ( ) {
+        return rowsWritten;
+    }
+
+    /**
+     * Return the number of batches which have been written to the database so far.
+     * @return a <code>int</code> containing the number of batches written.
+     */
+    public int getBatchesWritten ( ) {
+        return batchesWritten;
+    }
+
+    /**
+     * Return the average number of stop times written to the database per second since this writer was created.
+     * @return a <code>double</code> containing the number of stop times written per second.
+     */
+    public double getRowsPerSecond ( ) {
+        final double elapsedSeconds = (System.nanoTime() - startTime) / 1_000_000_000.0;
+        return elapsedSeconds > 0 ? rowsWritten / elapsedSeconds : 0;
+    }
+
+}
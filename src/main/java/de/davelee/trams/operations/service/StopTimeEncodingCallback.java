@@ -0,0 +1,60 @@
+package de.davelee.trams.operations.service;
+
+import de.davelee.trams.operations.model.StopTimeModel;
+import de.davelee.trams.operations.repository.StopTimeConverters;
+import org.bson.Document;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.mongodb.core.mapping.event.AfterConvertCallback;
+import org.springframework.data.mongodb.core.mapping.event.BeforeConvertCallback;
+import org.springframework.stereotype.Component;
+
+/**
+ * This class converts stop times between the form which is returned by Trams Operations and the compact form which is
+ * stored in the database. Before a stop time is written, the names of its stop, route and destination are replaced by
+ * their short ids, its times by the minute of the day (0–1439) and its operating days by a mask. After a stop
+ * time has been read, the names, times and operating days are restored from the stored ids, minutes and mask.
+ * @author Dave Lee
+ */
+@Component
+public class StopTimeEncodingCallback implements BeforeConvertCallback<StopTimeModel>, AfterConvertCallback<StopTimeModel> {
+
+    @Autowired
+    private StopTimeNameService stopTimeNameService;
+
+    /**
+     * Set the short ids, the minutes and the mask of operating days of the supplied stop time before it is written to the database.
+     * The ids of the names are only read from memory so they must have been created before the stop time is written.
+     * @param stopTimeModel a <code>StopTimeModel</code> object containing the stop time which is written.
+     * @param collection a <code>String</code> containing the name of the collection that the stop time is written to.
+     * @return a <code>StopTimeModel</code> object containing the stop time with the short ids, the minutes and the mask.
+     */
+    @Override
+    public StopTimeModel onBeforeConvert ( final StopTimeModel stopTimeModel, final String collection ) {
+        stopTimeModel.setStopId(stopTimeNameService.getLoadedId(stopTimeModel.getStopName()));
+        stopTimeModel.setRouteId(stopTimeNameService.getLoadedId(stopTimeModel.getRouteNumber()));
+        stopTimeModel.setDestinationId(stopTimeNameService.getLoadedId(stopTimeModel.getDestination()));
+        stopTimeModel.setArrivalMinutes(StopTimeConverters.toNullableMinutes(stopTimeModel.getArrivalTime()));
+        stopTimeModel.setDepartureMinutes(StopTimeConverters.toNullableMinutes(stopTimeModel.getDepartureTime()));
+        stopTimeModel.setOperatingDayMask(StopTimeConverters.toMask(stopTimeModel.getOperatingDays()));
+        return stopTimeModel;
+    }
+
+    /**
+     * Restore the names, times and operating days of the supplied stop time after it has been read from the database.
+     * @param stopTimeModel a <code>StopTimeModel</code> object containing the stop time which was read.
+     * @param document a <code>Document</code> object containing the stored stop time.
+     * @param collection a <code>String</code> containing the name of the collection that the stop time was read from.
+     * @return a <code>StopTimeModel</code> object containing the stop time with the names, times and operating days.
+     */
+    @Override
+    public StopTimeModel onAfterConvert ( final StopTimeModel stopTimeModel, final Document document, final String collection ) {
+        stopTimeModel.setStopName(stopTimeNameService.getName(stopTimeModel.getStopId()));
+        stopTimeModel.setRouteNumber(stopTimeNameService.getName(stopTimeModel.getRouteId()));
+        stopTimeModel.setDestination(stopTimeNameService.getName(stopTimeModel.getDestinationId()));
+        stopTimeModel.setArrivalTime(StopTimeConverters.toNullableLocalTime(stopTimeModel.getArrivalMinutes()));
+        stopTimeModel.setDepartureTime(StopTimeConverters.toNullableLocalTime(stopTimeModel.getDepartureMinutes()));
+        stopTimeModel.setOperatingDays(StopTimeConverters.toDaysOfWeek(stopTimeModel.getOperatingDayMask()));
+        return stopTimeModel;
+    }
+
+}
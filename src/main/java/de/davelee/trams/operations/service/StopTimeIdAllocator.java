@@ -0,0 +1,56 @@
+package de.davelee.trams.operations.service;
+
+import de.davelee.trams.operations.repository.StopTimeRepository;
+
+/**
+ * This class hands out the ids of the stop times of a single import. The ids are reserved from the sequence in the
+ * database in blocks of a fixed size so that only one query is needed per block and no two imports can use the same
+ * ids, even if they run at the same time or on different instances. The ids within a block are consecutive. This class
+ * can be used by several threads at once.
+ * @author Dave Lee
+ */
+public class StopTimeIdAllocator {
+
+    private final StopTimeRepository stopTimeRepository;
+
+    private final int blockSize;
+
+    private int nextId;
+
+    private int remainingIds;
+
+    private int numberOfIds;
+
+    /**
+     * Create a new allocator which reserves ids from the supplied repository.
+     * @param stopTimeRepository a <code>StopTimeRepository</code> object to reserve the ids from.
+     * @param blockSize a <code>int</code> containing the number of ids to reserve at once which should be greater than 0.
+     */
+    public StopTimeIdAllocator ( final StopTimeRepository stopTimeRepository, final int blockSize ) {
+        this.stopTimeRepository = stopTimeRepository;
+        this.blockSize = blockSize > 0 ? blockSize : StopTimeBatchWriter.DEFAULT_BATCH_SIZE;
+    }
+
+    /**
+     * Return the next id for a stop time and reserve a new block of ids if the current block has been used up.
+     * @return a <code>int</code> containing an id which has not been used by any other stop time.
+     */
+    public synchronized int nextId ( ) {
+        if ( remainingIds == 0 ) {
+            nextId = stopTimeRepository.reserveIds(blockSize);
+            remainingIds = blockSize;
+        }
+        remainingIds--;
+        numberOfIds++;
+        return nextId++;
+    }
+
+    /**
+     * Return the number of ids which have been handed out by this allocator.
+     * @return a <code>int</code> containing the number of ids.
+     */
+    public synchronized int getNumberOfIds ( ) {
+        return numberOfIds;
+    }
+
+}
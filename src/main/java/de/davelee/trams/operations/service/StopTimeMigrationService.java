@@ -0,0 +1,193 @@
+package de.davelee.trams.operations.service;
+
+import de.davelee.trams.operations.model.StopTimeModel;
+import de.davelee.trams.operations.repository.StopTimeConverters;
+import org.bson.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.index.IndexInfo;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.data.util.CloseableIterator;
+import org.springframework.stereotype.Service;
+
+import java.time.DayOfWeek;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * This class provides a service which rewrites stop times which were stored before the compact form was introduced. The
+ * names of the stop, route and destination are replaced by their short ids, the operating days by a mask and the times
+ * by the minute of the day (0–1439). The indexes on the previous fields are dropped afterwards. The average
+ * document size and the total index size of the stop times are logged before and after the migration so that the
+ * reduction can be measured.
+ * @author Dave Lee
+ */
+@Service
+public class StopTimeMigrationService {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(StopTimeMigrationService.class);
+
+    private static final int BATCH_SIZE = 1000;
+
+    /**
+     * The prefix of the names of the indexes which were created on the previous fields.
+     */
+    private static final String PREVIOUS_INDEX_PREFIX = "stopName_";
+
+    /**
+     * The fields which contain a time.
+     */
+    private static final List<String> TIME_FIELDS = List.of("arrivalTime", "departureTime");
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    @Autowired
+    private StopTimeNameService stopTimeNameService;
+
+    @Autowired
+    private TimetableIndexService timetableIndexService;
+
+    @Value("${timetable.migration.enabled:true}")
+    private boolean migrationEnabled;
+
+    /**
+     * Migrate the stop times as soon as the application has started if the migration is enabled. The timetable index is
+     * rebuilt if any stop times were migrated. If the database is not available then the migration is attempted again
+     * at the next startup.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void migrateOnStartup ( ) {
+        if ( migrationEnabled ) {
+            try {
+                if ( migrate() > 0 ) {
+                    timetableIndexService.rebuild();
+                }
+            } catch ( DataAccessException dataAccessException ) {
+                LOGGER.warn("Stop times could not be migrated to the compact form at startup", dataAccessException);
+            }
+        }
+    }
+
+    /**
+     * Rewrite all stop times which are not stored in the compact form yet and drop the indexes on the previous fields.
+     * @return a <code>long</code> containing the number of stop times which were migrated.
+     */
+    public long migrate ( ) {
+        final String collectionName = mongoTemplate.getCollectionName(StopTimeModel.class);
+        long numberOfMigratedStopTimes = 0;
+        try ( CloseableIterator<Document> stopTimes = mongoTemplate.stream(Query.query(Criteria.where("stopId").exists(false)),
+                Document.class, collectionName) ) {
+            BulkOperations bulkOperations = null;
+            int batchCount = 0;
+            while ( stopTimes.hasNext() ) {
+                Document stopTime = stopTimes.next();
+                if ( bulkOperations == null ) {
+                    if ( numberOfMigratedStopTimes == 0 ) {
+                        logStorageStatistics(collectionName, "before migration");
+                    }
+                    bulkOperations = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, collectionName);
+                }
+                bulkOperations.updateOne(Query.query(Criteria.where("_id").is(stopTime.get("_id"))), toCompactForm(stopTime));
+                numberOfMigratedStopTimes++;
+                //Write each full batch to the database.
+                if ( ++batchCount == BATCH_SIZE ) {
+                    bulkOperations.execute();
+                    bulkOperations = null;
+                    batchCount = 0;
+                }
+            }
+            if ( bulkOperations != null ) {
+                bulkOperations.execute();
+            }
+        }
+        dropPreviousIndexes(collectionName);
+        if ( numberOfMigratedStopTimes > 0 ) {
+            LOGGER.info("Migrated {} stop times to the compact form", numberOfMigratedStopTimes);
+            logStorageStatistics(collectionName, "after migration");
+        }
+        return numberOfMigratedStopTimes;
+    }
+
+    /**
+     * Return the update which rewrites the supplied stop time in the compact form.
+     * @param stopTime a <code>Document</code> object containing the stop time in the previous form.
+     * @return a <code>Update</code> object containing the update to the compact form.
+     */
+    public Update toCompactForm ( final Document stopTime ) {
+        Update update = new Update()
+                .set("stopId", stopTimeNameService.getOrCreateId(stopTime.getString("stopName")))
+                .set("routeId", stopTimeNameService.getOrCreateId(stopTime.getString("routeNumber")))
+                .set("destinationId", stopTimeNameService.getOrCreateId(stopTime.getString("destination")))
+                .set("operatingDayMask", StopTimeConverters.toMask(toDaysOfWeek(stopTime.getList("operatingDays", String.class))))
+                .unset("stopName")
+                .unset("routeNumber")
+                .unset("destination")
+                .unset("operatingDays");
+        for ( String timeField : TIME_FIELDS ) {
+            //Times were previously stored as dates in the default time zone.
+            Object time = stopTime.get(timeField);
+            if ( time instanceof Date ) {
+                update.set(timeField, StopTimeConverters.toMinutes(LocalDateTime.ofInstant(((Date) time).toInstant(),
+                        ZoneId.systemDefault()).toLocalTime()));
+            }
+        }
+        return update;
+    }
+
+    /**
+     * This is a private helper method which converts the names of days to days.
+     * @param dayNames a <code>List</code> of <code>String</code> containing the names of the days which may be null.
+     * @return a <code>List</code> of <code>DayOfWeek</code> containing the days.
+     */
+    private List<DayOfWeek> toDaysOfWeek ( final List<String> dayNames ) {
+        List<DayOfWeek> daysOfWeek = new ArrayList<>();
+        if ( dayNames != null ) {
+            for ( String dayName : dayNames ) {
+                daysOfWeek.add(DayOfWeek.valueOf(dayName));
+            }
+        }
+        return daysOfWeek;
+    }
+
+    /**
+     * This is a private helper method which drops the indexes on the previous fields which are no longer used by any query.
+     * @param collectionName a <code>String</code> containing the name of the stop time collection.
+     */
+    private void dropPreviousIndexes ( final String collectionName ) {
+        for ( IndexInfo indexInfo : mongoTemplate.indexOps(collectionName).getIndexInfo() ) {
+            if ( indexInfo.getName().startsWith(PREVIOUS_INDEX_PREFIX) ) {
+                mongoTemplate.indexOps(collectionName).dropIndex(indexInfo.getName());
+                LOGGER.info("Dropped index {} on the previous stop time fields", indexInfo.getName());
+            }
+        }
+    }
+
+    /**
+     * This is a private helper method which logs the average document size and the total index size of the stop times.
+     * @param collectionName a <code>String</code> containing the name of the stop time collection.
+     * @param phase a <code>String</code> describing when the statistics were retrieved.
+     */
+    private void logStorageStatistics ( final String collectionName, final String phase ) {
+        try {
+            Document collectionStatistics = mongoTemplate.executeCommand(new Document("collStats", collectionName));
+            LOGGER.info("Stop times {}: {} documents with an average size of {} bytes and a total index size of {} bytes", phase,
+                    collectionStatistics.get("count"), collectionStatistics.get("avgObjSize"), collectionStatistics.get("totalIndexSize"));
+        } catch ( DataAccessException dataAccessException ) {
+            LOGGER.debug("Storage statistics of the stop times could not be retrieved", dataAccessException);
+        }
+    }
+
+}
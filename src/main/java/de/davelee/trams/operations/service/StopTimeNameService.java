@@ -0,0 +1,280 @@
+package de.davelee.trams.operations.service;
+
+import de.davelee.trams.operations.model.StopTimeNameModel;
+import de.davelee.trams.operations.repository.StopTimeNameRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This class provides a service which assigns short ids to the names of stops, routes and destinations used by stop times.
+ * Stop times store these ids instead of the names. All names are held in memory after they have been loaded once so that
+ * stop times can be converted without a query to the database. Names which were stored by another instance in the
+ * meantime are retrieved from the database when they are first needed. Names and ids which were not found in the
+ * database are remembered for a short time so that repeated queries for them do not query the database each time.
+ * @author Dave Lee
+ */
+@Service
+public class StopTimeNameService {
+
+    /**
+     * The id which is stored for a missing name.
+     */
+    public static final int NO_NAME_ID = 0;
+
+    /**
+     * The id which is returned for a name which has not been stored. This id is never assigned so a query for it does not find anything.
+     */
+    public static final int UNKNOWN_NAME_ID = -1;
+
+    /**
+     * The maximum number of names and ids which were not found that are remembered at the same time.
+     */
+    private static final int MAXIMUM_NUMBER_OF_MISSES = 10000;
+
+    @Autowired
+    private StopTimeNameRepository stopTimeNameRepository;
+
+    @Value("${timetable.names.missExpirySeconds:60}")
+    private long missExpiryInSeconds;
+
+    private final Map<String, Integer> idsByName = new ConcurrentHashMap<>();
+
+    private final Map<Integer, String> namesById = new ConcurrentHashMap<>();
+
+    //The time in nanoseconds until which a name or id which was not found in the database is not queried again.
+    private final Map<String, Long> missedNames = new ConcurrentHashMap<>();
+
+    private final Map<Integer, Long> missedIds = new ConcurrentHashMap<>();
+
+    private volatile boolean loaded;
+
+    /**
+     * The id which will be assigned to the next new name.
+     */
+    private int nextId = NO_NAME_ID + 1;
+
+    /**
+     * Return the id of the supplied name without storing the name if it is not known. This method is used by queries.
+     * @param name a <code>String</code> containing the name to return the id for.
+     * @return a <code>int</code> containing the id of the name which is <code>UNKNOWN_NAME_ID</code> if the name has not been stored.
+     */
+    public int getId ( final String name ) {
+        if ( name == null ) {
+            return NO_NAME_ID;
+        }
+        ensureLoaded();
+        Integer id = idsByName.get(name);
+        if ( id == null ) {
+            if ( isRecentMiss(missedNames, name) ) {
+                return UNKNOWN_NAME_ID;
+            }
+            //The name may have been stored by another instance.
+            StopTimeNameModel stopTimeNameModel = stopTimeNameRepository.findByName(name);
+            if ( stopTimeNameModel == null ) {
+                rememberMiss(missedNames, name);
+                return UNKNOWN_NAME_ID;
+            }
+            id = put(stopTimeNameModel);
+        }
+        return id;
+    }
+
+    /**
+     * Return the id of the supplied name from memory without querying the database. This method is used when stop times
+     * are converted before they are written so the ids of their names must have been created beforehand.
+     * @param name a <code>String</code> containing the name to return the id for.
+     * @return a <code>int</code> containing the id of the name which is <code>NO_NAME_ID</code> if the name is null.
+     * @throws IllegalStateException if no id has been created for the name.
+     */
+    public int getLoadedId ( final String name ) {
+        if ( name == null ) {
+            return NO_NAME_ID;
+        }
+        Integer id = idsByName.get(name);
+        if ( id == null ) {
+            throw new IllegalStateException("No id has been created for name " + name);
+        }
+        return id;
+    }
+
+    /**
+     * Return the ids of all supplied names which have been stored. This method is used by queries for several names.
+     * @param names a <code>Collection</code> of <code>String</code> containing the names to return the ids for.
+     * @return a <code>List</code> of <code>Integer</code> containing the ids of the names which have been stored.
+     */
+    public List<Integer> getIds ( final Collection<String> names ) {
+        List<Integer> ids = new ArrayList<>(names.size());
+        for ( String name : names ) {
+            int id = getId(name);
+            if ( id != UNKNOWN_NAME_ID ) {
+                ids.add(id);
+            }
+        }
+        return ids;
+    }
+
+    /**
+     * Return the id of the supplied name and store the name with a new id if it is not known yet. This method is used
+     * when stop times are written.
+     * @param name a <code>String</code> containing the name to return the id for.
+     * @return a <code>int</code> containing the id of the name which is <code>NO_NAME_ID</code> if the name is null.
+     */
+    public int getOrCreateId ( final String name ) {
+        int id = getId(name);
+        return id != UNKNOWN_NAME_ID ? id : createId(name);
+    }
+
+    /**
+     * Create ids for all supplied names which are not known yet so that stop times with these names can be converted
+     * from memory. This method is called once for each batch of stop times before the batch is written.
+     * @param names a <code>Collection</code> of <code>String</code> containing the names which may contain duplicates and null.
+     */
+    public void createIds ( final Collection<String> names ) {
+        for ( String name : new LinkedHashSet<>(names) ) {
+            if ( name != null && !idsByName.containsKey(name) ) {
+                getOrCreateId(name);
+            }
+        }
+    }
+
+    /**
+     * Return the name with the supplied id. This method is used when stop times are read.
+     * @param id a <code>int</code> containing the id of the name.
+     * @return a <code>String</code> containing the name which is null if no name has been stored with this id.
+     */
+    public String getName ( final int id ) {
+        if ( id == NO_NAME_ID ) {
+            return null;
+        }
+        ensureLoaded();
+        String name = namesById.get(id);
+        if ( name == null && !isRecentMiss(missedIds, id) ) {
+            //The name may have been stored by another instance.
+            name = stopTimeNameRepository.findById(id).map(this::put).map(namesById::get).orElse(null);
+            if ( name == null ) {
+                rememberMiss(missedIds, id);
+            }
+        }
+        return name;
+    }
+
+    /**
+     * Return true iff all names have already been loaded into memory so that names can be returned without a query
+     * to the database.
+     * @return a <code>boolean</code> which is true iff the names have been loaded.
+     */
+    public boolean isLoaded ( ) {
+        return loaded;
+    }
+
+    /**
+     * Load all stored names into memory. This method is called automatically when the first name is needed and again
+     * whenever another version of the timetable becomes active so that the names stored by other instances are known.
+     */
+    public synchronized void load ( ) {
+        for ( StopTimeNameModel stopTimeNameModel : stopTimeNameRepository.findAll() ) {
+            put(stopTimeNameModel);
+        }
+        missedNames.clear();
+        missedIds.clear();
+        loaded = true;
+    }
+
+    /**
+     * This is a private helper method which loads all names if they have not been loaded yet.
+     */
+    private void ensureLoaded ( ) {
+        if ( !loaded ) {
+            synchronized ( this ) {
+                if ( !loaded ) {
+                    load();
+                }
+            }
+        }
+    }
+
+    /**
+     * This is a private helper method which stores the supplied name with a new id. If another instance has stored
+     * the same name or id in the meantime then the stored name is used or the next free id is tried.
+     * @param name a <code>String</code> containing the name to store.
+     * @return a <code>int</code> containing the id of the name.
+     */
+    private synchronized int createId ( final String name ) {
+        Integer id = idsByName.get(name);
+        while ( id == null ) {
+            try {
+                id = put(stopTimeNameRepository.insert(StopTimeNameModel.builder().id(nextId).name(name).build()));
+            } catch ( DuplicateKeyException duplicateKeyException ) {
+                StopTimeNameModel stopTimeNameModel = stopTimeNameRepository.findByName(name);
+                if ( stopTimeNameModel != null ) {
+                    id = put(stopTimeNameModel);
+                } else {
+                    nextId++;
+                }
+            }
+        }
+        return id;
+    }
+
+    /**
+     * This is a private helper method which holds the supplied name in memory.
+     * @param stopTimeNameModel a <code>StopTimeNameModel</code> object containing the name and its id.
+     * @return a <code>int</code> containing the id of the name.
+     */
+    private synchronized int put ( final StopTimeNameModel stopTimeNameModel ) {
+        namesById.put(stopTimeNameModel.getId(), stopTimeNameModel.getName());
+        idsByName.put(stopTimeNameModel.getName(), stopTimeNameModel.getId());
+        missedNames.remove(stopTimeNameModel.getName());
+        missedIds.remove(stopTimeNameModel.getId());
+        nextId = Math.max(nextId, stopTimeNameModel.getId() + 1);
+        return stopTimeNameModel.getId();
+    }
+
+    /**
+     * This is a private helper method which returns true iff the supplied name or id was not found in the database
+     * a short time ago so that the database does not need to be queried again.
+     * @param misses a <code>Map</code> containing the names or ids which were not found and the time until they are remembered.
+     * @param key a <code>K</code> containing the name or id to check.
+     * @param <K> the type of the names or ids.
+     * @return a <code>boolean</code> which is true iff the name or id was not found a short time ago.
+     */
+    private <K> boolean isRecentMiss ( final Map<K, Long> misses, final K key ) {
+        Long expiryTime = misses.get(key);
+        if ( expiryTime == null ) {
+            return false;
+        }
+        if ( System.nanoTime() - expiryTime < 0 ) {
+            return true;
+        }
+        misses.remove(key, expiryTime);
+        return false;
+    }
+
+    /**
+     * This is a private helper method which remembers that the supplied name or id was not found in the database.
+     * If too many misses are remembered then all of them are forgotten so that unknown names cannot fill the memory.
+     * @param misses a <code>Map</code> containing the names or ids which were not found and the time until they are remembered.
+     * @param key a <code>K</code> containing the name or id which was not found.
+     * @param <K> the type of the names or ids.
+     */
+    private <K> void rememberMiss ( final Map<K, Long> misses, final K key ) {
+        if ( missExpiryInSeconds <= 0 ) {
+            return;
+        }
+        if ( misses.size() >= MAXIMUM_NUMBER_OF_MISSES ) {
+            misses.clear();
+        }
+        misses.put(key, System.nanoTime() + TimeUnit.SECONDS.toNanos(missExpiryInSeconds));
+    }
+
+}
@@ -1,16 +1,31 @@
 package de.davelee.trams.operations.service;
 
 import de.davelee.trams.operations.model.StopTimeModel;
+import de.davelee.trams.operations.repository.ReactiveStopTimeRepository;
 import de.davelee.trams.operations.repository.StopTimeRepository;
+import io.micrometer.core.annotation.Timed;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
 import org.springframework.stereotype.Service;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
 
 import java.time.LocalDate;
 import java.time.LocalTime;
 import java.time.format.DateTimeFormatter;
-import java.util.Comparator;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 /**
  * This class provides a service for managing stop times in Trams Operations.
@@ -19,9 +34,45 @@ import java.util.stream.Collectors;
 @Service
 public class StopTimeService {
 
+    /**
+     * The maximum number of departures or arrivals which are returned for a stop.
+     */
+    private static final int MAX_NUMBER_OF_STOP_TIMES = 3;
+
+    /**
+     * The number of stop times which are first retrieved before duplicates are removed. More stop times are retrieved
+     * if there are not enough distinct stop times among them.
+     */
+    private static final int STOP_TIME_FETCH_SIZE = 20;
+
+    /**
+     * The order in which all departures of a day are returned.
+     */
+    private static final Sort DEPARTURE_SORT = Sort.by("departureTime");
+
+    /**
+     * The number of minutes in a day which is also the longest time window for a batch of stops.
+     */
+    private static final int MINUTES_PER_DAY = 1440;
+
     @Autowired
     private StopTimeRepository stopTimeRepository;
 
+    @Autowired
+    private ReactiveStopTimeRepository reactiveStopTimeRepository;
+
+    @Autowired
+    private TimetableIndexService timetableIndexService;
+
+    @Autowired
+    private TripPatternService tripPatternService;
+
+    @Autowired
+    private DepartureCache departureCache;
+
+    @Value("${departures.batch.maximumStops:50}")
+    private int maximumStopsPerBatch;
+
     /**
      * Return the next 3 departures for this stop within the next 2 hours.
      * @param stopName a <code>String</code> containing the name of the stop to retrieve departures from.
@@ -29,8 +80,9 @@ public class StopTimeService {
      * @return a <code>List</code> of <code>StopTimeModel</code> objects which may be null if no departures were found or there
      * are no departures in next 2 hours.
      */
+    @Timed(value = "stop.time.service", histogram = true)
     public List<StopTimeModel> getDepartures (final String stopName, final String startingTime ) {
-        return getTimes(stopName, startingTime, "Departure", Comparator.comparing(StopTimeModel::getDepartureTime));
+        return getTimes(stopName, startingTime, "Departure");
     }
 
     /**
@@ -40,101 +92,384 @@ public class StopTimeService {
      * @return a <code>List</code> of <code>StopTimeModel</code> objects which may be null if the stop arrivals were not found or there
      * are no arrivals in next 2 hours.
      */
+    @Timed(value = "stop.time.service", histogram = true)
     public List<StopTimeModel> getArrivals (final String stopName, final String startingTime ) {
-        return getTimes(stopName, startingTime, "Arrival", Comparator.comparing(StopTimeModel::getArrivalTime));
+        return getTimes(stopName, startingTime, "Arrival");
     }
 
     /**
-     * Return the next 3 stop time models (either departures or arrivals) for this stop within the next 2 hours.
+     * Return the next 3 stop time models (either departures or arrivals) for this stop within the next 2 hours. The filtering,
+     * sorting and limiting of the stop times takes place in the timetable index or, if the index is not available, in the database.
+     * The result is cached for the current minute and cannot be modified.
      * @param stopName a <code>String</code> containing the name of the stop to retrieve stop times for.
      * @param startingTime a <code>String</code> containing the time to start retrieving stop times from which may be null if current time should be used.
      * @param type a <code>String</code> which can be either Departure to return the departures or Arrival to return the arrivals.
-     * @param comparator a <code>Comparator</code> of <code>StopTimeModel</code> which defines how the departures or arrivals will be sorted.
      * @return a <code>List</code> of <code>StopTimeModel</code> objects which may be null if the stop time models were not found or there
      *       are no stop time models in next 2 hours.
      */
-    public List<StopTimeModel> getTimes ( final String stopName, final String startingTime, final String type, final Comparator<StopTimeModel> comparator ) {
+    @Timed(value = "stop.time.service", histogram = true)
+    public List<StopTimeModel> getTimes ( final String stopName, final String startingTime, final String type ) {
         //Initial time to starting time or current time if no starting time was supplied.
-        final LocalTime time = startingTime != null ? convertToLocalTime(startingTime) : LocalTime.now();
+        final LocalTime time = (startingTime != null ? convertToLocalTime(startingTime) : LocalTime.now()).truncatedTo(ChronoUnit.MINUTES);
+        final LocalDate today = LocalDate.now();
+        //The stop times only change once a minute so they are retrieved at most once per stop, type and minute.
+        return departureCache.get(stopName, type, today, time, () -> findNextTimes(stopName, type, today, time));
+    }
 
+    /**
+     * Return the next 3 stop time models (either departures or arrivals) for this stop within the next 2 hours without
+     * blocking the calling thread. The stop times are the same as returned by <code>getTimes</code> and share its cache.
+     * If the timetable index is not available, then the stop times are retrieved with the reactive driver.
+     * @param stopName a <code>String</code> containing the name of the stop to retrieve stop times for.
+     * @param startingTime a <code>String</code> containing the time to start retrieving stop times from which may be null if current time should be used.
+     * @param type a <code>String</code> which can be either Departure to return the departures or Arrival to return the arrivals.
+     * @return a <code>Mono</code> containing a <code>List</code> of <code>StopTimeModel</code> objects which is empty if
+     * there are no stop time models in next 2 hours.
+     */
+    public Mono<List<StopTimeModel>> getTimesReactive ( final String stopName, final String startingTime, final String type ) {
+        final LocalTime time = (startingTime != null ? convertToLocalTime(startingTime) : LocalTime.now()).truncatedTo(ChronoUnit.MINUTES);
+        final LocalDate today = LocalDate.now();
+        final List<StopTimeModel> cachedStopTimeModels = departureCache.getIfPresent(stopName, type, today, time);
+        if ( cachedStopTimeModels != null ) {
+            return Mono.just(cachedStopTimeModels);
+        }
+        return findNextTimesReactive(stopName, type, today, time)
+                .map(stopTimeModels -> departureCache.put(stopName, type, today, time, stopTimeModels));
+    }
+
+    /**
+     * Return the next stop time models (either departures or arrivals) for each of the supplied stops within the supplied
+     * time window. The stop times of all stops are retrieved with a single lookup per day from the timetable index or, if
+     * the index is not available, with a single query per day from the database instead of one query per stop.
+     * @param stopNames a <code>List</code> of <code>String</code> containing the names of the stops to retrieve stop times for.
+     * @param startingTime a <code>String</code> containing the time to start retrieving stop times from which may be null if current time should be used.
+     * @param type a <code>String</code> which can be either Departure to return the departures or Arrival to return the arrivals.
+     * @param count a <code>int</code> containing the maximum number of stop times to return for each stop.
+     * @param windowInMinutes a <code>int</code> containing the number of minutes after the starting time to retrieve stop times for.
+     * @return a <code>Map</code> containing the stop times of each stop in the order that the stops were supplied which is
+     * empty for a stop without stop times in the time window.
+     * @throws IllegalArgumentException if no or too many stops were supplied or the type, count or window is not valid.
+     */
+    @Timed(value = "stop.time.service", histogram = true)
+    public Map<String, List<StopTimeModel>> getTimesForStops ( final List<String> stopNames, final String startingTime, final String type,
+                                                               final int count, final int windowInMinutes ) {
+        final Set<String> distinctStopNames = new LinkedHashSet<>(stopNames);
+        if ( distinctStopNames.isEmpty() || distinctStopNames.size() > maximumStopsPerBatch ) {
+            throw new IllegalArgumentException("Between 1 and " + maximumStopsPerBatch + " stops must be supplied");
+        }
+        if ( !"Departure".equals(type) && !"Arrival".equals(type) ) {
+            throw new IllegalArgumentException("Type must be either Departure or Arrival");
+        }
+        if ( count < 1 || windowInMinutes < 1 || windowInMinutes > MINUTES_PER_DAY ) {
+            throw new IllegalArgumentException("Count must be positive and window must be between 1 and " + MINUTES_PER_DAY + " minutes");
+        }
+        final LocalTime time = (startingTime != null ? convertToLocalTime(startingTime) : LocalTime.now()).truncatedTo(ChronoUnit.MINUTES);
+        final LocalDate today = LocalDate.now();
+        final int endMinuteOfDay = time.getHour() * 60 + time.getMinute() + windowInMinutes;
+        final Map<String, List<StopTimeModel>> timesByStop = new LinkedHashMap<>();
+        //First of all get the stop times of all stops until the end of the window or midnight.
+        final LocalTime endOfToday = endMinuteOfDay < MINUTES_PER_DAY ? time.plusMinutes(windowInMinutes) : LocalTime.of(23,59);
+        final Map<String, List<StopTimeModel>> timesToday = findTimesForStops(distinctStopNames, type, today, time, endOfToday);
+        for ( String stopName : distinctStopNames ) {
+            timesByStop.put(stopName, removeDuplicates(timesToday.getOrDefault(stopName, List.of()), type).stream()
+                    .limit(count).collect(Collectors.toList()));
+        }
+        //If the window continues after midnight then add the stop times from the next day for the stops which need more.
+        if ( endMinuteOfDay > MINUTES_PER_DAY ) {
+            final List<String> incompleteStopNames = distinctStopNames.stream()
+                    .filter(stopName -> timesByStop.get(stopName).size() < count)
+                    .collect(Collectors.toList());
+            if ( !incompleteStopNames.isEmpty() ) {
+                final Map<String, List<StopTimeModel>> timesTomorrow = findTimesForStops(incompleteStopNames, type, today.plusDays(1),
+                        LocalTime.MIDNIGHT, LocalTime.MIDNIGHT.plusMinutes(endMinuteOfDay - MINUTES_PER_DAY));
+                for ( String stopName : incompleteStopNames ) {
+                    final List<StopTimeModel> stopTimeModels = timesByStop.get(stopName);
+                    removeDuplicates(timesTomorrow.getOrDefault(stopName, List.of()), type).stream()
+                            .limit(count - stopTimeModels.size()).forEach(stopTimeModels::add);
+                }
+            }
+        }
+        return timesByStop;
+    }
+
+    /**
+     * This is a private helper method which retrieves the next 3 stop time models (either departures or arrivals) for
+     * this stop within the 2 hours after the supplied time.
+     * @param stopName a <code>String</code> containing the name of the stop to retrieve stop times for.
+     * @param type a <code>String</code> which can be either Departure to return the departures or Arrival to return the arrivals.
+     * @param today a <code>LocalDate</code> containing the date to retrieve stop times for.
+     * @param time a <code>LocalTime</code> containing the time to start retrieving stop times from.
+     * @return a <code>List</code> of <code>StopTimeModel</code> objects which is empty if there are no stop time models in next 2 hours.
+     */
+    private List<StopTimeModel> findNextTimes ( final String stopName, final String type, final LocalDate today, final LocalTime time ) {
         //Special processing if between 22 and 24 - otherwise normal processing.
         if ( time.isAfter(LocalTime.of(21,59))) {
             //First of all get stop times between now and midnight.
-            List<StopTimeModel> stopTimeModels = stopTimeRepository.findByStopName(stopName).stream()
-                    //Filter stop times which do not run on this day.
-                    .filter(stopTimeModel -> stopTimeModel.getOperatingDays().contains(LocalDate.now().getDayOfWeek()))
-                    //Filter so that stop times in the past are not shown.
-                    .filter(stopTimeModel -> !stopTimeModel.getTime(type).isBefore(time))
-                    //Filter remove stop times which lie much further in the future
-                    .filter(stopTimeModel -> !stopTimeModel.getTime(type).isAfter(LocalTime.of(23,59)))
-                    //Sort the stop times by time.
-                    .sorted(comparator)
-                    //Only show next 3 stop times.
-                    .limit(3)
-                    .collect(Collectors.toList());
+            List<StopTimeModel> stopTimeModels = findDistinctTimes(stopName, type, today, time, LocalTime.of(23,59), MAX_NUMBER_OF_STOP_TIMES);
             //If we already have 3 stop times then no need to look further.
-            if ( stopTimeModels.size() == 3 ) {
+            if ( stopTimeModels.size() == MAX_NUMBER_OF_STOP_TIMES ) {
                 return stopTimeModels;
             }
             //Otherwise add the remaining stop times from the next day.
-            stopTimeModels.addAll(stopTimeRepository.findByStopName(stopName).stream()
-                    //Filter remove stop times which lie much further in the future
-                    .filter(stopTimeModel -> !stopTimeModel.getTime(type).isAfter(time.plusHours(2)))
-                    //Sort the stop times by time.
-                    .sorted(comparator)
-                    //Only show next 3 stop times.
-                    .limit(3-stopTimeModels.size())
-                    .collect(Collectors.toList()));
+            stopTimeModels.addAll(findDistinctTimes(stopName, type, today.plusDays(1), LocalTime.MIDNIGHT, time.plusHours(2),
+                    MAX_NUMBER_OF_STOP_TIMES - stopTimeModels.size()));
             return stopTimeModels;
         }
         //Normal processing
-        List<StopTimeModel> filteredStopTimeModels = stopTimeRepository.findByStopName(stopName).stream()
-                //Filter stop times which do not run on this day.
-                .filter(stopTimeModel -> stopTimeModel.getOperatingDays().contains(LocalDate.now().getDayOfWeek()))
-                //Filter so that stop times in the past are not shown.
-                .filter(stopTimeModel -> !stopTimeModel.getTime(type).isBefore(time))
-                //Filter remove stop times which lie much further in the future
-                .filter(stopTimeModel -> !stopTimeModel.getTime(type).isAfter(time.plusHours(2)))
-                //Sort the stop times by time.
-                .sorted(comparator)
-                .collect(Collectors.toList());
-
-        //Remove any duplicates.
-        for (int i = 0; i < filteredStopTimeModels.size()-1; i++ ) {
-            for (int j = (i+1); j < filteredStopTimeModels.size(); j++ ) {
-                if ( filteredStopTimeModels.get(i).getDestination().contentEquals(filteredStopTimeModels.get(j).getDestination()) &&
-                        filteredStopTimeModels.get(i).getTime(type).compareTo(filteredStopTimeModels.get(j).getTime(type)) == 0) {
-                    filteredStopTimeModels.remove(i);
-                }
+        return findDistinctTimes(stopName, type, today, time, time.plusHours(2), MAX_NUMBER_OF_STOP_TIMES);
+    }
+
+    /**
+     * This is a private helper method which retrieves the first stop times (either departures or arrivals) for this stop
+     * within the supplied time range without duplicates. As duplicates are only removed after the stop times have been
+     * retrieved, the number of retrieved stop times is doubled until enough distinct stop times have been found or there
+     * are no more stop times in the time range.
+     * @param stopName a <code>String</code> containing the name of the stop to retrieve stop times for.
+     * @param type a <code>String</code> which can be either Departure to return the departures or Arrival to return the arrivals.
+     * @param date a <code>LocalDate</code> containing the date on which the stop times must run.
+     * @param fromTime a <code>LocalTime</code> containing the earliest time to retrieve (inclusive).
+     * @param toTime a <code>LocalTime</code> containing the latest time to retrieve (inclusive).
+     * @param count a <code>int</code> containing the maximum number of distinct stop times to return.
+     * @return a modifiable <code>List</code> of at most count distinct <code>StopTimeModel</code> objects sorted by time.
+     */
+    private List<StopTimeModel> findDistinctTimes ( final String stopName, final String type, final LocalDate date,
+                                                    final LocalTime fromTime, final LocalTime toTime, final int count ) {
+        int limit = STOP_TIME_FETCH_SIZE;
+        while ( true ) {
+            List<StopTimeModel> stopTimeModels = findTimes(stopName, type, date, fromTime, toTime, limit);
+            List<StopTimeModel> distinctStopTimeModels = removeDuplicates(stopTimeModels, type);
+            if ( distinctStopTimeModels.size() >= count || stopTimeModels.size() < limit ) {
+                return distinctStopTimeModels.stream().limit(count).collect(Collectors.toCollection(ArrayList::new));
+            }
+            limit *= 2;
+        }
+    }
+
+    /**
+     * This is a private helper method which retrieves the next 3 stop time models (either departures or arrivals) for
+     * this stop within the 2 hours after the supplied time without blocking in the same way as <code>findNextTimes</code>.
+     * @param stopName a <code>String</code> containing the name of the stop to retrieve stop times for.
+     * @param type a <code>String</code> which can be either Departure to return the departures or Arrival to return the arrivals.
+     * @param today a <code>LocalDate</code> containing the date to retrieve stop times for.
+     * @param time a <code>LocalTime</code> containing the time to start retrieving stop times from.
+     * @return a <code>Mono</code> containing a <code>List</code> of <code>StopTimeModel</code> objects.
+     */
+    private Mono<List<StopTimeModel>> findNextTimesReactive ( final String stopName, final String type, final LocalDate today, final LocalTime time ) {
+        //Special processing if between 22 and 24 - otherwise normal processing.
+        if ( time.isAfter(LocalTime.of(21,59))) {
+            return findDistinctTimesReactive(stopName, type, today, time, LocalTime.of(23,59), MAX_NUMBER_OF_STOP_TIMES, STOP_TIME_FETCH_SIZE)
+                    .flatMap(stopTimeModels -> {
+                        //If we already have 3 stop times then no need to look further.
+                        if ( stopTimeModels.size() == MAX_NUMBER_OF_STOP_TIMES ) {
+                            return Mono.just(stopTimeModels);
+                        }
+                        //Otherwise add the remaining stop times from the next day.
+                        return findDistinctTimesReactive(stopName, type, today.plusDays(1), LocalTime.MIDNIGHT, time.plusHours(2),
+                                MAX_NUMBER_OF_STOP_TIMES - stopTimeModels.size(), STOP_TIME_FETCH_SIZE)
+                                .map(nextDayStopTimeModels -> {
+                                    stopTimeModels.addAll(nextDayStopTimeModels);
+                                    return stopTimeModels;
+                                });
+                    });
+        }
+        //Normal processing
+        return findDistinctTimesReactive(stopName, type, today, time, time.plusHours(2), MAX_NUMBER_OF_STOP_TIMES, STOP_TIME_FETCH_SIZE);
+    }
+
+    /**
+     * This is a private helper method which retrieves the first stop times (either departures or arrivals) for this stop
+     * within the supplied time range without duplicates and without blocking in the same way as <code>findDistinctTimes</code>.
+     * @param stopName a <code>String</code> containing the name of the stop to retrieve stop times for.
+     * @param type a <code>String</code> which can be either Departure to return the departures or Arrival to return the arrivals.
+     * @param date a <code>LocalDate</code> containing the date on which the stop times must run.
+     * @param fromTime a <code>LocalTime</code> containing the earliest time to retrieve (inclusive).
+     * @param toTime a <code>LocalTime</code> containing the latest time to retrieve (inclusive).
+     * @param count a <code>int</code> containing the maximum number of distinct stop times to return.
+     * @param limit a <code>int</code> containing the number of stop times to retrieve before duplicates are removed.
+     * @return a <code>Mono</code> containing a modifiable <code>List</code> of at most count distinct <code>StopTimeModel</code> objects sorted by time.
+     */
+    private Mono<List<StopTimeModel>> findDistinctTimesReactive ( final String stopName, final String type, final LocalDate date,
+                                                                  final LocalTime fromTime, final LocalTime toTime, final int count, final int limit ) {
+        return findTimesReactive(stopName, type, date, fromTime, toTime, limit).flatMap(stopTimeModels -> {
+            List<StopTimeModel> distinctStopTimeModels = removeDuplicates(stopTimeModels, type);
+            if ( distinctStopTimeModels.size() >= count || stopTimeModels.size() < limit ) {
+                return Mono.just(distinctStopTimeModels.stream().limit(count).collect(Collectors.toCollection(ArrayList::new)));
+            }
+            //Retrieve more stop times as there were too many duplicates.
+            return findDistinctTimesReactive(stopName, type, date, fromTime, toTime, count, limit * 2);
+        });
+    }
+
+    /**
+     * This helper method removes duplicate stop times which have the same destination and time from the supplied list in
+     * a single pass. As the list is sorted by time, duplicates can only occur among stop times with the same time so only
+     * the destinations at the current time need to be remembered. The first stop time of each duplicate is kept.
+     * @param sortedStopTimeModels a <code>List</code> of <code>StopTimeModel</code> objects sorted by time.
+     * @param type a <code>String</code> which can be either Departure to compare departure times or Arrival to compare arrival times.
+     * @return a <code>List</code> of <code>StopTimeModel</code> objects without duplicates in the same order as the supplied list.
+     */
+    static List<StopTimeModel> removeDuplicates ( final List<StopTimeModel> sortedStopTimeModels, final String type ) {
+        List<StopTimeModel> distinctStopTimeModels = new ArrayList<>(sortedStopTimeModels.size());
+        Set<String> destinationsAtCurrentTime = new HashSet<>();
+        LocalTime currentTime = null;
+        for ( StopTimeModel stopTimeModel : sortedStopTimeModels ) {
+            //Start a new group of destinations as soon as the time changes.
+            if ( !stopTimeModel.getTime(type).equals(currentTime) ) {
+                currentTime = stopTimeModel.getTime(type);
+                destinationsAtCurrentTime.clear();
+            }
+            if ( destinationsAtCurrentTime.add(stopTimeModel.getDestination()) ) {
+                distinctStopTimeModels.add(stopTimeModel);
             }
         }
+        return distinctStopTimeModels;
+    }
 
-        //Only show next 3 stop times and remove.
-        return filteredStopTimeModels.stream().limit(3).collect(Collectors.toList());
+    /**
+     * This helper method retrieves the stop times (either departures or arrivals) for this stop which run on the supplied date
+     * within the supplied time range sorted by time from the timetable index or from the database if the index is not available.
+     * If journeys are stored as trips then the stop times are derived from the trips calling at this stop.
+     * @param stopName a <code>String</code> containing the name of the stop to retrieve stop times for.
+     * @param type a <code>String</code> which can be either Departure to return the departures or Arrival to return the arrivals.
+     * @param date a <code>LocalDate</code> containing the date on which the stop times must run.
+     * @param fromTime a <code>LocalTime</code> containing the earliest time to retrieve (inclusive).
+     * @param toTime a <code>LocalTime</code> containing the latest time to retrieve (inclusive).
+     * @param limit a <code>int</code> containing the maximum number of stop times to retrieve.
+     * @return a modifiable <code>List</code> of <code>StopTimeModel</code> objects sorted by time.
+     */
+    private List<StopTimeModel> findTimes ( final String stopName, final String type, final LocalDate date,
+                                            final LocalTime fromTime, final LocalTime toTime, final int limit ) {
+        if ( timetableIndexService.isLoaded() ) {
+            return timetableIndexService.findTimes(stopName, type, date, fromTime, toTime, limit);
+        }
+        if ( tripPatternService.isTripPatternStorage() ) {
+            return tripPatternService.findTimes(List.of(stopName), type, date, fromTime, toTime).stream()
+                    .limit(limit).collect(Collectors.toCollection(ArrayList::new));
+        }
+        if ( type.contentEquals("Departure") ) {
+            return new ArrayList<>(stopTimeRepository.findDeparturesByStopNameAndDateAndTimeRange(stopName, date.getDayOfWeek(),
+                    date, fromTime, toTime, PageRequest.of(0, limit, Sort.by("departureTime"))));
+        }
+        return new ArrayList<>(stopTimeRepository.findArrivalsByStopNameAndDateAndTimeRange(stopName, date.getDayOfWeek(),
+                date, fromTime, toTime, PageRequest.of(0, limit, Sort.by("arrivalTime"))));
     }
 
     /**
-     * Return all stop time models for this stop with a departure today.
+     * This helper method retrieves the stop times (either departures or arrivals) for this stop in the same way as
+     * <code>findTimes</code> but reads them with the reactive driver if the timetable index is not available. Stop times
+     * which are derived from trips are retrieved on a thread which may block.
+     * @param stopName a <code>String</code> containing the name of the stop to retrieve stop times for.
+     * @param type a <code>String</code> which can be either Departure to return the departures or Arrival to return the arrivals.
+     * @param date a <code>LocalDate</code> containing the date on which the stop times must run.
+     * @param fromTime a <code>LocalTime</code> containing the earliest time to retrieve (inclusive).
+     * @param toTime a <code>LocalTime</code> containing the latest time to retrieve (inclusive).
+     * @param limit a <code>int</code> containing the maximum number of stop times to retrieve.
+     * @return a <code>Mono</code> containing a modifiable <code>List</code> of <code>StopTimeModel</code> objects sorted by time.
+     */
+    private Mono<List<StopTimeModel>> findTimesReactive ( final String stopName, final String type, final LocalDate date,
+                                                          final LocalTime fromTime, final LocalTime toTime, final int limit ) {
+        if ( timetableIndexService.isLoaded() ) {
+            //The index is held in memory so the lookup does not block.
+            return Mono.fromSupplier(() -> timetableIndexService.findTimes(stopName, type, date, fromTime, toTime, limit));
+        }
+        if ( tripPatternService.isTripPatternStorage() ) {
+            return Mono.fromCallable(() -> findTimes(stopName, type, date, fromTime, toTime, limit)).subscribeOn(Schedulers.boundedElastic());
+        }
+        if ( type.contentEquals("Departure") ) {
+            return reactiveStopTimeRepository.findDeparturesByStopNameAndDateAndTimeRange(stopName, date.getDayOfWeek(),
+                    date, fromTime, toTime, PageRequest.of(0, limit, Sort.by("departureTime"))).collectList();
+        }
+        return reactiveStopTimeRepository.findArrivalsByStopNameAndDateAndTimeRange(stopName, date.getDayOfWeek(),
+                date, fromTime, toTime, PageRequest.of(0, limit, Sort.by("arrivalTime"))).collectList();
+    }
+
+    /**
+     * This helper method retrieves the stop times (either departures or arrivals) for all of the supplied stops which run on
+     * the supplied date within the supplied time range from the timetable index or with a single query from the database
+     * if the index is not available.
+     * @param stopNames a <code>Collection</code> of <code>String</code> containing the names of the stops to retrieve stop times for.
+     * @param type a <code>String</code> which can be either Departure to return the departures or Arrival to return the arrivals.
+     * @param date a <code>LocalDate</code> containing the date on which the stop times must run.
+     * @param fromTime a <code>LocalTime</code> containing the earliest time to retrieve (inclusive).
+     * @param toTime a <code>LocalTime</code> containing the latest time to retrieve (inclusive).
+     * @return a <code>Map</code> containing the stop times of each stop sorted by time which has no entry for stops without stop times.
+     */
+    private Map<String, List<StopTimeModel>> findTimesForStops ( final Collection<String> stopNames, final String type, final LocalDate date,
+                                                                 final LocalTime fromTime, final LocalTime toTime ) {
+        if ( timetableIndexService.isLoaded() ) {
+            final Map<String, List<StopTimeModel>> timesByStop = new LinkedHashMap<>();
+            for ( String stopName : stopNames ) {
+                timesByStop.put(stopName, timetableIndexService.findTimes(stopName, type, date, fromTime, toTime, Integer.MAX_VALUE));
+            }
+            return timesByStop;
+        }
+        final List<StopTimeModel> stopTimeModels = tripPatternService.isTripPatternStorage()
+                ? tripPatternService.findTimes(stopNames, type, date, fromTime, toTime)
+                : type.contentEquals("Departure")
+                ? stopTimeRepository.findDeparturesByStopNamesAndDateAndTimeRange(stopNames, date.getDayOfWeek(), date, fromTime, toTime, Sort.by("departureTime"))
+                : stopTimeRepository.findArrivalsByStopNamesAndDateAndTimeRange(stopNames, date.getDayOfWeek(), date, fromTime, toTime, Sort.by("arrivalTime"));
+        //Grouping keeps the order by time within each stop.
+        return stopTimeModels.stream().collect(Collectors.groupingBy(StopTimeModel::getStopName));
+    }
+
+    /**
+     * Return all stop time models for this stop which depart on the supplied date sorted by departure time. The stop
+     * times which run on the date are retrieved from the timetable index or, if the index is not available, with an
+     * indexed query from the database. The valid from and valid to dates are both inclusive.
      * @param stopName a <code>String</code> containing the name of the stop to retrieve stop times for.
      * @param date a <code>String</code> containing the date to retrieve stop times for in format yyyy-MM-dd.
      * @return a <code>List</code> of <code>StopTimeModel</code> objects which may be null if the stop time models were
      * not found or there are no stop time models on this date.
      */
+    @Timed(value = "stop.time.service", histogram = true)
     public List<StopTimeModel> getDeparturesByDate ( final String stopName, final String date ) {
-        //Set the date as a local date
-        LocalDate departureDate = LocalDate.parse(date, DateTimeFormatter.ofPattern("yyyy-MM-dd"));
-        //Return the stop times between now and midnight with the filter criteria.
-        return stopTimeRepository.findByStopName(stopName).stream()
-                //Filter stop times which do not run on this day.
-                .filter(stopTimeModel -> stopTimeModel.getOperatingDays().contains(departureDate.getDayOfWeek()))
-                //Filter stop times that are before the valid from date.
-                .filter(stopTimeModel -> stopTimeModel.getValidFromDate().isBefore(departureDate))
-                //Filter remove stop times are after the valid to date.
-                .filter(stopTimeModel -> stopTimeModel.getValidToDate().isAfter(departureDate))
-                //Sort the stop times by time.
-                .sorted(Comparator.comparing(StopTimeModel::getDepartureTime))
-                //Collect list as output.
-                .collect(Collectors.toList());
+        final LocalDate departureDate = LocalDate.parse(date, DateTimeFormatter.ofPattern("yyyy-MM-dd"));
+        if ( timetableIndexService.isLoaded() ) {
+            return findAllDeparturesInIndex(stopName, departureDate);
+        }
+        if ( tripPatternService.isTripPatternStorage() ) {
+            return findAllDeparturesOfTrips(stopName, departureDate);
+        }
+        return stopTimeRepository.findDeparturesByStopNameAndDate(stopName, departureDate.getDayOfWeek(), departureDate, DEPARTURE_SORT);
+    }
+
+    /**
+     * Stream all stop time models for this stop which depart on the supplied date sorted by departure time. If the timetable
+     * index is not available, then the stop times are read from a database cursor as the stream is consumed so that the
+     * first departures can be returned before all departures have been read. The stream must be closed after use.
+     * @param stopName a <code>String</code> containing the name of the stop to retrieve stop times for.
+     * @param date a <code>String</code> containing the date to retrieve stop times for in format yyyy-MM-dd.
+     * @return a <code>Stream</code> of <code>StopTimeModel</code> objects which is empty if there are no stop time models on this date.
+     */
+    public Stream<StopTimeModel> streamDeparturesByDate ( final String stopName, final String date ) {
+        final LocalDate departureDate = LocalDate.parse(date, DateTimeFormatter.ofPattern("yyyy-MM-dd"));
+        if ( timetableIndexService.isLoaded() ) {
+            return findAllDeparturesInIndex(stopName, departureDate).stream();
+        }
+        if ( tripPatternService.isTripPatternStorage() ) {
+            return findAllDeparturesOfTrips(stopName, departureDate).stream();
+        }
+        return stopTimeRepository.streamDeparturesByStopNameAndDate(stopName, departureDate.getDayOfWeek(), departureDate, DEPARTURE_SORT);
+    }
+
+    /**
+     * This is a private helper method which retrieves all departures of this stop on the supplied date from the timetable index.
+     * @param stopName a <code>String</code> containing the name of the stop to retrieve departures for.
+     * @param date a <code>LocalDate</code> containing the date on which the departures must run.
+     * @return a <code>List</code> of <code>StopTimeModel</code> objects sorted by departure time.
+     */
+    private List<StopTimeModel> findAllDeparturesInIndex ( final String stopName, final LocalDate date ) {
+        return timetableIndexService.findTimes(stopName, "Departure", date, LocalTime.MIDNIGHT, LocalTime.of(23,59), Integer.MAX_VALUE);
+    }
+
+    /**
+     * This is a private helper method which derives all departures of this stop on the supplied date from the stored trips.
+     * @param stopName a <code>String</code> containing the name of the stop to retrieve departures for.
+     * @param date a <code>LocalDate</code> containing the date on which the departures must run.
+     * @return a <code>List</code> of <code>StopTimeModel</code> objects sorted by departure time.
+     */
+    private List<StopTimeModel> findAllDeparturesOfTrips ( final String stopName, final LocalDate date ) {
+        return tripPatternService.findTimes(List.of(stopName), "Departure", date, LocalTime.MIDNIGHT, LocalTime.of(23,59));
     }
 
     /**
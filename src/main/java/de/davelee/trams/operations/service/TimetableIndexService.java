@@ -0,0 +1,461 @@
+package de.davelee.trams.operations.service;
+
+import de.davelee.trams.operations.model.StopTimeModel;
+import de.davelee.trams.operations.repository.StopTimeRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataAccessException;
+import org.springframework.stereotype.Service;
+
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+/**
+ * This class provides a read-optimised in-memory index of all stop times in Trams Operations. For every stop the departures
+ * and arrivals are held as arrays of minutes of the day sorted by time together with parallel arrays containing the route,
+ * destination, validity, operating days and exception dates of each stop time. Departures and arrivals can therefore be
+ * found with a binary search and a short scan instead of a query to the database. The stop times are read from a database
+ * cursor and converted into this compact form one at a time so that all stop times are never held in memory at once. The
+ * index is rebuilt after every successful import on the instance which ran the import and whenever the
+ * <code>TimetableVersionService</code> notices that another instance has activated or rolled back a version. If versioning
+ * is disabled or journeys are stored as trips, then imports by other instances are only noticed after a restart so the
+ * index assumes a single instance in this case.
+ * @author Dave Lee
+ */
+@Service
+public class TimetableIndexService {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(TimetableIndexService.class);
+
+    /**
+     * The value which is stored instead of a validity date if the stop time does not have a validity date.
+     */
+    private static final long NO_DATE = Long.MIN_VALUE;
+
+    @Autowired
+    private StopTimeRepository stopTimeRepository;
+
+    @Autowired
+    private TripPatternService tripPatternService;
+
+    @Value("${timetable.index.enabled:true}")
+    private boolean indexEnabled;
+
+    /**
+     * The current index which is replaced as a whole when the index is rebuilt. It is null if the index has not been built yet.
+     */
+    private volatile TimetableIndex timetableIndex;
+
+    /**
+     * Build the index as soon as the application has started if the index is enabled. If the database is not available
+     * then the index remains empty and all stop times are retrieved from the database instead.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void loadOnStartup ( ) {
+        if ( indexEnabled ) {
+            try {
+                rebuild();
+            } catch ( DataAccessException dataAccessException ) {
+                LOGGER.warn("Timetable index could not be built at startup - stop times will be retrieved from the database", dataAccessException);
+            }
+        }
+    }
+
+    /**
+     * Rebuild the index from all stop times currently stored in the database which are derived from the trips if journeys
+     * are stored as trips. Requests which are processed during the rebuild continue to use the previous index until the
+     * new index is complete.
+     */
+    public void rebuild ( ) {
+        if ( !indexEnabled ) {
+            return;
+        }
+        //Convert each stop time into the compact form as soon as it has been read.
+        TimetableIndex newTimetableIndex = new TimetableIndex();
+        try ( Stream<StopTimeModel> stopTimeModels = tripPatternService.isTripPatternStorage()
+                ? tripPatternService.streamAllStopTimes() : stopTimeRepository.streamAll() ) {
+            stopTimeModels.forEach(newTimetableIndex::add);
+        }
+        //Build the departures and arrivals for each stop.
+        final int numberOfStops = newTimetableIndex.build();
+        timetableIndex = newTimetableIndex;
+        LOGGER.info("Timetable index built for {} stops", numberOfStops);
+    }
+
+    /**
+     * Return true iff the index has been built and can be used to retrieve stop times.
+     * @return a <code>boolean</code> which is true iff the index is available.
+     */
+    public boolean isLoaded ( ) {
+        return timetableIndex != null;
+    }
+
+    /**
+     * Return the stop times (either departures or arrivals) for this stop which run on the supplied date within the supplied
+     * time range sorted by time.
+     * @param stopName a <code>String</code> containing the name of the stop to retrieve stop times for.
+     * @param type a <code>String</code> which can be either Departure to return the departures or Arrival to return the arrivals.
+     * @param date a <code>LocalDate</code> containing the date on which the stop times must run.
+     * @param fromTime a <code>LocalTime</code> containing the earliest time to retrieve (inclusive).
+     * @param toTime a <code>LocalTime</code> containing the latest time to retrieve (inclusive).
+     * @param limit a <code>int</code> containing the maximum number of stop times to retrieve.
+     * @return a modifiable <code>List</code> of <code>StopTimeModel</code> objects sorted by time which is empty if the index
+     * has not been built or no stop times were found.
+     */
+    public List<StopTimeModel> findTimes ( final String stopName, final String type, final LocalDate date,
+                                           final LocalTime fromTime, final LocalTime toTime, final int limit ) {
+        final TimetableIndex currentTimetableIndex = timetableIndex;
+        if ( currentTimetableIndex == null ) {
+            return new ArrayList<>();
+        }
+        final StopTimetable stopTimetable = type.contentEquals("Departure") ? currentTimetableIndex.departures.get(stopName)
+                : currentTimetableIndex.arrivals.get(stopName);
+        if ( stopTimetable == null ) {
+            return new ArrayList<>();
+        }
+        return stopTimetable.findTimes(currentTimetableIndex, date, toMinuteOfDay(fromTime), toMinuteOfDay(toTime), limit);
+    }
+
+    /**
+     * This helper method converts a time into the number of minutes since midnight.
+     * @param time a <code>LocalTime</code> object containing the time to convert.
+     * @return a <code>int</code> with the number of minutes since midnight.
+     */
+    private static int toMinuteOfDay ( final LocalTime time ) {
+        return time.getHour() * 60 + time.getMinute();
+    }
+
+    /**
+     * This helper method converts a list of operating days into a bit mask where bit 0 represents Monday and bit 6 Sunday.
+     * @param operatingDays a <code>List</code> of <code>DayOfWeek</code> objects containing the operating days.
+     * @return a <code>byte</code> containing the operating days as a bit mask.
+     */
+    private static byte toOperatingDaysMask ( final List<DayOfWeek> operatingDays ) {
+        int mask = 0;
+        for ( DayOfWeek operatingDay : operatingDays ) {
+            mask |= 1 << (operatingDay.getValue() - 1);
+        }
+        return (byte) mask;
+    }
+
+    /**
+     * This helper method converts a bit mask of operating days back into a list of operating days.
+     * @param mask a <code>byte</code> containing the operating days as a bit mask.
+     * @return a <code>List</code> of <code>DayOfWeek</code> objects containing the operating days.
+     */
+    private static List<DayOfWeek> toOperatingDays ( final byte mask ) {
+        List<DayOfWeek> operatingDays = new ArrayList<>();
+        for ( DayOfWeek dayOfWeek : DayOfWeek.values() ) {
+            if ( (mask & (1 << (dayOfWeek.getValue() - 1))) != 0 ) {
+                operatingDays.add(dayOfWeek);
+            }
+        }
+        return operatingDays;
+    }
+
+    /**
+     * This helper method converts a list of dates into a sorted array of days since 1970-01-01.
+     * @param dates a <code>List</code> of <code>LocalDate</code> objects which may be null.
+     * @return a sorted <code>long</code> array of days which is null if no dates were supplied.
+     */
+    private static long[] toEpochDays ( final List<LocalDate> dates ) {
+        if ( dates == null || dates.isEmpty() ) {
+            return null;
+        }
+        return dates.stream().mapToLong(LocalDate::toEpochDay).sorted().toArray();
+    }
+
+    /**
+     * This helper method converts an array of days since 1970-01-01 back into a list of dates.
+     * @param epochDays a <code>long</code> array of days which may be null.
+     * @return a <code>List</code> of <code>LocalDate</code> objects which is null if no days were supplied.
+     */
+    private static List<LocalDate> toDates ( final long[] epochDays ) {
+        if ( epochDays == null ) {
+            return null;
+        }
+        List<LocalDate> dates = new ArrayList<>(epochDays.length);
+        for ( long epochDay : epochDays ) {
+            dates.add(LocalDate.ofEpochDay(epochDay));
+        }
+        return dates;
+    }
+
+    /**
+     * This class represents one complete version of the index. Route numbers, destinations and journey numbers are stored
+     * once in tables and referenced by their position in the table from the stop timetables.
+     */
+    private static final class TimetableIndex {
+
+        private final Map<String, StopTimetable> departures = new HashMap<>();
+
+        private final Map<String, StopTimetable> arrivals = new HashMap<>();
+
+        private final List<String> values = new ArrayList<>();
+
+        private final Map<String, Integer> valueIds = new HashMap<>();
+
+        private final Map<String, List<IndexedStopTime>> stopTimesByStop = new HashMap<>();
+
+        /**
+         * Return the id of the supplied value and add it to the table if it is not already present.
+         * @param value a <code>String</code> containing the value to look up.
+         * @return a <code>int</code> containing the id of the value.
+         */
+        private int idOf ( final String value ) {
+            return valueIds.computeIfAbsent(value, newValue -> {
+                values.add(newValue);
+                return values.size() - 1;
+            });
+        }
+
+        /**
+         * Convert the supplied stop time into the compact form and add it to the stop times of its stop. Stop times which
+         * neither have validity dates and operating days nor additional dates cannot run and are therefore not included.
+         * @param stopTimeModel a <code>StopTimeModel</code> object containing the stop time to add.
+         */
+        private void add ( final StopTimeModel stopTimeModel ) {
+            if ( stopTimeModel.getAdditionalDates() == null && (stopTimeModel.getValidFromDate() == null
+                    || stopTimeModel.getValidToDate() == null || stopTimeModel.getOperatingDays() == null) ) {
+                return;
+            }
+            stopTimesByStop.computeIfAbsent(stopTimeModel.getStopName(), stopName -> new ArrayList<>())
+                    .add(new IndexedStopTime(this, stopTimeModel));
+        }
+
+        /**
+         * Build the departures and arrivals of all stops from the stop times which have been added. The added stop times
+         * are no longer needed afterwards.
+         * @return a <code>int</code> containing the number of stops.
+         */
+        private int build ( ) {
+            for ( Map.Entry<String, List<IndexedStopTime>> stopTimesEntry : stopTimesByStop.entrySet() ) {
+                departures.put(stopTimesEntry.getKey(), buildStopTimetable(stopTimesEntry.getKey(), stopTimesEntry.getValue(), "Departure"));
+                arrivals.put(stopTimesEntry.getKey(), buildStopTimetable(stopTimesEntry.getKey(), stopTimesEntry.getValue(), "Arrival"));
+            }
+            final int numberOfStops = stopTimesByStop.size();
+            stopTimesByStop.clear();
+            return numberOfStops;
+        }
+
+        /**
+         * Build the timetable of a stop for the supplied type. Stop times without a time of this type are not included.
+         * @param stopName a <code>String</code> containing the name of the stop.
+         * @param indexedStopTimes a <code>List</code> of <code>IndexedStopTime</code> objects containing all stop times of the stop.
+         * @param type a <code>String</code> which can be either Departure or Arrival.
+         * @return a <code>StopTimetable</code> object containing the stop times of the stop sorted by time.
+         */
+        private StopTimetable buildStopTimetable ( final String stopName, final List<IndexedStopTime> indexedStopTimes, final String type ) {
+            final boolean departure = type.contentEquals("Departure");
+            IndexedStopTime[] sortedStopTimes = indexedStopTimes.stream()
+                    .filter(indexedStopTime -> indexedStopTime.getMinute(departure) >= 0)
+                    .sorted(Comparator.comparingInt(indexedStopTime -> indexedStopTime.getMinute(departure)))
+                    .toArray(IndexedStopTime[]::new);
+            StopTimetable stopTimetable = new StopTimetable(sortedStopTimes.length, type);
+            for ( int i = 0; i < sortedStopTimes.length; i++ ) {
+                IndexedStopTime indexedStopTime = sortedStopTimes[i];
+                stopTimetable.minutes[i] = indexedStopTime.getMinute(departure);
+                stopTimetable.otherMinutes[i] = indexedStopTime.getMinute(!departure);
+                stopTimetable.routeIds[i] = indexedStopTime.routeId;
+                stopTimetable.destinationIds[i] = indexedStopTime.destinationId;
+                stopTimetable.journeyIds[i] = indexedStopTime.journeyId;
+                stopTimetable.validFromDays[i] = indexedStopTime.validFromDay;
+                stopTimetable.validToDays[i] = indexedStopTime.validToDay;
+                stopTimetable.operatingDays[i] = indexedStopTime.operatingDays;
+                stopTimetable.additionalDays[i] = indexedStopTime.additionalDays;
+                stopTimetable.excludedDays[i] = indexedStopTime.excludedDays;
+                stopTimetable.ids[i] = indexedStopTime.id;
+            }
+            stopTimetable.stopName = stopName;
+            return stopTimetable;
+        }
+
+    }
+
+    /**
+     * This class represents a single stop time in the compact form while the index is built.
+     */
+    private static final class IndexedStopTime {
+
+        private final int departureMinute;
+        private final int arrivalMinute;
+        private final int routeId;
+        private final int destinationId;
+        private final int journeyId;
+        private final long validFromDay;
+        private final long validToDay;
+        private final byte operatingDays;
+        private final long[] additionalDays;
+        private final long[] excludedDays;
+        private final int id;
+
+        /**
+         * Create a new stop time in the compact form from the supplied stop time.
+         * @param timetableIndex a <code>TimetableIndex</code> object containing the tables of route numbers, destinations and journeys.
+         * @param stopTimeModel a <code>StopTimeModel</code> object containing the stop time to convert.
+         */
+        private IndexedStopTime ( final TimetableIndex timetableIndex, final StopTimeModel stopTimeModel ) {
+            this.departureMinute = stopTimeModel.getDepartureTime() != null ? toMinuteOfDay(stopTimeModel.getDepartureTime()) : -1;
+            this.arrivalMinute = stopTimeModel.getArrivalTime() != null ? toMinuteOfDay(stopTimeModel.getArrivalTime()) : -1;
+            this.routeId = timetableIndex.idOf(stopTimeModel.getRouteNumber());
+            this.destinationId = timetableIndex.idOf(stopTimeModel.getDestination());
+            this.journeyId = timetableIndex.idOf(stopTimeModel.getJourneyNumber());
+            this.validFromDay = stopTimeModel.getValidFromDate() != null ? stopTimeModel.getValidFromDate().toEpochDay() : NO_DATE;
+            this.validToDay = stopTimeModel.getValidToDate() != null ? stopTimeModel.getValidToDate().toEpochDay() : NO_DATE;
+            this.operatingDays = stopTimeModel.getOperatingDays() != null ? toOperatingDaysMask(stopTimeModel.getOperatingDays()) : 0;
+            this.additionalDays = toEpochDays(stopTimeModel.getAdditionalDates());
+            this.excludedDays = toEpochDays(stopTimeModel.getExcludedDates());
+            this.id = stopTimeModel.getId();
+        }
+
+        /**
+         * Return the minute of the day of either the departure or the arrival.
+         * @param departure a <code>boolean</code> which is true for the departure and false for the arrival.
+         * @return a <code>int</code> containing the minute of the day which is -1 if there is no time of this type.
+         */
+        private int getMinute ( final boolean departure ) {
+            return departure ? departureMinute : arrivalMinute;
+        }
+
+    }
+
+    /**
+     * This class represents either the departures or the arrivals of a single stop as parallel arrays sorted by time.
+     */
+    private static final class StopTimetable {
+
+        private final String type;
+        private String stopName;
+        private final int[] minutes;
+        private final int[] otherMinutes;
+        private final int[] routeIds;
+        private final int[] destinationIds;
+        private final int[] journeyIds;
+        private final long[] validFromDays;
+        private final long[] validToDays;
+        private final byte[] operatingDays;
+        private final long[][] additionalDays;
+        private final long[][] excludedDays;
+        private final int[] ids;
+
+        /**
+         * Create a new empty stop timetable with the supplied number of stop times.
+         * @param size a <code>int</code> containing the number of stop times.
+         * @param type a <code>String</code> which can be either Departure or Arrival.
+         */
+        private StopTimetable ( final int size, final String type ) {
+            this.type = type;
+            this.minutes = new int[size];
+            this.otherMinutes = new int[size];
+            this.routeIds = new int[size];
+            this.destinationIds = new int[size];
+            this.journeyIds = new int[size];
+            this.validFromDays = new long[size];
+            this.validToDays = new long[size];
+            this.operatingDays = new byte[size];
+            this.additionalDays = new long[size][];
+            this.excludedDays = new long[size][];
+            this.ids = new int[size];
+        }
+
+        /**
+         * Find the stop times running on the supplied date within the supplied range of minutes. The first stop time is found
+         * with a binary search and the following stop times are scanned until the range or the limit is reached.
+         * @param timetableIndex a <code>TimetableIndex</code> object containing the tables of route numbers, destinations and journeys.
+         * @param date a <code>LocalDate</code> containing the date on which the stop times must run.
+         * @param fromMinute a <code>int</code> containing the earliest minute of the day (inclusive).
+         * @param toMinute a <code>int</code> containing the latest minute of the day (inclusive).
+         * @param limit a <code>int</code> containing the maximum number of stop times to return.
+         * @return a modifiable <code>List</code> of <code>StopTimeModel</code> objects sorted by time.
+         */
+        private List<StopTimeModel> findTimes ( final TimetableIndex timetableIndex, final LocalDate date, final int fromMinute,
+                                                final int toMinute, final int limit ) {
+            final long epochDay = date.toEpochDay();
+            final int dayMask = 1 << (date.getDayOfWeek().getValue() - 1);
+            List<StopTimeModel> stopTimeModels = new ArrayList<>();
+            for ( int i = lowerBound(fromMinute); i < minutes.length && minutes[i] <= toMinute && stopTimeModels.size() < limit; i++ ) {
+                if ( runsOn(i, epochDay, dayMask) ) {
+                    stopTimeModels.add(toStopTimeModel(timetableIndex, i));
+                }
+            }
+            return stopTimeModels;
+        }
+
+        /**
+         * Return true iff the stop time at the supplied position takes place on the supplied day. A stop time takes place
+         * on a day which is not excluded and which is either an additional day or lies within the validity of the stop time
+         * on one of its operating days.
+         * @param position a <code>int</code> containing the position of the stop time.
+         * @param epochDay a <code>long</code> containing the day as the number of days since 1970-01-01.
+         * @param dayMask a <code>int</code> containing the bit of the day of the week.
+         * @return a <code>boolean</code> which is true iff the stop time takes place on the supplied day.
+         */
+        private boolean runsOn ( final int position, final long epochDay, final int dayMask ) {
+            if ( excludedDays[position] != null && Arrays.binarySearch(excludedDays[position], epochDay) >= 0 ) {
+                return false;
+            }
+            if ( additionalDays[position] != null && Arrays.binarySearch(additionalDays[position], epochDay) >= 0 ) {
+                return true;
+            }
+            return (operatingDays[position] & dayMask) != 0 && validFromDays[position] <= epochDay && validToDays[position] >= epochDay;
+        }
+
+        /**
+         * Return the position of the first stop time which is at or after the supplied minute of the day.
+         * @param minute a <code>int</code> containing the minute of the day to search for.
+         * @return a <code>int</code> containing the position of the first matching stop time or the number of stop times if none match.
+         */
+        private int lowerBound ( final int minute ) {
+            int low = 0;
+            int high = minutes.length;
+            while ( low < high ) {
+                int middle = (low + high) >>> 1;
+                if ( minutes[middle] < minute ) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+            return low;
+        }
+
+        /**
+         * Convert the stop time at the supplied position back into a <code>StopTimeModel</code> object.
+         * @param timetableIndex a <code>TimetableIndex</code> object containing the tables of route numbers, destinations and journeys.
+         * @param position a <code>int</code> containing the position of the stop time.
+         * @return a <code>StopTimeModel</code> object containing the stop time.
+         */
+        private StopTimeModel toStopTimeModel ( final TimetableIndex timetableIndex, final int position ) {
+            final LocalTime time = LocalTime.of(minutes[position] / 60, minutes[position] % 60);
+            final LocalTime otherTime = otherMinutes[position] >= 0 ? LocalTime.of(otherMinutes[position] / 60, otherMinutes[position] % 60) : null;
+            return StopTimeModel.builder()
+                    .id(ids[position])
+                    .stopName(stopName)
+                    .departureTime(type.contentEquals("Departure") ? time : otherTime)
+                    .arrivalTime(type.contentEquals("Departure") ? otherTime : time)
+                    .routeNumber(timetableIndex.values.get(routeIds[position]))
+                    .destination(timetableIndex.values.get(destinationIds[position]))
+                    .journeyNumber(timetableIndex.values.get(journeyIds[position]))
+                    .validFromDate(validFromDays[position] != NO_DATE ? LocalDate.ofEpochDay(validFromDays[position]) : null)
+                    .validToDate(validToDays[position] != NO_DATE ? LocalDate.ofEpochDay(validToDays[position]) : null)
+                    .operatingDays(toOperatingDays(operatingDays[position]))
+                    .additionalDates(toDates(additionalDays[position]))
+                    .excludedDates(toDates(excludedDays[position]))
+                    .build();
+        }
+
+    }
+
+}
@@ -0,0 +1,370 @@
+package de.davelee.trams.operations.service;
+
+import com.mongodb.client.result.UpdateResult;
+import de.davelee.trams.operations.model.StopTimeModel;
+import de.davelee.trams.operations.model.TimetableVersionModel;
+import de.davelee.trams.operations.repository.StopTimeCollections;
+import de.davelee.trams.operations.repository.TimetableVersionRepository;
+import org.bson.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.dao.DataAccessException;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.aggregation.AggregationOptions;
+import org.springframework.data.mongodb.core.index.IndexDefinition;
+import org.springframework.data.mongodb.core.index.IndexOperations;
+import org.springframework.data.mongodb.core.index.IndexResolver;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PreDestroy;
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This class provides a service which manages the versions of the timetable. An import writes its stop times into a
+ * staging collection which starts as a copy of the active timetable. The indexes of the staging collection are only
+ * built once all stop times have been written so that the bulk writes do not have to maintain them. The staging
+ * collection is then activated by switching the pointer to the active version so that queries never read a timetable
+ * which is incomplete or not indexed yet. Only one import can write a staging collection at a time across all instances.
+ * Every instance reads the pointer regularly so that all instances switch to a new version or a rollback. The collection
+ * of the previous version is kept so that the timetable can be rolled back quickly while older versions are only dropped
+ * once all instances have had enough time to switch to a newer version.
+ * @author Dave Lee
+ */
+@Service
+public class TimetableVersionService {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(TimetableVersionService.class);
+
+    /**
+     * The id of the pointer to the active version.
+     */
+    private static final String VERSION_ID = "stopTimes";
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    @Autowired
+    private TimetableVersionRepository timetableVersionRepository;
+
+    @Autowired
+    private StopTimeCollections stopTimeCollections;
+
+    @Autowired
+    private StopTimeNameService stopTimeNameService;
+
+    @Autowired
+    private TimetableIndexService timetableIndexService;
+
+    @Autowired
+    private DepartureCache departureCache;
+
+    @Autowired
+    private DepartureBoardService departureBoardService;
+
+    @Value("${timetable.versioning.enabled:true}")
+    private boolean versioningEnabled;
+
+    @Value("${timetable.versioning.refreshSeconds:30}")
+    private long refreshIntervalInSeconds;
+
+    @Value("${timetable.versioning.dropAfterMinutes:10}")
+    private long dropAfterMinutes;
+
+    @Value("${timetable.versioning.stagingTimeoutMinutes:360}")
+    private long stagingTimeoutMinutes;
+
+    private ScheduledExecutorService scheduler;
+
+    /**
+     * Load the active version as soon as the application has started if versioning is enabled. The version is loaded
+     * before any other startup task reads the stop times. If the database is not available then the stop times are read
+     * from the collection which was used before versions were introduced. Afterwards the pointer is read regularly so
+     * that versions which are activated or rolled back by other instances are also used by this instance.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    @Order(Ordered.HIGHEST_PRECEDENCE)
+    public void loadOnStartup ( ) {
+        if ( versioningEnabled ) {
+            try {
+                load();
+            } catch ( DataAccessException dataAccessException ) {
+                LOGGER.warn("Active timetable version could not be loaded at startup", dataAccessException);
+            }
+            scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "timetable-version");
+                thread.setDaemon(true);
+                return thread;
+            });
+            scheduler.scheduleWithFixedDelay(this::refresh, refreshIntervalInSeconds, refreshIntervalInSeconds, TimeUnit.SECONDS);
+        }
+    }
+
+    /**
+     * Stop reading the pointer when the application shuts down.
+     */
+    @PreDestroy
+    public void shutdown ( ) {
+        if ( scheduler != null ) {
+            scheduler.shutdownNow();
+        }
+    }
+
+    /**
+     * Read the pointer to the active version from the database so that all queries read the stop times of the active version.
+     */
+    public void load ( ) {
+        TimetableVersionModel timetableVersionModel = getTimetableVersion();
+        stopTimeCollections.setActiveCollectionName(timetableVersionModel.getCollectionName());
+        LOGGER.info("Loaded timetable version {} from collection {}", timetableVersionModel.getVersion(), timetableVersionModel.getCollectionName());
+    }
+
+    /**
+     * Read the pointer to the active version from the database and switch to the active version if it has been
+     * activated or rolled back by another instance. The timetable index, the cached departures and the departure boards
+     * are refreshed after a switch. Older versions which are no longer read by any instance are dropped.
+     */
+    public void refresh ( ) {
+        try {
+            TimetableVersionModel timetableVersionModel = getTimetableVersion();
+            if ( !timetableVersionModel.getCollectionName().equals(stopTimeCollections.getActiveCollectionName()) ) {
+                stopTimeCollections.setActiveCollectionName(timetableVersionModel.getCollectionName());
+                LOGGER.info("Switched to timetable collection {}", timetableVersionModel.getCollectionName());
+                refreshTimetable();
+            }
+            dropRetiredVersions(timetableVersionModel);
+        } catch ( RuntimeException runtimeException ) {
+            //Keep reading the pointer even if the database is not available at the moment.
+            LOGGER.warn("Active timetable version could not be refreshed", runtimeException);
+        }
+    }
+
+    /**
+     * Return true iff imports should write their stop times into a new version instead of the active version.
+     * @return a <code>boolean</code> which is true iff versioning is enabled.
+     */
+    public boolean isVersioningEnabled ( ) {
+        return versioningEnabled;
+    }
+
+    /**
+     * Create a new staging version which all stop times are written to until it is activated or discarded. The staging
+     * version starts as a copy of the active version without the stop times of the supplied routes so that routes which
+     * are imported again replace their stop times. The copy is made within the database and without indexes.
+     * @param replacedRouteNumbers a <code>Collection</code> of <code>String</code> containing the numbers of the routes
+     *                             whose stop times should not be copied which may be empty if all stop times should be copied.
+     * @return a <code>String</code> containing the name of the staging collection.
+     * @throws IllegalStateException if another import is already writing a staging version.
+     */
+    public synchronized String createStagingVersion ( final Collection<String> replacedRouteNumbers ) {
+        return reserveStagingVersion(replacedRouteNumbers.isEmpty() ? new Criteria()
+                : Criteria.where("routeId").nin(stopTimeNameService.getIds(replacedRouteNumbers)));
+    }
+
+    /**
+     * Create a new staging version which all stop times are written to until it is activated or discarded. The staging
+     * version starts empty so that the imported stop times replace the whole timetable.
+     * @return a <code>String</code> containing the name of the staging collection.
+     * @throws IllegalStateException if another import is already writing a staging version.
+     */
+    public synchronized String createEmptyStagingVersion ( ) {
+        return reserveStagingVersion(null);
+    }
+
+    /**
+     * This is a private helper method which reserves and creates a new staging version. The staging version is reserved
+     * in the pointer so that no other import on this or any other instance can create a staging version until it has been
+     * activated or discarded. A reservation which is older than the staging timeout is regarded as left behind by an
+     * import which was interrupted and its staging collection is dropped.
+     * @param copyCriteria a <code>Criteria</code> object selecting the stop times of the active version which are copied
+     *                     into the staging version which may be null if the staging version should start empty.
+     * @return a <code>String</code> containing the name of the staging collection.
+     * @throws IllegalStateException if another import is already writing a staging version.
+     */
+    private String reserveStagingVersion ( final Criteria copyCriteria ) {
+        if ( stopTimeCollections.getStagingCollectionName() != null ) {
+            throw new IllegalStateException("Another import is already writing a new timetable version");
+        }
+        final TimetableVersionModel timetableVersionModel = getTimetableVersion();
+        final String stagingCollectionName = StopTimeCollections.getVersionCollectionName(timetableVersionModel.getVersion() + 1);
+        final LocalDateTime now = LocalDateTime.now();
+        //Reserve the next version unless another import has reserved a version which has not timed out yet.
+        Query query = Query.query(Criteria.where("id").is(VERSION_ID).and("version").is(timetableVersionModel.getVersion())
+                .orOperator(Criteria.where("stagingCollectionName").is(null), Criteria.where("stagingStartedDateTime").lt(now.minusMinutes(stagingTimeoutMinutes))));
+        try {
+            UpdateResult updateResult = mongoTemplate.upsert(query, new Update()
+                    .set("version", timetableVersionModel.getVersion() + 1)
+                    .set("stagingCollectionName", stagingCollectionName)
+                    .set("stagingStartedDateTime", now)
+                    .setOnInsert("collectionName", timetableVersionModel.getCollectionName()), TimetableVersionModel.class);
+            if ( updateResult.getMatchedCount() == 0 && updateResult.getUpsertedId() == null ) {
+                throw new IllegalStateException("Another import is already writing a new timetable version");
+            }
+        } catch ( DuplicateKeyException duplicateKeyException ) {
+            throw new IllegalStateException("Another import is already writing a new timetable version", duplicateKeyException);
+        }
+        stopTimeCollections.setStagingCollectionName(stagingCollectionName);
+        //Remove the staging collection of an interrupted import whose reservation has just been taken over.
+        final String abandonedCollectionName = timetableVersionModel.getStagingCollectionName();
+        if ( abandonedCollectionName != null && !abandonedCollectionName.equals(stagingCollectionName) ) {
+            mongoTemplate.dropCollection(abandonedCollectionName);
+            LOGGER.warn("Dropped staging collection {} of an interrupted import", abandonedCollectionName);
+        }
+        //Remove any collection with the new name which was left behind before the reservation was stored.
+        mongoTemplate.dropCollection(stagingCollectionName);
+        final String activeCollectionName = stopTimeCollections.getActiveCollectionName();
+        if ( copyCriteria != null && mongoTemplate.collectionExists(activeCollectionName) ) {
+            mongoTemplate.aggregate(Aggregation.newAggregation(Aggregation.match(copyCriteria), Aggregation.out(stagingCollectionName))
+                    .withOptions(AggregationOptions.builder().allowDiskUse(true).skipOutput().build()), activeCollectionName, Document.class);
+            LOGGER.info("Created staging collection {} from collection {}", stagingCollectionName, activeCollectionName);
+        } else {
+            LOGGER.info("Created empty staging collection {}", stagingCollectionName);
+        }
+        return stagingCollectionName;
+    }
+
+    /**
+     * Build the indexes of the staging version and make it the active version. The previous version is kept so that
+     * the timetable can be rolled back and the version before it is retired so that it is dropped once all instances
+     * have switched to a newer version. This method does nothing if there is no staging version.
+     * @throws IllegalStateException if the staging version is no longer reserved for this import.
+     */
+    public synchronized void activateStagingVersion ( ) {
+        final String stagingCollectionName = stopTimeCollections.getStagingCollectionName();
+        if ( stagingCollectionName == null ) {
+            return;
+        }
+        //Build the indexes declared on the stop time model now that all stop times have been written.
+        IndexOperations indexOperations = mongoTemplate.indexOps(stagingCollectionName);
+        for ( IndexDefinition indexDefinition : IndexResolver.create(mongoTemplate.getConverter().getMappingContext()).resolveIndexFor(StopTimeModel.class) ) {
+            indexOperations.ensureIndex(indexDefinition);
+        }
+        //Switch the pointer to the new version with a single write which only succeeds if the reservation is still valid.
+        TimetableVersionModel timetableVersionModel = getTimetableVersion();
+        final LocalDateTime now = LocalDateTime.now();
+        Update update = new Update()
+                .set("collectionName", stagingCollectionName)
+                .set("previousCollectionName", timetableVersionModel.getCollectionName())
+                .set("activatedDateTime", now)
+                .unset("stagingCollectionName")
+                .unset("stagingStartedDateTime");
+        if ( timetableVersionModel.getPreviousCollectionName() != null ) {
+            update.set("retiredCollections." + timetableVersionModel.getPreviousCollectionName(), now);
+        }
+        UpdateResult updateResult = mongoTemplate.updateFirst(Query.query(Criteria.where("id").is(VERSION_ID)
+                .and("stagingCollectionName").is(stagingCollectionName)
+                .and("collectionName").is(timetableVersionModel.getCollectionName())), update, TimetableVersionModel.class);
+        if ( updateResult.getMatchedCount() == 0 ) {
+            throw new IllegalStateException("Staging collection " + stagingCollectionName + " is no longer reserved for this import");
+        }
+        stopTimeCollections.setActiveCollectionName(stagingCollectionName);
+        stopTimeCollections.setStagingCollectionName(null);
+        LOGGER.info("Activated timetable version in collection {}", stagingCollectionName);
+    }
+
+    /**
+     * Drop the staging version without activating it so that an import which failed does not leave any stop times
+     * behind and release the reservation so that another import can create a new version. This method does nothing if
+     * there is no staging version.
+     */
+    public synchronized void discardStagingVersion ( ) {
+        final String stagingCollectionName = stopTimeCollections.getStagingCollectionName();
+        if ( stagingCollectionName == null ) {
+            return;
+        }
+        stopTimeCollections.setStagingCollectionName(null);
+        mongoTemplate.dropCollection(stagingCollectionName);
+        mongoTemplate.updateFirst(Query.query(Criteria.where("id").is(VERSION_ID).and("stagingCollectionName").is(stagingCollectionName)),
+                new Update().unset("stagingCollectionName").unset("stagingStartedDateTime"), TimetableVersionModel.class);
+        LOGGER.warn("Discarded staging collection {}", stagingCollectionName);
+    }
+
+    /**
+     * Make the previous version the active version again. The version which was active becomes the previous version so
+     * that the rollback can be undone. The timetable index, the cached departures and the departure boards are refreshed.
+     * Other instances switch to the previous version the next time that they read the pointer.
+     * @return a <code>boolean</code> which is true iff the timetable was rolled back or false if there is no previous version.
+     */
+    public synchronized boolean rollback ( ) {
+        TimetableVersionModel timetableVersionModel = getTimetableVersion();
+        final String previousCollectionName = timetableVersionModel.getPreviousCollectionName();
+        if ( previousCollectionName == null || !mongoTemplate.collectionExists(previousCollectionName) ) {
+            return false;
+        }
+        UpdateResult updateResult = mongoTemplate.updateFirst(Query.query(Criteria.where("id").is(VERSION_ID)
+                .and("collectionName").is(timetableVersionModel.getCollectionName())
+                .and("previousCollectionName").is(previousCollectionName)), new Update()
+                .set("collectionName", previousCollectionName)
+                .set("previousCollectionName", timetableVersionModel.getCollectionName())
+                .set("activatedDateTime", LocalDateTime.now()), TimetableVersionModel.class);
+        if ( updateResult.getMatchedCount() == 0 ) {
+            //The active version was changed by another instance in the meantime.
+            return false;
+        }
+        stopTimeCollections.setActiveCollectionName(previousCollectionName);
+        LOGGER.info("Rolled back timetable to collection {}", previousCollectionName);
+        refreshTimetable();
+        return true;
+    }
+
+    /**
+     * This is a private helper method which reloads the names and refreshes the timetable index, the cached departures
+     * and the departure boards after the active version has changed.
+     */
+    private void refreshTimetable ( ) {
+        //The new version may use names which were stored by another instance.
+        stopTimeNameService.load();
+        timetableIndexService.rebuild();
+        departureCache.invalidateAll();
+        departureBoardService.refreshAll();
+    }
+
+    /**
+     * This is a private helper method which drops the collections of the versions which were replaced longer ago than
+     * the configured period so that every instance has read the pointer and finished its queries in the meantime.
+     * @param timetableVersionModel a <code>TimetableVersionModel</code> object containing the pointer to the active version.
+     */
+    private void dropRetiredVersions ( final TimetableVersionModel timetableVersionModel ) {
+        if ( timetableVersionModel.getRetiredCollections() == null ) {
+            return;
+        }
+        final LocalDateTime dropBeforeDateTime = LocalDateTime.now().minusMinutes(dropAfterMinutes);
+        for ( Map.Entry<String, LocalDateTime> retiredCollection : timetableVersionModel.getRetiredCollections().entrySet() ) {
+            if ( retiredCollection.getValue().isBefore(dropBeforeDateTime) ) {
+                mongoTemplate.dropCollection(retiredCollection.getKey());
+                mongoTemplate.updateFirst(Query.query(Criteria.where("id").is(VERSION_ID)),
+                        new Update().unset("retiredCollections." + retiredCollection.getKey()), TimetableVersionModel.class);
+                LOGGER.info("Dropped retired timetable collection {}", retiredCollection.getKey());
+            }
+        }
+    }
+
+    /**
+     * This is a private helper method which returns the stored pointer to the active version. If no pointer has been
+     * stored yet, then the collection which was used before versions were introduced is the active version.
+     * @return a <code>TimetableVersionModel</code> object containing the pointer to the active version.
+     */
+    private TimetableVersionModel getTimetableVersion ( ) {
+        return timetableVersionRepository.findById(VERSION_ID).orElseGet(() -> TimetableVersionModel.builder()
+                .id(VERSION_ID)
+                .version(0)
+                .collectionName(StopTimeCollections.DEFAULT_COLLECTION_NAME)
+                .build());
+    }
+
+}
@@ -0,0 +1,128 @@
+package de.davelee.trams.operations.service;
+
+import de.davelee.trams.operations.model.StopTimeModel;
+import de.davelee.trams.operations.model.TripModel;
+import de.davelee.trams.operations.model.TripPatternModel;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * This class collects stop times during an import into trips instead of writing each stop time. The stop times of each
+ * journey are collected in the order in which they are added until the journey is complete. A journey is regarded as
+ * complete when the import is flushed or when more journeys are open than fit into a batch, in which case the journey
+ * which has not received a stop time for the longest time is completed. The trips are written in batches of a fixed
+ * size together with their trip patterns. The number of stop times rather than trips is reported as the number of rows
+ * written so that both storage modes report the same numbers.
+ * @author Dave Lee
+ */
+public class TripBatchWriter extends StopTimeBatchWriter {
+
+    private final TripPatternService tripPatternService;
+
+    /**
+     * The stop times of the journeys which are not complete yet by journey in the order in which they last received a stop time.
+     */
+    private final Map<String, List<StopTimeModel>> openJourneys;
+
+    private final Map<String, TripPatternModel> tripPatterns;
+
+    private final List<TripModel> trips;
+
+    private int stopTimesInBatch;
+
+    private long tripsWritten;
+
+    /**
+     * Create a new batch writer which writes trips with the supplied service and reports each written batch to the supplied progress.
+     * @param tripPatternService a <code>TripPatternService</code> object to convert and write the trips with.
+     * @param batchSize a <code>int</code> containing the number of trips per batch which should be greater than 0.
+     * @param importProgress a <code>ImportProgress</code> object to add the number of written stop times to.
+     */
+    public TripBatchWriter ( final TripPatternService tripPatternService, final int batchSize, final ImportProgress importProgress ) {
+        //Stop times are never written to the stop time repository.
+        super(null, batchSize, importProgress);
+        this.tripPatternService = tripPatternService;
+        this.openJourneys = new LinkedHashMap<>(16, 0.75f, true);
+        this.tripPatterns = new LinkedHashMap<>();
+        this.trips = new ArrayList<>(getBatchSize());
+    }
+
+    /**
+     * Add the supplied stop time to its journey and complete the oldest journey if too many journeys are open.
+     * @param stopTimeModel a <code>StopTimeModel</code> object to write to the database as part of its trip.
+     */
+    @Override
+    public void add ( final StopTimeModel stopTimeModel ) {
+        openJourneys.computeIfAbsent(getJourneyKey(stopTimeModel), journeyKey -> new ArrayList<>()).add(stopTimeModel);
+        if ( openJourneys.size() > getBatchSize() ) {
+            Iterator<List<StopTimeModel>> oldestJourney = openJourneys.values().iterator();
+            completeJourney(oldestJourney.next());
+            oldestJourney.remove();
+        }
+    }
+
+    /**
+     * Complete all open journeys and write all trips in the current batch to the database. This method must be called
+     * once all stop times have been added to ensure that the last trips are also written.
+     */
+    @Override
+    public void flush ( ) {
+        for ( List<StopTimeModel> stopTimeModels : openJourneys.values() ) {
+            completeJourney(stopTimeModels);
+        }
+        openJourneys.clear();
+        writeTrips();
+    }
+
+    /**
+     * Return the number of trips which have been written to the database so far.
+     * @return a <code>long</code> containing the number of trips written.
+     */
+    public long getTripsWritten ( ) {
+        return tripsWritten;
+    }
+
+    /**
+     * This is a private helper method which converts the stop times of a complete journey into a trip and writes the
+     * batch of trips to the database if it is full.
+     * @param stopTimeModels a <code>List</code> of <code>StopTimeModel</code> objects containing the stop times of the journey.
+     */
+    private void completeJourney ( final List<StopTimeModel> stopTimeModels ) {
+        TripPatternModel tripPatternModel = tripPatternService.toPattern(stopTimeModels);
+        tripPatterns.putIfAbsent(tripPatternModel.getId(), tripPatternModel);
+        trips.add(tripPatternService.toTrip(tripPatternModel, stopTimeModels));
+        stopTimesInBatch += stopTimeModels.size();
+        if ( trips.size() >= getBatchSize() ) {
+            writeTrips();
+        }
+    }
+
+    /**
+     * This is a private helper method which writes the current batch of trips and their trip patterns to the database.
+     */
+    private void writeTrips ( ) {
+        if ( trips.isEmpty() ) {
+            return;
+        }
+        tripPatternService.writeTrips(new ArrayList<>(tripPatterns.values()), new ArrayList<>(trips));
+        tripsWritten += trips.size();
+        recordBatch(stopTimesInBatch);
+        tripPatterns.clear();
+        trips.clear();
+        stopTimesInBatch = 0;
+    }
+
+    /**
+     * This is a private helper method which returns the key of the journey which the supplied stop time belongs to.
+     * @param stopTimeModel a <code>StopTimeModel</code> object containing the stop time.
+     * @return a <code>String</code> containing the key of the journey.
+     */
+    private String getJourneyKey ( final StopTimeModel stopTimeModel ) {
+        return stopTimeModel.getRouteNumber() + "\u0000" + stopTimeModel.getJourneyNumber() + "\u0000" + stopTimeModel.getDestination();
+    }
+
+}
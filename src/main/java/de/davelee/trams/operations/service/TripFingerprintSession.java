@@ -0,0 +1,298 @@
+package de.davelee.trams.operations.service;
+
+import de.davelee.trams.operations.model.StopTimeModel;
+import de.davelee.trams.operations.model.TripFingerprintModel;
+import de.davelee.trams.operations.repository.TripFingerprintRepository;
+import org.springframework.util.DigestUtils;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * This class represents the fingerprints of the trips of a single GTFS import. The stored fingerprints of the trips of
+ * the imported routes are loaded once when the session is created. While the stop times of the feed are read, the
+ * fingerprint of each stop time is added to a sum for its trip so that the order in which the stop times are read does
+ * not matter and only the sum has to be held in memory for each trip. The fingerprints of the feed can then be compared
+ * with the stored fingerprints to find the trips which are new or changed, which only have a changed calendar or which
+ * have been removed from the feed.
+ * @author Dave Lee
+ */
+public class TripFingerprintSession {
+
+    /**
+     * The number of trip fingerprints which are written or deleted with each query.
+     */
+    private static final int BATCH_SIZE = 1000;
+
+    private final TripFingerprintRepository tripFingerprintRepository;
+
+    private final Map<String, String> calendarFingerprints;
+
+    private final Map<String, TripFingerprintModel> storedFingerprints = new HashMap<>();
+
+    private final Map<String, TripDigest> tripDigests = new LinkedHashMap<>();
+
+    /**
+     * Create a new session and load the stored fingerprints of all trips of the supplied routes.
+     * @param tripFingerprintRepository a <code>TripFingerprintRepository</code> object to load and write the trip fingerprints.
+     * @param routeNumbers a <code>Collection</code> of <code>String</code> containing the numbers of the routes which are imported.
+     * @param calendarFingerprints a <code>Map</code> with the service id as key and the fingerprint of its calendar as value.
+     */
+    public TripFingerprintSession ( final TripFingerprintRepository tripFingerprintRepository, final Collection<String> routeNumbers,
+                                    final Map<String, String> calendarFingerprints ) {
+        this.tripFingerprintRepository = tripFingerprintRepository;
+        this.calendarFingerprints = calendarFingerprints;
+        if ( !routeNumbers.isEmpty() ) {
+            for ( TripFingerprintModel tripFingerprintModel : tripFingerprintRepository.findByRouteNumberIn(routeNumbers) ) {
+                storedFingerprints.put(tripFingerprintModel.getId(), tripFingerprintModel);
+            }
+        }
+    }
+
+    /**
+     * Return the fingerprint of the supplied content.
+     * @param content a <code>String</code> containing the content to return the fingerprint for.
+     * @return a <code>String</code> containing the fingerprint as a hexadecimal number.
+     */
+    public static String fingerprint ( final String content ) {
+        return DigestUtils.md5DigestAsHex(content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Add the supplied stop time to the fingerprint of its trip.
+     * @param tripId a <code>String</code> containing the id of the trip in the feed.
+     * @param serviceId a <code>String</code> containing the id of the service of the trip in the feed.
+     * @param stopSequence a <code>int</code> containing the position of the stop time within its trip.
+     * @param stopTimeModel a <code>StopTimeModel</code> object containing the stop time as it is stored.
+     */
+    public void addStopTime ( final String tripId, final String serviceId, final int stopSequence, final StopTimeModel stopTimeModel ) {
+        TripDigest tripDigest = tripDigests.computeIfAbsent(tripId, id -> new TripDigest(stopTimeModel.getRouteNumber(),
+                stopTimeModel.getDestination(), serviceId));
+        byte[] stopTimeDigest = DigestUtils.md5Digest((stopSequence + "|" + stopTimeModel.getStopName() + "|"
+                + stopTimeModel.getArrivalTime() + "|" + stopTimeModel.getDepartureTime()).getBytes(StandardCharsets.UTF_8));
+        tripDigest.stopTimeSum += ByteBuffer.wrap(stopTimeDigest).getLong();
+        tripDigest.numberOfStopTimes++;
+    }
+
+    /**
+     * Record that a stop time of the supplied trip has been written with the supplied id.
+     * @param tripId a <code>String</code> containing the id of the trip in the feed.
+     * @param stopTimeId a <code>int</code> containing the id of the stop time which was written.
+     */
+    public void addStopTimeId ( final String tripId, final int stopTimeId ) {
+        List<Integer> stopTimeIdRanges = tripDigests.get(tripId).stopTimeIdRanges;
+        int size = stopTimeIdRanges.size();
+        //Extend the last range if the id follows it, which is the case for all stop times of a trip in most feeds.
+        if ( size > 0 && stopTimeIdRanges.get(size - 2) + stopTimeIdRanges.get(size - 1) == stopTimeId ) {
+            stopTimeIdRanges.set(size - 1, stopTimeIdRanges.get(size - 1) + 1);
+        } else {
+            stopTimeIdRanges.add(stopTimeId);
+            stopTimeIdRanges.add(1);
+        }
+    }
+
+    /**
+     * Remove the ids of the stop times of the supplied trip which have been recorded so far so that the trip can be
+     * written again.
+     * @param tripId a <code>String</code> containing the id of the trip in the feed.
+     * @return a <code>List</code> of <code>Integer</code> containing the first id and the number of ids of each range
+     * which have been removed.
+     */
+    public List<Integer> removeStopTimeIds ( final String tripId ) {
+        List<Integer> stopTimeIdRanges = tripDigests.get(tripId).stopTimeIdRanges;
+        List<Integer> removedStopTimeIdRanges = new ArrayList<>(stopTimeIdRanges);
+        stopTimeIdRanges.clear();
+        return removedStopTimeIdRanges;
+    }
+
+    /**
+     * Return true iff the supplied trip has not been stored before or its route, destination or stop times have changed
+     * since it was stored, based on the stop times which have been added so far.
+     * @param tripId a <code>String</code> containing the id of the trip in the feed.
+     * @return a <code>boolean</code> which is true iff the trip is new or has changed.
+     */
+    public boolean isChanged ( final String tripId ) {
+        TripDigest tripDigest = tripDigests.get(tripId);
+        TripFingerprintModel storedFingerprint = storedFingerprints.get(tripId);
+        return tripDigest != null && (storedFingerprint == null || !tripDigest.getTripFingerprint().equals(storedFingerprint.getTripFingerprint()));
+    }
+
+    /**
+     * Return the id of the service of the supplied trip in the feed.
+     * @param tripId a <code>String</code> containing the id of the trip in the feed.
+     * @return a <code>String</code> containing the id of the service which is null if the trip is not part of the feed.
+     */
+    public String getServiceId ( final String tripId ) {
+        TripDigest tripDigest = tripDigests.get(tripId);
+        return tripDigest != null ? tripDigest.serviceId : null;
+    }
+
+    /**
+     * Return the ids of all trips of the feed which have not been stored before or whose route, destination or stop
+     * times have changed since they were stored.
+     * @return a <code>List</code> of <code>String</code> containing the ids of the new and changed trips.
+     */
+    public List<String> getChangedTripIds ( ) {
+        List<String> changedTripIds = new ArrayList<>();
+        for ( String tripId : tripDigests.keySet() ) {
+            if ( isChanged(tripId) ) {
+                changedTripIds.add(tripId);
+            }
+        }
+        return changedTripIds;
+    }
+
+    /**
+     * Return the stored fingerprints of all trips of the feed whose route, destination or stop times have changed.
+     * @return a <code>List</code> of <code>TripFingerprintModel</code> objects containing the fingerprints of the stop
+     * times which have to be replaced.
+     */
+    public List<TripFingerprintModel> getReplacedTrips ( ) {
+        List<TripFingerprintModel> replacedTrips = new ArrayList<>();
+        for ( Map.Entry<String, TripDigest> tripDigest : tripDigests.entrySet() ) {
+            TripFingerprintModel storedFingerprint = storedFingerprints.get(tripDigest.getKey());
+            if ( storedFingerprint != null && !tripDigest.getValue().getTripFingerprint().equals(storedFingerprint.getTripFingerprint()) ) {
+                replacedTrips.add(storedFingerprint);
+            }
+        }
+        return replacedTrips;
+    }
+
+    /**
+     * Return the stored fingerprints of all trips of the feed whose stop times are unchanged but whose calendar has changed.
+     * @return a <code>List</code> of <code>TripFingerprintModel</code> objects containing the fingerprints of the trips
+     * whose stop times only have to be updated.
+     */
+    public List<TripFingerprintModel> getTripsWithChangedCalendar ( ) {
+        List<TripFingerprintModel> tripsWithChangedCalendar = new ArrayList<>();
+        for ( Map.Entry<String, TripDigest> tripDigest : tripDigests.entrySet() ) {
+            TripFingerprintModel storedFingerprint = storedFingerprints.get(tripDigest.getKey());
+            if ( storedFingerprint != null && tripDigest.getValue().getTripFingerprint().equals(storedFingerprint.getTripFingerprint())
+                    && !Objects.equals(getCalendarFingerprint(tripDigest.getValue()), storedFingerprint.getCalendarFingerprint()) ) {
+                tripsWithChangedCalendar.add(storedFingerprint);
+            }
+        }
+        return tripsWithChangedCalendar;
+    }
+
+    /**
+     * Return the stored fingerprints of all trips of the imported routes which are no longer part of the feed.
+     * @return a <code>List</code> of <code>TripFingerprintModel</code> objects containing the fingerprints of the removed trips.
+     */
+    public List<TripFingerprintModel> getRemovedTrips ( ) {
+        List<TripFingerprintModel> removedTrips = new ArrayList<>();
+        for ( TripFingerprintModel storedFingerprint : storedFingerprints.values() ) {
+            if ( !tripDigests.containsKey(storedFingerprint.getId()) ) {
+                removedTrips.add(storedFingerprint);
+            }
+        }
+        return removedTrips;
+    }
+
+    /**
+     * Return the number of trips of the imported routes which are part of the feed.
+     * @return a <code>int</code> containing the number of trips.
+     */
+    public int getNumberOfTrips ( ) {
+        return tripDigests.size();
+    }
+
+    /**
+     * Write the fingerprints of all trips whose stop times have been written or whose calendar has changed to the
+     * database and replace the previously stored fingerprints of these trips.
+     * @param removeMissingTrips a <code>boolean</code> which is true iff the stored fingerprints of the trips which are
+     *                           no longer part of the feed should also be deleted.
+     */
+    public void flush ( final boolean removeMissingTrips ) {
+        List<String> idsToDelete = new ArrayList<>();
+        List<TripFingerprintModel> fingerprintsToWrite = new ArrayList<>();
+        for ( Map.Entry<String, TripDigest> tripDigestEntry : tripDigests.entrySet() ) {
+            TripDigest tripDigest = tripDigestEntry.getValue();
+            TripFingerprintModel storedFingerprint = storedFingerprints.get(tripDigestEntry.getKey());
+            List<Integer> stopTimeIdRanges;
+            if ( !tripDigest.stopTimeIdRanges.isEmpty() ) {
+                stopTimeIdRanges = tripDigest.stopTimeIdRanges;
+            } else if ( storedFingerprint != null && tripDigest.getTripFingerprint().equals(storedFingerprint.getTripFingerprint())
+                    && !Objects.equals(getCalendarFingerprint(tripDigest), storedFingerprint.getCalendarFingerprint()) ) {
+                stopTimeIdRanges = storedFingerprint.getStopTimeIdRanges();
+            } else {
+                continue;
+            }
+            if ( storedFingerprint != null ) {
+                idsToDelete.add(storedFingerprint.getId());
+            }
+            fingerprintsToWrite.add(TripFingerprintModel.builder()
+                    .id(tripDigestEntry.getKey())
+                    .routeNumber(tripDigest.routeNumber)
+                    .tripFingerprint(tripDigest.getTripFingerprint())
+                    .calendarFingerprint(getCalendarFingerprint(tripDigest))
+                    .stopTimeIdRanges(stopTimeIdRanges)
+                    .build());
+        }
+        if ( removeMissingTrips ) {
+            getRemovedTrips().forEach(removedTrip -> idsToDelete.add(removedTrip.getId()));
+        }
+        for ( int i = 0; i < idsToDelete.size(); i += BATCH_SIZE ) {
+            tripFingerprintRepository.deleteByIdIn(idsToDelete.subList(i, Math.min(i + BATCH_SIZE, idsToDelete.size())));
+        }
+        for ( int i = 0; i < fingerprintsToWrite.size(); i += BATCH_SIZE ) {
+            tripFingerprintRepository.insert(new ArrayList<>(fingerprintsToWrite.subList(i, Math.min(i + BATCH_SIZE, fingerprintsToWrite.size()))));
+        }
+    }
+
+    /**
+     * This is a private helper method which returns the fingerprint of the calendar of the supplied trip.
+     * @param tripDigest a <code>TripDigest</code> object containing the fingerprint of the trip.
+     * @return a <code>String</code> containing the fingerprint of the calendar which is null if the service of the trip is not part of the feed.
+     */
+    private String getCalendarFingerprint ( final TripDigest tripDigest ) {
+        return calendarFingerprints.get(tripDigest.serviceId);
+    }
+
+    /**
+     * This class contains the fingerprint of a single trip of the feed while the stop times are being read.
+     */
+    private static final class TripDigest {
+
+        private final String routeNumber;
+
+        private final String destination;
+
+        private final String serviceId;
+
+        private final List<Integer> stopTimeIdRanges = new ArrayList<>(2);
+
+        private long stopTimeSum;
+
+        private int numberOfStopTimes;
+
+        /**
+         * Create a new fingerprint for a trip of the supplied route, destination and service without any stop times.
+         * @param routeNumber a <code>String</code> containing the number of the route of the trip.
+         * @param destination a <code>String</code> containing the destination of the trip.
+         * @param serviceId a <code>String</code> containing the id of the service of the trip.
+         */
+        private TripDigest ( final String routeNumber, final String destination, final String serviceId ) {
+            this.routeNumber = routeNumber;
+            this.destination = destination;
+            this.serviceId = serviceId;
+        }
+
+        /**
+         * Return the fingerprint of the route, destination and stop times of the trip.
+         * @return a <code>String</code> containing the fingerprint of the trip.
+         */
+        private String getTripFingerprint ( ) {
+            return fingerprint(routeNumber + "|" + destination + "|" + numberOfStopTimes + "|" + stopTimeSum);
+        }
+
+    }
+
+}
@@ -0,0 +1,273 @@
+package de.davelee.trams.operations.service;
+
+import de.davelee.trams.operations.model.StopTimeModel;
+import de.davelee.trams.operations.model.TimetableStorageMode;
+import de.davelee.trams.operations.model.TripModel;
+import de.davelee.trams.operations.model.TripPatternModel;
+import de.davelee.trams.operations.repository.StopTimeConverters;
+import de.davelee.trams.operations.repository.TripPatternRepository;
+import de.davelee.trams.operations.repository.TripRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+/**
+ * This class provides a service which stores journeys as trips and trip patterns instead of one stop time per stop and
+ * journey if the trip pattern storage mode has been configured. Stop times are converted into trips during an import and
+ * are derived again from the trips when they are retrieved so that they are returned in the same form in both storage
+ * modes. The trips calling at a stop are found through the index of trip patterns by stop.
+ * @author Dave Lee
+ */
+@Service
+public class TripPatternService {
+
+    private static final int MINUTES_PER_DAY = 1440;
+
+    @Autowired
+    private TripRepository tripRepository;
+
+    @Autowired
+    private TripPatternRepository tripPatternRepository;
+
+    @Autowired
+    private StopTimeNameService stopTimeNameService;
+
+    @Value("${timetable.storage.mode:STOP_TIMES}")
+    private TimetableStorageMode storageMode;
+
+    /**
+     * The ids of the trip patterns which have already been written to the database by this instance.
+     */
+    private final Set<String> writtenPatternIds = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Return true iff imported journeys are stored as trips and trip patterns instead of stop times.
+     * @return a <code>boolean</code> which is true iff the trip pattern storage mode has been configured.
+     */
+    public boolean isTripPatternStorage ( ) {
+        return storageMode == TimetableStorageMode.TRIP_PATTERNS;
+    }
+
+    /**
+     * Return the trip pattern containing the stops of the supplied stop times of a single journey.
+     * @param stopTimeModels a <code>List</code> of <code>StopTimeModel</code> objects containing the stop times of a
+     *                       journey in the order in which the stops are called at.
+     * @return a <code>TripPatternModel</code> object containing the trip pattern.
+     */
+    public TripPatternModel toPattern ( final List<StopTimeModel> stopTimeModels ) {
+        List<Integer> stopIds = new ArrayList<>(stopTimeModels.size());
+        for ( StopTimeModel stopTimeModel : stopTimeModels ) {
+            stopIds.add(stopTimeNameService.getOrCreateId(stopTimeModel.getStopName()));
+        }
+        return TripPatternModel.builder()
+                .id(UUID.nameUUIDFromBytes(stopIds.toString().getBytes(StandardCharsets.UTF_8)).toString())
+                .stopIds(stopIds)
+                .build();
+    }
+
+    /**
+     * Return the trip containing the times of the supplied stop times of a single journey at the stops of the supplied
+     * trip pattern.
+     * @param tripPatternModel a <code>TripPatternModel</code> object containing the trip pattern of the journey.
+     * @param stopTimeModels a <code>List</code> of <code>StopTimeModel</code> objects containing the stop times of a
+     *                       journey in the order in which the stops are called at.
+     * @return a <code>TripModel</code> object containing the trip.
+     */
+    public TripModel toTrip ( final TripPatternModel tripPatternModel, final List<StopTimeModel> stopTimeModels ) {
+        final StopTimeModel firstStopTimeModel = stopTimeModels.get(0);
+        final int startTime = getStartTime(stopTimeModels);
+        List<Integer> arrivalOffsets = new ArrayList<>(stopTimeModels.size());
+        List<Integer> departureOffsets = new ArrayList<>(stopTimeModels.size());
+        for ( StopTimeModel stopTimeModel : stopTimeModels ) {
+            arrivalOffsets.add(toOffset(startTime, stopTimeModel.getArrivalTime()));
+            departureOffsets.add(toOffset(startTime, stopTimeModel.getDepartureTime()));
+        }
+        return TripModel.builder()
+                .patternId(tripPatternModel.getId())
+                .journeyNumber(firstStopTimeModel.getJourneyNumber())
+                .routeId(stopTimeNameService.getOrCreateId(firstStopTimeModel.getRouteNumber()))
+                .destinationId(stopTimeNameService.getOrCreateId(firstStopTimeModel.getDestination()))
+                .startTime(startTime)
+                .arrivalOffsets(arrivalOffsets)
+                .departureOffsets(departureOffsets)
+                .validFromDate(firstStopTimeModel.getValidFromDate())
+                .validToDate(firstStopTimeModel.getValidToDate())
+                .operatingDayMask(StopTimeConverters.toMask(firstStopTimeModel.getOperatingDays()))
+                .additionalDates(firstStopTimeModel.getAdditionalDates())
+                .excludedDates(firstStopTimeModel.getExcludedDates())
+                .build();
+    }
+
+    /**
+     * Return true iff the trip pattern with the supplied id has already been written to the database by this instance.
+     * @param patternId a <code>String</code> containing the id of the trip pattern.
+     * @return a <code>boolean</code> which is true iff the trip pattern has already been written.
+     */
+    public boolean isWrittenPattern ( final String patternId ) {
+        return writtenPatternIds.contains(patternId);
+    }
+
+    /**
+     * Write the supplied trip patterns which have not been written yet and the supplied trips to the database. Trip
+     * patterns are written before the trips so that every trip which has been written can be retrieved.
+     * @param tripPatternModels a <code>Collection</code> of <code>TripPatternModel</code> objects containing the trip patterns of the trips.
+     * @param tripModels a <code>List</code> of <code>TripModel</code> objects containing the trips to write.
+     */
+    public void writeTrips ( final Collection<TripPatternModel> tripPatternModels, final List<TripModel> tripModels ) {
+        List<TripPatternModel> newTripPatternModels = new ArrayList<>();
+        for ( TripPatternModel tripPatternModel : tripPatternModels ) {
+            if ( !isWrittenPattern(tripPatternModel.getId()) ) {
+                newTripPatternModels.add(tripPatternModel);
+            }
+        }
+        if ( !newTripPatternModels.isEmpty() ) {
+            //Trip patterns are saved instead of inserted as another instance may have written the same trip pattern.
+            tripPatternRepository.saveAll(newTripPatternModels);
+            newTripPatternModels.forEach(tripPatternModel -> writtenPatternIds.add(tripPatternModel.getId()));
+        }
+        if ( !tripModels.isEmpty() ) {
+            tripRepository.insert(tripModels);
+        }
+    }
+
+    /**
+     * Return the stop times (either departures or arrivals) at the supplied stops which run on the supplied date within
+     * the supplied time range. The trip patterns calling at the stops are found first and then the trips of these trip
+     * patterns which run on the date.
+     * @param stopNames a <code>Collection</code> of <code>String</code> containing the names of the stops to retrieve stop times for.
+     * @param type a <code>String</code> which can be either Departure to return the departures or Arrival to return the arrivals.
+     * @param date a <code>LocalDate</code> containing the date on which the stop times must run.
+     * @param fromTime a <code>LocalTime</code> containing the earliest time to retrieve (inclusive).
+     * @param toTime a <code>LocalTime</code> containing the latest time to retrieve (inclusive).
+     * @return a modifiable <code>List</code> of <code>StopTimeModel</code> objects of all stops sorted by time.
+     */
+    public List<StopTimeModel> findTimes ( final Collection<String> stopNames, final String type, final LocalDate date,
+                                           final LocalTime fromTime, final LocalTime toTime ) {
+        final List<StopTimeModel> stopTimeModels = new ArrayList<>();
+        final Set<Integer> stopIds = new HashSet<>(stopTimeNameService.getIds(stopNames));
+        if ( stopIds.isEmpty() ) {
+            return stopTimeModels;
+        }
+        final Map<String, TripPatternModel> tripPatternsById = new HashMap<>();
+        for ( TripPatternModel tripPatternModel : tripPatternRepository.findByStopIdsIn(stopIds) ) {
+            tripPatternsById.put(tripPatternModel.getId(), tripPatternModel);
+        }
+        if ( tripPatternsById.isEmpty() ) {
+            return stopTimeModels;
+        }
+        final int fromMinutes = StopTimeConverters.toMinutes(fromTime);
+        final int toMinutes = StopTimeConverters.toMinutes(toTime);
+        for ( TripModel tripModel : tripRepository.findByPatternIdsAndDate(tripPatternsById.keySet(), date.getDayOfWeek(), date) ) {
+            final List<Integer> patternStopIds = tripPatternsById.get(tripModel.getPatternId()).getStopIds();
+            final List<Integer> offsets = type.contentEquals("Departure") ? tripModel.getDepartureOffsets() : tripModel.getArrivalOffsets();
+            for ( int position = 0; position < patternStopIds.size(); position++ ) {
+                //A stop may be called at more than once by a trip e.g. a circular route.
+                if ( offsets.get(position) == null || !stopIds.contains(patternStopIds.get(position)) ) {
+                    continue;
+                }
+                final int minutes = (tripModel.getStartTime() + offsets.get(position)) % MINUTES_PER_DAY;
+                if ( minutes >= fromMinutes && minutes <= toMinutes ) {
+                    stopTimeModels.add(toStopTime(tripModel, patternStopIds.get(position), position));
+                }
+            }
+        }
+        stopTimeModels.sort(Comparator.comparing(stopTimeModel -> stopTimeModel.getTime(type)));
+        return stopTimeModels;
+    }
+
+    /**
+     * Stream the stop times of all stored trips. The trips are read from a database cursor and their stop times are
+     * derived as the stream is consumed. This method is used to build the timetable index. The stream must be closed after use.
+     * @return a <code>Stream</code> of <code>StopTimeModel</code> objects containing one stop time per trip and stop.
+     */
+    public Stream<StopTimeModel> streamAllStopTimes ( ) {
+        final Map<String, TripPatternModel> tripPatternsById = new HashMap<>();
+        for ( TripPatternModel tripPatternModel : tripPatternRepository.findAll() ) {
+            tripPatternsById.put(tripPatternModel.getId(), tripPatternModel);
+        }
+        return tripRepository.streamAll()
+                .filter(tripModel -> tripPatternsById.containsKey(tripModel.getPatternId()))
+                .flatMap(tripModel -> {
+                    final List<Integer> stopIds = tripPatternsById.get(tripModel.getPatternId()).getStopIds();
+                    return IntStream.range(0, stopIds.size()).mapToObj(position -> toStopTime(tripModel, stopIds.get(position), position));
+                });
+    }
+
+    /**
+     * This is a private helper method which derives the stop time of the supplied trip at the stop in the supplied position
+     * of its trip pattern. Stop times which are derived from trips do not have an id.
+     * @param tripModel a <code>TripModel</code> object containing the trip.
+     * @param stopId a <code>int</code> containing the short id of the stop name.
+     * @param position a <code>int</code> containing the position of the stop in the trip pattern.
+     * @return a <code>StopTimeModel</code> object containing the stop time.
+     */
+    private StopTimeModel toStopTime ( final TripModel tripModel, final int stopId, final int position ) {
+        return StopTimeModel.builder()
+                .stopName(stopTimeNameService.getName(stopId))
+                .arrivalTime(toTime(tripModel.getStartTime(), tripModel.getArrivalOffsets().get(position)))
+                .departureTime(toTime(tripModel.getStartTime(), tripModel.getDepartureOffsets().get(position)))
+                .destination(stopTimeNameService.getName(tripModel.getDestinationId()))
+                .routeNumber(stopTimeNameService.getName(tripModel.getRouteId()))
+                .journeyNumber(tripModel.getJourneyNumber())
+                .validFromDate(tripModel.getValidFromDate())
+                .validToDate(tripModel.getValidToDate())
+                .operatingDays(StopTimeConverters.toDaysOfWeek(tripModel.getOperatingDayMask()))
+                .additionalDates(tripModel.getAdditionalDates())
+                .excludedDates(tripModel.getExcludedDates())
+                .build();
+    }
+
+    /**
+     * This is a private helper method which returns the first time of the supplied stop times of a journey.
+     * @param stopTimeModels a <code>List</code> of <code>StopTimeModel</code> objects containing the stop times of a journey.
+     * @return a <code>int</code> containing the first time as the minute of the day (0–1439).
+     */
+    private int getStartTime ( final List<StopTimeModel> stopTimeModels ) {
+        for ( StopTimeModel stopTimeModel : stopTimeModels ) {
+            if ( stopTimeModel.getArrivalTime() != null ) {
+                return StopTimeConverters.toMinutes(stopTimeModel.getArrivalTime());
+            } else if ( stopTimeModel.getDepartureTime() != null ) {
+                return StopTimeConverters.toMinutes(stopTimeModel.getDepartureTime());
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * This is a private helper method which converts a time to the number of minutes after the start time of its trip.
+     * Times after midnight are offset from the start time of the previous day.
+     * @param startTime a <code>int</code> containing the start time of the trip as the minute of the day (0–1439).
+     * @param time a <code>LocalTime</code> containing the time to convert which may be null.
+     * @return a <code>Integer</code> containing the offset in minutes which is null if the time is null.
+     */
+    private Integer toOffset ( final int startTime, final LocalTime time ) {
+        return time != null ? Math.floorMod(StopTimeConverters.toMinutes(time) - startTime, MINUTES_PER_DAY) : null;
+    }
+
+    /**
+     * This is a private helper method which converts the offset of a time after the start time of its trip back to a time.
+     * @param startTime a <code>int</code> containing the start time of the trip as the minute of the day (0–1439).
+     * @param offset a <code>Integer</code> containing the offset in minutes which may be null.
+     * @return a <code>LocalTime</code> containing the time which is null if the offset is null.
+     */
+    private LocalTime toTime ( final int startTime, final Integer offset ) {
+        return offset != null ? StopTimeConverters.toLocalTime((startTime + offset) % MINUTES_PER_DAY) : null;
+    }
+
+}
@@ -0,0 +1,136 @@
+package de.davelee.trams.operations.service;
+
+import de.davelee.trams.operations.model.BusVehicleModel;
+import de.davelee.trams.operations.model.TrainVehicleModel;
+import de.davelee.trams.operations.model.TramVehicleModel;
+import de.davelee.trams.operations.model.VehicleModel;
+import org.bson.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.annotation.TypeAlias;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.FindAndReplaceOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.convert.DefaultMongoTypeMapper;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.util.CloseableIterator;
+import org.springframework.stereotype.Service;
+import org.springframework.util.StringUtils;
+
+import java.util.List;
+
+/**
+ * This class provides a service which moves vehicles from the previous separate bus, train and tram collections into the
+ * single vehicle collection. Each vehicle keeps its id and receives the type alias of its model. The vehicles are
+ * written with upserts so that a migration which was interrupted can simply be run again. A previous collection is only
+ * dropped after all of its vehicles have been written. Vehicles which were stored before the next inspection due date
+ * was introduced are written again so that the date is calculated for them.
+ * @author Dave Lee
+ */
+@Service
+public class VehicleMigrationService {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(VehicleMigrationService.class);
+
+    private static final int BATCH_SIZE = 1000;
+
+    /**
+     * The vehicle models which were previously stored in a separate collection per model.
+     */
+    private static final List<Class<? extends VehicleModel>> VEHICLE_MODEL_CLASSES = List.of(BusVehicleModel.class,
+            TrainVehicleModel.class, TramVehicleModel.class);
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    @Value("${vehicle.migration.enabled:true}")
+    private boolean migrationEnabled;
+
+    /**
+     * Migrate the vehicles as soon as the application has started if the migration is enabled. If the database is not
+     * available then the migration is attempted again at the next startup.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void migrateOnStartup ( ) {
+        if ( migrationEnabled ) {
+            try {
+                migrate();
+                storeNextInspectionDueDates();
+            } catch ( DataAccessException dataAccessException ) {
+                LOGGER.warn("Vehicles could not be migrated to a single collection at startup", dataAccessException);
+            }
+        }
+    }
+
+    /**
+     * Move all vehicles from the previous collections into the single vehicle collection and drop the previous collections.
+     * @return a <code>long</code> containing the number of vehicles which were migrated.
+     */
+    public long migrate ( ) {
+        final String vehicleCollectionName = mongoTemplate.getCollectionName(VehicleModel.class);
+        long numberOfMigratedVehicles = 0;
+        for ( Class<? extends VehicleModel> vehicleModelClass : VEHICLE_MODEL_CLASSES ) {
+            //The previous collection name was derived from the name of the model.
+            final String previousCollectionName = StringUtils.uncapitalize(vehicleModelClass.getSimpleName());
+            if ( !mongoTemplate.collectionExists(previousCollectionName) ) {
+                continue;
+            }
+            final String typeAlias = vehicleModelClass.getAnnotation(TypeAlias.class).value();
+            long numberOfVehiclesInCollection = 0;
+            try ( CloseableIterator<Document> vehicles = mongoTemplate.stream(new Query(), Document.class, previousCollectionName) ) {
+                BulkOperations bulkOperations = null;
+                int batchCount = 0;
+                while ( vehicles.hasNext() ) {
+                    Document vehicle = vehicles.next();
+                    vehicle.put(DefaultMongoTypeMapper.DEFAULT_TYPE_KEY, typeAlias);
+                    if ( bulkOperations == null ) {
+                        bulkOperations = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, vehicleCollectionName);
+                    }
+                    bulkOperations.replaceOne(Query.query(Criteria.where("_id").is(vehicle.get("_id"))), vehicle,
+                            FindAndReplaceOptions.options().upsert());
+                    numberOfVehiclesInCollection++;
+                    //Write each full batch to the database.
+                    if ( ++batchCount == BATCH_SIZE ) {
+                        bulkOperations.execute();
+                        bulkOperations = null;
+                        batchCount = 0;
+                    }
+                }
+                if ( bulkOperations != null ) {
+                    bulkOperations.execute();
+                }
+            }
+            mongoTemplate.dropCollection(previousCollectionName);
+            LOGGER.info("Migrated {} vehicles from collection {} to collection {}", numberOfVehiclesInCollection,
+                    previousCollectionName, vehicleCollectionName);
+            numberOfMigratedVehicles += numberOfVehiclesInCollection;
+        }
+        return numberOfMigratedVehicles;
+    }
+
+    /**
+     * Write all vehicles which do not have a next inspection due date again so that the date is calculated and stored.
+     * @return a <code>long</code> containing the number of vehicles which were written.
+     */
+    public long storeNextInspectionDueDates ( ) {
+        long numberOfUpdatedVehicles = 0;
+        try ( CloseableIterator<VehicleModel> vehicles = mongoTemplate.stream(
+                Query.query(Criteria.where("nextInspectionDueDate").exists(false)), VehicleModel.class) ) {
+            while ( vehicles.hasNext() ) {
+                mongoTemplate.save(vehicles.next());
+                numberOfUpdatedVehicles++;
+            }
+        }
+        if ( numberOfUpdatedVehicles > 0 ) {
+            LOGGER.info("Stored the next inspection due date for {} vehicles", numberOfUpdatedVehicles);
+        }
+        return numberOfUpdatedVehicles;
+    }
+
+}
@@ -0,0 +1,29 @@
+package de.davelee.trams.operations.service;
+
+import de.davelee.trams.operations.response.VehicleResponse;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.ToString;
+
+import java.util.List;
+
+/**
+ * This class represents one page of vehicles together with the cursor which can be used to retrieve the next page.
+ * @author Dave Lee
+ */
+@AllArgsConstructor
+@Getter
+@ToString
+public class VehiclePage {
+
+    /**
+     * The vehicles on this page in a format suitable to be returned via API.
+     */
+    private final List<VehicleResponse> vehicles;
+
+    /**
+     * The cursor pointing to the last vehicle on this page which is null if there are no further vehicles.
+     */
+    private final String nextCursor;
+
+}
@@ -1,19 +1,24 @@
 package de.davelee.trams.operations.service;
 
 import de.davelee.trams.operations.model.*;
-import de.davelee.trams.operations.repository.BusVehicleRepository;
-import de.davelee.trams.operations.repository.TrainVehicleRepository;
-import de.davelee.trams.operations.repository.TramVehicleRepository;
+import de.davelee.trams.operations.repository.ReactiveVehicleRepository;
+import de.davelee.trams.operations.repository.VehicleCursor;
+import de.davelee.trams.operations.repository.VehicleRepository;
 import de.davelee.trams.operations.response.VehicleResponse;
+import io.micrometer.core.annotation.Timed;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Sort;
 import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
 
 import java.time.LocalDate;
 import java.time.temporal.ChronoUnit;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.Objects;
+import java.util.stream.Stream;
 
 /**
  * This class provides a service for managing vehicles in Trams Operations.
@@ -22,23 +27,28 @@ import java.util.List;
 @Service
 public class VehicleService {
 
-    @Autowired
-    private BusVehicleRepository busVehicleRepository;
+    /**
+     * The order in which vehicles are returned. The id is included so that the order is stable for vehicles with the
+     * same company and fleet number.
+     */
+    private static final Sort VEHICLE_SORT = Sort.by("company", "fleetNumber", "id");
 
-    @Autowired
-    private TrainVehicleRepository trainVehicleRepository;
+    /**
+     * The order in which vehicles due for inspection are returned which is the most urgent inspection first.
+     */
+    private static final Sort INSPECTION_SORT = Sort.by("nextInspectionDueDate", "company", "fleetNumber", "id");
 
     @Autowired
-    private TramVehicleRepository tramVehicleRepository;
+    private VehicleRepository vehicleRepository;
 
-    @Value("${bus.inspection.period}")
-    private int busInspectionPeriodInYears;
+    @Autowired
+    private ReactiveVehicleRepository reactiveVehicleRepository;
 
-    @Value("${train.inspection.period}")
-    private int trainInspectionPeriodInYears;
+    @Autowired
+    private NextInspectionDueDateCallback nextInspectionDueDateCallback;
 
-    @Value("${tram.inspection.period}")
-    private int tramInspectionPeriodInYears;
+    @Value("${vehicle.page.maximumSize:1000}")
+    private int maximumPageSize;
 
 
     /**
@@ -46,8 +56,9 @@ public class VehicleService {
      * @param busVehicleModel a <code>BusVehicleModel</code> object containing the information about the bus to be added.
      * @return a <code>boolean</code> which is true iff the bus was added successfully.
      */
+    @Timed(value = "vehicle.service", histogram = true)
     public boolean addBus (final BusVehicleModel busVehicleModel ) {
-        return busVehicleRepository.insert(busVehicleModel) != null;
+        return vehicleRepository.insert(busVehicleModel) != null;
     }
 
     /**
@@ -55,8 +66,9 @@ public class VehicleService {
      * @param tramVehicleModel a <code>TramVehicleModel</code> object containing the information about the tram to be added.
      * @return a <code>boolean</code> which is true iff the tram was added successfully.
      */
+    @Timed(value = "vehicle.service", histogram = true)
     public boolean addTram ( final TramVehicleModel tramVehicleModel ) {
-        return tramVehicleRepository.insert(tramVehicleModel) != null;
+        return vehicleRepository.insert(tramVehicleModel) != null;
     }
 
     /**
@@ -64,25 +76,18 @@ public class VehicleService {
      * @param trainVehicleModel a <code>TrainVehicleModel</code> object containing the information about the train to be added.
      * @return a <code>boolean</code> which is true iff the train was added successfully.
      */
+    @Timed(value = "vehicle.service", histogram = true)
     public boolean addTrain (final TrainVehicleModel trainVehicleModel ) {
-        return trainVehicleRepository.insert(trainVehicleModel) != null;
+        return vehicleRepository.insert(trainVehicleModel) != null;
     }
 
     /**
      * Retrieve all of the vehicles currently stored in the database for all types.
      * @return a <code>List</code> of <code>VehicleResponse</code> objects in a format suitable to be returned via API.
      */
+    @Timed(value = "vehicle.service", histogram = true)
     public List<VehicleResponse> retrieveAllVehicles ( ) {
-        //List to store all vehicles
-        List<VehicleResponse> vehicleResponseList = new ArrayList<>();
-        //Process trains
-        processTrainModels(trainVehicleRepository.findAll(), vehicleResponseList);
-        //Process buses
-        processBusModels(busVehicleRepository.findAll(), vehicleResponseList);
-        //Process trams
-        processTramModels(tramVehicleRepository.findAll(), vehicleResponseList);
-        //Return the vehicle list
-        return vehicleResponseList;
+        return processVehicleModels(vehicleRepository.findAll(VEHICLE_SORT), LocalDate.now());
     }
 
     /**
@@ -91,20 +96,9 @@ public class VehicleService {
      * @param fleetNumber a <code>String</code> with the fleet number to search for.
      * @return a <code>List</code> of <code>VehicleResponse</code> objects in a format suitable to be returned via API.
      */
+    @Timed(value = "vehicle.service", histogram = true)
     public List<VehicleResponse> retrieveVehiclesByCompanyAndFleetNumber ( final String company, final String fleetNumber) {
-        //List to store all vehicles
-        List<VehicleResponse> vehicleResponseList = new ArrayList<>();
-        //Process trains
-        processTrainModels(trainVehicleRepository
-                .findByCompanyStartsWithAndFleetNumberStartsWith(company, fleetNumber), vehicleResponseList);
-        //Process buses
-        processBusModels(busVehicleRepository
-                .findByCompanyStartsWithAndFleetNumberStartsWith(company, fleetNumber), vehicleResponseList);
-        //Process trams
-        processTramModels(tramVehicleRepository
-                .findByCompanyStartsWithAndFleetNumberStartsWith(company, fleetNumber), vehicleResponseList);
-        //Return the vehicle list
-        return vehicleResponseList;
+        return processVehicleModels(vehicleRepository.findByCompanyStartsWithAndFleetNumberStartsWith(company, fleetNumber, VEHICLE_SORT), LocalDate.now());
     }
 
     /**
@@ -112,68 +106,166 @@ public class VehicleService {
      * @param fleetNumber a <code>String</code> with the fleet number to search for.
      * @return a <code>List</code> of <code>VehicleResponse</code> objects in a format suitable to be returned via API.
      */
+    @Timed(value = "vehicle.service", histogram = true)
     public List<VehicleResponse> retrieveVehiclesByFleetNumber ( final String fleetNumber) {
-        //List to store all vehicles
-        List<VehicleResponse> vehicleResponseList = new ArrayList<>();
-        //Process trains
-        processTrainModels(trainVehicleRepository
-                .findByFleetNumberStartsWith(fleetNumber), vehicleResponseList);
-        //Process buses
-        processBusModels(busVehicleRepository
-                .findByFleetNumberStartsWith(fleetNumber), vehicleResponseList);
-        //Process trams
-        processTramModels(tramVehicleRepository
-                .findByFleetNumberStartsWith(fleetNumber), vehicleResponseList);
-        //Return the vehicle list
-        return vehicleResponseList;
+        return processVehicleModels(vehicleRepository.findByFleetNumberStartsWith(fleetNumber, VEHICLE_SORT), LocalDate.now());
+    }
+
+    /**
+     * Retrieve all vehicles of all types whose next inspection is due within the supplied number of days including
+     * vehicles whose inspection is already overdue. The vehicles are sorted by the date on which the inspection is due.
+     * @param days a <code>int</code> containing the number of days from today within which the inspection must be due.
+     * @return a <code>List</code> of <code>VehicleResponse</code> objects in a format suitable to be returned via API.
+     */
+    @Timed(value = "vehicle.service", histogram = true)
+    public List<VehicleResponse> retrieveVehiclesDueForInspection ( final int days ) {
+        final LocalDate today = LocalDate.now();
+        return processVehicleModels(vehicleRepository.findByNextInspectionDueDateLessThanEqual(today.plusDays(days), INSPECTION_SORT), today);
+    }
+
+    /**
+     * Retrieve one page of vehicles starting with the supplied company name and fleet number for all types. The vehicles
+     * are sorted by company, fleet number and id and the page continues after the vehicle that the cursor points to.
+     * @param company a <code>String</code> with the name of the company to search for which may be null to retrieve all companies.
+     * @param fleetNumber a <code>String</code> with the fleet number to search for which may be null to retrieve all fleet numbers.
+     * @param cursor a <code>String</code> containing the cursor returned with the previous page which may be null for the first page.
+     * @param limit a <code>int</code> containing the maximum number of vehicles on the page which is capped at the maximum page size.
+     * @return a <code>VehiclePage</code> object containing the vehicles and the cursor for the next page.
+     * @throws IllegalArgumentException if the cursor is not valid.
+     */
+    @Timed(value = "vehicle.service", histogram = true)
+    public VehiclePage retrieveVehiclePage ( final String company, final String fleetNumber, final String cursor, final int limit ) {
+        final int pageSize = Math.max(1, Math.min(limit, maximumPageSize));
+        final VehicleCursor after = cursor != null ? VehicleCursor.fromToken(cursor) : null;
+        //Retrieve one additional vehicle to find out if there is a next page.
+        List<VehicleModel> vehicleModelList = vehicleRepository.findVehiclesAfter(company, fleetNumber, after, pageSize + 1);
+        if ( vehicleModelList.size() <= pageSize ) {
+            return new VehiclePage(processVehicleModels(vehicleModelList, LocalDate.now()), null);
+        }
+        final List<VehicleModel> pageVehicleModelList = vehicleModelList.subList(0, pageSize);
+        return new VehiclePage(processVehicleModels(pageVehicleModelList, LocalDate.now()),
+                VehicleCursor.of(pageVehicleModelList.get(pageSize - 1)).toToken());
     }
 
     /**
-     * This is a private helper method to process the supplied list of <code>TrainVehicleModel</code> objects and convert
-     * them into <code>VehicleResponse</code> objects.
-     * @param trainVehicleModelList a <code>List</code> of <code>TrainVehicleModel</code> objects to convert
-     * @param vehicleResponseList a <code>List</code> of <code>VehicleResponse</code> which may be empty to store converted results.
+     * Stream all vehicles starting with the supplied company name and fleet number for all types. The vehicles are read
+     * from a database cursor and converted one at a time as the stream is consumed. The stream must be closed after use.
+     * @param company a <code>String</code> with the name of the company to search for which may be null to retrieve all companies.
+     * @param fleetNumber a <code>String</code> with the fleet number to search for which may be null to retrieve all fleet numbers.
+     * @return a <code>Stream</code> of <code>VehicleResponse</code> objects in a format suitable to be returned via API.
      */
-    private void processTrainModels ( final List<TrainVehicleModel> trainVehicleModelList, final List<VehicleResponse> vehicleResponseList) {
-        for ( TrainVehicleModel trainVehicleModel : trainVehicleModelList ) {
-            VehicleResponse vehicleResponse = convertToStandardVehicleResponse(trainVehicleModel);
-            vehicleResponse.setVehicleType(VehicleType.TRAIN.getTypeName());
-            vehicleResponse.setAdditionalTypeInformationMap(Collections.singletonMap("Power Mode", trainVehicleModel.getPowerMode().toString()));
-            processInspectionDate(vehicleResponse, trainVehicleModel.getInspectionDate(), trainInspectionPeriodInYears );
-            vehicleResponseList.add(vehicleResponse);
+    public Stream<VehicleResponse> streamVehicles ( final String company, final String fleetNumber ) {
+        final LocalDate today = LocalDate.now();
+        return vehicleRepository.streamVehicles(company, fleetNumber)
+                .map(vehicleModel -> processVehicleModel(vehicleModel, today))
+                .filter(Objects::nonNull);
+    }
+
+    /**
+     * Return all vehicles starting with the supplied company name and fleet number for all types without blocking the
+     * calling thread. The vehicles are converted one at a time as they are read from the database.
+     * @param company a <code>String</code> with the name of the company to search for which may be null to retrieve all companies.
+     * @param fleetNumber a <code>String</code> with the fleet number to search for which may be null to retrieve all fleet numbers.
+     * @return a <code>Flux</code> of <code>VehicleResponse</code> objects in a format suitable to be returned via API.
+     */
+    public Flux<VehicleResponse> retrieveVehiclesReactive ( final String company, final String fleetNumber ) {
+        final LocalDate today = LocalDate.now();
+        final Flux<VehicleModel> vehicleModels;
+        if ( company != null ) {
+            vehicleModels = reactiveVehicleRepository.findByCompanyStartsWithAndFleetNumberStartsWith(company, fleetNumber != null ? fleetNumber : "", VEHICLE_SORT);
+        } else if ( fleetNumber != null ) {
+            vehicleModels = reactiveVehicleRepository.findByFleetNumberStartsWith(fleetNumber, VEHICLE_SORT);
+        } else {
+            vehicleModels = reactiveVehicleRepository.findAll(VEHICLE_SORT);
         }
+        return vehicleModels.handle((vehicleModel, sink) -> {
+            //Vehicles of unknown types are skipped.
+            VehicleResponse vehicleResponse = processVehicleModel(vehicleModel, today);
+            if ( vehicleResponse != null ) {
+                sink.next(vehicleResponse);
+            }
+        });
     }
 
     /**
-     * This is a private helper method to process the supplied list of <code>BusVehicleModel</code> objects and convert
-     * them into <code>VehicleResponse</code> objects.
-     * @param busVehicleModelList a <code>List</code> of <code>BusVehicleModel</code> objects to convert
-     * @param vehicleResponseList a <code>List</code> of <code>VehicleResponse</code> which may be empty to store converted results.
+     * This is a private helper method to process the supplied list of vehicles of all types and convert them into
+     * <code>VehicleResponse</code> objects in the same order.
+     * @param vehicleModelList a <code>List</code> of <code>VehicleModel</code> objects to convert
+     * @param today a <code>LocalDate</code> containing the date to calculate the inspection status for.
+     * @return a <code>List</code> of <code>VehicleResponse</code> objects containing the converted results.
      */
-    private void processBusModels ( final List<BusVehicleModel> busVehicleModelList, final List<VehicleResponse> vehicleResponseList) {
-        for ( BusVehicleModel busVehicleModel : busVehicleModelList ) {
-            VehicleResponse vehicleResponse = convertToStandardVehicleResponse(busVehicleModel);
-            vehicleResponse.setVehicleType(VehicleType.BUS.getTypeName());
-            vehicleResponse.setAdditionalTypeInformationMap(Collections.singletonMap("Registration Number", busVehicleModel.getRegistrationNumber()));
-            processInspectionDate(vehicleResponse, busVehicleModel.getInspectionDate(), busInspectionPeriodInYears );
-            vehicleResponseList.add(vehicleResponse);
+    private List<VehicleResponse> processVehicleModels ( final List<VehicleModel> vehicleModelList, final LocalDate today ) {
+        List<VehicleResponse> vehicleResponseList = new ArrayList<>(vehicleModelList.size());
+        for ( VehicleModel vehicleModel : vehicleModelList ) {
+            VehicleResponse vehicleResponse = processVehicleModel(vehicleModel, today);
+            if ( vehicleResponse != null ) {
+                vehicleResponseList.add(vehicleResponse);
+            }
         }
+        return vehicleResponseList;
     }
 
     /**
-     * This is a private helper method to calculate the inspection status of a vehicle and how many days until the next
-     * inspection is due based on the last inspection date.
+     * This is a private helper method to convert the supplied vehicle of any type into a <code>VehicleResponse</code> object.
+     * @param vehicleModel a <code>VehicleModel</code> object to convert
+     * @param today a <code>LocalDate</code> containing the date to calculate the inspection status for.
+     * @return a <code>VehicleResponse</code> object containing the converted result which is null if the type is not known.
+     */
+    private VehicleResponse processVehicleModel ( final VehicleModel vehicleModel, final LocalDate today ) {
+        final VehicleResponse vehicleResponse;
+        if ( vehicleModel instanceof TrainVehicleModel ) {
+            vehicleResponse = processTrainModel((TrainVehicleModel) vehicleModel);
+        } else if ( vehicleModel instanceof BusVehicleModel ) {
+            vehicleResponse = processBusModel((BusVehicleModel) vehicleModel);
+        } else if ( vehicleModel instanceof TramVehicleModel ) {
+            vehicleResponse = processTramModel((TramVehicleModel) vehicleModel);
+        } else {
+            return null;
+        }
+        processInspectionDate(vehicleResponse, vehicleModel, today);
+        return vehicleResponse;
+    }
+
+    /**
+     * This is a private helper method to convert the supplied <code>TrainVehicleModel</code> object into a
+     * <code>VehicleResponse</code> object.
+     * @param trainVehicleModel a <code>TrainVehicleModel</code> object to convert
+     * @return a <code>VehicleResponse</code> object containing the converted result.
+     */
+    private VehicleResponse processTrainModel ( final TrainVehicleModel trainVehicleModel ) {
+        VehicleResponse vehicleResponse = convertToStandardVehicleResponse(trainVehicleModel);
+        vehicleResponse.setVehicleType(VehicleType.TRAIN.getTypeName());
+        vehicleResponse.setAdditionalTypeInformationMap(Collections.singletonMap("Power Mode", trainVehicleModel.getPowerMode().toString()));
+        return vehicleResponse;
+    }
+
+    /**
+     * This is a private helper method to convert the supplied <code>BusVehicleModel</code> object into a
+     * <code>VehicleResponse</code> object.
+     * @param busVehicleModel a <code>BusVehicleModel</code> object to convert
+     * @return a <code>VehicleResponse</code> object containing the converted result.
+     */
+    private VehicleResponse processBusModel ( final BusVehicleModel busVehicleModel ) {
+        VehicleResponse vehicleResponse = convertToStandardVehicleResponse(busVehicleModel);
+        vehicleResponse.setVehicleType(VehicleType.BUS.getTypeName());
+        vehicleResponse.setAdditionalTypeInformationMap(Collections.singletonMap("Registration Number", busVehicleModel.getRegistrationNumber()));
+        return vehicleResponse;
+    }
+
+    /**
+     * This is a private helper method to set the inspection status of a vehicle and how many days until the next
+     * inspection is due based on the stored next inspection due date. If the date has not been stored yet, then it is
+     * calculated from the last inspection date.
      * @param vehicleResponse a <code>VehicleResponse</code> object to write the results of the calculations in.
-     * @param inspectionDate a <code>LocalDate</code> containing the date of the last inspection range
-     * @param inspectionPeriod a <code>int</code> containing the number of years within which an inspection must take place
+     * @param vehicleModel a <code>VehicleModel</code> object containing the vehicle with the inspection dates.
+     * @param today a <code>LocalDate</code> containing the date to calculate the inspection status for.
      */
-    private void processInspectionDate ( final VehicleResponse vehicleResponse, final LocalDate inspectionDate,
-                                         final int inspectionPeriod ) {
-        final LocalDate inspectionStartRange = LocalDate.now().minusYears(inspectionPeriod);
-        if ( inspectionDate.isAfter(LocalDate.now().minusYears(inspectionPeriod)) ) {
+    private void processInspectionDate ( final VehicleResponse vehicleResponse, final VehicleModel vehicleModel, final LocalDate today ) {
+        final LocalDate nextInspectionDueDate = vehicleModel.getNextInspectionDueDate() != null ? vehicleModel.getNextInspectionDueDate()
+                : nextInspectionDueDateCallback.calculateNextInspectionDueDate(vehicleModel);
+        if ( nextInspectionDueDate != null && nextInspectionDueDate.isAfter(today) ) {
             vehicleResponse.setInspectionStatus(InspectionStatus.INSPECTED.getInspectionNotice());
-            vehicleResponse.setNextInspectionDueInDays(ChronoUnit.DAYS.between(LocalDate.now(),
-                    inspectionDate.plusYears(inspectionPeriod)));
+            vehicleResponse.setNextInspectionDueInDays(ChronoUnit.DAYS.between(today, nextInspectionDueDate));
         } else {
             vehicleResponse.setInspectionStatus(InspectionStatus.INSPECTION_DUE.getInspectionNotice());
             vehicleResponse.setNextInspectionDueInDays(0);
@@ -181,19 +273,16 @@ public class VehicleService {
     }
 
     /**
-     * This is a private helper method to process the supplied list of <code>TramVehicleModel</code> objects and convert
-     * them into <code>VehicleResponse</code> objects.
-     * @param tramVehicleModelList a <code>List</code> of <code>TramVehicleModel</code> objects to convert
-     * @param vehicleResponseList a <code>List</code> of <code>VehicleResponse</code> which may be empty to store converted results.
+     * This is a private helper method to convert the supplied <code>TramVehicleModel</code> object into a
+     * <code>VehicleResponse</code> object.
+     * @param tramVehicleModel a <code>TramVehicleModel</code> object to convert
+     * @return a <code>VehicleResponse</code> object containing the converted result.
      */
-    private void processTramModels ( final List<TramVehicleModel> tramVehicleModelList, final List<VehicleResponse> vehicleResponseList ) {
-        for ( TramVehicleModel tramVehicleModel : tramVehicleModelList ) {
-            VehicleResponse vehicleResponse = convertToStandardVehicleResponse(tramVehicleModel);
-            vehicleResponse.setVehicleType(VehicleType.TRAM.getTypeName());
-            vehicleResponse.setAdditionalTypeInformationMap(Collections.singletonMap("Bidirectional", Boolean.toString(tramVehicleModel.isBidirectional())));
-            processInspectionDate(vehicleResponse, tramVehicleModel.getInspectionDate(), tramInspectionPeriodInYears );
-            vehicleResponseList.add(vehicleResponse);
-        }
+    private VehicleResponse processTramModel ( final TramVehicleModel tramVehicleModel ) {
+        VehicleResponse vehicleResponse = convertToStandardVehicleResponse(tramVehicleModel);
+        vehicleResponse.setVehicleType(VehicleType.TRAM.getTypeName());
+        vehicleResponse.setAdditionalTypeInformationMap(Collections.singletonMap("Bidirectional", Boolean.toString(tramVehicleModel.isBidirectional())));
+        return vehicleResponse;
     }
 
     /**
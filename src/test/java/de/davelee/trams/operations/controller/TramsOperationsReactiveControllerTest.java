@@ -0,0 +1,91 @@
+package de.davelee.trams.operations.controller;
+
+import de.davelee.trams.operations.model.RouteModel;
+import de.davelee.trams.operations.model.StopModel;
+import de.davelee.trams.operations.model.StopTimeModel;
+import de.davelee.trams.operations.response.VehicleResponse;
+import de.davelee.trams.operations.service.RouteService;
+import de.davelee.trams.operations.service.StopService;
+import de.davelee.trams.operations.service.StopTimeService;
+import de.davelee.trams.operations.service.VehicleService;
+import org.junit.jupiter.api.Test;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.springframework.boot.test.context.SpringBootTest;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.LocalTime;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * This class tests the TramsOperationsReactiveController and ensures that the endpoints return the data of the services.
+ * Mocks are used for the services.
+ * @author Dave Lee
+ */
+@SpringBootTest
+public class TramsOperationsReactiveControllerTest {
+
+    @InjectMocks
+    private TramsOperationsReactiveController controller;
+
+    @Mock
+    private StopTimeService stopTimeService;
+
+    @Mock
+    private RouteService routeService;
+
+    @Mock
+    private StopService stopService;
+
+    @Mock
+    private VehicleService vehicleService;
+
+    /**
+     * Test the departure and arrival endpoints of this controller.
+     */
+    @Test
+    public void testDeparturesAndArrivalsEndpoints() {
+        Mockito.when(stopTimeService.getTimesReactive("Lakeside", "22:00", "Departure")).thenReturn(Mono.just(List.of(StopTimeModel.builder()
+                .departureTime(LocalTime.of(22,13))
+                .journeyNumber("101")
+                .build())));
+        Mockito.when(stopTimeService.getTimesReactive("Lakeside", "22:00", "Arrival")).thenReturn(Mono.just(List.of()));
+        assertEquals("101", controller.getDepartures("Lakeside", "22:00").block().get(0).getJourneyNumber());
+        assertEquals(0, controller.getArrivals("Lakeside", "22:00").block().size());
+    }
+
+    /**
+     * Test the route and stop endpoints of this controller.
+     */
+    @Test
+    public void testRoutesAndStopsEndpoints() {
+        Mockito.when(routeService.getRoutesReactive()).thenReturn(Flux.just(RouteModel.builder().routeNumber("1A").build()));
+        Mockito.when(stopService.getStopsReactive()).thenReturn(Flux.just(StopModel.builder().name("Greenfield").build(),
+                StopModel.builder().name("Lakeside").build()));
+        assertEquals("1A", controller.getRoutes().blockFirst().getRouteNumber());
+        assertEquals(2, controller.getStops().collectList().block().size());
+    }
+
+    /**
+     * Test the vehicle endpoints of this controller.
+     */
+    @Test
+    public void testVehiclesEndpoints() {
+        Mockito.when(vehicleService.retrieveVehiclesReactive(null, null)).thenReturn(Flux.just(VehicleResponse.builder()
+                .fleetNumber("213")
+                .build()));
+        Mockito.when(vehicleService.retrieveVehiclesReactive("Lee", "21")).thenReturn(Flux.empty());
+        Mockito.when(vehicleService.retrieveVehiclesReactive(null, "21")).thenReturn(Flux.just(VehicleResponse.builder()
+                .fleetNumber("214")
+                .build()));
+        assertEquals("213", controller.getVehicles().blockFirst().getFleetNumber());
+        assertEquals(0, controller.getVehiclesByCompanyAndFleetNumber(Optional.of("Lee"), "21").collectList().block().size());
+        assertEquals("214", controller.getVehiclesByCompanyAndFleetNumber(Optional.empty(), "21").blockFirst().getFleetNumber());
+    }
+
+}
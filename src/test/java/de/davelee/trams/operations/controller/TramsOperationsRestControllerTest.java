@@ -1,9 +1,12 @@
 package de.davelee.trams.operations.controller;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import de.davelee.trams.operations.model.ImportPhase;
 import de.davelee.trams.operations.model.RouteModel;
 import de.davelee.trams.operations.model.StopModel;
 import de.davelee.trams.operations.model.StopTimeModel;
 import de.davelee.trams.operations.request.ImportZipRequest;
+import de.davelee.trams.operations.response.ImportJobResponse;
 import de.davelee.trams.operations.response.VehicleResponse;
 import de.davelee.trams.operations.service.*;
 import org.assertj.core.util.Lists;
@@ -11,20 +14,30 @@ import org.junit.jupiter.api.Test;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.Mockito;
+import org.mockito.Spy;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
 import java.time.DayOfWeek;
 import java.time.LocalDate;
 import java.time.LocalTime;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.stream.Stream;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.ArgumentMatchers.*;
 
 /**
@@ -45,10 +58,13 @@ public class TramsOperationsRestControllerTest {
     private StopTimeService stopTimeService;
 
     @Mock
-    private ImportGTFSDataService importGTFSDataService;
+    private DepartureBoardService departureBoardService;
 
     @Mock
-    private ImportCSVDataService csvDataService;
+    private ImportJobService importJobService;
+
+    @Mock
+    private TimetableVersionService timetableVersionService;
 
     @Mock
     private StopService stopService;
@@ -59,6 +75,9 @@ public class TramsOperationsRestControllerTest {
     @Mock
     private VehicleService vehicleService;
 
+    @Spy
+    private ObjectMapper objectMapper = new ObjectMapper().findAndRegisterModules();
+
     /**
      * Test the departure endpoint of this controller.
      */
@@ -81,6 +100,65 @@ public class TramsOperationsRestControllerTest {
         assertEquals("101", stopTimeModelList.get(0).getJourneyNumber());
     }
 
+    /**
+     * Test the departures for several stops endpoint of this controller.
+     */
+    @Test
+    public void testDeparturesForStopsEndpoint() {
+        Mockito.when(stopTimeService.getTimesForStops(List.of("Lakeside", "Greenfield"), null, "Departure", 3, 120))
+                .thenReturn(Map.of("Lakeside", Lists.newArrayList(StopTimeModel.builder()
+                        .departureTime(LocalTime.of(22,13))
+                        .journeyNumber("101")
+                        .build()), "Greenfield", Lists.newArrayList()));
+        ResponseEntity<Map<String, List<StopTimeModel>>> responseEntity = controller.getDeparturesForStops(List.of("Lakeside", "Greenfield"),
+                Optional.empty(), Optional.empty(), Optional.empty(), Optional.empty());
+        assertEquals(HttpStatus.OK, responseEntity.getStatusCode());
+        assertEquals("101", responseEntity.getBody().get("Lakeside").get(0).getJourneyNumber());
+        assertEquals(0, responseEntity.getBody().get("Greenfield").size());
+        //Test case with invalid parameters.
+        Mockito.when(stopTimeService.getTimesForStops(List.of("Lakeside"), "10:00", "Arrival", 0, 60))
+                .thenThrow(new IllegalArgumentException("Count must be positive"));
+        assertEquals(HttpStatus.BAD_REQUEST, controller.getDeparturesForStops(List.of("Lakeside"), Optional.of("10:00"),
+                Optional.of("Arrival"), Optional.of(0), Optional.of(60)).getStatusCode());
+    }
+
+    /**
+     * Test the departure boards endpoint of this controller.
+     */
+    @Test
+    public void testDepartureBoardsEndpoint() {
+        SseEmitter sseEmitter = new SseEmitter();
+        Mockito.when(departureBoardService.subscribe(List.of("Lakeside"))).thenReturn(sseEmitter);
+        ResponseEntity<SseEmitter> responseEntity = controller.subscribeDepartureBoards(List.of("Lakeside"));
+        assertEquals(HttpStatus.OK, responseEntity.getStatusCode());
+        assertEquals(sseEmitter, responseEntity.getBody());
+        //Test case without stops.
+        Mockito.when(departureBoardService.subscribe(List.of())).thenThrow(new IllegalArgumentException("No stops"));
+        assertEquals(HttpStatus.BAD_REQUEST, controller.subscribeDepartureBoards(List.of()).getStatusCode());
+    }
+
+    /**
+     * Test the streamed departure date endpoint of this controller.
+     * @throws IOException if the response could not be written.
+     */
+    @Test
+    public void testStreamDeparturesDateEndpoint() throws IOException {
+        Mockito.when(stopTimeService.streamDeparturesByDate("Lakeside", "2021-04-10")).thenReturn(Stream.of(StopTimeModel.builder()
+                .departureTime(LocalTime.of(22,13))
+                .journeyNumber("101")
+                .build(), StopTimeModel.builder()
+                .departureTime(LocalTime.of(22,43))
+                .journeyNumber("102")
+                .build()));
+        ResponseEntity<StreamingResponseBody> responseEntity = controller.streamDeparturesByDate("Lakeside", "2021-04-10");
+        assertEquals("application/x-ndjson", responseEntity.getHeaders().getContentType().toString());
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        responseEntity.getBody().writeTo(outputStream);
+        String[] lines = outputStream.toString().split("\n");
+        assertEquals(2, lines.length);
+        assertEquals("102", objectMapper.readTree(lines[1]).get("journeyNumber").asText());
+    }
+
     /**
      * Test the arrival endpoint of this controller.
      */
@@ -130,40 +208,83 @@ public class TramsOperationsRestControllerTest {
      */
     @Test
     public void testHandleFileUpload() {
-        //First of all test the happy case that it works as planned.
+        //First of all test the happy case that the import is started in the background.
         ImportZipRequest importZipRequest = new ImportZipRequest();
         importZipRequest.setZipFile(new MockMultipartFile("test", new byte[8]));
         importZipRequest.setFileFormat("General Transit Feed Specification (GTFS)");
         importZipRequest.setRoutesToImport("1A,2B");
-        Mockito.when(fileSystemStorageService.store(importZipRequest.getZipFile())).thenReturn("testFolder");
-        Mockito.when(importGTFSDataService.readGTFSFile("testFolder", Lists.newArrayList("1A", "2B"))).thenReturn(true);
-        ResponseEntity<Void> uploadResponse = controller.handleFileUpload(importZipRequest);
-        assertEquals(HttpStatus.OK, uploadResponse.getStatusCode());
-        //Second test the case where file could not be loaded.
-        ImportZipRequest importGtfsZipBadRequest = new ImportZipRequest();
-        importGtfsZipBadRequest.setZipFile(new MockMultipartFile("test", new byte[8]));
-        importGtfsZipBadRequest.setRoutesToImport("3C,4D");
-        importGtfsZipBadRequest.setFileFormat("General Transit Feed Specification (GTFS)");
-        Mockito.when(fileSystemStorageService.store(importGtfsZipBadRequest.getZipFile())).thenReturn("testBadFolder");
-        Mockito.when(importGTFSDataService.readGTFSFile("testFolder", Lists.newArrayList("3C", "3D"))).thenReturn(false);
-        ResponseEntity<Void> uploadBadResponse = controller.handleFileUpload(importGtfsZipBadRequest);
-        assertEquals(HttpStatus.UNPROCESSABLE_ENTITY, uploadBadResponse.getStatusCode());
-        //Third test the case where a csv file is uploaded.
+        Mockito.when(fileSystemStorageService.storeArchive(importZipRequest.getZipFile())).thenReturn("testFolder.zip");
+        Mockito.when(importJobService.submitGTFSImport("testFolder.zip", Lists.newArrayList("1A", "2B"), false)).thenReturn(new ImportJob("job1"));
+        ResponseEntity<ImportJobResponse> uploadResponse = controller.handleFileUpload(importZipRequest);
+        assertEquals(HttpStatus.ACCEPTED, uploadResponse.getStatusCode());
+        assertEquals("job1", uploadResponse.getBody().getJobId());
+        assertEquals("QUEUED", uploadResponse.getBody().getPhase());
+        //The uploaded file is still needed by the queued import.
+        Mockito.verify(fileSystemStorageService, Mockito.never()).delete("testFolder.zip");
+        //Second test the case where the import could not be started because too many imports are waiting.
+        ImportZipRequest importGtfsZipBusyRequest = new ImportZipRequest();
+        importGtfsZipBusyRequest.setZipFile(new MockMultipartFile("test", new byte[8]));
+        importGtfsZipBusyRequest.setRoutesToImport("3C,4D");
+        importGtfsZipBusyRequest.setFileFormat("General Transit Feed Specification (GTFS)");
+        importGtfsZipBusyRequest.setIncremental(true);
+        Mockito.when(fileSystemStorageService.storeArchive(importGtfsZipBusyRequest.getZipFile())).thenReturn("testBusyFolder.zip");
+        Mockito.when(importJobService.submitGTFSImport("testBusyFolder.zip", Lists.newArrayList("3C", "4D"), true)).thenThrow(new RejectedExecutionException());
+        assertEquals(HttpStatus.SERVICE_UNAVAILABLE, controller.handleFileUpload(importGtfsZipBusyRequest).getStatusCode());
+        Mockito.verify(fileSystemStorageService).delete("testBusyFolder.zip");
+        //Third test the case where the file format is not valid.
+        ImportZipRequest importZipBadRequest = new ImportZipRequest();
+        importZipBadRequest.setZipFile(new MockMultipartFile("test", new byte[8]));
+        importZipBadRequest.setFileFormat("Unknown");
+        Mockito.when(fileSystemStorageService.storeArchive(importZipBadRequest.getZipFile())).thenReturn("testBadFolder.zip");
+        assertEquals(HttpStatus.UNPROCESSABLE_ENTITY, controller.handleFileUpload(importZipBadRequest).getStatusCode());
+        Mockito.verify(fileSystemStorageService).delete("testBadFolder.zip");
+        //Fourth test the case where a csv file is uploaded.
         ImportZipRequest importCsvZipRequest = new ImportZipRequest();
         try {
             importCsvZipRequest.setZipFile(new MockMultipartFile("test", this.getClass().getResourceAsStream("my-network-landuff/ft1.csv")));
             importCsvZipRequest.setFileFormat("Comma Separated Value (CSV)");
             importCsvZipRequest.setValidFromDate("09-08-2020");
             importCsvZipRequest.setValidToDate("16-08-2020");
-            Mockito.when(fileSystemStorageService.store(importCsvZipRequest.getZipFile())).thenReturn("testCsvFolder");
-            Mockito.when(csvDataService.readCSVFile(anyString(), anyString(), anyString())).thenReturn(true);
-            ResponseEntity<Void> uploadGoodResponse = controller.handleFileUpload(importCsvZipRequest);
-            assertEquals(HttpStatus.OK, uploadGoodResponse.getStatusCode());
+            Mockito.when(fileSystemStorageService.storeArchive(importCsvZipRequest.getZipFile())).thenReturn("testCsvFolder.zip");
+            Mockito.when(importJobService.submitCSVImport(anyString(), anyString(), anyString())).thenReturn(new ImportJob("job2"));
+            ResponseEntity<ImportJobResponse> uploadGoodResponse = controller.handleFileUpload(importCsvZipRequest);
+            assertEquals(HttpStatus.ACCEPTED, uploadGoodResponse.getStatusCode());
+            assertEquals("job2", uploadGoodResponse.getBody().getJobId());
         } catch ( Exception e ) {
             e.printStackTrace();
         }
     }
 
+    /**
+     * Test the import job endpoint of this controller.
+     */
+    @Test
+    public void testImportJobEndpoint() {
+        ImportJob importJob = new ImportJob("job1");
+        importJob.getProgress().setPhase(ImportPhase.WRITING);
+        importJob.getProgress().addRowsProcessed(1000);
+        importJob.finish(true, null);
+        Mockito.when(importJobService.getImportJob("job1")).thenReturn(Optional.of(importJob));
+        Mockito.when(importJobService.getImportJob("job2")).thenReturn(Optional.empty());
+        ResponseEntity<ImportJobResponse> responseEntity = controller.getImportJob("job1");
+        assertEquals(HttpStatus.OK, responseEntity.getStatusCode());
+        assertEquals("COMPLETED", responseEntity.getBody().getPhase());
+        assertEquals(1000, responseEntity.getBody().getRowsProcessed());
+        assertTrue(responseEntity.getBody().getSuccessful());
+        assertEquals(HttpStatus.NOT_FOUND, controller.getImportJob("job2").getStatusCode());
+    }
+
+    /**
+     * Test the rollback timetable endpoint of this controller.
+     */
+    @Test
+    public void testRollbackTimetableEndpoint() {
+        Mockito.when(timetableVersionService.rollback()).thenReturn(true, false);
+        assertEquals(HttpStatus.OK, controller.rollbackTimetable().getStatusCode());
+        //There is no previous version after the rollback.
+        assertEquals(HttpStatus.CONFLICT, controller.rollbackTimetable().getStatusCode());
+    }
+
     /**
      * Test the test date endpoint of this controller.
      */
@@ -253,4 +374,77 @@ public class TramsOperationsRestControllerTest {
         assertEquals("Bus", vehicleResponseList2.get(0).getVehicleType());
     }
 
+    /**
+     * Test the paginated vehicles endpoints of this controller.
+     */
+    @Test
+    public void testVehiclePageEndpoints() {
+        VehicleResponse vehicleResponse = VehicleResponse.builder()
+                .livery("Green with red text")
+                .fleetNumber("213")
+                .allocatedTour("1/1")
+                .vehicleType("Bus")
+                .additionalTypeInformationMap(Collections.singletonMap("Registration Number", "XXX2 BBB"))
+                .build();
+        //Test case with a next page.
+        Mockito.when(vehicleService.retrieveVehiclePage(null, null, null, 1)).thenReturn(new VehiclePage(List.of(vehicleResponse), "abc"));
+        ResponseEntity<List<VehicleResponse>> responseEntity = controller.getVehiclePage(Optional.empty(), 1);
+        assertEquals(HttpStatus.OK, responseEntity.getStatusCode());
+        assertEquals(1, responseEntity.getBody().size());
+        assertEquals("abc", responseEntity.getHeaders().getFirst("Next-Cursor"));
+        //Test case for the last page with company.
+        Mockito.when(vehicleService.retrieveVehiclePage("Lee", "21", "abc", 10)).thenReturn(new VehiclePage(List.of(vehicleResponse), null));
+        responseEntity = controller.getVehiclePageByCompanyAndFleetNumber(Optional.of("Lee"), "21", Optional.of("abc"), 10);
+        assertEquals(HttpStatus.OK, responseEntity.getStatusCode());
+        assertFalse(responseEntity.getHeaders().containsKey("Next-Cursor"));
+        //Test case with invalid cursor and limit.
+        Mockito.when(vehicleService.retrieveVehiclePage(null, null, "invalid", 10)).thenThrow(IllegalArgumentException.class);
+        assertEquals(HttpStatus.BAD_REQUEST, controller.getVehiclePage(Optional.of("invalid"), 10).getStatusCode());
+        assertEquals(HttpStatus.BAD_REQUEST, controller.getVehiclePage(Optional.empty(), 0).getStatusCode());
+    }
+
+    /**
+     * Test the streamed vehicles endpoints of this controller.
+     * @throws IOException if the response could not be written.
+     */
+    @Test
+    public void testStreamVehiclesEndpoints() throws IOException {
+        Mockito.when(vehicleService.streamVehicles(null, null)).thenReturn(Stream.of(VehicleResponse.builder()
+                .fleetNumber("213")
+                .vehicleType("Bus")
+                .build(), VehicleResponse.builder()
+                .fleetNumber("214")
+                .vehicleType("Tram")
+                .build()));
+        ResponseEntity<StreamingResponseBody> responseEntity = controller.streamVehicles();
+        assertEquals("application/x-ndjson", responseEntity.getHeaders().getContentType().toString());
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        responseEntity.getBody().writeTo(outputStream);
+        String[] lines = outputStream.toString().split("\n");
+        assertEquals(2, lines.length);
+        assertEquals("214", objectMapper.readTree(lines[1]).get("fleetNumber").asText());
+        //Test case with company and fleet number.
+        Mockito.when(vehicleService.streamVehicles("Lee", "21")).thenReturn(Stream.empty());
+        outputStream = new ByteArrayOutputStream();
+        controller.streamVehiclesByCompanyAndFleetNumber(Optional.of("Lee"), "21").getBody().writeTo(outputStream);
+        assertEquals(0, outputStream.size());
+    }
+
+    /**
+     * Test the vehicles due for inspection endpoint of this controller.
+     */
+    @Test
+    public void testVehiclesDueForInspectionEndpoint() {
+        Mockito.when(vehicleService.retrieveVehiclesDueForInspection(30)).thenReturn(Lists.newArrayList(VehicleResponse.builder()
+                .fleetNumber("213")
+                .vehicleType("Bus")
+                .inspectionStatus("Inspected")
+                .nextInspectionDueInDays(12)
+                .build()));
+        ResponseEntity<List<VehicleResponse>> responseEntity = controller.getVehiclesDueForInspection(30);
+        assertEquals(HttpStatus.OK, responseEntity.getStatusCode());
+        assertEquals(12, responseEntity.getBody().get(0).getNextInspectionDueInDays());
+        assertEquals(HttpStatus.BAD_REQUEST, controller.getVehiclesDueForInspection(-1).getStatusCode());
+    }
+
 }
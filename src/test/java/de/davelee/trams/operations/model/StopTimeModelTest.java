@@ -9,6 +9,8 @@ import java.util.Arrays;
 import java.util.Collections;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 /**
  * This class tests the StopTimeModel class and ensures that its works correctly.
@@ -44,7 +46,7 @@ public class StopTimeModelTest {
         assertEquals(LocalDate.of(2020,12,12), stopTimeModel.getValidFromDate());
         assertEquals(LocalDate.of(2021,12,11), stopTimeModel.getValidToDate());
         //Verify the toString method
-        assertEquals("StopTimeModel(id=1234, stopName=null, arrivalTime=19:46, departureTime=19:48, destination=Greenfield, routeNumber=405A, validFromDate=2020-12-12, validToDate=2021-12-11, operatingDays=[MONDAY], journeyNumber=123)", stopTimeModel.toString());
+        assertEquals("StopTimeModel(id=1234, stopName=null, arrivalTime=19:46, departureTime=19:48, destination=Greenfield, routeNumber=405A, validFromDate=2020-12-12, validToDate=2021-12-11, operatingDays=[MONDAY], additionalDates=null, excludedDates=null, journeyNumber=123)", stopTimeModel.toString());
         //Now use the setter methods
         stopTimeModel.setArrivalTime(LocalTime.of(20, 46));
         stopTimeModel.setDepartureTime(LocalTime.of(20,48));
@@ -56,7 +58,7 @@ public class StopTimeModelTest {
         stopTimeModel.setValidFromDate(LocalDate.of(2020,11,12));
         stopTimeModel.setValidToDate(LocalDate.of(2021,11,11));
         //And verify again through the toString methods
-        assertEquals("StopTimeModel(id=12345, stopName=null, arrivalTime=20:46, departureTime=20:48, destination=Lake Way, routeNumber=405B, validFromDate=2020-11-12, validToDate=2021-11-11, operatingDays=[SUNDAY], journeyNumber=1234)", stopTimeModel.toString());
+        assertEquals("StopTimeModel(id=12345, stopName=null, arrivalTime=20:46, departureTime=20:48, destination=Lake Way, routeNumber=405B, validFromDate=2020-11-12, validToDate=2021-11-11, operatingDays=[SUNDAY], additionalDates=null, excludedDates=null, journeyNumber=1234)", stopTimeModel.toString());
     }
 
     /**
@@ -82,4 +84,35 @@ public class StopTimeModelTest {
         assertEquals(stopTimeModel.getTime("Arrival"), LocalTime.of(19, 46));
     }
 
+    /**
+     * Test the runs on method to ensure that operating days, validity and exception dates are considered.
+     */
+    @Test
+    public void testRunsOn () {
+        //Create Test Date
+        StopTimeModel stopTimeModel = StopTimeModel.builder()
+                .arrivalTime(LocalTime.of(19, 46))
+                .departureTime(LocalTime.of(19,48))
+                .operatingDays(Collections.singletonList(DayOfWeek.MONDAY))
+                .validFromDate(LocalDate.of(2020,12,12))
+                .validToDate(LocalDate.of(2021,12,11))
+                .additionalDates(Collections.singletonList(LocalDate.of(2021,4,10)))
+                .excludedDates(Collections.singletonList(LocalDate.of(2021,4,19)))
+                .build();
+        // Test operating days and validity including the boundary days.
+        assertTrue(stopTimeModel.runsOn(LocalDate.of(2021,4,12)));
+        assertTrue(stopTimeModel.runsOn(LocalDate.of(2020,12,14)));
+        assertFalse(stopTimeModel.runsOn(LocalDate.of(2021,4,13)));
+        assertFalse(stopTimeModel.runsOn(LocalDate.of(2022,4,11)));
+        // Test exception dates.
+        assertTrue(stopTimeModel.runsOn(LocalDate.of(2021,4,10)));
+        assertFalse(stopTimeModel.runsOn(LocalDate.of(2021,4,19)));
+        // Test stop time which only runs on additional dates.
+        StopTimeModel additionalStopTimeModel = StopTimeModel.builder()
+                .additionalDates(Arrays.asList(LocalDate.of(2021,4,10), LocalDate.of(2021,4,11)))
+                .build();
+        assertTrue(additionalStopTimeModel.runsOn(LocalDate.of(2021,4,11)));
+        assertFalse(additionalStopTimeModel.runsOn(LocalDate.of(2021,4,12)));
+    }
+
 }
@@ -0,0 +1,49 @@
+package de.davelee.trams.operations.repository;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.DayOfWeek;
+import java.time.LocalTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+/**
+ * This class tests the StopTimeConverters class and ensures that times and days are converted to the compact form and back again.
+ * @author Dave Lee
+ */
+public class StopTimeConvertersTest {
+
+    /**
+     * Ensure that times are stored as the minute of the day (0–1439) without seconds.
+     */
+    @Test
+    public void testTimes ( ) {
+        assertEquals(0, StopTimeConverters.toMinutes(LocalTime.MIDNIGHT));
+        assertEquals(495, StopTimeConverters.toMinutes(LocalTime.of(8, 15, 30)));
+        assertEquals(1439, StopTimeConverters.toMinutes(LocalTime.of(23, 59)));
+        assertEquals(LocalTime.of(8, 15), StopTimeConverters.toLocalTime(495));
+        assertEquals(LocalTime.of(23, 59), StopTimeConverters.toLocalTime(1439));
+        //Missing times stay missing.
+        assertEquals(495, StopTimeConverters.toNullableMinutes(LocalTime.of(8, 15)));
+        assertNull(StopTimeConverters.toNullableMinutes(null));
+        assertEquals(LocalTime.of(8, 15), StopTimeConverters.toNullableLocalTime(495));
+        assertNull(StopTimeConverters.toNullableLocalTime(null));
+    }
+
+    /**
+     * Ensure that operating days are stored as a mask and that a single day is converted to its bit.
+     */
+    @Test
+    public void testDays ( ) {
+        assertEquals(1, StopTimeConverters.toMask(DayOfWeek.MONDAY));
+        assertEquals(64, StopTimeConverters.toMask(DayOfWeek.SUNDAY));
+        assertEquals(0b1000101, StopTimeConverters.toMask(List.of(DayOfWeek.SUNDAY, DayOfWeek.MONDAY, DayOfWeek.WEDNESDAY)));
+        assertEquals(0, StopTimeConverters.toMask((List<DayOfWeek>) null));
+        assertEquals(List.of(DayOfWeek.MONDAY, DayOfWeek.WEDNESDAY, DayOfWeek.SUNDAY), StopTimeConverters.toDaysOfWeek(0b1000101));
+        assertEquals(List.of(DayOfWeek.values()), StopTimeConverters.toDaysOfWeek(StopTimeConverters.toMask(List.of(DayOfWeek.values()))));
+        assertEquals(List.of(), StopTimeConverters.toDaysOfWeek(0));
+    }
+
+}
@@ -0,0 +1,52 @@
+package de.davelee.trams.operations.repository;
+
+import de.davelee.trams.operations.model.BusVehicleModel;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * This class tests the VehicleCursor class and ensures that its works correctly.
+ * @author Dave Lee
+ */
+public class VehicleCursorTest {
+
+    /**
+     * Ensure that a cursor can be converted to a token and back again.
+     */
+    @Test
+    public void testTokenRoundTrip ( ) {
+        BusVehicleModel busVehicleModel = BusVehicleModel.builder()
+                .fleetNumber("213/B")
+                .company("Lee Buses & Trams")
+                .build();
+        busVehicleModel.setId("6080d0e2b1a6f2409ed4c2a1");
+        VehicleCursor vehicleCursor = VehicleCursor.fromToken(VehicleCursor.of(busVehicleModel).toToken());
+        assertEquals("Lee Buses & Trams", vehicleCursor.getCompany());
+        assertEquals("213/B", vehicleCursor.getFleetNumber());
+        assertEquals("6080d0e2b1a6f2409ed4c2a1", vehicleCursor.getId());
+    }
+
+    /**
+     * Ensure that a missing company and fleet number are stored as empty strings.
+     */
+    @Test
+    public void testMissingValues ( ) {
+        BusVehicleModel busVehicleModel = BusVehicleModel.builder().build();
+        busVehicleModel.setId("6080d0e2b1a6f2409ed4c2a1");
+        VehicleCursor vehicleCursor = VehicleCursor.fromToken(VehicleCursor.of(busVehicleModel).toToken());
+        assertEquals("", vehicleCursor.getCompany());
+        assertEquals("", vehicleCursor.getFleetNumber());
+    }
+
+    /**
+     * Ensure that invalid tokens are rejected.
+     */
+    @Test
+    public void testInvalidToken ( ) {
+        assertThrows(IllegalArgumentException.class, () -> VehicleCursor.fromToken("not a token"));
+        assertThrows(IllegalArgumentException.class, () -> VehicleCursor.fromToken("YWJj"));
+    }
+
+}
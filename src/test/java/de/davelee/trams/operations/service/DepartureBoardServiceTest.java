@@ -0,0 +1,109 @@
+package de.davelee.trams.operations.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import de.davelee.trams.operations.model.StopTimeModel;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.time.LocalTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * This class tests the DepartureBoardService class and ensures that the departure boards are computed once per stop and
+ * only sent when they have changed. Mocks are used for the stop time service.
+ * @author Dave Lee
+ */
+public class DepartureBoardServiceTest {
+
+    private DepartureBoardService departureBoardService;
+
+    private StopTimeService stopTimeService;
+
+    private SimpleMeterRegistry meterRegistry;
+
+    /**
+     * Create a service whose scheduled task does not run during the tests.
+     */
+    @BeforeEach
+    public void setUp ( ) {
+        meterRegistry = new SimpleMeterRegistry();
+        departureBoardService = new DepartureBoardService(3600, 30, 1, meterRegistry);
+        stopTimeService = Mockito.mock(StopTimeService.class);
+        ReflectionTestUtils.setField(departureBoardService, "stopTimeService", stopTimeService);
+        ReflectionTestUtils.setField(departureBoardService, "objectMapper", new ObjectMapper().findAndRegisterModules());
+        ReflectionTestUtils.setField(departureBoardService, "maximumStopsPerSubscription", 2);
+    }
+
+    /**
+     * Stop the scheduler after each test.
+     */
+    @AfterEach
+    public void tearDown ( ) {
+        departureBoardService.shutdown();
+    }
+
+    /**
+     * Verify that subscribers of the same stop share one board which is only updated when the departures change.
+     */
+    @Test
+    public void testSubscribe ( ) {
+        //Test data
+        List<StopTimeModel> departures = List.of(createStopTime(LocalTime.of(10,12), "101"), createStopTime(LocalTime.of(10,42), "102"));
+        Mockito.when(stopTimeService.getDepartures("Lakeside", null)).thenReturn(departures).thenReturn(departures).thenReturn(departures.subList(1, 2));
+        //Test case 1: the board is computed for the first subscriber.
+        SseEmitter firstSseEmitter = departureBoardService.subscribe(List.of("Lakeside"));
+        assertEquals(1, meterRegistry.get("departures.board.updates").counter().count());
+        assertEquals(1, meterRegistry.get("departures.board.stops").gauge().value());
+        //Test case 2: the second subscriber receives the existing board.
+        SseEmitter secondSseEmitter = departureBoardService.subscribe(List.of("Lakeside", "Lakeside"));
+        Mockito.verify(stopTimeService, Mockito.times(1)).getDepartures("Lakeside", null);
+        //Test case 3: an unchanged board is not sent again.
+        departureBoardService.refreshAll();
+        assertEquals(1, meterRegistry.get("departures.board.updates").counter().count());
+        //Test case 4: the board is sent once the first departure has left.
+        departureBoardService.refreshAll();
+        assertEquals(2, meterRegistry.get("departures.board.updates").counter().count());
+        //Test case 5: the board is removed once all subscribers have disconnected.
+        departureBoardService.unsubscribe(firstSseEmitter, List.of("Lakeside"));
+        assertEquals(1, meterRegistry.get("departures.board.stops").gauge().value());
+        departureBoardService.unsubscribe(secondSseEmitter, List.of("Lakeside"));
+        assertEquals(0, meterRegistry.get("departures.board.stops").gauge().value());
+        departureBoardService.refreshAll();
+        Mockito.verify(stopTimeService, Mockito.times(3)).getDepartures("Lakeside", null);
+    }
+
+    /**
+     * Verify that subscriptions without stops or with too many stops are rejected.
+     */
+    @Test
+    public void testInvalidSubscription ( ) {
+        assertThrows(IllegalArgumentException.class, () -> departureBoardService.subscribe(List.of()));
+        assertThrows(IllegalArgumentException.class, () -> departureBoardService.subscribe(List.of("Lakeside", "Greenfield", "Airport")));
+        Mockito.verifyNoInteractions(stopTimeService);
+    }
+
+    /**
+     * Private helper method to create a test departure.
+     * @param departureTime a <code>LocalTime</code> object containing the desired departure time.
+     * @param journeyNumber a <code>String</code> containing the journey name.
+     * @return a <code>StopTimeModel</code> object which contains the test departure.
+     */
+    private StopTimeModel createStopTime ( final LocalTime departureTime, final String journeyNumber ) {
+        return StopTimeModel.builder()
+                .departureTime(departureTime)
+                .destination("Greenfield")
+                .journeyNumber(journeyNumber)
+                .routeNumber("405A")
+                .stopName("Lakeside")
+                .build();
+    }
+
+}
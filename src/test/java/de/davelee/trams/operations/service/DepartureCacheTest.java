@@ -0,0 +1,90 @@
+package de.davelee.trams.operations.service;
+
+import de.davelee.trams.operations.model.StopTimeModel;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * This class tests the DepartureCache class and ensures that stop times are cached per stop, type and minute.
+ * @author Dave Lee
+ */
+public class DepartureCacheTest {
+
+    private static final LocalDate DATE = LocalDate.of(2021, 4, 10);
+
+    /**
+     * Verify that stop times are cached per minute, that all entries are invalidated and that hits and misses are recorded.
+     */
+    @Test
+    public void testCache ( ) {
+        MeterRegistry meterRegistry = new SimpleMeterRegistry();
+        DepartureCache departureCache = new DepartureCache(100, 60, meterRegistry);
+        AtomicInteger loads = new AtomicInteger();
+        Supplier<List<StopTimeModel>> loader = () -> {
+            loads.incrementAndGet();
+            return new ArrayList<>(List.of(StopTimeModel.builder().id(1).build()));
+        };
+        //Test case 1: the same minute is only loaded once.
+        assertEquals(1, departureCache.get("Lakeside", "Departure", DATE, LocalTime.of(10, 1, 5), loader).size());
+        assertEquals(1, departureCache.get("Lakeside", "Departure", DATE, LocalTime.of(10, 1, 55), loader).size());
+        assertEquals(1, loads.get());
+        //Test case 2: other types, stops and minutes are loaded separately.
+        departureCache.get("Lakeside", "Arrival", DATE, LocalTime.of(10, 1), loader);
+        departureCache.get("Greenfield", "Departure", DATE, LocalTime.of(10, 1), loader);
+        departureCache.get("Lakeside", "Departure", DATE, LocalTime.of(10, 2), loader);
+        assertEquals(4, loads.get());
+        //Test case 3: cached stop times cannot be modified.
+        assertThrows(UnsupportedOperationException.class, () -> departureCache.get("Lakeside", "Departure", DATE, LocalTime.of(10, 1), loader).clear());
+        //Test case 4: all entries are loaded again after invalidation.
+        departureCache.invalidateAll();
+        departureCache.get("Lakeside", "Departure", DATE, LocalTime.of(10, 1), loader);
+        assertEquals(5, loads.get());
+        //Test case 5: hits and misses are recorded.
+        assertEquals(2.0, meterRegistry.get("cache.gets").tag("cache", "departures").tag("result", "hit").functionCounter().count());
+        assertEquals(5.0, meterRegistry.get("cache.gets").tag("cache", "departures").tag("result", "miss").functionCounter().count());
+    }
+
+    /**
+     * Verify that stop times which were put into the cache are returned without loading them.
+     */
+    @Test
+    public void testPut ( ) {
+        DepartureCache departureCache = new DepartureCache(100, 60, new SimpleMeterRegistry());
+        assertEquals(null, departureCache.getIfPresent("Lakeside", "Departure", DATE, LocalTime.of(10, 1)));
+        departureCache.put("Lakeside", "Departure", DATE, LocalTime.of(10, 1, 5), new ArrayList<>(List.of(StopTimeModel.builder().id(1).build())));
+        assertEquals(1, departureCache.getIfPresent("Lakeside", "Departure", DATE, LocalTime.of(10, 1, 55)).size());
+        assertEquals(1, departureCache.get("Lakeside", "Departure", DATE, LocalTime.of(10, 1), ArrayList::new).size());
+        assertThrows(UnsupportedOperationException.class, () -> departureCache.getIfPresent("Lakeside", "Departure", DATE, LocalTime.of(10, 1)).clear());
+    }
+
+    /**
+     * Verify that nothing is cached if the cache is disabled.
+     */
+    @Test
+    public void testDisabledCache ( ) {
+        DepartureCache departureCache = new DepartureCache(0, 60, new SimpleMeterRegistry());
+        AtomicInteger loads = new AtomicInteger();
+        Supplier<List<StopTimeModel>> loader = () -> {
+            loads.incrementAndGet();
+            return new ArrayList<>();
+        };
+        departureCache.get("Lakeside", "Departure", DATE, LocalTime.of(10, 1), loader);
+        departureCache.get("Lakeside", "Departure", DATE, LocalTime.of(10, 1), loader);
+        departureCache.invalidateAll();
+        assertEquals(2, loads.get());
+        departureCache.put("Lakeside", "Departure", DATE, LocalTime.of(10, 1), new ArrayList<>());
+        assertEquals(null, departureCache.getIfPresent("Lakeside", "Departure", DATE, LocalTime.of(10, 1)));
+    }
+
+}
@@ -0,0 +1,50 @@
+package de.davelee.trams.operations.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * This class tests the FeedArchive class and ensures that the files of directories and zip files can be found.
+ * @author Dave Lee
+ */
+public class FeedArchiveTest {
+
+    /**
+     * Verify that the files of a zip file can be found without extracting it and that metadata is ignored.
+     */
+    @Test
+    public void testZipFile ( ) throws IOException {
+        Path zipFile = Paths.get("src/test/resources/sample-feed-1.zip");
+        assertTrue(FeedArchive.isZipFile(zipFile));
+        assertEquals("sample-feed-1", FeedArchive.getFeedName(zipFile));
+        try ( FeedArchive feedArchive = FeedArchive.open(zipFile) ) {
+            assertEquals("/sample-feed-1", feedArchive.findDirectoryContaining("stop_times.txt").toString());
+            List<Path> files = feedArchive.findFiles(".txt");
+            assertFalse(files.isEmpty());
+            files.forEach(file -> assertTrue(file.startsWith("/sample-feed-1")));
+        }
+    }
+
+    /**
+     * Verify that the files of a directory can be found.
+     */
+    @Test
+    public void testDirectory ( ) throws IOException {
+        Path directory = Paths.get("src/test/resources/my-network-landuff");
+        assertFalse(FeedArchive.isZipFile(directory));
+        assertEquals("my-network-landuff", FeedArchive.getFeedName(directory));
+        try ( FeedArchive feedArchive = FeedArchive.open(directory) ) {
+            assertEquals(directory, feedArchive.findDirectoryContaining("stop_times.txt"));
+            assertEquals(directory.resolve("ft1.csv"), feedArchive.findFiles(".csv").get(0));
+        }
+    }
+
+}
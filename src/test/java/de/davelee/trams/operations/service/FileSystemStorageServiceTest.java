@@ -7,12 +7,17 @@ import org.junit.jupiter.api.Test;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.mock.web.MockMultipartFile;
 
+import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.endsWith;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 /**
  * This class tests the FileSystemStorageService class and ensures that the file operations work successfully.
@@ -44,6 +49,40 @@ public class FileSystemStorageServiceTest {
 
     }
 
+    /**
+     * Verify that a zip file can be stored under a unique name without extracting it and deleted again.
+     */
+    @Test
+    public void testStoreArchive ( ) throws IOException {
+        StorageConfiguration storageConfiguration = new StorageConfiguration();
+        storageConfiguration.setLocation("src/test/resources/upload-dir");
+        FileSystemStorageService fileSystemStorageService = new FileSystemStorageService(storageConfiguration);
+        fileSystemStorageService.deleteAll();
+        fileSystemStorageService.init();
+        try ( FileInputStream inputFile = new FileInputStream("src/test/resources/testfiles.zip") ) {
+            byte[] content = inputFile.readAllBytes();
+            String archivePath = fileSystemStorageService.storeArchive(
+                    new MockMultipartFile("file", "testfiles.zip", "multipart/form-data", content));
+            assertThat(archivePath, containsString("/src/test/resources/upload-dir/"));
+            assertThat(archivePath, endsWith(".zip"));
+            assertTrue(new File(archivePath).isFile());
+            assertFalse(new File(archivePath.replace(".zip", "")).exists());
+            //A second upload with the same file name must not replace the first file.
+            String secondArchivePath = fileSystemStorageService.storeArchive(
+                    new MockMultipartFile("file", "testfiles.zip", "multipart/form-data", content));
+            assertNotEquals(archivePath, secondArchivePath);
+            assertTrue(new File(archivePath).isFile());
+            //Deleting the first file keeps the second file.
+            fileSystemStorageService.delete(archivePath);
+            assertFalse(new File(archivePath).exists());
+            assertTrue(new File(secondArchivePath).isFile());
+            fileSystemStorageService.delete(archivePath);
+            fileSystemStorageService.delete(null);
+        } finally {
+            fileSystemStorageService.deleteAll();
+        }
+    }
+
     /**
      * Verify that an invalid directory cannot be created.
      */
@@ -1,17 +1,29 @@
 package de.davelee.trams.operations.service;
 
+import de.davelee.trams.operations.model.StopModel;
+import de.davelee.trams.operations.model.StopTimeModel;
 import de.davelee.trams.operations.repository.RouteRepository;
 import de.davelee.trams.operations.repository.StopRepository;
 import de.davelee.trams.operations.repository.StopTimeRepository;
 import org.assertj.core.util.Lists;
 import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.ArgumentMatchers;
+import org.mockito.Captor;
+import org.mockito.InOrder;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.Mockito;
 import org.springframework.boot.test.context.SpringBootTest;
 
 import java.io.File;
+import java.time.LocalDate;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
@@ -35,16 +47,84 @@ public class ImportCSVDataServiceTest {
     @Mock
     private StopTimeRepository stopTimeRepository;
 
+    @Mock
+    private TimetableIndexService timetableIndexService;
+
+    @Mock
+    private ImportMetrics importMetrics;
+
+    @Mock
+    private DepartureCache departureCache;
+
+    @Mock
+    private DepartureBoardService departureBoardService;
+
+    @Mock
+    private TripPatternService tripPatternService;
+
+    @Mock
+    private TimetableVersionService timetableVersionService;
+
+    @Captor
+    private ArgumentCaptor<List<StopModel>> stopCaptor;
+
+    @Captor
+    private ArgumentCaptor<List<StopTimeModel>> stopTimeCaptor;
+
     /**
      * Verify that it is possible to import the sample directory.
      */
     @Test
     public void testCSVDataService ( ) {
-        Mockito.when(routeRepository.findAll()).thenReturn(Lists.emptyList());
-        Mockito.when(stopRepository.findAll()).thenReturn(Lists.emptyList());
+        Mockito.when(routeRepository.findAllRouteNumbers()).thenReturn(Lists.emptyList());
+        Mockito.when(stopRepository.findAllStopNames()).thenReturn(Lists.emptyList());
+        //Reserve the ids from a sequence in the same way as the database.
+        AtomicInteger sequence = new AtomicInteger();
+        Mockito.when(stopTimeRepository.reserveIds(ArgumentMatchers.anyInt())).thenAnswer(invocation -> sequence.getAndAdd(invocation.getArgument(0)));
+        File file = new File("src/test/resources/my-network-landuff");
+        ImportResult importResult = importCSVDataService.readCSVFile(file.getAbsolutePath(), "2021-01-01", "2021-12-31");
+        assertTrue(importResult.isSuccessful());
+        assertEquals(file.list((dir, name) -> name.endsWith(".csv")).length, importResult.getSuccessfulFiles().size());
+        assertTrue(importResult.getFailedFiles().isEmpty());
+        assertTrue(importResult.getStopTimesImported() > 0);
+        Mockito.verify(departureCache).invalidateAll();
+        //Verify that the number of parsed and written stop times was recorded for each file.
+        Mockito.verify(importMetrics, Mockito.times(importResult.getSuccessfulFiles().size())).recordImport(
+                ArgumentMatchers.eq(ImportMetrics.CSV_FORMAT), ArgumentMatchers.anyLong(), ArgumentMatchers.any(StopTimeBatchWriter.class));
+        //Verify that every stop and every route was only imported once although the files were imported in parallel.
+        Mockito.verify(stopRepository).insert(stopCaptor.capture());
+        List<String> stopNames = stopCaptor.getValue().stream().map(StopModel::getName).collect(Collectors.toList());
+        assertEquals(stopNames.stream().distinct().count(), stopNames.size());
+        //Verify that every stop time was given a unique identifier.
+        Mockito.verify(stopTimeRepository, Mockito.atLeastOnce()).bulkInsert(stopTimeCaptor.capture());
+        assertEquals(importResult.getStopTimesImported(), stopTimeCaptor.getAllValues().stream()
+                .flatMap(List::stream).mapToInt(StopTimeModel::getId).distinct().count());
+        StopTimeModel stopTimeModel = stopTimeCaptor.getAllValues().get(0).get(0);
+        assertEquals(LocalDate.of(2021,1,1), stopTimeModel.getValidFromDate());
+        assertEquals(LocalDate.of(2021,12,31), stopTimeModel.getValidToDate());
+        assertEquals(stopTimeModel.getArrivalTime(), stopTimeModel.getDepartureTime());
+        //Verify that the stops are written in bulk and not one at a time.
+        Mockito.verify(stopRepository, Mockito.never()).insert(ArgumentMatchers.any(StopModel.class));
+        assertFalse(importCSVDataService.readCSVFile("no-feed", "2021-01-01", "2021-12-31").isSuccessful());
+        assertFalse(importCSVDataService.readCSVFile(file.getAbsolutePath(), "01-01-2021", "31-12-2021").isSuccessful());
+    }
+
+    /**
+     * Verify that the stop times are added to a new timetable version which is activated once all files were imported.
+     */
+    @Test
+    public void testCSVDataServiceWithTimetableVersion ( ) {
+        Mockito.when(timetableVersionService.isVersioningEnabled()).thenReturn(true);
+        Mockito.when(routeRepository.findAllRouteNumbers()).thenReturn(Lists.emptyList());
+        Mockito.when(stopRepository.findAllStopNames()).thenReturn(Lists.emptyList());
         File file = new File("src/test/resources/my-network-landuff");
-        assertTrue(importCSVDataService.readCSVFile(file.getAbsolutePath(), "2021-01-01", "2021-12-31"));
-        assertFalse(importCSVDataService.readCSVFile("no-feed", "2021-01-01", "2021-12-31"));
+        assertTrue(importCSVDataService.readCSVFile(file.getAbsolutePath(), "2021-01-01", "2021-12-31").isSuccessful());
+        //The new version contains all stop times of the active version as the csv files may only contain some routes.
+        InOrder inOrder = Mockito.inOrder(timetableVersionService, stopTimeRepository, timetableIndexService);
+        inOrder.verify(timetableVersionService).createStagingVersion(Collections.emptyList());
+        inOrder.verify(stopTimeRepository, Mockito.atLeastOnce()).bulkInsert(ArgumentMatchers.anyList());
+        inOrder.verify(timetableVersionService).activateStagingVersion();
+        inOrder.verify(timetableIndexService).rebuild();
     }
 
 }
@@ -1,23 +1,45 @@
 package de.davelee.trams.operations.service;
 
 import de.davelee.trams.operations.exception.StorageException;
+import de.davelee.trams.operations.model.StopTimeModel;
+import de.davelee.trams.operations.model.TimetableStorageMode;
+import de.davelee.trams.operations.model.TripFingerprintModel;
+import de.davelee.trams.operations.model.TripModel;
 import de.davelee.trams.operations.repository.RouteRepository;
 import de.davelee.trams.operations.repository.StopRepository;
 import de.davelee.trams.operations.repository.StopTimeRepository;
+import de.davelee.trams.operations.repository.TripFingerprintRepository;
+import de.davelee.trams.operations.repository.TripPatternRepository;
+import de.davelee.trams.operations.repository.TripRepository;
 import org.assertj.core.util.Lists;
-import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.ArgumentCaptor;
+import org.mockito.ArgumentMatchers;
+import org.mockito.Captor;
+import org.mockito.InOrder;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.Mockito;
-import org.onebusaway.csv_entities.exceptions.MissingRequiredEntityException;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.test.util.ReflectionTestUtils;
 
 import java.io.File;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 /**
@@ -40,18 +62,251 @@ public class ImportGTFSDataServiceTest {
     @Mock
     private StopTimeRepository stopTimeRepository;
 
+    @Mock
+    private TimetableIndexService timetableIndexService;
+
+    @Mock
+    private ImportMetrics importMetrics;
+
+    @Mock
+    private DepartureCache departureCache;
+
+    @Mock
+    private DepartureBoardService departureBoardService;
+
+    @Mock
+    private TripPatternService tripPatternService;
+
+    @Mock
+    private TripFingerprintRepository tripFingerprintRepository;
+
+    @Mock
+    private TimetableVersionService timetableVersionService;
+
+    @Captor
+    private ArgumentCaptor<List<StopTimeModel>> stopTimeCaptor;
+
+    @Captor
+    private ArgumentCaptor<List<TripModel>> tripCaptor;
+
+    @Captor
+    private ArgumentCaptor<List<TripFingerprintModel>> fingerprintCaptor;
+
     /**
      * Verify that it is possible to import the sample feed.
      */
     @Test
     public void testGTFSDataService ( ) {
-        Mockito.when(routeRepository.findAll()).thenReturn(Lists.emptyList());
-        Mockito.when(stopRepository.findAll()).thenReturn(Lists.emptyList());
+        Mockito.when(routeRepository.findAllRouteNumbers()).thenReturn(Lists.emptyList());
+        Mockito.when(stopRepository.findAllStopNames()).thenReturn(Lists.emptyList());
         File file = new File("src/test/resources/sample-feed-1");
         assertTrue(importGTFSDataService.readGTFSFile(file.getAbsolutePath(), Lists.newArrayList()));
         assertTrue(importGTFSDataService.readGTFSFile(file.getAbsolutePath(), List.of("10", "20")));
+        Mockito.verify(stopTimeRepository, Mockito.atLeastOnce()).bulkInsert(ArgumentMatchers.anyList());
+        Mockito.verify(stopTimeRepository, Mockito.never()).insert(ArgumentMatchers.any(StopTimeModel.class));
+        //Verify that the calendar and the calendar dates of the service were resolved for the stop times.
+        Mockito.verify(stopTimeRepository, Mockito.atLeastOnce()).bulkInsert(stopTimeCaptor.capture());
+        //Verify that all 28 stop times of the feed and the 8 stop times of the selected routes were streamed to the database.
+        assertEquals(36, stopTimeCaptor.getAllValues().stream().mapToInt(List::size).sum());
+        StopTimeModel stopTimeModel = stopTimeCaptor.getAllValues().get(0).get(0);
+        assertEquals(LocalDate.of(2007,1,1), stopTimeModel.getValidFromDate());
+        assertEquals(LocalDate.of(2010,12,31), stopTimeModel.getValidToDate());
+        assertEquals(7, stopTimeModel.getOperatingDays().size());
+        assertEquals(List.of(LocalDate.of(2007,6,4)), stopTimeModel.getExcludedDates());
+        assertNull(stopTimeModel.getAdditionalDates());
+        Mockito.verify(departureCache, Mockito.times(2)).invalidateAll();
+        //Verify that the number of parsed and written stop times was recorded for each import.
+        Mockito.verify(importMetrics, Mockito.times(2)).recordImport(ArgumentMatchers.eq(ImportMetrics.GTFS_FORMAT),
+                ArgumentMatchers.anyLong(), ArgumentMatchers.any(StopTimeBatchWriter.class));
         File zipFile = new File("src/test/resources/sample-feed-1.zip");
-        Assertions.assertThrows(MissingRequiredEntityException.class, () -> importGTFSDataService.readGTFSFile(zipFile.getAbsolutePath(), Lists.newArrayList()));
+        //The zip file contains the feed in a sub directory and is read without extracting it.
+        Mockito.clearInvocations(stopTimeRepository);
+        assertTrue(importGTFSDataService.readGTFSFile(zipFile.getAbsolutePath(), List.of("10", "20")));
+        Mockito.verify(stopTimeRepository, Mockito.atLeastOnce()).bulkInsert(stopTimeCaptor.capture());
+        assertEquals(8, stopTimeCaptor.getValue().size());
         assertFalse(importGTFSDataService.readGTFSFile("no-feed", Lists.newArrayList()));
     }
+
+    /**
+     * Verify that each journey of the sample feed is written as a single trip if journeys are stored as trips.
+     */
+    @Test
+    public void testGTFSDataServiceWithTripPatterns ( ) {
+        //Use a trip pattern service which writes to mocked repositories.
+        TripRepository tripRepository = Mockito.mock(TripRepository.class);
+        TripPatternRepository tripPatternRepository = Mockito.mock(TripPatternRepository.class);
+        StopTimeNameService stopTimeNameService = Mockito.mock(StopTimeNameService.class);
+        Mockito.when(stopTimeNameService.getOrCreateId(ArgumentMatchers.anyString())).thenAnswer(invocation ->
+                Math.abs(invocation.getArgument(0).hashCode()) + 1);
+        TripPatternService tripPatternService = new TripPatternService();
+        ReflectionTestUtils.setField(tripPatternService, "tripRepository", tripRepository);
+        ReflectionTestUtils.setField(tripPatternService, "tripPatternRepository", tripPatternRepository);
+        ReflectionTestUtils.setField(tripPatternService, "stopTimeNameService", stopTimeNameService);
+        ReflectionTestUtils.setField(tripPatternService, "storageMode", TimetableStorageMode.TRIP_PATTERNS);
+        ReflectionTestUtils.setField(importGTFSDataService, "tripPatternService", tripPatternService);
+        Mockito.when(routeRepository.findAllRouteNumbers()).thenReturn(Lists.emptyList());
+        Mockito.when(stopRepository.findAllStopNames()).thenReturn(Lists.emptyList());
+        File file = new File("src/test/resources/sample-feed-1");
+        assertTrue(importGTFSDataService.readGTFSFile(file.getAbsolutePath(), List.of("10", "20")));
+        //The 8 stop times of the selected routes belong to 4 journeys which each call at 2 stops in a different order.
+        Mockito.verify(tripRepository).insert(tripCaptor.capture());
+        assertEquals(4, tripCaptor.getValue().size());
+        assertEquals(8, tripCaptor.getValue().stream().mapToInt(tripModel -> tripModel.getDepartureOffsets().size()).sum());
+        Mockito.verify(tripPatternRepository).saveAll(ArgumentMatchers.argThat(tripPatterns -> ((List<?>) tripPatterns).size() == 4));
+        Mockito.verify(stopTimeRepository, Mockito.never()).bulkInsert(ArgumentMatchers.anyList());
+    }
+
+    /**
+     * Verify that an incremental import only writes the trips which have changed since the last import.
+     */
+    @Test
+    public void testIncrementalGTFSDataService ( ) {
+        Mockito.when(routeRepository.findAllRouteNumbers()).thenReturn(Lists.emptyList());
+        Mockito.when(stopRepository.findAllStopNames()).thenReturn(Lists.emptyList());
+        Mockito.when(stopTimeRepository.reserveIds(ArgumentMatchers.anyInt())).thenReturn(100);
+        File file = new File("src/test/resources/sample-feed-1");
+        //Test case 1: all trips are new so all stop times are written with ids reserved from the sequence.
+        ImportProgress importProgress = new ImportProgress();
+        assertTrue(importGTFSDataService.readGTFSFile(file.getAbsolutePath(), List.of("10", "20"), true, importProgress));
+        Mockito.verify(stopTimeRepository).bulkInsert(stopTimeCaptor.capture());
+        assertEquals(8, stopTimeCaptor.getValue().size());
+        assertEquals(100, stopTimeCaptor.getValue().get(0).getId());
+        assertEquals(8, importProgress.getRowsProcessed());
+        Mockito.verify(tripFingerprintRepository).insert(fingerprintCaptor.capture());
+        List<TripFingerprintModel> storedFingerprints = new ArrayList<>(fingerprintCaptor.getValue());
+        assertEquals(4, storedFingerprints.size());
+        assertEquals(List.of(100, 2), storedFingerprints.get(0).getStopTimeIdRanges());
+        //Test case 2: nothing is written if the feed has not changed.
+        Mockito.clearInvocations(stopTimeRepository);
+        Mockito.clearInvocations(tripFingerprintRepository);
+        Mockito.when(tripFingerprintRepository.findByRouteNumberIn(ArgumentMatchers.anyCollection())).thenReturn(storedFingerprints);
+        assertTrue(importGTFSDataService.readGTFSFile(file.getAbsolutePath(), List.of("10", "20"), true, new ImportProgress()));
+        Mockito.verify(stopTimeRepository, Mockito.never()).bulkInsert(ArgumentMatchers.anyList());
+        Mockito.verify(stopTimeRepository, Mockito.never()).bulkDelete(ArgumentMatchers.anyList());
+        Mockito.verify(stopTimeRepository, Mockito.never()).bulkUpdate(ArgumentMatchers.anyList());
+        Mockito.verify(tripFingerprintRepository, Mockito.never()).insert(ArgumentMatchers.anyList());
+        //Test case 3: a changed trip is replaced, a trip with a changed calendar is updated and a removed trip is deleted.
+        Mockito.clearInvocations(stopTimeRepository);
+        Mockito.clearInvocations(tripFingerprintRepository);
+        storedFingerprints.get(0).setTripFingerprint("previous");
+        storedFingerprints.get(1).setCalendarFingerprint("previous");
+        storedFingerprints.add(TripFingerprintModel.builder().id("AB3").routeNumber("10").tripFingerprint("removed")
+                .stopTimeIdRanges(List.of(5, 3)).build());
+        assertTrue(importGTFSDataService.readGTFSFile(file.getAbsolutePath(), List.of("10", "20"), true, new ImportProgress()));
+        Mockito.verify(stopTimeRepository).bulkInsert(stopTimeCaptor.capture());
+        assertEquals(2, stopTimeCaptor.getValue().size());
+        assertEquals(storedFingerprints.get(0).getId(), stopTimeCaptor.getValue().get(0).getJourneyNumber());
+        Mockito.verify(stopTimeRepository).bulkDelete(ArgumentMatchers.argThat(queries -> queries.size() == 2));
+        Mockito.verify(stopTimeRepository).bulkUpdate(ArgumentMatchers.argThat(updates -> updates.size() == 1));
+        Mockito.verify(tripFingerprintRepository).deleteByIdIn(ArgumentMatchers.argThat(ids -> ids.size() == 3 && ids.contains("AB3")));
+        Mockito.verify(tripFingerprintRepository).insert(ArgumentMatchers.<List<TripFingerprintModel>>argThat(fingerprints -> fingerprints.size() == 2));
+    }
+
+    /**
+     * Verify that an incremental import also compares trips whose stop times are not listed together in the feed.
+     * @param directory a <code>Path</code> object containing a temporary directory to copy the feed to.
+     * @throws IOException if the feed could not be copied.
+     */
+    @Test
+    public void testIncrementalGTFSDataServiceWithScatteredTrip ( @TempDir final Path directory ) throws IOException {
+        Mockito.when(routeRepository.findAllRouteNumbers()).thenReturn(Lists.emptyList());
+        Mockito.when(stopRepository.findAllStopNames()).thenReturn(Lists.emptyList());
+        Mockito.when(stopTimeRepository.reserveIds(ArgumentMatchers.anyInt())).thenReturn(100);
+        //Copy the sample feed and move the second stop time of the trip AB1 to the end of the stop times.
+        try ( DirectoryStream<Path> files = Files.newDirectoryStream(Paths.get("src/test/resources/sample-feed-1")) ) {
+            for ( Path file : files ) {
+                Files.copy(file, directory.resolve(file.getFileName()));
+            }
+        }
+        List<String> stopTimes = new ArrayList<>(Files.readAllLines(directory.resolve("stop_times.txt")));
+        String movedStopTime = stopTimes.stream().filter(stopTime -> stopTime.startsWith("AB1,8:10")).findFirst().orElseThrow();
+        stopTimes.remove(movedStopTime);
+        stopTimes.add(movedStopTime);
+        Files.write(directory.resolve("stop_times.txt"), stopTimes);
+        assertTrue(importGTFSDataService.readGTFSFile(directory.toString(), List.of("10", "20"), true, new ImportProgress()));
+        //The first stop time of AB1 was written before the trip was complete so it is deleted and the trip is written again.
+        Mockito.verify(stopTimeRepository, Mockito.times(2)).bulkInsert(stopTimeCaptor.capture());
+        assertEquals(7, stopTimeCaptor.getAllValues().get(0).size());
+        assertEquals(2, stopTimeCaptor.getAllValues().get(1).size());
+        assertTrue(stopTimeCaptor.getAllValues().get(1).stream().allMatch(stopTimeModel -> stopTimeModel.getJourneyNumber().equals("AB1")));
+        Mockito.verify(stopTimeRepository).bulkDelete(ArgumentMatchers.argThat(queries -> queries.size() == 1));
+        Mockito.verify(tripFingerprintRepository).insert(fingerprintCaptor.capture());
+        assertEquals(4, fingerprintCaptor.getValue().size());
+        assertEquals(List.of(107, 2), fingerprintCaptor.getValue().stream().filter(fingerprint -> fingerprint.getId().equals("AB1"))
+                .findFirst().orElseThrow().getStopTimeIdRanges());
+    }
+
+    /**
+     * Verify that the stop times are written into a new timetable version which is only activated if the import finishes.
+     */
+    @Test
+    public void testGTFSDataServiceWithTimetableVersion ( ) {
+        Mockito.when(timetableVersionService.isVersioningEnabled()).thenReturn(true);
+        Mockito.when(routeRepository.findAllRouteNumbers()).thenReturn(Lists.emptyList());
+        Mockito.when(stopRepository.findAllStopNames()).thenReturn(Lists.emptyList());
+        File file = new File("src/test/resources/sample-feed-1");
+        assertTrue(importGTFSDataService.readGTFSFile(file.getAbsolutePath(), List.of("10", "20")));
+        //Test case 1: the new version replaces the imported routes and is activated before the fingerprints are stored.
+        InOrder inOrder = Mockito.inOrder(timetableVersionService, stopTimeRepository, tripFingerprintRepository, timetableIndexService);
+        inOrder.verify(timetableVersionService).createStagingVersion(List.of("10", "20"));
+        inOrder.verify(stopTimeRepository).bulkInsert(ArgumentMatchers.anyList());
+        inOrder.verify(timetableVersionService).activateStagingVersion();
+        inOrder.verify(tripFingerprintRepository).insert(ArgumentMatchers.anyList());
+        inOrder.verify(timetableIndexService).rebuild();
+        //Test case 2: the new version is discarded and not activated if the stop times could not be written.
+        Mockito.clearInvocations(timetableVersionService, timetableIndexService);
+        Mockito.when(stopTimeRepository.bulkInsert(ArgumentMatchers.anyList())).thenThrow(new IllegalStateException("database unavailable"));
+        assertThrows(IllegalStateException.class, () -> importGTFSDataService.readGTFSFile(file.getAbsolutePath(), List.of("10", "20")));
+        Mockito.verify(timetableVersionService).discardStagingVersion();
+        Mockito.verify(timetableVersionService, Mockito.never()).activateStagingVersion();
+        Mockito.verify(timetableIndexService, Mockito.never()).rebuild();
+    }
+
+    /**
+     * Verify that importing the whole feed again replaces the timetable instead of adding all stop times a second time.
+     */
+    @Test
+    public void testFullGTFSReimportWithTimetableVersion ( ) {
+        Mockito.when(timetableVersionService.isVersioningEnabled()).thenReturn(true);
+        Mockito.when(routeRepository.findAllRouteNumbers()).thenReturn(Lists.emptyList());
+        Mockito.when(stopRepository.findAllStopNames()).thenReturn(Lists.emptyList());
+        //Simulate the collections of the active and the staging version.
+        List<StopTimeModel> activeStopTimes = new ArrayList<>();
+        List<StopTimeModel> stagingStopTimes = new ArrayList<>();
+        Mockito.when(timetableVersionService.createEmptyStagingVersion()).thenAnswer(invocation -> {
+            stagingStopTimes.clear();
+            return "stopTimeModel_v1";
+        });
+        Mockito.when(timetableVersionService.createStagingVersion(ArgumentMatchers.anyCollection())).thenAnswer(invocation -> {
+            Collection<String> replacedRouteNumbers = invocation.getArgument(0);
+            stagingStopTimes.clear();
+            activeStopTimes.stream().filter(stopTimeModel -> !replacedRouteNumbers.contains(stopTimeModel.getRouteNumber()))
+                    .forEach(stagingStopTimes::add);
+            return "stopTimeModel_v1";
+        });
+        Mockito.when(stopTimeRepository.bulkInsert(ArgumentMatchers.anyList())).thenAnswer(invocation -> {
+            List<StopTimeModel> batch = invocation.getArgument(0);
+            stagingStopTimes.addAll(batch);
+            return batch.size();
+        });
+        Mockito.doAnswer(invocation -> {
+            activeStopTimes.clear();
+            activeStopTimes.addAll(stagingStopTimes);
+            return null;
+        }).when(timetableVersionService).activateStagingVersion();
+        File file = new File("src/test/resources/sample-feed-1");
+        //Test case 1: the first import of the whole feed fills the timetable.
+        assertTrue(importGTFSDataService.readGTFSFile(file.getAbsolutePath(), Lists.newArrayList()));
+        final int numberOfStopTimes = activeStopTimes.size();
+        assertTrue(numberOfStopTimes > 8);
+        //Test case 2: the whole feed is imported again into an empty version so the number of stop times stays the same.
+        assertTrue(importGTFSDataService.readGTFSFile(file.getAbsolutePath(), Lists.newArrayList()));
+        assertEquals(numberOfStopTimes, activeStopTimes.size());
+        Mockito.verify(timetableVersionService, Mockito.times(2)).createEmptyStagingVersion();
+        //Test case 3: selected routes which are imported again only replace their own stop times.
+        assertTrue(importGTFSDataService.readGTFSFile(file.getAbsolutePath(), List.of("10", "20")));
+        assertEquals(numberOfStopTimes, activeStopTimes.size());
+        Mockito.verify(timetableVersionService).createStagingVersion(List.of("10", "20"));
+    }
+
 }
@@ -0,0 +1,143 @@
+package de.davelee.trams.operations.service;
+
+import de.davelee.trams.operations.model.ImportPhase;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentMatchers;
+import org.mockito.Mockito;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * This class tests the ImportJobService class and ensures that imports run in the background and report their outcome.
+ * Mocks are used for the importers.
+ * @author Dave Lee
+ */
+public class ImportJobServiceTest {
+
+    private ImportJobService importJobService;
+
+    private ImportGTFSDataService gtfsDataService;
+
+    private ImportCSVDataService csvDataService;
+
+    private FileSystemStorageService fileSystemStorageService;
+
+    /**
+     * Create a service with one worker and space for one waiting import.
+     */
+    @BeforeEach
+    public void setUp ( ) {
+        importJobService = new ImportJobService(1, 1, true);
+        gtfsDataService = Mockito.mock(ImportGTFSDataService.class);
+        csvDataService = Mockito.mock(ImportCSVDataService.class);
+        fileSystemStorageService = Mockito.mock(FileSystemStorageService.class);
+        ReflectionTestUtils.setField(importJobService, "gtfsDataService", gtfsDataService);
+        ReflectionTestUtils.setField(importJobService, "csvDataService", csvDataService);
+        ReflectionTestUtils.setField(importJobService, "fileSystemStorageService", fileSystemStorageService);
+    }
+
+    /**
+     * Stop the worker after each test.
+     */
+    @AfterEach
+    public void tearDown ( ) {
+        importJobService.shutdown();
+    }
+
+    /**
+     * Verify that a successful GTFS import is marked as completed.
+     */
+    @Test
+    public void testGTFSImport ( ) throws InterruptedException {
+        Mockito.when(gtfsDataService.readGTFSFile(ArgumentMatchers.eq("feed.zip"), ArgumentMatchers.anyList(), ArgumentMatchers.anyBoolean(), ArgumentMatchers.any())).thenAnswer(invocation -> {
+            invocation.getArgument(3, ImportProgress.class).addRowsProcessed(100);
+            return true;
+        });
+        ImportJob importJob = importJobService.submitGTFSImport("feed.zip", List.of(), false);
+        assertEquals(importJob, importJobService.getImportJob(importJob.getId()).orElseThrow());
+        waitForJob(importJob);
+        assertEquals(ImportPhase.COMPLETED, importJob.getProgress().getPhase());
+        assertEquals(100, importJob.getProgress().getRowsProcessed());
+        assertTrue(importJob.getSuccessful());
+        assertNull(importJob.getMessage());
+        assertFalse(importJobService.getImportJob("unknown").isPresent());
+        //The uploaded file is deleted once the job has finished.
+        Mockito.verify(fileSystemStorageService, Mockito.timeout(1000)).delete("feed.zip");
+    }
+
+    /**
+     * Verify that a CSV import with failed files or an exception is marked as failed.
+     */
+    @Test
+    public void testFailedImports ( ) throws InterruptedException {
+        ImportResult importResult = new ImportResult();
+        importResult.addFile("ft1.csv", true);
+        importResult.addFile("ft2.csv", false);
+        Mockito.when(csvDataService.readCSVFile(ArgumentMatchers.eq("csv.zip"), ArgumentMatchers.anyString(), ArgumentMatchers.anyString(), ArgumentMatchers.any())).thenReturn(importResult);
+        ImportJob csvImportJob = importJobService.submitCSVImport("csv.zip", "2021-01-01", "2021-12-31");
+        waitForJob(csvImportJob);
+        assertEquals(ImportPhase.FAILED, csvImportJob.getProgress().getPhase());
+        assertFalse(csvImportJob.getSuccessful());
+        assertEquals("Files could not be imported: ft2.csv", csvImportJob.getMessage());
+        Mockito.when(gtfsDataService.readGTFSFile(ArgumentMatchers.eq("bad.zip"), ArgumentMatchers.anyList(), ArgumentMatchers.anyBoolean(), ArgumentMatchers.any())).thenThrow(new IllegalStateException("bad feed"));
+        ImportJob gtfsImportJob = importJobService.submitGTFSImport("bad.zip", List.of(), false);
+        waitForJob(gtfsImportJob);
+        assertEquals(ImportPhase.FAILED, gtfsImportJob.getProgress().getPhase());
+        assertEquals("bad feed", gtfsImportJob.getMessage());
+        //The uploaded files are also deleted if the import failed.
+        Mockito.verify(fileSystemStorageService, Mockito.timeout(1000)).delete("csv.zip");
+        Mockito.verify(fileSystemStorageService, Mockito.timeout(1000)).delete("bad.zip");
+    }
+
+    /**
+     * Verify that imports are rejected if the worker is busy and the queue is full.
+     */
+    @Test
+    public void testQueueFull ( ) throws InterruptedException {
+        CountDownLatch latch = new CountDownLatch(1);
+        Mockito.when(gtfsDataService.readGTFSFile(ArgumentMatchers.anyString(), ArgumentMatchers.anyList(), ArgumentMatchers.anyBoolean(), ArgumentMatchers.any())).thenAnswer(invocation -> {
+            latch.await(10, TimeUnit.SECONDS);
+            return true;
+        });
+        ImportJob runningImportJob = importJobService.submitGTFSImport("feed1.zip", List.of(), false);
+        ImportJob queuedImportJob = importJobService.submitGTFSImport("feed2.zip", List.of(), false);
+        assertThrows(RejectedExecutionException.class, () -> importJobService.submitGTFSImport("feed3.zip", List.of(), false));
+        latch.countDown();
+        waitForJob(runningImportJob);
+        waitForJob(queuedImportJob);
+        assertTrue(queuedImportJob.getSuccessful());
+    }
+
+    /**
+     * Verify that more than one worker is only allowed if imports do not write new versions of the timetable.
+     */
+    @Test
+    public void testThreadsWithVersioning ( ) {
+        assertThrows(IllegalArgumentException.class, () -> new ImportJobService(2, 1, true));
+        new ImportJobService(2, 1, false).shutdown();
+    }
+
+    /**
+     * This is a private helper method which waits until the supplied job has finished.
+     * @param importJob a <code>ImportJob</code> object containing the job to wait for.
+     */
+    private void waitForJob ( final ImportJob importJob ) throws InterruptedException {
+        for ( int i = 0; i < 100 && importJob.getSuccessful() == null; i++ ) {
+            Thread.sleep(50);
+        }
+        assertTrue(importJob.getSuccessful() != null, "Import job did not finish in time");
+    }
+
+}
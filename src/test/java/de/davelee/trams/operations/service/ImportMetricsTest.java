@@ -0,0 +1,38 @@
+package de.davelee.trams.operations.service;
+
+import de.davelee.trams.operations.model.StopTimeModel;
+import de.davelee.trams.operations.repository.StopTimeRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * This class tests the ImportMetrics class and ensures that the counters are incremented for each format.
+ * @author Dave Lee
+ */
+public class ImportMetricsTest {
+
+    /**
+     * Verify that the parsed rows, written rows and batches are added to the counters of the supplied format.
+     */
+    @Test
+    public void testRecordImport ( ) {
+        MeterRegistry meterRegistry = new SimpleMeterRegistry();
+        ImportMetrics importMetrics = new ImportMetrics(meterRegistry);
+        StopTimeBatchWriter stopTimeBatchWriter = new StopTimeBatchWriter(Mockito.mock(StopTimeRepository.class), 2);
+        for ( int i = 0; i < 3; i++ ) {
+            stopTimeBatchWriter.add(StopTimeModel.builder().id(i).build());
+        }
+        stopTimeBatchWriter.flush();
+        importMetrics.recordImport(ImportMetrics.CSV_FORMAT, 5, stopTimeBatchWriter);
+        importMetrics.recordImport(ImportMetrics.CSV_FORMAT, 5, stopTimeBatchWriter);
+        assertEquals(10.0, meterRegistry.get("import.rows.parsed").tag("format", ImportMetrics.CSV_FORMAT).counter().count());
+        assertEquals(6.0, meterRegistry.get("import.rows.written").tag("format", ImportMetrics.CSV_FORMAT).counter().count());
+        assertEquals(4.0, meterRegistry.get("import.batches.written").tag("format", ImportMetrics.CSV_FORMAT).counter().count());
+        assertEquals(0, meterRegistry.find("import.rows.parsed").tag("format", ImportMetrics.GTFS_FORMAT).counters().size());
+    }
+
+}
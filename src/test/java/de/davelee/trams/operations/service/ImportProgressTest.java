@@ -0,0 +1,36 @@
+package de.davelee.trams.operations.service;
+
+import de.davelee.trams.operations.model.ImportPhase;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * This class tests the ImportProgress class and ensures that the progress of an import is recorded correctly.
+ * @author Dave Lee
+ */
+public class ImportProgressTest {
+
+    /**
+     * Verify that the phase and the number of rows are recorded and the rate is only calculated once started.
+     */
+    @Test
+    public void testProgress ( ) throws InterruptedException {
+        ImportProgress importProgress = new ImportProgress();
+        assertEquals(ImportPhase.QUEUED, importProgress.getPhase());
+        importProgress.addRowsProcessed(10);
+        assertEquals(0, importProgress.getRowsPerSecond());
+        importProgress.setPhase(ImportPhase.WRITING);
+        importProgress.addRowsProcessed(90);
+        Thread.sleep(10);
+        importProgress.setPhase(ImportPhase.COMPLETED);
+        assertEquals(100, importProgress.getRowsProcessed());
+        double rowsPerSecond = importProgress.getRowsPerSecond();
+        assertTrue(rowsPerSecond > 0);
+        //The rate should not change after the import has finished.
+        Thread.sleep(10);
+        assertEquals(rowsPerSecond, importProgress.getRowsPerSecond());
+    }
+
+}
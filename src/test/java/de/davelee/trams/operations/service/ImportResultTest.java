@@ -0,0 +1,35 @@
+package de.davelee.trams.operations.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * This class tests the ImportResult class and ensures that the outcomes of the files are aggregated correctly.
+ * @author Dave Lee
+ */
+public class ImportResultTest {
+
+    /**
+     * Verify that the result is only successful if at least one file was imported and no file failed.
+     */
+    @Test
+    public void testAddFile ( ) {
+        ImportResult importResult = new ImportResult();
+        assertFalse(importResult.isSuccessful());
+        importResult.addFile("ft1.csv", true);
+        importResult.addFile("ft2.csv", true);
+        importResult.setStopTimesImported(20);
+        assertTrue(importResult.isSuccessful());
+        importResult.addFile("ft3.csv", false);
+        assertFalse(importResult.isSuccessful());
+        assertEquals(List.of("ft1.csv", "ft2.csv"), importResult.getSuccessfulFiles());
+        assertEquals(List.of("ft3.csv"), importResult.getFailedFiles());
+        assertEquals(20, importResult.getStopTimesImported());
+    }
+
+}
@@ -0,0 +1,68 @@
+package de.davelee.trams.operations.service;
+
+import de.davelee.trams.operations.model.RouteModel;
+import de.davelee.trams.operations.model.StopModel;
+import de.davelee.trams.operations.repository.RouteRepository;
+import de.davelee.trams.operations.repository.StopRepository;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentMatchers;
+import org.mockito.Mockito;
+import org.springframework.dao.DuplicateKeyException;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * This class tests the ImportSession class and ensures that stops and routes are only imported once. Mocks are used
+ * for the database layer.
+ * @author Dave Lee
+ */
+public class ImportSessionTest {
+
+    /**
+     * Verify that existing and new stops and routes are detected and that new ones are written in bulk.
+     */
+    @Test
+    public void testAddAndFlush ( ) {
+        StopRepository stopRepository = Mockito.mock(StopRepository.class);
+        RouteRepository routeRepository = Mockito.mock(RouteRepository.class);
+        Mockito.when(stopRepository.findAllStopNames()).thenReturn(List.of(StopModel.builder().name("Lakeside").build()));
+        Mockito.when(routeRepository.findAllRouteNumbers()).thenReturn(List.of(RouteModel.builder().routeNumber("1A").build()));
+        ImportSession importSession = new ImportSession(stopRepository, routeRepository);
+        assertTrue(importSession.hasStop("Lakeside"));
+        assertFalse(importSession.hasStop("Greenfield"));
+        assertTrue(importSession.hasRoute("1A"));
+        assertFalse(importSession.addStop(StopModel.builder().name("Lakeside").build()));
+        assertTrue(importSession.addStop(StopModel.builder().name("Greenfield").build()));
+        assertFalse(importSession.addStop(StopModel.builder().name("Greenfield").build()));
+        assertTrue(importSession.hasStop("Greenfield"));
+        assertFalse(importSession.addRoute(RouteModel.builder().routeNumber("1A").build()));
+        assertTrue(importSession.addRoute(RouteModel.builder().routeNumber("2").build()));
+        importSession.flush();
+        Mockito.verify(stopRepository, Mockito.times(1)).insert(ArgumentMatchers.<StopModel>anyList());
+        Mockito.verify(routeRepository, Mockito.times(1)).insert(ArgumentMatchers.<RouteModel>anyList());
+        //A second flush without new stops or routes should not write anything.
+        importSession.flush();
+        Mockito.verify(stopRepository, Mockito.times(1)).insert(ArgumentMatchers.<StopModel>anyList());
+        Mockito.verify(routeRepository, Mockito.times(1)).insert(ArgumentMatchers.<RouteModel>anyList());
+    }
+
+    /**
+     * Verify that stops are written individually if another import has already written one of them.
+     */
+    @Test
+    public void testDuplicateKey ( ) {
+        StopRepository stopRepository = Mockito.mock(StopRepository.class);
+        RouteRepository routeRepository = Mockito.mock(RouteRepository.class);
+        Mockito.when(stopRepository.insert(ArgumentMatchers.<StopModel>anyList())).thenThrow(new DuplicateKeyException("duplicate"));
+        Mockito.when(stopRepository.insert(ArgumentMatchers.any(StopModel.class))).thenThrow(new DuplicateKeyException("duplicate"));
+        ImportSession importSession = new ImportSession(stopRepository, routeRepository);
+        importSession.addStop(StopModel.builder().name("Lakeside").build());
+        importSession.addStop(StopModel.builder().name("Greenfield").build());
+        importSession.flush();
+        Mockito.verify(stopRepository, Mockito.times(2)).insert(ArgumentMatchers.any(StopModel.class));
+    }
+
+}
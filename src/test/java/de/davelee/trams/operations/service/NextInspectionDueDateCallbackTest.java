@@ -0,0 +1,60 @@
+package de.davelee.trams.operations.service;
+
+import de.davelee.trams.operations.model.*;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+/**
+ * This class tests the NextInspectionDueDateCallback class and ensures that the next inspection due date is calculated
+ * with the inspection period of each vehicle type.
+ * @author Dave Lee
+ */
+public class NextInspectionDueDateCallbackTest {
+
+    private final NextInspectionDueDateCallback nextInspectionDueDateCallback = new NextInspectionDueDateCallback(3, 8, 9);
+
+    /**
+     * Ensure that the next inspection due date is set for each vehicle type before the vehicle is written.
+     */
+    @Test
+    public void testOnBeforeConvert() {
+        BusVehicleModel busVehicleModel = BusVehicleModel.builder()
+                .inspectionDate(LocalDate.of(2021,4,25))
+                .build();
+        assertEquals(LocalDate.of(2024,4,25), nextInspectionDueDateCallback.onBeforeConvert(busVehicleModel, "vehicleModel")
+                .getNextInspectionDueDate());
+        TrainVehicleModel trainVehicleModel = TrainVehicleModel.builder()
+                .powerMode(TrainPowerMode.DIESEL)
+                .inspectionDate(LocalDate.of(2021,4,25))
+                .build();
+        assertEquals(LocalDate.of(2029,4,25), nextInspectionDueDateCallback.onBeforeConvert(trainVehicleModel, "vehicleModel")
+                .getNextInspectionDueDate());
+        TramVehicleModel tramVehicleModel = TramVehicleModel.builder()
+                .inspectionDate(LocalDate.of(2021,4,25))
+                .build();
+        assertEquals(LocalDate.of(2030,4,25), nextInspectionDueDateCallback.onBeforeConvert(tramVehicleModel, "vehicleModel")
+                .getNextInspectionDueDate());
+    }
+
+    /**
+     * Ensure that a changed inspection date replaces the previous next inspection due date and that vehicles which
+     * have never been inspected have no next inspection due date.
+     */
+    @Test
+    public void testChangedAndMissingInspectionDate() {
+        BusVehicleModel busVehicleModel = BusVehicleModel.builder()
+                .inspectionDate(LocalDate.of(2021,4,25))
+                .build();
+        nextInspectionDueDateCallback.onBeforeConvert(busVehicleModel, "vehicleModel");
+        busVehicleModel.setInspectionDate(LocalDate.of(2022,1,10));
+        assertEquals(LocalDate.of(2025,1,10), nextInspectionDueDateCallback.onBeforeConvert(busVehicleModel, "vehicleModel")
+                .getNextInspectionDueDate());
+        busVehicleModel.setInspectionDate(null);
+        assertNull(nextInspectionDueDateCallback.onBeforeConvert(busVehicleModel, "vehicleModel").getNextInspectionDueDate());
+    }
+
+}
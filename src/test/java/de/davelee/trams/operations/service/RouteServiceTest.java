@@ -1,6 +1,7 @@
 package de.davelee.trams.operations.service;
 
 import de.davelee.trams.operations.model.RouteModel;
+import de.davelee.trams.operations.repository.ReactiveRouteRepository;
 import de.davelee.trams.operations.repository.RouteRepository;
 import org.assertj.core.util.Lists;
 import org.junit.jupiter.api.Test;
@@ -8,6 +9,9 @@ import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.Mockito;
 import org.springframework.boot.test.context.SpringBootTest;
+import reactor.core.publisher.Flux;
+
+import java.util.List;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 
@@ -24,6 +28,9 @@ public class RouteServiceTest {
     @Mock
     private RouteRepository routeRepository;
 
+    @Mock
+    private ReactiveRouteRepository reactiveRouteRepository;
+
     /**
      * Verify that routes can be retrieved from the database correctly.
      */
@@ -39,4 +46,18 @@ public class RouteServiceTest {
         assertEquals("1", routeService.getRoutes().get(0).getId());
         assertEquals("Mustermann Bus GmbH", routeService.getRoutes().get(0).getAgency());
     }
+
+    /**
+     * Verify that routes can be retrieved from the database without blocking.
+     */
+    @Test
+    public void testReactiveService ( ) {
+        Mockito.when(reactiveRouteRepository.findAll()).thenReturn(Flux.just(RouteModel.builder()
+                .routeNumber("1A")
+                .id("1")
+                .build()));
+        List<RouteModel> routeModels = routeService.getRoutesReactive().collectList().block();
+        assertEquals(1, routeModels.size());
+        assertEquals("1A", routeModels.get(0).getRouteNumber());
+    }
 }
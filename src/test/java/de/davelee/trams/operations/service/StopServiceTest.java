@@ -1,6 +1,7 @@
 package de.davelee.trams.operations.service;
 
 import de.davelee.trams.operations.model.StopModel;
+import de.davelee.trams.operations.repository.ReactiveStopRepository;
 import de.davelee.trams.operations.repository.StopRepository;
 import org.assertj.core.util.Lists;
 import org.junit.jupiter.api.Test;
@@ -8,6 +9,9 @@ import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.Mockito;
 import org.springframework.boot.test.context.SpringBootTest;
+import reactor.core.publisher.Flux;
+
+import java.util.List;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 
@@ -24,6 +28,9 @@ public class StopServiceTest {
     @Mock
     private StopRepository stopRepository;
 
+    @Mock
+    private ReactiveStopRepository reactiveStopRepository;
+
     /**
      * Verify that stops can be retrieved from the database correctly.
      */
@@ -41,4 +48,18 @@ public class StopServiceTest {
         assertEquals(50.03, stopService.getStops().get(0).getLatitude());
         assertEquals(123.04, stopService.getStops().get(0).getLongitude());
     }
+
+    /**
+     * Verify that stops can be retrieved from the database without blocking.
+     */
+    @Test
+    public void testReactiveService ( ) {
+        Mockito.when(reactiveStopRepository.findAll()).thenReturn(Flux.just(StopModel.builder()
+                .id("123")
+                .name("Greenfield")
+                .build()));
+        List<StopModel> stopModels = stopService.getStopsReactive().collectList().block();
+        assertEquals(1, stopModels.size());
+        assertEquals("Greenfield", stopModels.get(0).getName());
+    }
 }
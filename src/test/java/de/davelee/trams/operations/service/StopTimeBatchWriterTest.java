@@ -0,0 +1,57 @@
+package de.davelee.trams.operations.service;
+
+import de.davelee.trams.operations.model.StopTimeModel;
+import de.davelee.trams.operations.repository.StopTimeRepository;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+import java.time.LocalTime;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.argThat;
+
+/**
+ * This class tests the StopTimeBatchWriter class and ensures that stop times are written in batches. Mocks are used
+ * for the database layer.
+ * @author Dave Lee
+ */
+public class StopTimeBatchWriterTest {
+
+    /**
+     * Verify that stop times are written in batches of the configured size and the last batch is written on flush.
+     */
+    @Test
+    public void testBatchWriter ( ) {
+        StopTimeRepository stopTimeRepository = Mockito.mock(StopTimeRepository.class);
+        StopTimeBatchWriter stopTimeBatchWriter = new StopTimeBatchWriter(stopTimeRepository, 3);
+        for ( int i = 0; i < 7; i++ ) {
+            stopTimeBatchWriter.add(StopTimeModel.builder().id(i).stopName("Lakeside").departureTime(LocalTime.of(10, i)).build());
+        }
+        //Two complete batches should already have been written.
+        assertEquals(6, stopTimeBatchWriter.getRowsWritten());
+        assertEquals(2, stopTimeBatchWriter.getBatchesWritten());
+        Mockito.verify(stopTimeRepository, Mockito.times(2)).bulkInsert(argThat(batch -> batch.size() == 3));
+        //Flush should write the remaining stop time.
+        stopTimeBatchWriter.flush();
+        stopTimeBatchWriter.flush();
+        assertEquals(7, stopTimeBatchWriter.getRowsWritten());
+        assertEquals(3, stopTimeBatchWriter.getBatchesWritten());
+        Mockito.verify(stopTimeRepository).bulkInsert(argThat(batch -> batch.size() == 1));
+        assertTrue(stopTimeBatchWriter.getRowsPerSecond() > 0);
+    }
+
+    /**
+     * Verify that the default batch size is used if an invalid batch size is supplied.
+     */
+    @Test
+    public void testInvalidBatchSize ( ) {
+        StopTimeRepository stopTimeRepository = Mockito.mock(StopTimeRepository.class);
+        StopTimeBatchWriter stopTimeBatchWriter = new StopTimeBatchWriter(stopTimeRepository, 0);
+        for ( int i = 0; i < StopTimeBatchWriter.DEFAULT_BATCH_SIZE; i++ ) {
+            stopTimeBatchWriter.add(StopTimeModel.builder().id(i).build());
+        }
+        assertEquals(1, stopTimeBatchWriter.getBatchesWritten());
+    }
+
+}
@@ -0,0 +1,81 @@
+package de.davelee.trams.operations.service;
+
+import de.davelee.trams.operations.model.StopTimeModel;
+import org.bson.Document;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.test.util.ReflectionTestUtils;
+import reactor.core.publisher.Mono;
+
+import java.time.DayOfWeek;
+import java.time.LocalTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+/**
+ * This class tests the StopTimeEncodingCallback and ReactiveStopTimeEncodingCallback classes and ensures that stop times
+ * are converted to the compact form before they are written and back again after they have been read.
+ * @author Dave Lee
+ */
+public class StopTimeEncodingCallbackTest {
+
+    /**
+     * Ensure that names are replaced by their ids, times by minutes and operating days by a mask before a stop time is written.
+     */
+    @Test
+    public void testOnBeforeConvert ( ) {
+        StopTimeNameService stopTimeNameService = Mockito.mock(StopTimeNameService.class);
+        Mockito.when(stopTimeNameService.getLoadedId("Lakeside")).thenReturn(1);
+        Mockito.when(stopTimeNameService.getLoadedId("405A")).thenReturn(2);
+        Mockito.when(stopTimeNameService.getLoadedId("Greenfield")).thenReturn(3);
+        StopTimeEncodingCallback stopTimeEncodingCallback = new StopTimeEncodingCallback();
+        ReflectionTestUtils.setField(stopTimeEncodingCallback, "stopTimeNameService", stopTimeNameService);
+        StopTimeModel stopTimeModel = stopTimeEncodingCallback.onBeforeConvert(StopTimeModel.builder()
+                .stopName("Lakeside")
+                .routeNumber("405A")
+                .destination("Greenfield")
+                .departureTime(LocalTime.of(8, 15))
+                .operatingDays(List.of(DayOfWeek.MONDAY, DayOfWeek.SATURDAY))
+                .build(), "stopTimeModel");
+        assertEquals(1, stopTimeModel.getStopId());
+        assertEquals(2, stopTimeModel.getRouteId());
+        assertEquals(3, stopTimeModel.getDestinationId());
+        assertEquals(495, stopTimeModel.getDepartureMinutes());
+        assertNull(stopTimeModel.getArrivalMinutes());
+        assertEquals(0b0100001, stopTimeModel.getOperatingDayMask());
+    }
+
+    /**
+     * Ensure that names, times and operating days are restored after a stop time has been read with both drivers.
+     */
+    @Test
+    public void testOnAfterConvert ( ) {
+        StopTimeNameService stopTimeNameService = Mockito.mock(StopTimeNameService.class);
+        Mockito.when(stopTimeNameService.getName(1)).thenReturn("Lakeside");
+        Mockito.when(stopTimeNameService.getName(2)).thenReturn("405A");
+        StopTimeEncodingCallback stopTimeEncodingCallback = new StopTimeEncodingCallback();
+        ReflectionTestUtils.setField(stopTimeEncodingCallback, "stopTimeNameService", stopTimeNameService);
+        StopTimeModel stopTimeModel = stopTimeEncodingCallback.onAfterConvert(StopTimeModel.builder()
+                .stopId(1).routeId(2).arrivalMinutes(1439).operatingDayMask(0b1100000).build(), new Document(), "stopTimeModel");
+        assertEquals("Lakeside", stopTimeModel.getStopName());
+        assertEquals("405A", stopTimeModel.getRouteNumber());
+        assertNull(stopTimeModel.getDestination());
+        assertEquals(LocalTime.of(23, 59), stopTimeModel.getArrivalTime());
+        assertNull(stopTimeModel.getDepartureTime());
+        assertEquals(List.of(DayOfWeek.SATURDAY, DayOfWeek.SUNDAY), stopTimeModel.getOperatingDays());
+        //The reactive callback returns the same stop time whether or not the names have been loaded.
+        ReactiveStopTimeEncodingCallback reactiveStopTimeEncodingCallback = new ReactiveStopTimeEncodingCallback();
+        ReflectionTestUtils.setField(reactiveStopTimeEncodingCallback, "stopTimeEncodingCallback", stopTimeEncodingCallback);
+        ReflectionTestUtils.setField(reactiveStopTimeEncodingCallback, "stopTimeNameService", stopTimeNameService);
+        for ( boolean loaded : new boolean[] { false, true } ) {
+            Mockito.when(stopTimeNameService.isLoaded()).thenReturn(loaded);
+            StopTimeModel reactiveStopTimeModel = Mono.from(reactiveStopTimeEncodingCallback.onAfterConvert(StopTimeModel.builder()
+                    .stopId(1).operatingDayMask(1).build(), new Document(), "stopTimeModel")).block();
+            assertEquals("Lakeside", reactiveStopTimeModel.getStopName());
+            assertEquals(List.of(DayOfWeek.MONDAY), reactiveStopTimeModel.getOperatingDays());
+        }
+    }
+
+}
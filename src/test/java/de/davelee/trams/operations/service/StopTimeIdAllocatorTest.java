@@ -0,0 +1,36 @@
+package de.davelee.trams.operations.service;
+
+import de.davelee.trams.operations.repository.StopTimeRepository;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * This class tests the StopTimeIdAllocator class and ensures that ids are handed out from blocks which are reserved
+ * from the sequence. Mocks are used for the database layer.
+ * @author Dave Lee
+ */
+public class StopTimeIdAllocatorTest {
+
+    /**
+     * Verify that a new block is only reserved once all ids of the current block have been handed out.
+     */
+    @Test
+    public void testAllocator ( ) {
+        StopTimeRepository stopTimeRepository = Mockito.mock(StopTimeRepository.class);
+        //Another import has reserved the ids between the two blocks in the meantime.
+        Mockito.when(stopTimeRepository.reserveIds(2)).thenReturn(100).thenReturn(110);
+        StopTimeIdAllocator stopTimeIdAllocator = new StopTimeIdAllocator(stopTimeRepository, 2);
+        assertEquals(100, stopTimeIdAllocator.nextId());
+        assertEquals(101, stopTimeIdAllocator.nextId());
+        Mockito.verify(stopTimeRepository).reserveIds(2);
+        assertEquals(110, stopTimeIdAllocator.nextId());
+        Mockito.verify(stopTimeRepository, Mockito.times(2)).reserveIds(2);
+        assertEquals(3, stopTimeIdAllocator.getNumberOfIds());
+        //The default block size is used if an invalid block size is supplied.
+        new StopTimeIdAllocator(stopTimeRepository, 0).nextId();
+        Mockito.verify(stopTimeRepository).reserveIds(StopTimeBatchWriter.DEFAULT_BATCH_SIZE);
+    }
+
+}
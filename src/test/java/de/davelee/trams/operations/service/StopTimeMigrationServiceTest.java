@@ -0,0 +1,131 @@
+package de.davelee.trams.operations.service;
+
+import de.davelee.trams.operations.model.StopTimeModel;
+import org.bson.Document;
+import org.junit.jupiter.api.Test;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.index.IndexInfo;
+import org.springframework.data.mongodb.core.index.IndexOperations;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.data.util.CloseableIterator;
+
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.Collections;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * This class tests the StopTimeMigrationService class and ensures that stop times are rewritten in the compact form.
+ * Mocks are used for the database layer.
+ * @author Dave Lee
+ */
+@SpringBootTest
+public class StopTimeMigrationServiceTest {
+
+    @InjectMocks
+    private StopTimeMigrationService stopTimeMigrationService;
+
+    @Mock
+    private MongoTemplate mongoTemplate;
+
+    @Mock
+    private StopTimeNameService stopTimeNameService;
+
+    @Mock
+    private BulkOperations bulkOperations;
+
+    @Mock
+    private IndexOperations indexOperations;
+
+    /**
+     * Ensure that names, operating days and times are converted to the compact form and that the previous indexes are dropped.
+     */
+    @Test
+    public void testMigrate ( ) {
+        //Test data.
+        Document stopTime = new Document("_id", 1)
+                .append("stopName", "Lakeside")
+                .append("routeNumber", "405A")
+                .append("destination", "Greenfield")
+                .append("operatingDays", List.of("MONDAY", "SUNDAY"))
+                .append("departureTime", Date.from(LocalDateTime.of(2021, 4, 25, 8, 15).atZone(ZoneId.systemDefault()).toInstant()));
+        Mockito.when(mongoTemplate.getCollectionName(StopTimeModel.class)).thenReturn("stopTimeModel");
+        Mockito.when(mongoTemplate.stream(Mockito.any(Query.class), Mockito.eq(Document.class), Mockito.eq("stopTimeModel")))
+                .thenReturn(closeableIterator(List.of(stopTime)));
+        Mockito.when(mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, "stopTimeModel")).thenReturn(bulkOperations);
+        Mockito.when(mongoTemplate.indexOps("stopTimeModel")).thenReturn(indexOperations);
+        Mockito.when(indexOperations.getIndexInfo()).thenReturn(List.of(
+                new IndexInfo(Collections.emptyList(), "stopName_operatingDays_departureTime", false, false, null),
+                new IndexInfo(Collections.emptyList(), "stopId_departureTime_operatingDayMask", false, false, null)));
+        Mockito.when(mongoTemplate.executeCommand(Mockito.any(Document.class))).thenReturn(new Document("count", 1)
+                .append("avgObjSize", 100).append("totalIndexSize", 4096));
+        Mockito.when(stopTimeNameService.getOrCreateId("Lakeside")).thenReturn(1);
+        Mockito.when(stopTimeNameService.getOrCreateId("405A")).thenReturn(2);
+        Mockito.when(stopTimeNameService.getOrCreateId("Greenfield")).thenReturn(3);
+        //Now do actual test.
+        assertEquals(1, stopTimeMigrationService.migrate());
+        Mockito.verify(bulkOperations).updateOne(Mockito.any(Query.class), Mockito.argThat((Update update) -> {
+            Document set = (Document) update.getUpdateObject().get("$set");
+            Document unset = (Document) update.getUpdateObject().get("$unset");
+            return set.get("stopId").equals(1) && set.get("routeId").equals(2) && set.get("destinationId").equals(3)
+                    && set.get("operatingDayMask").equals(65) && set.get("departureTime").equals(495)
+                    && !set.containsKey("arrivalTime") && unset.containsKey("stopName") && unset.containsKey("operatingDays");
+        }));
+        Mockito.verify(bulkOperations).execute();
+        //The storage statistics are retrieved before and after the migration.
+        Mockito.verify(mongoTemplate, Mockito.times(2)).executeCommand(Mockito.any(Document.class));
+        Mockito.verify(indexOperations).dropIndex("stopName_operatingDays_departureTime");
+        Mockito.verify(indexOperations, Mockito.never()).dropIndex("stopId_departureTime_operatingDayMask");
+    }
+
+    /**
+     * Ensure that nothing is written if all stop times are already stored in the compact form.
+     */
+    @Test
+    public void testMigrateWithoutPreviousStopTimes ( ) {
+        Mockito.when(mongoTemplate.getCollectionName(StopTimeModel.class)).thenReturn("stopTimeModel");
+        Mockito.when(mongoTemplate.stream(Mockito.any(Query.class), Mockito.eq(Document.class), Mockito.eq("stopTimeModel")))
+                .thenReturn(closeableIterator(List.of()));
+        Mockito.when(mongoTemplate.indexOps("stopTimeModel")).thenReturn(indexOperations);
+        assertEquals(0, stopTimeMigrationService.migrate());
+        Mockito.verify(mongoTemplate, Mockito.never()).bulkOps(Mockito.any(BulkOperations.BulkMode.class), Mockito.anyString());
+        Mockito.verify(mongoTemplate, Mockito.never()).executeCommand(Mockito.any(Document.class));
+    }
+
+    /**
+     * This is a private helper method which returns the supplied objects as a closeable iterator in the same way as
+     * the mongo template streams query results.
+     * @param objects a <code>List</code> of objects to return.
+     * @param <T> the type of the objects.
+     * @return a <code>CloseableIterator</code> returning the supplied objects.
+     */
+    private <T> CloseableIterator<T> closeableIterator ( final List<T> objects ) {
+        final Iterator<T> iterator = objects.iterator();
+        return new CloseableIterator<>() {
+            @Override
+            public boolean hasNext ( ) {
+                return iterator.hasNext();
+            }
+
+            @Override
+            public T next ( ) {
+                return iterator.next();
+            }
+
+            @Override
+            public void close ( ) {
+            }
+        };
+    }
+
+}
@@ -0,0 +1,145 @@
+package de.davelee.trams.operations.service;
+
+import de.davelee.trams.operations.model.StopTimeNameModel;
+import de.davelee.trams.operations.repository.StopTimeNameRepository;
+import org.junit.jupiter.api.Test;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * This class tests the StopTimeNameService class and ensures that names are assigned short ids which are held in memory.
+ * Mocks are used for the database layer.
+ * @author Dave Lee
+ */
+@SpringBootTest
+public class StopTimeNameServiceTest {
+
+    @InjectMocks
+    private StopTimeNameService stopTimeNameService;
+
+    @Mock
+    private StopTimeNameRepository stopTimeNameRepository;
+
+    /**
+     * Ensure that stored names are loaded once and that new names receive the next free id.
+     */
+    @Test
+    public void testGetOrCreateId ( ) {
+        //Test data.
+        Mockito.when(stopTimeNameRepository.findAll()).thenReturn(List.of(StopTimeNameModel.builder().id(1).name("Greenfield").build(),
+                StopTimeNameModel.builder().id(2).name("405A").build()));
+        Mockito.when(stopTimeNameRepository.insert(Mockito.any(StopTimeNameModel.class))).thenAnswer(invocation -> invocation.getArgument(0));
+        //Now do actual test.
+        assertFalse(stopTimeNameService.isLoaded());
+        assertEquals(1, stopTimeNameService.getOrCreateId("Greenfield"));
+        assertTrue(stopTimeNameService.isLoaded());
+        assertEquals(3, stopTimeNameService.getOrCreateId("Lakeside"));
+        assertEquals(3, stopTimeNameService.getOrCreateId("Lakeside"));
+        assertEquals(StopTimeNameService.NO_NAME_ID, stopTimeNameService.getOrCreateId(null));
+        assertEquals("Lakeside", stopTimeNameService.getName(3));
+        assertEquals("405A", stopTimeNameService.getName(2));
+        assertNull(stopTimeNameService.getName(StopTimeNameService.NO_NAME_ID));
+        Mockito.verify(stopTimeNameRepository, Mockito.times(1)).findAll();
+        Mockito.verify(stopTimeNameRepository, Mockito.times(1)).insert(Mockito.any(StopTimeNameModel.class));
+    }
+
+    /**
+     * Ensure that names which are not known are not stored by queries and that names stored by another instance are found.
+     */
+    @Test
+    public void testGetId ( ) {
+        //Test data.
+        Mockito.when(stopTimeNameRepository.findByName("Lakeside")).thenReturn(StopTimeNameModel.builder().id(5).name("Lakeside").build());
+        Mockito.when(stopTimeNameRepository.findById(6)).thenReturn(Optional.of(StopTimeNameModel.builder().id(6).name("Greenfield").build()));
+        //Now do actual test.
+        assertEquals(StopTimeNameService.UNKNOWN_NAME_ID, stopTimeNameService.getId("Nowhere"));
+        assertEquals(5, stopTimeNameService.getId("Lakeside"));
+        assertEquals(List.of(5), stopTimeNameService.getIds(List.of("Nowhere", "Lakeside")));
+        assertEquals("Greenfield", stopTimeNameService.getName(6));
+        assertNull(stopTimeNameService.getName(7));
+        Mockito.verify(stopTimeNameRepository, Mockito.never()).insert(Mockito.any(StopTimeNameModel.class));
+    }
+
+    /**
+     * Ensure that names and ids which were not found are not queried again until the misses expire or the names are reloaded.
+     */
+    @Test
+    public void testMisses ( ) {
+        //Test data.
+        ReflectionTestUtils.setField(stopTimeNameService, "missExpiryInSeconds", 60L);
+        //Test case 1: a name and an id which were not found are only queried once.
+        assertEquals(StopTimeNameService.UNKNOWN_NAME_ID, stopTimeNameService.getId("Nowhere"));
+        assertEquals(List.of(), stopTimeNameService.getIds(List.of("Nowhere", "Nowhere")));
+        assertNull(stopTimeNameService.getName(7));
+        assertNull(stopTimeNameService.getName(7));
+        Mockito.verify(stopTimeNameRepository, Mockito.times(1)).findByName("Nowhere");
+        Mockito.verify(stopTimeNameRepository, Mockito.times(1)).findById(7);
+        //Test case 2: the names are queried again once they have been reloaded.
+        Mockito.when(stopTimeNameRepository.findAll()).thenReturn(List.of(StopTimeNameModel.builder().id(7).name("Lakeside").build()));
+        stopTimeNameService.load();
+        assertEquals("Lakeside", stopTimeNameService.getName(7));
+        assertEquals(StopTimeNameService.UNKNOWN_NAME_ID, stopTimeNameService.getId("Nowhere"));
+        Mockito.verify(stopTimeNameRepository, Mockito.times(2)).findByName("Nowhere");
+        //Test case 3: a name which is created after a miss is found immediately.
+        Mockito.when(stopTimeNameRepository.insert(Mockito.any(StopTimeNameModel.class))).thenAnswer(invocation -> invocation.getArgument(0));
+        assertEquals(8, stopTimeNameService.getOrCreateId("Nowhere"));
+        assertEquals(8, stopTimeNameService.getId("Nowhere"));
+        //Test case 4: misses expire immediately if no expiry is configured.
+        ReflectionTestUtils.setField(stopTimeNameService, "missExpiryInSeconds", 0L);
+        assertEquals(StopTimeNameService.UNKNOWN_NAME_ID, stopTimeNameService.getId("Elsewhere"));
+        assertEquals(StopTimeNameService.UNKNOWN_NAME_ID, stopTimeNameService.getId("Elsewhere"));
+        Mockito.verify(stopTimeNameRepository, Mockito.times(2)).findByName("Elsewhere");
+    }
+
+    /**
+     * Ensure that the ids of the names of a batch are created once before the batch is written and are then read from memory.
+     */
+    @Test
+    public void testCreateIds ( ) {
+        //Test data.
+        Mockito.when(stopTimeNameRepository.findAll()).thenReturn(List.of(StopTimeNameModel.builder().id(1).name("Greenfield").build()));
+        Mockito.when(stopTimeNameRepository.insert(Mockito.any(StopTimeNameModel.class))).thenAnswer(invocation -> invocation.getArgument(0));
+        //Now do actual test.
+        stopTimeNameService.createIds(Arrays.asList("Greenfield", "Lakeside", null, "Lakeside", "405A", "Greenfield"));
+        assertEquals(1, stopTimeNameService.getLoadedId("Greenfield"));
+        assertEquals(2, stopTimeNameService.getLoadedId("Lakeside"));
+        assertEquals(3, stopTimeNameService.getLoadedId("405A"));
+        assertEquals(StopTimeNameService.NO_NAME_ID, stopTimeNameService.getLoadedId(null));
+        assertThrows(IllegalStateException.class, () -> stopTimeNameService.getLoadedId("Nowhere"));
+        Mockito.verify(stopTimeNameRepository, Mockito.times(2)).insert(Mockito.any(StopTimeNameModel.class));
+    }
+
+    /**
+     * Ensure that a name or id which was stored by another instance at the same time is handled.
+     */
+    @Test
+    public void testConcurrentCreation ( ) {
+        //Test data.
+        Mockito.when(stopTimeNameRepository.insert(Mockito.any(StopTimeNameModel.class)))
+                .thenThrow(new DuplicateKeyException("id"))
+                .thenAnswer(invocation -> invocation.getArgument(0));
+        //Now do actual test: the first id is already taken so the next id is used.
+        assertEquals(2, stopTimeNameService.getOrCreateId("Lakeside"));
+        //The name has been stored by another instance in the meantime.
+        Mockito.when(stopTimeNameRepository.insert(Mockito.any(StopTimeNameModel.class))).thenThrow(new DuplicateKeyException("name"));
+        Mockito.when(stopTimeNameRepository.findByName("Greenfield"))
+                .thenReturn(null)
+                .thenReturn(StopTimeNameModel.builder().id(8).name("Greenfield").build());
+        assertEquals(8, stopTimeNameService.getOrCreateId("Greenfield"));
+    }
+
+}
@@ -1,21 +1,39 @@
 package de.davelee.trams.operations.service;
 
 import de.davelee.trams.operations.model.StopTimeModel;
+import de.davelee.trams.operations.repository.ReactiveStopTimeRepository;
 import de.davelee.trams.operations.repository.StopTimeRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.assertj.core.util.Lists;
 import org.junit.jupiter.api.Test;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.Mockito;
+import org.mockito.Spy;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.test.util.ReflectionTestUtils;
+import reactor.core.publisher.Flux;
 
 import java.time.DayOfWeek;
 import java.time.LocalDate;
 import java.time.LocalTime;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
 import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
 
 /**
  * This class tests the StopTimeService class and ensures that it works successfully. Mocks are used for the database layer.
@@ -30,13 +48,25 @@ public class StopTimeServiceTest {
     @Mock
     private StopTimeRepository stopTimeRepository;
 
+    @Mock
+    private TripPatternService tripPatternService;
+
+    @Mock
+    private ReactiveStopTimeRepository reactiveStopTimeRepository;
+
+    @Mock
+    private TimetableIndexService timetableIndexService;
+
+    @Spy
+    private DepartureCache departureCache = new DepartureCache(0, 0, new SimpleMeterRegistry());
+
     /**
      * Verify that stop times can be retrieved from the database correctly.
      */
     @Test
     public void testService ( ) {
         //Test data
-        Mockito.when(stopTimeRepository.findByStopName("Lakeside")).thenReturn(Lists.newArrayList(
+        mockStopTimes(Lists.newArrayList(
                 createStopTime(LocalTime.of(16,11), LocalTime.of(16,12), "101", 1),
                 createStopTime(LocalTime.of(16,41), LocalTime.of(16,42), "102", 2),
                 createStopTime(LocalTime.of(17,21), LocalTime.of(17,22), "103", 3),
@@ -93,6 +123,95 @@ public class StopTimeServiceTest {
         assertEquals(8, stopTimeDepartureDateList.size());
         assertEquals(8, stopTimeDepartureDateList.get(0).getId());
         assertEquals(7, stopTimeDepartureDateList.get(stopTimeDepartureDateList.size()-1).getId());
+        //Test case: the first and last day of the validity are included.
+        assertEquals(8, stopTimeService.getDeparturesByDate("Lakeside", "2020-12-12").size());
+        assertEquals(8, stopTimeService.getDeparturesByDate("Lakeside", "2021-12-11").size());
+        assertEquals(0, stopTimeService.getDeparturesByDate("Lakeside", "2021-12-12").size());
+        //Test case: stream all departures for this date.
+        assertEquals(stopTimeDepartureDateList, stopTimeService.streamDeparturesByDate("Lakeside", "2021-04-10")
+                .collect(Collectors.toList()));
+    }
+
+    /**
+     * Verify that the next departures and arrivals are retrieved without blocking in the same way as with blocking.
+     */
+    @Test
+    public void testTimesReactive ( ) {
+        //Test data
+        List<StopTimeModel> stopTimeModels = Lists.newArrayList(
+                createStopTime(LocalTime.of(16,11), LocalTime.of(16,12), "101", 1),
+                createStopTime(LocalTime.of(16,11), LocalTime.of(16,12), "101", 2),
+                createStopTime(LocalTime.of(16,41), LocalTime.of(16,42), "102", 3),
+                createStopTime(LocalTime.of(23,21), LocalTime.of(23,22), "103", 4),
+                createStopTime(LocalTime.of(0,21), LocalTime.of(0,22), "104", 5));
+        Mockito.when(reactiveStopTimeRepository.findDeparturesByStopNameAndDateAndTimeRange(anyString(), any(), any(), any(), any(), any()))
+                .thenAnswer(invocation -> Flux.fromIterable(filterStopTimes(stopTimeModels, StopTimeModel::getDepartureTime,
+                        invocation.getArgument(1), invocation.getArgument(3), invocation.getArgument(4), invocation.getArgument(5))));
+        Mockito.when(reactiveStopTimeRepository.findArrivalsByStopNameAndDateAndTimeRange(anyString(), any(), any(), any(), any(), any()))
+                .thenAnswer(invocation -> Flux.fromIterable(filterStopTimes(stopTimeModels, StopTimeModel::getArrivalTime,
+                        invocation.getArgument(1), invocation.getArgument(3), invocation.getArgument(4), invocation.getArgument(5))));
+        //Test case 1: duplicates are removed during the day.
+        List<StopTimeModel> departures = stopTimeService.getTimesReactive("Lakeside", "16:00", "Departure").block();
+        assertEquals(List.of(1, 3), departures.stream().map(StopTimeModel::getId).collect(Collectors.toList()));
+        //Test case 2: the arrivals of the next day are added after 22:00.
+        List<StopTimeModel> arrivals = stopTimeService.getTimesReactive("Lakeside", "23:00", "Arrival").block();
+        assertEquals(List.of(4, 5), arrivals.stream().map(StopTimeModel::getId).collect(Collectors.toList()));
+        Mockito.verifyNoInteractions(stopTimeRepository);
+    }
+
+    /**
+     * Verify that the departures of several stops are retrieved with one query per day.
+     */
+    @Test
+    public void testTimesForStops ( ) {
+        //Test data
+        List<StopTimeModel> stopTimeModels = Lists.newArrayList(
+                createStopTime(LocalTime.of(16,11), LocalTime.of(16,12), "101", 1),
+                createStopTime(LocalTime.of(16,41), LocalTime.of(16,42), "102", 2),
+                createStopTime(LocalTime.of(23,21), LocalTime.of(23,22), "103", 3),
+                createStopTime(LocalTime.of(23,39), LocalTime.of(23,40), "201", 4),
+                createStopTime(LocalTime.of(0,21), LocalTime.of(0,22), "202", 5),
+                createStopTime(LocalTime.of(23,39), LocalTime.of(23,40), "203", 6));
+        stopTimeModels.subList(3, 6).forEach(stopTimeModel -> stopTimeModel.setStopName("Greenfield"));
+        Mockito.when(stopTimeRepository.findDeparturesByStopNamesAndDateAndTimeRange(any(), any(), any(), any(), any(), any()))
+                .thenAnswer(invocation -> filterStopTimes(stopTimeModels, invocation.getArgument(0), invocation.getArgument(2),
+                        invocation.getArgument(3), invocation.getArgument(4)));
+        ReflectionTestUtils.setField(stopTimeService, "maximumStopsPerBatch", 2);
+        //Test case 1: duplicate stops are only returned once and stops without departures are empty.
+        Map<String, List<StopTimeModel>> timesByStop = stopTimeService.getTimesForStops(List.of("Lakeside", "Greenfield", "Lakeside"),
+                "16:00", "Departure", 3, 120);
+        assertEquals(List.of("Lakeside", "Greenfield"), new ArrayList<>(timesByStop.keySet()));
+        assertEquals(List.of(1, 2), timesByStop.get("Lakeside").stream().map(StopTimeModel::getId).collect(Collectors.toList()));
+        assertTrue(timesByStop.get("Greenfield").isEmpty());
+        Mockito.verify(stopTimeRepository, Mockito.times(1)).findDeparturesByStopNamesAndDateAndTimeRange(any(), any(), any(), any(), any(), any());
+        //Test case 2: the window continues after midnight and duplicates are removed.
+        timesByStop = stopTimeService.getTimesForStops(List.of("Lakeside", "Greenfield"), "23:00", "Departure", 2, 120);
+        assertEquals(List.of(3), timesByStop.get("Lakeside").stream().map(StopTimeModel::getId).collect(Collectors.toList()));
+        assertEquals(List.of(4, 5), timesByStop.get("Greenfield").stream().map(StopTimeModel::getId).collect(Collectors.toList()));
+        Mockito.verify(stopTimeRepository, Mockito.times(3)).findDeparturesByStopNamesAndDateAndTimeRange(any(), any(), any(), any(), any(), any());
+        //Test case 3: invalid parameters are rejected.
+        assertThrows(IllegalArgumentException.class, () -> stopTimeService.getTimesForStops(List.of(), "16:00", "Departure", 3, 120));
+        assertThrows(IllegalArgumentException.class, () -> stopTimeService.getTimesForStops(List.of("Lakeside", "Greenfield", "Airport"),
+                "16:00", "Departure", 3, 120));
+        assertThrows(IllegalArgumentException.class, () -> stopTimeService.getTimesForStops(List.of("Lakeside"), "16:00", "Journey", 3, 120));
+        assertThrows(IllegalArgumentException.class, () -> stopTimeService.getTimesForStops(List.of("Lakeside"), "16:00", "Departure", 0, 120));
+        assertThrows(IllegalArgumentException.class, () -> stopTimeService.getTimesForStops(List.of("Lakeside"), "16:00", "Departure", 3, 1441));
+    }
+
+    /**
+     * Verify that all departures of a date are retrieved from the timetable index if it has been loaded.
+     */
+    @Test
+    public void testDeparturesByDateFromIndex ( ) {
+        //Test data
+        List<StopTimeModel> stopTimeModels = Lists.newArrayList(createStopTime(LocalTime.of(10,11), LocalTime.of(10,12), "101", 1));
+        Mockito.when(timetableIndexService.isLoaded()).thenReturn(true);
+        Mockito.when(timetableIndexService.findTimes("Lakeside", "Departure", LocalDate.of(2021,4,10),
+                LocalTime.MIDNIGHT, LocalTime.of(23,59), Integer.MAX_VALUE)).thenReturn(stopTimeModels);
+        //Now do actual test.
+        assertEquals(stopTimeModels, stopTimeService.getDeparturesByDate("Lakeside", "2021-04-10"));
+        assertEquals(stopTimeModels, stopTimeService.streamDeparturesByDate("Lakeside", "2021-04-10").collect(Collectors.toList()));
+        Mockito.verify(stopTimeRepository, Mockito.never()).findDeparturesByStopNameAndDate(anyString(), any(), any(), any());
     }
 
     /**
@@ -101,7 +220,7 @@ public class StopTimeServiceTest {
     @Test
     public void testStopTimesAfter2200 ( ) {
         //Test data
-        Mockito.when(stopTimeRepository.findByStopName("Lakeside")).thenReturn(Lists.newArrayList(
+        mockStopTimes(Lists.newArrayList(
                 createStopTime(LocalTime.of(22,11), LocalTime.of(22,12), "106", 1),
                 createStopTime(LocalTime.of(23,21), LocalTime.of(23,22), "107", 2),
                 createStopTime(LocalTime.of(23,58), LocalTime.of(23,59), "108", 3)
@@ -120,7 +239,7 @@ public class StopTimeServiceTest {
     @Test
     public void testStopTimesAfterDuplicate ( ) {
         //Test data
-        Mockito.when(stopTimeRepository.findByStopName("Lakeside")).thenReturn(Lists.newArrayList(
+        mockStopTimes(Lists.newArrayList(
                 createStopTime(LocalTime.of(10,21), LocalTime.of(10,22), "107", 2),
                 createStopTime(LocalTime.of(10,21), LocalTime.of(10,22), "107", 2),
                 createStopTime(LocalTime.of(10,58), LocalTime.of(10,59), "108", 3)
@@ -133,6 +252,199 @@ public class StopTimeServiceTest {
         assertEquals(3, stopTimeTestList1.get(1).getId());
     }
 
+    /**
+     * Verify that 3 distinct departures are returned from a busy stop with more duplicates than are first retrieved and
+     * that duplicates are also removed after 22:00 with and without blocking.
+     */
+    @Test
+    public void testStopTimesAfterManyDuplicates ( ) {
+        //Test data: 25 copies of the same departure followed by 2 further departures.
+        List<StopTimeModel> stopTimeModels = new ArrayList<>();
+        for ( int i = 0; i < 25; i++ ) {
+            stopTimeModels.add(createStopTime(LocalTime.of(10,21), LocalTime.of(10,22), "107", 1));
+            stopTimeModels.add(createStopTime(LocalTime.of(23,21), LocalTime.of(23,22), "207", 4));
+        }
+        stopTimeModels.add(createStopTime(LocalTime.of(10,30), LocalTime.of(10,31), "108", 2));
+        stopTimeModels.add(createStopTime(LocalTime.of(10,40), LocalTime.of(10,41), "109", 3));
+        stopTimeModels.add(createStopTime(LocalTime.of(0,21), LocalTime.of(0,22), "208", 5));
+        mockStopTimes(stopTimeModels);
+        Mockito.when(reactiveStopTimeRepository.findArrivalsByStopNameAndDateAndTimeRange(anyString(), any(), any(), any(), any(), any()))
+                .thenAnswer(invocation -> Flux.fromIterable(filterStopTimes(stopTimeModels, StopTimeModel::getArrivalTime,
+                        invocation.getArgument(1), invocation.getArgument(3), invocation.getArgument(4), invocation.getArgument(5))));
+        //Test case 1: more stop times are retrieved until 3 distinct departures have been found.
+        assertEquals(List.of(1, 2, 3), stopTimeService.getDepartures("Lakeside", "10:01").stream()
+                .map(StopTimeModel::getId).collect(Collectors.toList()));
+        assertEquals(List.of(1, 2, 3), stopTimeService.getTimesReactive("Lakeside", "10:01", "Arrival").block().stream()
+                .map(StopTimeModel::getId).collect(Collectors.toList()));
+        //Test case 2: duplicates are removed before the stop times of the next day are added.
+        assertEquals(List.of(4, 5), stopTimeService.getDepartures("Lakeside", "23:00").stream()
+                .map(StopTimeModel::getId).collect(Collectors.toList()));
+        assertEquals(List.of(4, 5), stopTimeService.getTimesReactive("Lakeside", "23:00", "Arrival").block().stream()
+                .map(StopTimeModel::getId).collect(Collectors.toList()));
+    }
+
+    /**
+     * Verify that duplicates are removed from a large synthetic stop where several routes share the same destinations
+     * and that the supplied stop times are not modified. The performance of the removal is measured by the benchmarks.
+     */
+    @Test
+    public void testRemoveDuplicatesLargeStop ( ) {
+        //Test data: 5 routes serving 2 destinations every minute for 24 hours which are each included 20 times.
+        List<StopTimeModel> stopTimeModels = new ArrayList<>();
+        for ( int minute = 0; minute < 24 * 60; minute++ ) {
+            for ( int copy = 0; copy < 20; copy++ ) {
+                for ( int route = 0; route < 5; route++ ) {
+                    StopTimeModel stopTimeModel = createStopTime(LocalTime.of(minute / 60, minute % 60), LocalTime.of(minute / 60, minute % 60), "" + route, minute);
+                    stopTimeModel.setDestination(route % 2 == 0 ? "Greenfield" : "Lakeside");
+                    stopTimeModels.add(stopTimeModel);
+                }
+            }
+        }
+        //Test case 1: exactly one stop time per destination and time remains in the original order.
+        List<StopTimeModel> originalStopTimeModels = new ArrayList<>(stopTimeModels);
+        List<StopTimeModel> distinctStopTimeModels = StopTimeService.removeDuplicates(stopTimeModels, "Departure");
+        assertEquals(24 * 60 * 2, distinctStopTimeModels.size());
+        assertEquals(24 * 60 * 2, distinctStopTimeModels.stream()
+                .map(stopTimeModel -> stopTimeModel.getDestination() + stopTimeModel.getDepartureTime()).distinct().count());
+        for ( int i = 0; i < distinctStopTimeModels.size(); i++ ) {
+            assertEquals(i / 2, distinctStopTimeModels.get(i).getId());
+            assertEquals(i % 2 == 0 ? "Greenfield" : "Lakeside", distinctStopTimeModels.get(i).getDestination());
+        }
+        //Test case 2: the supplied stop times are not modified and removing duplicates again returns the same stop times.
+        assertEquals(originalStopTimeModels, stopTimeModels);
+        assertEquals(distinctStopTimeModels, StopTimeService.removeDuplicates(stopTimeModels, "Departure"));
+        assertEquals(distinctStopTimeModels, StopTimeService.removeDuplicates(distinctStopTimeModels, "Departure"));
+    }
+
+    /**
+     * Verify that stop times are retrieved from the timetable index instead of the database if the index is available.
+     */
+    @Test
+    public void testStopTimesFromIndex ( ) {
+        //Test data
+        Mockito.when(timetableIndexService.isLoaded()).thenReturn(true);
+        Mockito.when(timetableIndexService.findTimes(eq("Lakeside"), eq("Departure"), any(), eq(LocalTime.of(10,1)), eq(LocalTime.of(12,1)), anyInt()))
+                .thenReturn(Lists.newArrayList(createStopTime(LocalTime.of(10,21), LocalTime.of(10,22), "107", 2)));
+        //Test case 1: Departure from the index
+        List<StopTimeModel> stopTimeTestList1 = stopTimeService.getDepartures("Lakeside", "10:01");
+        assertEquals(1, stopTimeTestList1.size());
+        assertEquals(2, stopTimeTestList1.get(0).getId());
+        Mockito.verify(stopTimeRepository, Mockito.never()).findDeparturesByStopNameAndDateAndTimeRange(anyString(), any(), any(), any(), any(), any());
+    }
+
+    /**
+     * Verify that stop times are derived from the trips instead of retrieved from the stop times if journeys are stored as trips.
+     */
+    @Test
+    public void testStopTimesFromTrips ( ) {
+        //Test data
+        Mockito.when(tripPatternService.isTripPatternStorage()).thenReturn(true);
+        Mockito.when(tripPatternService.findTimes(eq(List.of("Lakeside")), eq("Departure"), any(), any(), any()))
+                .thenReturn(Lists.newArrayList(createStopTime(LocalTime.of(10,21), LocalTime.of(10,22), "107", 2)));
+        //Test case 1: Departure from the trips
+        List<StopTimeModel> stopTimeTestList1 = stopTimeService.getDepartures("Lakeside", "10:01");
+        assertEquals(1, stopTimeTestList1.size());
+        assertEquals(2, stopTimeTestList1.get(0).getId());
+        //Test case 2: Departures of a date from the trips
+        assertEquals(1, stopTimeService.getDeparturesByDate("Lakeside", "2021-04-10").size());
+        Mockito.verify(stopTimeRepository, Mockito.never()).findDeparturesByStopNameAndDateAndTimeRange(anyString(), any(), any(), any(), any(), any());
+        Mockito.verify(stopTimeRepository, Mockito.never()).findDeparturesByStopNameAndDate(anyString(), any(), any(), any());
+    }
+
+    /**
+     * Verify that stop times are only retrieved once per stop, type and minute if the departure cache is enabled.
+     */
+    @Test
+    public void testStopTimesFromCache ( ) {
+        //Test data
+        ReflectionTestUtils.setField(stopTimeService, "departureCache", new DepartureCache(100, 60, new SimpleMeterRegistry()));
+        mockStopTimes(Lists.newArrayList(
+                createStopTime(LocalTime.of(10,21), LocalTime.of(10,22), "107", 2),
+                createStopTime(LocalTime.of(10,58), LocalTime.of(10,59), "108", 3)
+        ));
+        //Test case 1: the second request for the same minute is answered from the cache.
+        assertEquals(2, stopTimeService.getDepartures("Lakeside", "10:01").size());
+        assertEquals(2, stopTimeService.getDepartures("Lakeside", "10:01").size());
+        Mockito.verify(stopTimeRepository, Mockito.times(1)).findDeparturesByStopNameAndDateAndTimeRange(anyString(), any(), any(), any(), any(), any());
+        //Test case 2: arrivals and other minutes are cached separately.
+        assertEquals(2, stopTimeService.getArrivals("Lakeside", "10:01").size());
+        assertEquals(1, stopTimeService.getDepartures("Lakeside", "10:30").size());
+        Mockito.verify(stopTimeRepository, Mockito.times(2)).findDeparturesByStopNameAndDateAndTimeRange(anyString(), any(), any(), any(), any(), any());
+        Mockito.verify(stopTimeRepository, Mockito.times(1)).findArrivalsByStopNameAndDateAndTimeRange(anyString(), any(), any(), any(), any(), any());
+    }
+
+    /**
+     * Private helper method to mock the database so that it returns the supplied stop times for all queries. The time range,
+     * operating day, sorting and limit of the queries are applied to the supplied stop times in the same way as the database.
+     * @param stopTimeModels a <code>List</code> of <code>StopTimeModel</code> objects containing the test data.
+     */
+    private void mockStopTimes ( final List<StopTimeModel> stopTimeModels ) {
+        Mockito.when(stopTimeRepository.findDeparturesByStopNameAndDate(anyString(), any(), any(), any()))
+                .thenAnswer(invocation -> filterStopTimes(stopTimeModels, invocation.getArgument(2)));
+        Mockito.when(stopTimeRepository.streamDeparturesByStopNameAndDate(anyString(), any(), any(), any()))
+                .thenAnswer(invocation -> filterStopTimes(stopTimeModels, invocation.getArgument(2)).stream());
+        Mockito.when(stopTimeRepository.findDeparturesByStopNameAndDateAndTimeRange(anyString(), any(), any(), any(), any(), any()))
+                .thenAnswer(invocation -> filterStopTimes(stopTimeModels, StopTimeModel::getDepartureTime, invocation.getArgument(1),
+                        invocation.getArgument(3), invocation.getArgument(4), invocation.getArgument(5)));
+        Mockito.when(stopTimeRepository.findArrivalsByStopNameAndDateAndTimeRange(anyString(), any(), any(), any(), any(), any()))
+                .thenAnswer(invocation -> filterStopTimes(stopTimeModels, StopTimeModel::getArrivalTime, invocation.getArgument(1),
+                        invocation.getArgument(3), invocation.getArgument(4), invocation.getArgument(5)));
+    }
+
+    /**
+     * Private helper method to filter the supplied test data by date in the same way as the database query.
+     * @param stopTimeModels a <code>List</code> of <code>StopTimeModel</code> objects containing the test data.
+     * @param date a <code>LocalDate</code> on which the stop times must run.
+     * @return a <code>List</code> of <code>StopTimeModel</code> objects running on the date sorted by departure time.
+     */
+    private List<StopTimeModel> filterStopTimes ( final List<StopTimeModel> stopTimeModels, final LocalDate date ) {
+        return stopTimeModels.stream()
+                .filter(stopTimeModel -> stopTimeModel.runsOn(date))
+                .sorted(Comparator.comparing(StopTimeModel::getDepartureTime))
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Private helper method to filter the supplied test data by stop names, date and departure time in the same way as the database query.
+     * @param stopTimeModels a <code>List</code> of <code>StopTimeModel</code> objects containing the test data.
+     * @param stopNames a <code>Collection</code> of <code>String</code> containing the names of the stops.
+     * @param date a <code>LocalDate</code> whose day of week the stop times must run on.
+     * @param fromTime a <code>LocalTime</code> containing the earliest time to return (inclusive).
+     * @param toTime a <code>LocalTime</code> containing the latest time to return (inclusive).
+     * @return a <code>List</code> of <code>StopTimeModel</code> objects matching the criteria sorted by departure time.
+     */
+    private List<StopTimeModel> filterStopTimes ( final List<StopTimeModel> stopTimeModels, final Collection<String> stopNames,
+                                                  final LocalDate date, final LocalTime fromTime, final LocalTime toTime ) {
+        return stopTimeModels.stream()
+                .filter(stopTimeModel -> stopNames.contains(stopTimeModel.getStopName()))
+                .filter(stopTimeModel -> stopTimeModel.getOperatingDays().contains(date.getDayOfWeek()))
+                .filter(stopTimeModel -> !stopTimeModel.getDepartureTime().isBefore(fromTime))
+                .filter(stopTimeModel -> !stopTimeModel.getDepartureTime().isAfter(toTime))
+                .sorted(Comparator.comparing(StopTimeModel::getDepartureTime))
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Private helper method to filter the supplied test data in the same way as the database query.
+     * @param stopTimeModels a <code>List</code> of <code>StopTimeModel</code> objects containing the test data.
+     * @param timeFunction a <code>Function</code> which returns either the departure or arrival time of a stop time.
+     * @param operatingDay a <code>DayOfWeek</code> on which the stop times must run.
+     * @param fromTime a <code>LocalTime</code> containing the earliest time to return (inclusive).
+     * @param toTime a <code>LocalTime</code> containing the latest time to return (inclusive).
+     * @param pageable a <code>Pageable</code> object containing the maximum number of stop times to return.
+     * @return a <code>List</code> of <code>StopTimeModel</code> objects matching the criteria sorted by time.
+     */
+    private List<StopTimeModel> filterStopTimes ( final List<StopTimeModel> stopTimeModels, final Function<StopTimeModel, LocalTime> timeFunction,
+                                                  final DayOfWeek operatingDay, final LocalTime fromTime, final LocalTime toTime, final Pageable pageable ) {
+        return stopTimeModels.stream()
+                .filter(stopTimeModel -> stopTimeModel.getOperatingDays().contains(operatingDay))
+                .filter(stopTimeModel -> !timeFunction.apply(stopTimeModel).isBefore(fromTime))
+                .filter(stopTimeModel -> !timeFunction.apply(stopTimeModel).isAfter(toTime))
+                .sorted(Comparator.comparing(timeFunction))
+                .limit(pageable.getPageSize())
+                .collect(Collectors.toList());
+    }
+
     /**
      * Private helper method to create test stop time data.
      * @param arrivalTime a <code>LocalTime</code> object containing the desired arrival time.
@@ -0,0 +1,155 @@
+package de.davelee.trams.operations.service;
+
+import de.davelee.trams.operations.model.StopTimeModel;
+import de.davelee.trams.operations.repository.StopTimeRepository;
+import org.junit.jupiter.api.Test;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * This class tests the TimetableIndexService class and ensures that stop times can be found in the index successfully.
+ * Mocks are used for the database layer.
+ * @author Dave Lee
+ */
+@SpringBootTest
+public class TimetableIndexServiceTest {
+
+    @InjectMocks
+    private TimetableIndexService timetableIndexService;
+
+    @Mock
+    private StopTimeRepository stopTimeRepository;
+
+    @Mock
+    private TripPatternService tripPatternService;
+
+    /**
+     * Verify that departures and arrivals can be found in the index after it has been built.
+     */
+    @Test
+    public void testFindTimes ( ) {
+        ReflectionTestUtils.setField(timetableIndexService, "indexEnabled", true);
+        //Test data
+        Mockito.when(stopTimeRepository.streamAll()).thenReturn(Stream.of(
+                createStopTime(LocalTime.of(10,41), LocalTime.of(10,42), "Greenfield", Arrays.asList(DayOfWeek.MONDAY, DayOfWeek.TUESDAY), 3),
+                createStopTime(LocalTime.of(10,11), LocalTime.of(10,12), "Greenfield", Arrays.asList(DayOfWeek.MONDAY, DayOfWeek.TUESDAY), 1),
+                createStopTime(LocalTime.of(10,21), LocalTime.of(10,22), "Lakeside", Arrays.asList(DayOfWeek.SATURDAY, DayOfWeek.SUNDAY), 2),
+                createStopTime(LocalTime.of(11,21), LocalTime.of(11,22), "Lakeside", Arrays.asList(DayOfWeek.MONDAY, DayOfWeek.TUESDAY), 4)
+        ));
+        assertFalse(timetableIndexService.isLoaded());
+        timetableIndexService.rebuild();
+        assertTrue(timetableIndexService.isLoaded());
+        //Test case 1: departures on a Monday are sorted by time and weekend journeys are removed.
+        List<StopTimeModel> departures = timetableIndexService.findTimes("Lakeside", "Departure", LocalDate.of(2021,4,12),
+                LocalTime.of(10,0), LocalTime.of(12,0), 3);
+        assertEquals(3, departures.size());
+        assertEquals(1, departures.get(0).getId());
+        assertEquals(LocalTime.of(10,12), departures.get(0).getDepartureTime());
+        assertEquals(LocalTime.of(10,11), departures.get(0).getArrivalTime());
+        assertEquals("Greenfield", departures.get(0).getDestination());
+        assertEquals("405A", departures.get(0).getRouteNumber());
+        assertEquals(Arrays.asList(DayOfWeek.MONDAY, DayOfWeek.TUESDAY), departures.get(0).getOperatingDays());
+        assertEquals(3, departures.get(1).getId());
+        assertEquals(4, departures.get(2).getId());
+        //Test case 2: the time range and limit are respected.
+        List<StopTimeModel> limitedDepartures = timetableIndexService.findTimes("Lakeside", "Departure", LocalDate.of(2021,4,12),
+                LocalTime.of(10,12), LocalTime.of(11,22), 2);
+        assertEquals(2, limitedDepartures.size());
+        assertEquals(1, limitedDepartures.get(0).getId());
+        assertEquals(3, limitedDepartures.get(1).getId());
+        //Test case 3: arrivals on a Saturday.
+        List<StopTimeModel> arrivals = timetableIndexService.findTimes("Lakeside", "Arrival", LocalDate.of(2021,4,10),
+                LocalTime.of(10,0), LocalTime.of(12,0), 3);
+        assertEquals(1, arrivals.size());
+        assertEquals(2, arrivals.get(0).getId());
+        //Test case 4: no stop times outside of the validity or for unknown stops.
+        assertEquals(0, timetableIndexService.findTimes("Lakeside", "Departure", LocalDate.of(2022,4,11),
+                LocalTime.of(10,0), LocalTime.of(12,0), 3).size());
+        assertEquals(0, timetableIndexService.findTimes("Greenfield", "Departure", LocalDate.of(2021,4,12),
+                LocalTime.of(10,0), LocalTime.of(12,0), 3).size());
+    }
+
+    /**
+     * Verify that additional and excluded dates are considered when finding stop times in the index.
+     */
+    @Test
+    public void testExceptionDates ( ) {
+        ReflectionTestUtils.setField(timetableIndexService, "indexEnabled", true);
+        //Test data
+        StopTimeModel excludedStopTimeModel = createStopTime(LocalTime.of(10,11), LocalTime.of(10,12), "Greenfield", Arrays.asList(DayOfWeek.MONDAY, DayOfWeek.TUESDAY), 1);
+        excludedStopTimeModel.setExcludedDates(Arrays.asList(LocalDate.of(2021,4,13), LocalDate.of(2021,4,12)));
+        StopTimeModel additionalStopTimeModel = createStopTime(LocalTime.of(10,21), LocalTime.of(10,22), "Greenfield", null, 2);
+        additionalStopTimeModel.setValidFromDate(null);
+        additionalStopTimeModel.setValidToDate(null);
+        additionalStopTimeModel.setAdditionalDates(Collections.singletonList(LocalDate.of(2021,4,12)));
+        Mockito.when(stopTimeRepository.streamAll()).thenReturn(Stream.of(excludedStopTimeModel, additionalStopTimeModel));
+        timetableIndexService.rebuild();
+        //Test case 1: the excluded date removes the first stop time and the additional date adds the second stop time.
+        List<StopTimeModel> departures = timetableIndexService.findTimes("Lakeside", "Departure", LocalDate.of(2021,4,12),
+                LocalTime.of(10,0), LocalTime.of(12,0), 3);
+        assertEquals(1, departures.size());
+        assertEquals(2, departures.get(0).getId());
+        assertEquals(Collections.singletonList(LocalDate.of(2021,4,12)), departures.get(0).getAdditionalDates());
+        assertNull(departures.get(0).getValidFromDate());
+        //Test case 2: on a normal operating day only the first stop time runs.
+        List<StopTimeModel> normalDepartures = timetableIndexService.findTimes("Lakeside", "Departure", LocalDate.of(2021,4,19),
+                LocalTime.of(10,0), LocalTime.of(12,0), 3);
+        assertEquals(1, normalDepartures.size());
+        assertEquals(1, normalDepartures.get(0).getId());
+        assertEquals(Arrays.asList(LocalDate.of(2021,4,12), LocalDate.of(2021,4,13)), normalDepartures.get(0).getExcludedDates());
+    }
+
+    /**
+     * Verify that the index is not built if it has been disabled.
+     */
+    @Test
+    public void testDisabledIndex ( ) {
+        ReflectionTestUtils.setField(timetableIndexService, "indexEnabled", false);
+        timetableIndexService.rebuild();
+        assertFalse(timetableIndexService.isLoaded());
+        assertEquals(0, timetableIndexService.findTimes("Lakeside", "Departure", LocalDate.of(2021,4,12),
+                LocalTime.of(10,0), LocalTime.of(12,0), 3).size());
+    }
+
+    /**
+     * Private helper method to create test stop time data.
+     * @param arrivalTime a <code>LocalTime</code> object containing the desired arrival time.
+     * @param departureTime a <code>LocalTime</code> object containing the desired departure time.
+     * @param destination a <code>String</code> containing the destination.
+     * @param operatingDays a <code>List</code> of <code>DayOfWeek</code> objects containing the operating days.
+     * @param count a <code>int</code> with the id to use.
+     * @return a <code>StopTimeModel</code> object which contains all data filled for a test StopTimeModel object.
+     */
+    private StopTimeModel createStopTime ( final LocalTime arrivalTime, final LocalTime departureTime, final String destination,
+                                           final List<DayOfWeek> operatingDays, final int count ) {
+        return StopTimeModel.builder()
+                .arrivalTime(arrivalTime)
+                .departureTime(departureTime)
+                .destination(destination)
+                .id(count)
+                .journeyNumber("10" + count)
+                .operatingDays(operatingDays)
+                .routeNumber("405A")
+                .stopName("Lakeside")
+                .validFromDate(LocalDate.of(2020,12,12))
+                .validToDate(LocalDate.of(2021,12,11))
+                .build();
+    }
+
+}
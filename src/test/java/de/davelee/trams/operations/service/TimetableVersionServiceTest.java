@@ -0,0 +1,264 @@
+package de.davelee.trams.operations.service;
+
+import com.mongodb.client.result.UpdateResult;
+import de.davelee.trams.operations.model.StopTimeModel;
+import de.davelee.trams.operations.model.TimetableVersionModel;
+import de.davelee.trams.operations.repository.StopTimeCollections;
+import de.davelee.trams.operations.repository.TimetableVersionRepository;
+import org.bson.BsonString;
+import org.bson.Document;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.ArgumentMatchers;
+import org.mockito.Mockito;
+import org.springframework.context.support.StaticApplicationContext;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.convert.MappingMongoConverter;
+import org.springframework.data.mongodb.core.index.IndexDefinition;
+import org.springframework.data.mongodb.core.index.IndexOperations;
+import org.springframework.data.mongodb.core.mapping.MongoMappingContext;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.LocalDateTime;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * This class tests the TimetableVersionService class and ensures that imports are written into a staging version which
+ * is activated or discarded as a whole and that all instances follow the pointer to the active version. Mocks are used
+ * for the database layer.
+ * @author Dave Lee
+ */
+public class TimetableVersionServiceTest {
+
+    private TimetableVersionService timetableVersionService;
+
+    private MongoTemplate mongoTemplate;
+
+    private TimetableVersionRepository timetableVersionRepository;
+
+    private TimetableIndexService timetableIndexService;
+
+    private StopTimeNameService stopTimeNameService;
+
+    private StopTimeCollections stopTimeCollections;
+
+    /**
+     * Create the service with mocked dependencies.
+     */
+    @BeforeEach
+    public void setUp ( ) {
+        mongoTemplate = Mockito.mock(MongoTemplate.class);
+        timetableVersionRepository = Mockito.mock(TimetableVersionRepository.class);
+        timetableIndexService = Mockito.mock(TimetableIndexService.class);
+        stopTimeCollections = new StopTimeCollections();
+        stopTimeNameService = Mockito.mock(StopTimeNameService.class);
+        Mockito.when(stopTimeNameService.getIds(List.of("10"))).thenReturn(List.of(5));
+        Mockito.when(timetableVersionRepository.findById(ArgumentMatchers.anyString())).thenReturn(Optional.empty());
+        Mockito.when(mongoTemplate.upsert(ArgumentMatchers.any(Query.class), ArgumentMatchers.any(Update.class), ArgumentMatchers.eq(TimetableVersionModel.class)))
+                .thenReturn(UpdateResult.acknowledged(0, 0L, new BsonString("stopTimes")));
+        Mockito.when(mongoTemplate.updateFirst(ArgumentMatchers.any(Query.class), ArgumentMatchers.any(Update.class), ArgumentMatchers.eq(TimetableVersionModel.class)))
+                .thenReturn(UpdateResult.acknowledged(1, 1L, null));
+        timetableVersionService = new TimetableVersionService();
+        ReflectionTestUtils.setField(timetableVersionService, "mongoTemplate", mongoTemplate);
+        ReflectionTestUtils.setField(timetableVersionService, "timetableVersionRepository", timetableVersionRepository);
+        ReflectionTestUtils.setField(timetableVersionService, "stopTimeCollections", stopTimeCollections);
+        ReflectionTestUtils.setField(timetableVersionService, "stopTimeNameService", stopTimeNameService);
+        ReflectionTestUtils.setField(timetableVersionService, "timetableIndexService", timetableIndexService);
+        ReflectionTestUtils.setField(timetableVersionService, "departureCache", Mockito.mock(DepartureCache.class));
+        ReflectionTestUtils.setField(timetableVersionService, "departureBoardService", Mockito.mock(DepartureBoardService.class));
+        ReflectionTestUtils.setField(timetableVersionService, "dropAfterMinutes", 10);
+        ReflectionTestUtils.setField(timetableVersionService, "stagingTimeoutMinutes", 360);
+    }
+
+    /**
+     * Verify that a staging version is copied from the active version, indexed, activated and can be rolled back.
+     */
+    @Test
+    public void testActivateAndRollback ( ) {
+        Mockito.when(mongoTemplate.collectionExists(StopTimeCollections.DEFAULT_COLLECTION_NAME)).thenReturn(true);
+        //Test case 1: the staging version is reserved and contains the stop times of all routes which are not imported again.
+        assertEquals("stopTimeModel_v1", timetableVersionService.createStagingVersion(List.of("10")));
+        ArgumentCaptor<Update> reservationCaptor = ArgumentCaptor.forClass(Update.class);
+        Mockito.verify(mongoTemplate).upsert(ArgumentMatchers.any(Query.class), reservationCaptor.capture(), ArgumentMatchers.eq(TimetableVersionModel.class));
+        Document reservation = (Document) reservationCaptor.getValue().getUpdateObject().get("$set");
+        assertEquals(1, reservation.get("version"));
+        assertEquals("stopTimeModel_v1", reservation.get("stagingCollectionName"));
+        ArgumentCaptor<Aggregation> aggregationCaptor = ArgumentCaptor.forClass(Aggregation.class);
+        Mockito.verify(mongoTemplate).aggregate(aggregationCaptor.capture(), ArgumentMatchers.eq("stopTimeModel"), ArgumentMatchers.eq(Document.class));
+        List<Document> pipeline = aggregationCaptor.getValue().toPipeline(Aggregation.DEFAULT_CONTEXT);
+        assertEquals(new Document("$match", new Document("routeId", new Document("$nin", List.of(5)))), pipeline.get(0));
+        assertEquals(new Document("$out", "stopTimeModel_v1"), pipeline.get(1));
+        assertEquals("stopTimeModel_v1", stopTimeCollections.getWriteCollectionName());
+        assertEquals("stopTimeModel", stopTimeCollections.getActiveCollectionName());
+        //A second import cannot start while the staging version is being written.
+        assertThrows(IllegalStateException.class, () -> timetableVersionService.createStagingVersion(List.of("10")));
+        //Test case 2: the indexes are built before the staging version becomes the active version.
+        MongoMappingContext mongoMappingContext = createMappingContext();
+        MappingMongoConverter mappingMongoConverter = Mockito.mock(MappingMongoConverter.class);
+        Mockito.doReturn(mongoMappingContext).when(mappingMongoConverter).getMappingContext();
+        Mockito.when(mongoTemplate.getConverter()).thenReturn(mappingMongoConverter);
+        IndexOperations indexOperations = Mockito.mock(IndexOperations.class);
+        Mockito.when(mongoTemplate.indexOps("stopTimeModel_v1")).thenReturn(indexOperations);
+        Mockito.when(timetableVersionRepository.findById(ArgumentMatchers.anyString())).thenReturn(Optional.of(TimetableVersionModel.builder()
+                .id("stopTimes").version(1).collectionName("stopTimeModel").stagingCollectionName("stopTimeModel_v1").build()));
+        timetableVersionService.activateStagingVersion();
+        Mockito.verify(indexOperations, Mockito.times(4)).ensureIndex(ArgumentMatchers.any(IndexDefinition.class));
+        ArgumentCaptor<Update> activationCaptor = ArgumentCaptor.forClass(Update.class);
+        Mockito.verify(mongoTemplate).updateFirst(ArgumentMatchers.any(Query.class), activationCaptor.capture(), ArgumentMatchers.eq(TimetableVersionModel.class));
+        Document activation = (Document) activationCaptor.getValue().getUpdateObject().get("$set");
+        assertEquals("stopTimeModel_v1", activation.get("collectionName"));
+        assertEquals("stopTimeModel", activation.get("previousCollectionName"));
+        assertEquals("stopTimeModel_v1", stopTimeCollections.getActiveCollectionName());
+        assertNull(stopTimeCollections.getStagingCollectionName());
+        //The stop time model reads the new version and the previous version is kept for a rollback.
+        assertEquals("stopTimeModel_v1", mongoMappingContext.getRequiredPersistentEntity(StopTimeModel.class).getCollection());
+        Mockito.verify(mongoTemplate, Mockito.never()).dropCollection("stopTimeModel");
+        //Test case 3: a rollback makes the previous version active again.
+        Mockito.when(timetableVersionRepository.findById(ArgumentMatchers.anyString())).thenReturn(Optional.of(TimetableVersionModel.builder()
+                .id("stopTimes").version(1).collectionName("stopTimeModel_v1").previousCollectionName("stopTimeModel").build()));
+        assertTrue(timetableVersionService.rollback());
+        assertEquals("stopTimeModel", stopTimeCollections.getActiveCollectionName());
+        Mockito.verify(timetableIndexService).rebuild();
+    }
+
+    /**
+     * Verify that a staging version which is discarded is dropped and never activated.
+     */
+    @Test
+    public void testDiscard ( ) {
+        //There is nothing to copy if no stop times have been imported yet.
+        assertEquals("stopTimeModel_v1", timetableVersionService.createStagingVersion(Collections.emptyList()));
+        Mockito.verify(mongoTemplate, Mockito.never()).aggregate(ArgumentMatchers.any(Aggregation.class), ArgumentMatchers.anyString(),
+                ArgumentMatchers.eq(Document.class));
+        timetableVersionService.discardStagingVersion();
+        Mockito.verify(mongoTemplate, Mockito.times(2)).dropCollection("stopTimeModel_v1");
+        assertEquals("stopTimeModel", stopTimeCollections.getWriteCollectionName());
+        //The reservation is released so that another import can create a new version.
+        ArgumentCaptor<Update> releaseCaptor = ArgumentCaptor.forClass(Update.class);
+        Mockito.verify(mongoTemplate).updateFirst(ArgumentMatchers.any(Query.class), releaseCaptor.capture(), ArgumentMatchers.eq(TimetableVersionModel.class));
+        assertTrue(((Document) releaseCaptor.getValue().getUpdateObject().get("$unset")).containsKey("stagingCollectionName"));
+        //Neither activating nor rolling back changes the active version.
+        timetableVersionService.activateStagingVersion();
+        assertFalse(timetableVersionService.rollback());
+        Mockito.verify(mongoTemplate, Mockito.times(1)).updateFirst(ArgumentMatchers.any(Query.class), ArgumentMatchers.any(Update.class),
+                ArgumentMatchers.eq(TimetableVersionModel.class));
+        assertEquals("stopTimeModel", stopTimeCollections.getActiveCollectionName());
+    }
+
+    /**
+     * Verify that a staging version which replaces the whole timetable starts empty even if there is an active version.
+     */
+    @Test
+    public void testEmptyStagingVersion ( ) {
+        Mockito.when(mongoTemplate.collectionExists(StopTimeCollections.DEFAULT_COLLECTION_NAME)).thenReturn(true);
+        assertEquals("stopTimeModel_v1", timetableVersionService.createEmptyStagingVersion());
+        Mockito.verify(mongoTemplate, Mockito.never()).aggregate(ArgumentMatchers.any(Aggregation.class), ArgumentMatchers.anyString(),
+                ArgumentMatchers.eq(Document.class));
+        assertEquals("stopTimeModel_v1", stopTimeCollections.getWriteCollectionName());
+        //Only one import can write a staging version at a time whether or not it starts empty.
+        assertThrows(IllegalStateException.class, () -> timetableVersionService.createEmptyStagingVersion());
+    }
+
+    /**
+     * Verify that only one import can write a staging version at a time across all instances.
+     */
+    @Test
+    public void testConcurrentImports ( ) {
+        //Test case 1: another instance has reserved the staging version.
+        Mockito.when(mongoTemplate.upsert(ArgumentMatchers.any(Query.class), ArgumentMatchers.any(Update.class), ArgumentMatchers.eq(TimetableVersionModel.class)))
+                .thenThrow(new DuplicateKeyException("duplicate key"));
+        assertThrows(IllegalStateException.class, () -> timetableVersionService.createStagingVersion(Collections.emptyList()));
+        assertNull(stopTimeCollections.getStagingCollectionName());
+        Mockito.verify(mongoTemplate, Mockito.never()).dropCollection(ArgumentMatchers.anyString());
+        //Test case 2: the reservation expired and was taken over by another import before this import was activated.
+        Mockito.doReturn(UpdateResult.acknowledged(0, 0L, new BsonString("stopTimes"))).when(mongoTemplate)
+                .upsert(ArgumentMatchers.any(Query.class), ArgumentMatchers.any(Update.class), ArgumentMatchers.eq(TimetableVersionModel.class));
+        timetableVersionService.createStagingVersion(Collections.emptyList());
+        MappingMongoConverter mappingMongoConverter = Mockito.mock(MappingMongoConverter.class);
+        Mockito.doReturn(createMappingContext()).when(mappingMongoConverter).getMappingContext();
+        Mockito.when(mongoTemplate.getConverter()).thenReturn(mappingMongoConverter);
+        Mockito.when(mongoTemplate.indexOps("stopTimeModel_v1")).thenReturn(Mockito.mock(IndexOperations.class));
+        Mockito.when(mongoTemplate.updateFirst(ArgumentMatchers.any(Query.class), ArgumentMatchers.any(Update.class), ArgumentMatchers.eq(TimetableVersionModel.class)))
+                .thenReturn(UpdateResult.acknowledged(0, 0L, null));
+        IllegalStateException illegalStateException = assertThrows(IllegalStateException.class, () -> timetableVersionService.activateStagingVersion());
+        assertEquals("Staging collection stopTimeModel_v1 is no longer reserved for this import", illegalStateException.getMessage());
+        assertEquals("stopTimeModel", stopTimeCollections.getActiveCollectionName());
+    }
+
+    /**
+     * Verify that the reservation of an import which was interrupted is taken over once it has timed out and that its
+     * staging collection is dropped.
+     */
+    @Test
+    public void testTakeOverTimedOutReservation ( ) {
+        //The interrupted import reserved version 2 more than 6 hours ago.
+        Mockito.when(timetableVersionRepository.findById(ArgumentMatchers.anyString())).thenReturn(Optional.of(TimetableVersionModel.builder()
+                .id("stopTimes").version(2).collectionName("stopTimeModel_v1").stagingCollectionName("stopTimeModel_v2")
+                .stagingStartedDateTime(LocalDateTime.now().minusMinutes(361)).build()));
+        assertEquals("stopTimeModel_v3", timetableVersionService.createStagingVersion(Collections.emptyList()));
+        //Test case 1: the reservation may be taken over if it is older than the staging timeout.
+        ArgumentCaptor<Query> queryCaptor = ArgumentCaptor.forClass(Query.class);
+        ArgumentCaptor<Update> reservationCaptor = ArgumentCaptor.forClass(Update.class);
+        Mockito.verify(mongoTemplate).upsert(queryCaptor.capture(), reservationCaptor.capture(), ArgumentMatchers.eq(TimetableVersionModel.class));
+        List<?> conditions = (List<?>) queryCaptor.getValue().getQueryObject().get("$or");
+        LocalDateTime timeout = (LocalDateTime) ((Document) ((Document) conditions.get(1)).get("stagingStartedDateTime")).get("$lt");
+        assertTrue(timeout.isBefore(LocalDateTime.now().minusMinutes(359)) && timeout.isAfter(LocalDateTime.now().minusMinutes(361)));
+        assertEquals(3, ((Document) reservationCaptor.getValue().getUpdateObject().get("$set")).get("version"));
+        //Test case 2: the staging collection of the interrupted import is dropped.
+        Mockito.verify(mongoTemplate).dropCollection("stopTimeModel_v2");
+        assertEquals("stopTimeModel_v3", stopTimeCollections.getStagingCollectionName());
+    }
+
+    /**
+     * Verify that a version which was activated by another instance is used and that retired versions are only dropped
+     * once the configured period has passed.
+     */
+    @Test
+    public void testRefresh ( ) {
+        Mockito.when(timetableVersionRepository.findById(ArgumentMatchers.anyString())).thenReturn(Optional.of(TimetableVersionModel.builder()
+                .id("stopTimes").version(3).collectionName("stopTimeModel_v3").previousCollectionName("stopTimeModel_v2")
+                .retiredCollections(Map.of("stopTimeModel_v1", LocalDateTime.now().minusMinutes(20), "stopTimeModel", LocalDateTime.now()))
+                .build()));
+        timetableVersionService.refresh();
+        timetableVersionService.refresh();
+        assertEquals("stopTimeModel_v3", stopTimeCollections.getActiveCollectionName());
+        Mockito.verify(timetableIndexService, Mockito.times(1)).rebuild();
+        //The names are reloaded once after the switch as the new version may use names stored by the other instance.
+        Mockito.verify(stopTimeNameService, Mockito.times(1)).load();
+        Mockito.verify(mongoTemplate, Mockito.times(2)).dropCollection("stopTimeModel_v1");
+        Mockito.verify(mongoTemplate, Mockito.never()).dropCollection("stopTimeModel");
+        //A database which is not available does not stop the refresh.
+        Mockito.when(timetableVersionRepository.findById(ArgumentMatchers.anyString())).thenThrow(new IllegalStateException("database unavailable"));
+        timetableVersionService.refresh();
+        assertEquals("stopTimeModel_v3", stopTimeCollections.getActiveCollectionName());
+    }
+
+    /**
+     * This is a private helper method which creates a mapping context which resolves the collection of the stop time
+     * model from the stop time collections in the same way as the application.
+     * @return a <code>MongoMappingContext</code> object containing the mapping context.
+     */
+    private MongoMappingContext createMappingContext ( ) {
+        StaticApplicationContext applicationContext = new StaticApplicationContext();
+        applicationContext.getBeanFactory().registerSingleton("stopTimeCollections", stopTimeCollections);
+        applicationContext.refresh();
+        MongoMappingContext mongoMappingContext = new MongoMappingContext();
+        mongoMappingContext.setApplicationContext(applicationContext);
+        return mongoMappingContext;
+    }
+
+}
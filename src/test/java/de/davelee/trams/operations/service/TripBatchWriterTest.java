@@ -0,0 +1,101 @@
+package de.davelee.trams.operations.service;
+
+import de.davelee.trams.operations.model.StopTimeModel;
+import de.davelee.trams.operations.model.TripModel;
+import de.davelee.trams.operations.repository.TripPatternRepository;
+import de.davelee.trams.operations.repository.TripRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.ArgumentMatchers;
+import org.mockito.Captor;
+import org.mockito.Mockito;
+import org.mockito.MockitoAnnotations;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * This class tests the TripBatchWriter class and ensures that the stop times of each journey are written as one trip.
+ * Mocks are used for the database layer.
+ * @author Dave Lee
+ */
+public class TripBatchWriterTest {
+
+    @Captor
+    private ArgumentCaptor<List<TripModel>> tripCaptor;
+
+    /**
+     * Initialise the argument captors.
+     */
+    @BeforeEach
+    public void setUp ( ) {
+        MockitoAnnotations.initMocks(this);
+    }
+
+    /**
+     * Verify that interleaved stop times are collected into one trip per journey and the trips are written in batches.
+     */
+    @Test
+    public void testBatchWriter ( ) {
+        TripRepository tripRepository = Mockito.mock(TripRepository.class);
+        TripPatternService tripPatternService = createTripPatternService(tripRepository);
+        TripBatchWriter tripBatchWriter = new TripBatchWriter(tripPatternService, 2, new ImportProgress());
+        //Stop times of two journeys arrive interleaved.
+        for ( int i = 0; i < 3; i++ ) {
+            tripBatchWriter.add(createStopTime("1", "Stop " + i, LocalTime.of(10, i)));
+            tripBatchWriter.add(createStopTime("2", "Stop " + i, LocalTime.of(11, i)));
+        }
+        Mockito.verify(tripRepository, Mockito.never()).insert(ArgumentMatchers.anyList());
+        //A third journey completes the oldest journey and a fourth journey fills the batch.
+        tripBatchWriter.add(createStopTime("3", "Stop 0", LocalTime.of(12, 0)));
+        tripBatchWriter.add(createStopTime("4", "Stop 0", LocalTime.of(13, 0)));
+        assertEquals(2, tripBatchWriter.getTripsWritten());
+        assertEquals(6, tripBatchWriter.getRowsWritten());
+        assertEquals(1, tripBatchWriter.getBatchesWritten());
+        //Flush should complete and write the remaining journeys.
+        tripBatchWriter.flush();
+        tripBatchWriter.flush();
+        assertEquals(4, tripBatchWriter.getTripsWritten());
+        assertEquals(8, tripBatchWriter.getRowsWritten());
+        assertEquals(2, tripBatchWriter.getBatchesWritten());
+        Mockito.verify(tripRepository, Mockito.times(2)).insert(tripCaptor.capture());
+        List<TripModel> tripModels = new ArrayList<>();
+        tripCaptor.getAllValues().forEach(tripModels::addAll);
+        assertEquals(List.of("1", "2", "3", "4"), List.of(tripModels.stream().map(TripModel::getJourneyNumber).toArray(String[]::new)));
+        assertEquals(List.of(0, 1, 2), tripModels.get(0).getDepartureOffsets());
+    }
+
+    /**
+     * This is a private helper method which creates a trip pattern service writing to the supplied trip repository.
+     * @param tripRepository a <code>TripRepository</code> object which is a mock.
+     * @return a <code>TripPatternService</code> object which can be used by the batch writer.
+     */
+    private TripPatternService createTripPatternService ( final TripRepository tripRepository ) {
+        StopTimeNameService stopTimeNameService = Mockito.mock(StopTimeNameService.class);
+        Mockito.when(stopTimeNameService.getOrCreateId(ArgumentMatchers.anyString())).thenAnswer(invocation ->
+                Math.abs(invocation.getArgument(0).hashCode()) + 1);
+        TripPatternService tripPatternService = new TripPatternService();
+        ReflectionTestUtils.setField(tripPatternService, "tripRepository", tripRepository);
+        ReflectionTestUtils.setField(tripPatternService, "tripPatternRepository", Mockito.mock(TripPatternRepository.class));
+        ReflectionTestUtils.setField(tripPatternService, "stopTimeNameService", stopTimeNameService);
+        return tripPatternService;
+    }
+
+    /**
+     * This is a private helper method which creates a stop time of the supplied journey on route 1A.
+     * @param journeyNumber a <code>String</code> containing the journey number.
+     * @param stopName a <code>String</code> containing the name of the stop.
+     * @param departureTime a <code>LocalTime</code> containing the departure time.
+     * @return a <code>StopTimeModel</code> object containing the stop time.
+     */
+    private StopTimeModel createStopTime ( final String journeyNumber, final String stopName, final LocalTime departureTime ) {
+        return StopTimeModel.builder().stopName(stopName).departureTime(departureTime).routeNumber("1A")
+                .destination("Parkway").journeyNumber(journeyNumber).build();
+    }
+
+}
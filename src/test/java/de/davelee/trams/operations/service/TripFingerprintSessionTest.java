@@ -0,0 +1,109 @@
+package de.davelee.trams.operations.service;
+
+import de.davelee.trams.operations.model.StopTimeModel;
+import de.davelee.trams.operations.model.TripFingerprintModel;
+import de.davelee.trams.operations.repository.TripFingerprintRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.ArgumentMatchers;
+import org.mockito.Captor;
+import org.mockito.Mockito;
+import org.mockito.MockitoAnnotations;
+
+import java.time.LocalTime;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * This class tests the TripFingerprintSession class and ensures that changed trips are detected regardless of the
+ * order of their stop times. Mocks are used for the database layer.
+ * @author Dave Lee
+ */
+public class TripFingerprintSessionTest {
+
+    @Captor
+    private ArgumentCaptor<List<TripFingerprintModel>> fingerprintCaptor;
+
+    /**
+     * Initialise the argument captors.
+     */
+    @BeforeEach
+    public void setUp ( ) {
+        MockitoAnnotations.initMocks(this);
+    }
+
+    /**
+     * Verify that the fingerprints of a feed are compared with the stored fingerprints correctly.
+     */
+    @Test
+    public void testCompareFingerprints ( ) {
+        TripFingerprintRepository tripFingerprintRepository = Mockito.mock(TripFingerprintRepository.class);
+        Map<String, String> calendarFingerprints = Map.of("weekdays", "calendar1", "weekends", "calendar2");
+        //Store the fingerprints of two trips which are read in a different order.
+        TripFingerprintSession firstSession = new TripFingerprintSession(tripFingerprintRepository, List.of("1A"), calendarFingerprints);
+        addJourney(firstSession, "T1", "weekdays", 10, false);
+        addJourney(firstSession, "T2", "weekends", 11, false);
+        firstSession.flush(false);
+        Mockito.verify(tripFingerprintRepository).insert(fingerprintCaptor.capture());
+        List<TripFingerprintModel> storedFingerprints = fingerprintCaptor.getValue();
+        assertEquals(List.of(0, 3), storedFingerprints.get(0).getStopTimeIdRanges());
+        //Test case 1: the same trips are unchanged even if their stop times are read in the reverse order.
+        Mockito.when(tripFingerprintRepository.findByRouteNumberIn(List.of("1A"))).thenReturn(storedFingerprints);
+        TripFingerprintSession unchangedSession = new TripFingerprintSession(tripFingerprintRepository, List.of("1A"), calendarFingerprints);
+        addJourney(unchangedSession, "T2", "weekends", 11, true);
+        addJourney(unchangedSession, "T1", "weekdays", 10, true);
+        assertTrue(unchangedSession.getChangedTripIds().isEmpty());
+        assertTrue(unchangedSession.getTripsWithChangedCalendar().isEmpty());
+        assertTrue(unchangedSession.getRemovedTrips().isEmpty());
+        //Test case 2: a new trip, a changed calendar and a removed trip are detected.
+        TripFingerprintSession changedSession = new TripFingerprintSession(tripFingerprintRepository, List.of("1A"),
+                Map.of("weekdays", "calendar3"));
+        addJourney(changedSession, "T1", "weekdays", 10, true);
+        addJourney(changedSession, "T3", "weekdays", 12, true);
+        assertEquals(List.of("T3"), changedSession.getChangedTripIds());
+        assertEquals("T1", changedSession.getTripsWithChangedCalendar().get(0).getId());
+        assertEquals("T2", changedSession.getRemovedTrips().get(0).getId());
+        //Test case 3: only the fingerprints of the new trip and of the trip with the changed calendar are written.
+        Mockito.clearInvocations(tripFingerprintRepository);
+        changedSession.addStopTimeId("T3", 20);
+        changedSession.addStopTimeId("T3", 21);
+        changedSession.addStopTimeId("T3", 30);
+        changedSession.flush(true);
+        Mockito.verify(tripFingerprintRepository).deleteByIdIn(List.of("T1", "T2"));
+        Mockito.verify(tripFingerprintRepository).insert(fingerprintCaptor.capture());
+        assertEquals(List.of(0, 3), fingerprintCaptor.getValue().get(0).getStopTimeIdRanges());
+        assertEquals("calendar3", fingerprintCaptor.getValue().get(0).getCalendarFingerprint());
+        assertEquals(List.of(20, 2, 30, 1), fingerprintCaptor.getValue().get(1).getStopTimeIdRanges());
+        Mockito.verify(tripFingerprintRepository, Mockito.times(1)).insert(ArgumentMatchers.anyList());
+    }
+
+    /**
+     * This is a private helper method which adds a journey calling at three stops to the supplied session.
+     * @param tripFingerprintSession a <code>TripFingerprintSession</code> object to add the journey to.
+     * @param tripId a <code>String</code> containing the id of the trip.
+     * @param serviceId a <code>String</code> containing the id of the service of the trip.
+     * @param hour a <code>int</code> containing the hour in which the journey runs.
+     * @param reverse a <code>boolean</code> which is true iff the stop times should be added in the reverse order.
+     */
+    private void addJourney ( final TripFingerprintSession tripFingerprintSession, final String tripId, final String serviceId,
+                              final int hour, final boolean reverse ) {
+        List<String> stopNames = List.of("Lakeside", "Greenfield", "Parkway");
+        for ( int i = 0; i < stopNames.size(); i++ ) {
+            int stopSequence = reverse ? stopNames.size() - 1 - i : i;
+            tripFingerprintSession.addStopTime(tripId, serviceId, stopSequence, StopTimeModel.builder()
+                    .stopName(stopNames.get(stopSequence))
+                    .departureTime(LocalTime.of(hour, stopSequence * 10))
+                    .routeNumber("1A")
+                    .destination("Parkway")
+                    .build());
+            if ( !reverse ) {
+                tripFingerprintSession.addStopTimeId(tripId, stopSequence);
+            }
+        }
+    }
+
+}
@@ -0,0 +1,183 @@
+package de.davelee.trams.operations.service;
+
+import de.davelee.trams.operations.model.StopTimeModel;
+import de.davelee.trams.operations.model.TimetableStorageMode;
+import de.davelee.trams.operations.model.TripModel;
+import de.davelee.trams.operations.model.TripPatternModel;
+import de.davelee.trams.operations.repository.TripPatternRepository;
+import de.davelee.trams.operations.repository.TripRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentMatchers;
+import org.mockito.Mockito;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * This class tests the TripPatternService class and ensures that journeys are converted into trips and back into
+ * stop times. Mocks are used for the database layer.
+ * @author Dave Lee
+ */
+public class TripPatternServiceTest {
+
+    private static final Map<String, Integer> IDS = Map.of("Lakeside", 1, "Greenfield", 2, "Parkway", 3, "1A", 4);
+
+    private TripPatternService tripPatternService;
+
+    private TripRepository tripRepository;
+
+    private TripPatternRepository tripPatternRepository;
+
+    /**
+     * Create the service with mocked repositories and a fixed set of short ids.
+     */
+    @BeforeEach
+    public void setUp ( ) {
+        tripRepository = Mockito.mock(TripRepository.class);
+        tripPatternRepository = Mockito.mock(TripPatternRepository.class);
+        StopTimeNameService stopTimeNameService = Mockito.mock(StopTimeNameService.class);
+        Mockito.when(stopTimeNameService.getOrCreateId(ArgumentMatchers.anyString())).thenAnswer(invocation -> IDS.get(invocation.getArgument(0)));
+        Mockito.when(stopTimeNameService.getIds(ArgumentMatchers.anyCollection())).thenAnswer(invocation ->
+                List.of(invocation.<List<String>>getArgument(0).stream().map(IDS::get).toArray(Integer[]::new)));
+        IDS.forEach((name, id) -> Mockito.when(stopTimeNameService.getName(id)).thenReturn(name));
+        tripPatternService = new TripPatternService();
+        ReflectionTestUtils.setField(tripPatternService, "tripRepository", tripRepository);
+        ReflectionTestUtils.setField(tripPatternService, "tripPatternRepository", tripPatternRepository);
+        ReflectionTestUtils.setField(tripPatternService, "stopTimeNameService", stopTimeNameService);
+        ReflectionTestUtils.setField(tripPatternService, "storageMode", TimetableStorageMode.TRIP_PATTERNS);
+    }
+
+    /**
+     * Verify that a journey is converted into a trip pattern and a trip with offsets which continue after midnight.
+     */
+    @Test
+    public void testToTrip ( ) {
+        assertTrue(tripPatternService.isTripPatternStorage());
+        List<StopTimeModel> journey = createJourney(LocalTime.of(23, 50));
+        TripPatternModel tripPatternModel = tripPatternService.toPattern(journey);
+        assertEquals(List.of(1, 2, 3), tripPatternModel.getStopIds());
+        //The same stops always result in the same trip pattern.
+        assertEquals(tripPatternModel.getId(), tripPatternService.toPattern(createJourney(LocalTime.of(6, 0))).getId());
+        assertNotEquals(tripPatternModel.getId(), tripPatternService.toPattern(journey.subList(0, 2)).getId());
+        TripModel tripModel = tripPatternService.toTrip(tripPatternModel, journey);
+        assertEquals(23 * 60 + 50, tripModel.getStartTime());
+        assertEquals(List.of(0, 10, 20), tripModel.getArrivalOffsets());
+        assertEquals(List.of(1, 11, 21), tripModel.getDepartureOffsets());
+        assertEquals(4, tripModel.getRouteId());
+        assertEquals(3, tripModel.getDestinationId());
+        assertEquals(0b0011111, tripModel.getOperatingDayMask());
+    }
+
+    /**
+     * Verify that the stop times at a stop are derived from the trips of the trip patterns calling at the stop.
+     */
+    @Test
+    public void testFindTimes ( ) {
+        List<StopTimeModel> journey = createJourney(LocalTime.of(23, 50));
+        TripPatternModel tripPatternModel = tripPatternService.toPattern(journey);
+        TripModel lateTripModel = tripPatternService.toTrip(tripPatternModel, journey);
+        TripModel earlyTripModel = tripPatternService.toTrip(tripPatternModel, createJourney(LocalTime.of(6, 0)));
+        Mockito.when(tripPatternRepository.findByStopIdsIn(ArgumentMatchers.anyCollection())).thenReturn(List.of(tripPatternModel));
+        Mockito.when(tripRepository.findByPatternIdsAndDate(ArgumentMatchers.anyCollection(), ArgumentMatchers.eq(DayOfWeek.MONDAY),
+                ArgumentMatchers.any())).thenReturn(List.of(lateTripModel, earlyTripModel));
+        //Test case 1: the departures at Greenfield after midnight and in the morning are returned sorted by time.
+        List<StopTimeModel> stopTimeModels = tripPatternService.findTimes(List.of("Greenfield"), "Departure",
+                LocalDate.of(2020, 12, 21), LocalTime.of(0, 0), LocalTime.of(23, 59));
+        assertEquals(2, stopTimeModels.size());
+        assertEquals(LocalTime.of(0, 1), stopTimeModels.get(0).getDepartureTime());
+        assertEquals(LocalTime.of(6, 11), stopTimeModels.get(1).getDepartureTime());
+        assertEquals("Greenfield", stopTimeModels.get(1).getStopName());
+        assertEquals("Parkway", stopTimeModels.get(1).getDestination());
+        assertEquals("1A", stopTimeModels.get(1).getRouteNumber());
+        assertEquals(LocalTime.of(6, 10), stopTimeModels.get(1).getArrivalTime());
+        //Test case 2: the time range is respected.
+        assertEquals(1, tripPatternService.findTimes(List.of("Greenfield"), "Arrival",
+                LocalDate.of(2020, 12, 21), LocalTime.of(6, 0), LocalTime.of(7, 0)).size());
+        //Test case 3: all stop times of all trips are derived.
+        Mockito.when(tripPatternRepository.findAll()).thenReturn(List.of(tripPatternModel));
+        Mockito.when(tripRepository.streamAll()).thenReturn(Stream.of(lateTripModel, earlyTripModel));
+        assertEquals(6, tripPatternService.streamAllStopTimes().count());
+    }
+
+    /**
+     * Verify that no trips are retrieved for a stop which is not called at by any trip pattern.
+     */
+    @Test
+    public void testFindTimesUnknownStop ( ) {
+        Mockito.when(tripPatternRepository.findByStopIdsIn(ArgumentMatchers.anyCollection())).thenReturn(List.of());
+        assertTrue(tripPatternService.findTimes(List.of("Lakeside"), "Departure", LocalDate.of(2020, 12, 21),
+                LocalTime.of(0, 0), LocalTime.of(23, 59)).isEmpty());
+        Mockito.verify(tripRepository, Mockito.never()).findByPatternIdsAndDate(ArgumentMatchers.anyCollection(),
+                ArgumentMatchers.any(), ArgumentMatchers.any());
+    }
+
+    /**
+     * Verify that each trip pattern is only written once.
+     */
+    @Test
+    public void testWriteTrips ( ) {
+        List<StopTimeModel> journey = createJourney(LocalTime.of(6, 0));
+        TripPatternModel tripPatternModel = tripPatternService.toPattern(journey);
+        TripModel tripModel = tripPatternService.toTrip(tripPatternModel, journey);
+        assertFalse(tripPatternService.isWrittenPattern(tripPatternModel.getId()));
+        tripPatternService.writeTrips(List.of(tripPatternModel), List.of(tripModel));
+        tripPatternService.writeTrips(List.of(tripPatternModel), List.of(tripModel));
+        assertTrue(tripPatternService.isWrittenPattern(tripPatternModel.getId()));
+        Mockito.verify(tripPatternRepository, Mockito.times(1)).saveAll(ArgumentMatchers.anyList());
+        Mockito.verify(tripRepository, Mockito.times(2)).insert(ArgumentMatchers.anyList());
+    }
+
+    /**
+     * Verify that a trip without any times starts at minute 0 of the day.
+     */
+    @Test
+    public void testToTripWithoutTimes ( ) {
+        List<StopTimeModel> journey = List.of(StopTimeModel.builder().stopName("Lakeside").routeNumber("1A").destination("Parkway").build());
+        TripModel tripModel = tripPatternService.toTrip(tripPatternService.toPattern(journey), journey);
+        assertEquals(0, tripModel.getStartTime());
+        assertNull(tripModel.getDepartureOffsets().get(0));
+    }
+
+    /**
+     * This is a private helper method which creates a journey from Lakeside via Greenfield to Parkway on weekdays.
+     * @param startTime a <code>LocalTime</code> containing the arrival time at the first stop.
+     * @return a <code>List</code> of <code>StopTimeModel</code> objects containing the stop times of the journey.
+     */
+    private List<StopTimeModel> createJourney ( final LocalTime startTime ) {
+        return List.of(createStopTime("Lakeside", startTime), createStopTime("Greenfield", startTime.plusMinutes(10)),
+                createStopTime("Parkway", startTime.plusMinutes(20)));
+    }
+
+    /**
+     * This is a private helper method which creates a stop time of the journey on route 1A to Parkway on weekdays.
+     * @param stopName a <code>String</code> containing the name of the stop.
+     * @param arrivalTime a <code>LocalTime</code> containing the arrival time which is one minute before the departure time.
+     * @return a <code>StopTimeModel</code> object containing the stop time.
+     */
+    private StopTimeModel createStopTime ( final String stopName, final LocalTime arrivalTime ) {
+        return StopTimeModel.builder()
+                .stopName(stopName)
+                .arrivalTime(arrivalTime)
+                .departureTime(arrivalTime.plusMinutes(1))
+                .routeNumber("1A")
+                .destination("Parkway")
+                .journeyNumber("1")
+                .operatingDays(List.of(DayOfWeek.MONDAY, DayOfWeek.TUESDAY, DayOfWeek.WEDNESDAY, DayOfWeek.THURSDAY, DayOfWeek.FRIDAY))
+                .validFromDate(LocalDate.of(2020, 12, 1))
+                .validToDate(LocalDate.of(2021, 12, 1))
+                .build();
+    }
+
+}
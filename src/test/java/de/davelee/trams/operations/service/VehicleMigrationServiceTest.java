@@ -0,0 +1,118 @@
+package de.davelee.trams.operations.service;
+
+import de.davelee.trams.operations.model.BusVehicleModel;
+import de.davelee.trams.operations.model.VehicleModel;
+import org.bson.Document;
+import org.junit.jupiter.api.Test;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.FindAndReplaceOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.util.CloseableIterator;
+
+import java.time.LocalDate;
+import java.util.Iterator;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * This class tests the VehicleMigrationService class and ensures that vehicles are moved from the previous collections
+ * into the single vehicle collection. Mocks are used for the database layer.
+ * @author Dave Lee
+ */
+@SpringBootTest
+public class VehicleMigrationServiceTest {
+
+    @InjectMocks
+    private VehicleMigrationService vehicleMigrationService;
+
+    @Mock
+    private MongoTemplate mongoTemplate;
+
+    @Mock
+    private BulkOperations bulkOperations;
+
+    /**
+     * Ensure that the buses are copied with their type alias and that only the previous collections which exist are dropped.
+     */
+    @Test
+    public void testMigrate() {
+        //Test data.
+        List<Document> buses = List.of(new Document("_id", "1").append("fleetNumber", "213")
+                        .append("_class", "de.davelee.trams.operations.model.BusVehicleModel"),
+                new Document("_id", "2").append("fleetNumber", "214"));
+        Mockito.when(mongoTemplate.getCollectionName(VehicleModel.class)).thenReturn("vehicleModel");
+        Mockito.when(mongoTemplate.collectionExists("busVehicleModel")).thenReturn(true);
+        Mockito.when(mongoTemplate.stream(Mockito.any(Query.class), Mockito.eq(Document.class), Mockito.eq("busVehicleModel")))
+                .thenReturn(closeableIterator(buses));
+        Mockito.when(mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, "vehicleModel")).thenReturn(bulkOperations);
+        //Now do actual test.
+        assertEquals(2, vehicleMigrationService.migrate());
+        Mockito.verify(bulkOperations, Mockito.times(2)).replaceOne(Mockito.any(Query.class),
+                Mockito.argThat(vehicle -> "bus".equals(((Document) vehicle).get("_class"))), Mockito.any(FindAndReplaceOptions.class));
+        Mockito.verify(bulkOperations).execute();
+        Mockito.verify(mongoTemplate).dropCollection("busVehicleModel");
+        Mockito.verify(mongoTemplate, Mockito.never()).dropCollection("trainVehicleModel");
+        Mockito.verify(mongoTemplate, Mockito.never()).dropCollection("tramVehicleModel");
+    }
+
+    /**
+     * Ensure that nothing is written if the previous collections no longer exist.
+     */
+    @Test
+    public void testMigrateWithoutPreviousCollections() {
+        Mockito.when(mongoTemplate.getCollectionName(VehicleModel.class)).thenReturn("vehicleModel");
+        assertEquals(0, vehicleMigrationService.migrate());
+        Mockito.verify(mongoTemplate, Mockito.never()).bulkOps(Mockito.any(BulkOperations.BulkMode.class), Mockito.anyString());
+        Mockito.verify(mongoTemplate, Mockito.never()).dropCollection(Mockito.anyString());
+    }
+
+    /**
+     * Ensure that vehicles without a next inspection due date are written again so that the date is stored.
+     */
+    @Test
+    public void testStoreNextInspectionDueDates() {
+        //Test data.
+        BusVehicleModel busVehicleModel = BusVehicleModel.builder()
+                .fleetNumber("213")
+                .inspectionDate(LocalDate.of(2021,4,25))
+                .build();
+        Mockito.when(mongoTemplate.stream(Mockito.any(Query.class), Mockito.eq(VehicleModel.class)))
+                .thenReturn(closeableIterator(List.of(busVehicleModel)));
+        //Now do actual test.
+        assertEquals(1, vehicleMigrationService.storeNextInspectionDueDates());
+        Mockito.verify(mongoTemplate).save(busVehicleModel);
+    }
+
+    /**
+     * This is a private helper method which returns the supplied objects as a closeable iterator in the same way as
+     * the mongo template streams query results.
+     * @param objects a <code>List</code> of objects to return.
+     * @param <T> the type of the objects.
+     * @return a <code>CloseableIterator</code> returning the supplied objects.
+     */
+    private <T> CloseableIterator<T> closeableIterator ( final List<T> objects ) {
+        final Iterator<T> iterator = objects.iterator();
+        return new CloseableIterator<>() {
+            @Override
+            public boolean hasNext ( ) {
+                return iterator.hasNext();
+            }
+
+            @Override
+            public T next ( ) {
+                return iterator.next();
+            }
+
+            @Override
+            public void close ( ) {
+            }
+        };
+    }
+
+}
@@ -1,9 +1,9 @@
 package de.davelee.trams.operations.service;
 
 import de.davelee.trams.operations.model.*;
-import de.davelee.trams.operations.repository.BusVehicleRepository;
-import de.davelee.trams.operations.repository.TrainVehicleRepository;
-import de.davelee.trams.operations.repository.TramVehicleRepository;
+import de.davelee.trams.operations.repository.ReactiveVehicleRepository;
+import de.davelee.trams.operations.repository.VehicleCursor;
+import de.davelee.trams.operations.repository.VehicleRepository;
 import de.davelee.trams.operations.response.VehicleResponse;
 import org.junit.jupiter.api.Test;
 import org.mockito.InjectMocks;
@@ -11,12 +11,18 @@ import org.mockito.Mock;
 import org.mockito.Mockito;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.Sort;
 import org.springframework.test.util.ReflectionTestUtils;
+import reactor.core.publisher.Flux;
 
 import java.time.LocalDate;
 import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 /**
@@ -39,13 +45,13 @@ public class VehicleServiceTest {
     private VehicleService vehicleService;
 
     @Mock
-    private BusVehicleRepository busVehicleRepository;
+    private VehicleRepository vehicleRepository;
 
     @Mock
-    private TramVehicleRepository tramVehicleRepository;
+    private ReactiveVehicleRepository reactiveVehicleRepository;
 
     @Mock
-    private TrainVehicleRepository trainVehicleRepository;
+    private NextInspectionDueDateCallback nextInspectionDueDateCallback;
 
     /**
      * Ensure that a bus can be added successfully to the mock database.
@@ -65,7 +71,7 @@ public class VehicleServiceTest {
                 .fleetNumber("213")
                 .company("Lee Buses")
                 .build();
-        Mockito.when(busVehicleRepository.insert(vehicleModel)).thenReturn(vehicleModel);
+        Mockito.when(vehicleRepository.insert(vehicleModel)).thenReturn(vehicleModel);
         assertTrue(vehicleService.addBus(vehicleModel));
     }
 
@@ -87,7 +93,7 @@ public class VehicleServiceTest {
                 .fleetNumber("213")
                 .company("Lee Buses")
                 .build();
-        Mockito.when(trainVehicleRepository.insert(vehicleModel)).thenReturn(vehicleModel);
+        Mockito.when(vehicleRepository.insert(vehicleModel)).thenReturn(vehicleModel);
         assertTrue(vehicleService.addTrain(vehicleModel));
     }
 
@@ -109,7 +115,7 @@ public class VehicleServiceTest {
                 .fleetNumber("213")
                 .company("Lee Buses")
                 .build();
-        Mockito.when(tramVehicleRepository.insert(vehicleModel)).thenReturn(vehicleModel);
+        Mockito.when(vehicleRepository.insert(vehicleModel)).thenReturn(vehicleModel);
         assertTrue(vehicleService.addTram(vehicleModel));
     }
 
@@ -118,9 +124,8 @@ public class VehicleServiceTest {
      */
     @Test
     public void testRetrieveAllVehicles() {
-        ReflectionTestUtils.setField(vehicleService, "busInspectionPeriodInYears", busInspectionPeriod);
-        ReflectionTestUtils.setField(vehicleService, "trainInspectionPeriodInYears", trainInspectionPeriod);
-        ReflectionTestUtils.setField(vehicleService, "tramInspectionPeriodInYears", tramInspectionPeriod);
+        ReflectionTestUtils.setField(vehicleService, "nextInspectionDueDateCallback",
+                new NextInspectionDueDateCallback(busInspectionPeriod, trainInspectionPeriod, tramInspectionPeriod));
         //Test data.
         BusVehicleModel busVehicleModel = BusVehicleModel.builder()
                 .registrationNumber("W234DHDF")
@@ -134,7 +139,6 @@ public class VehicleServiceTest {
                 .fleetNumber("213")
                 .company("Lee Buses")
                 .build();
-        Mockito.when(busVehicleRepository.findAll()).thenReturn(List.of(busVehicleModel));
         TrainVehicleModel trainVehicleModel = TrainVehicleModel.builder()
                 .powerMode(TrainPowerMode.DIESEL)
                 .modelName("Train 2000 Di")
@@ -147,7 +151,6 @@ public class VehicleServiceTest {
                 .fleetNumber("213")
                 .company("Lee Buses")
                 .build();
-        Mockito.when(trainVehicleRepository.findAll()).thenReturn(List.of(trainVehicleModel));
         TramVehicleModel tramVehicleModel = TramVehicleModel.builder()
                 .isBidirectional(true)
                 .modelName("Tram 2000 Bi")
@@ -160,7 +163,8 @@ public class VehicleServiceTest {
                 .fleetNumber("213")
                 .company("Lee Buses")
                 .build();
-        Mockito.when(tramVehicleRepository.findAll()).thenReturn(List.of(tramVehicleModel));
+        Mockito.when(vehicleRepository.findAll(Mockito.any(Sort.class)))
+                .thenReturn(List.of(trainVehicleModel, busVehicleModel, tramVehicleModel));
         //Now do actual test.
         List<VehicleResponse> vehicleResponseList = vehicleService.retrieveAllVehicles();
         assertEquals("Train", vehicleResponseList.get(0).getVehicleType());
@@ -194,7 +198,6 @@ public class VehicleServiceTest {
                 .fleetNumber("213")
                 .company("Lee Buses")
                 .build();
-        Mockito.when(busVehicleRepository.findByCompanyStartsWithAndFleetNumberStartsWith("Lee", "21")).thenReturn(List.of(busVehicleModel));
         TrainVehicleModel trainVehicleModel = TrainVehicleModel.builder()
                 .powerMode(TrainPowerMode.DIESEL)
                 .modelName("Train 2000 Di")
@@ -207,7 +210,6 @@ public class VehicleServiceTest {
                 .fleetNumber("213")
                 .company("Lee Buses")
                 .build();
-        Mockito.when(trainVehicleRepository.findByCompanyStartsWithAndFleetNumberStartsWith("Lee", "21")).thenReturn(List.of(trainVehicleModel));
         TramVehicleModel tramVehicleModel = TramVehicleModel.builder()
                 .isBidirectional(true)
                 .modelName("Tram 2000 Bi")
@@ -220,7 +222,8 @@ public class VehicleServiceTest {
                 .fleetNumber("213")
                 .company("Lee Buses")
                 .build();
-        Mockito.when(tramVehicleRepository.findByCompanyStartsWithAndFleetNumberStartsWith("Lee", "21")).thenReturn(List.of(tramVehicleModel));
+        Mockito.when(vehicleRepository.findByCompanyStartsWithAndFleetNumberStartsWith(Mockito.eq("Lee"), Mockito.eq("21"), Mockito.any(Sort.class)))
+                .thenReturn(List.of(trainVehicleModel, busVehicleModel, tramVehicleModel));
         //Now do actual test.
         List<VehicleResponse> vehicleResponseList = vehicleService.retrieveVehiclesByCompanyAndFleetNumber("Lee", "21");
         assertEquals("Train", vehicleResponseList.get(0).getVehicleType());
@@ -247,7 +250,6 @@ public class VehicleServiceTest {
                 .fleetNumber("213")
                 .company("Lee Buses")
                 .build();
-        Mockito.when(busVehicleRepository.findByFleetNumberStartsWith("21")).thenReturn(List.of(busVehicleModel));
         TrainVehicleModel trainVehicleModel = TrainVehicleModel.builder()
                 .powerMode(TrainPowerMode.DIESEL)
                 .modelName("Train 2000 Di")
@@ -260,7 +262,6 @@ public class VehicleServiceTest {
                 .fleetNumber("213")
                 .company("Lee Buses")
                 .build();
-        Mockito.when(trainVehicleRepository.findByFleetNumberStartsWith("21")).thenReturn(List.of(trainVehicleModel));
         TramVehicleModel tramVehicleModel = TramVehicleModel.builder()
                 .isBidirectional(true)
                 .modelName("Tram 2000 Bi")
@@ -273,7 +274,8 @@ public class VehicleServiceTest {
                 .fleetNumber("213")
                 .company("Lee Buses")
                 .build();
-        Mockito.when(tramVehicleRepository.findByFleetNumberStartsWith("21")).thenReturn(List.of(tramVehicleModel));
+        Mockito.when(vehicleRepository.findByFleetNumberStartsWith(Mockito.eq("21"), Mockito.any(Sort.class)))
+                .thenReturn(List.of(trainVehicleModel, busVehicleModel, tramVehicleModel));
         //Now do actual test.
         List<VehicleResponse> vehicleResponseList = vehicleService.retrieveVehiclesByFleetNumber("21");
         assertEquals("Train", vehicleResponseList.get(0).getVehicleType());
@@ -281,4 +283,155 @@ public class VehicleServiceTest {
         assertEquals("Tram", vehicleResponseList.get(2).getVehicleType());
     }
 
+    /**
+     * Ensure that vehicles can be retrieved page by page from the mock database and that the cursor points to the last
+     * vehicle of the page.
+     */
+    @Test
+    public void testRetrieveVehiclePage() {
+        ReflectionTestUtils.setField(vehicleService, "maximumPageSize", 1000);
+        //Test data.
+        BusVehicleModel busVehicleModel = BusVehicleModel.builder()
+                .registrationNumber("W234DHDF")
+                .modelName("BendyBus 2000")
+                .deliveryDate(LocalDate.of(2021,3,25))
+                .inspectionDate(LocalDate.now().minusDays(7))
+                .livery("Green with black slide")
+                .seatingCapacity(50)
+                .standingCapacity(80)
+                .vehicleStatus(VehicleStatus.DELIVERED)
+                .fleetNumber("213")
+                .company("Lee Buses")
+                .build();
+        busVehicleModel.setId("6080d0e2b1a6f2409ed4c2a1");
+        TramVehicleModel tramVehicleModel = TramVehicleModel.builder()
+                .isBidirectional(true)
+                .modelName("Tram 2000 Bi")
+                .deliveryDate(LocalDate.of(2021,3,25))
+                .inspectionDate(LocalDate.now().minusDays(7))
+                .livery("Green with black slide")
+                .seatingCapacity(50)
+                .standingCapacity(80)
+                .vehicleStatus(VehicleStatus.DELIVERED)
+                .fleetNumber("214")
+                .company("Lee Buses")
+                .build();
+        Mockito.when(vehicleRepository.findVehiclesAfter(null, null, null, 2)).thenReturn(List.of(busVehicleModel, tramVehicleModel));
+        //Now do actual test - first page with a next page.
+        VehiclePage vehiclePage = vehicleService.retrieveVehiclePage(null, null, null, 1);
+        assertEquals(1, vehiclePage.getVehicles().size());
+        assertEquals("Bus", vehiclePage.getVehicles().get(0).getVehicleType());
+        VehicleCursor vehicleCursor = VehicleCursor.fromToken(vehiclePage.getNextCursor());
+        assertEquals("Lee Buses", vehicleCursor.getCompany());
+        assertEquals("213", vehicleCursor.getFleetNumber());
+        assertEquals("6080d0e2b1a6f2409ed4c2a1", vehicleCursor.getId());
+        //Last page continues after the cursor.
+        Mockito.when(vehicleRepository.findVehiclesAfter(Mockito.eq("Lee"), Mockito.eq("21"), Mockito.any(VehicleCursor.class), Mockito.eq(2)))
+                .thenReturn(List.of(tramVehicleModel));
+        vehiclePage = vehicleService.retrieveVehiclePage("Lee", "21", vehiclePage.getNextCursor(), 1);
+        assertEquals("Tram", vehiclePage.getVehicles().get(0).getVehicleType());
+        assertNull(vehiclePage.getNextCursor());
+        //Invalid cursor.
+        assertThrows(IllegalArgumentException.class, () -> vehicleService.retrieveVehiclePage(null, null, "invalid", 1));
+    }
+
+    /**
+     * Ensure that vehicles can be streamed from the mock database and are converted as they are consumed.
+     */
+    @Test
+    public void testStreamVehicles() {
+        //Test data.
+        TrainVehicleModel trainVehicleModel = TrainVehicleModel.builder()
+                .powerMode(TrainPowerMode.DIESEL)
+                .modelName("Train 2000 Di")
+                .deliveryDate(LocalDate.of(2021,3,25))
+                .inspectionDate(LocalDate.now().minusDays(7))
+                .livery("Green with black slide")
+                .seatingCapacity(50)
+                .standingCapacity(80)
+                .vehicleStatus(VehicleStatus.DELIVERED)
+                .fleetNumber("213")
+                .company("Lee Buses")
+                .build();
+        Mockito.when(vehicleRepository.streamVehicles("Lee", null)).thenReturn(Stream.of(trainVehicleModel));
+        //Now do actual test.
+        try ( Stream<VehicleResponse> vehicleResponses = vehicleService.streamVehicles("Lee", null) ) {
+            List<VehicleResponse> vehicleResponseList = vehicleResponses.collect(Collectors.toList());
+            assertEquals(1, vehicleResponseList.size());
+            assertEquals("Train", vehicleResponseList.get(0).getVehicleType());
+        }
+    }
+
+    /**
+     * Ensure that vehicles can be retrieved from the mock database without blocking for all combinations of company and fleet number.
+     */
+    @Test
+    public void testRetrieveVehiclesReactive() {
+        //Test data.
+        TramVehicleModel tramVehicleModel = TramVehicleModel.builder()
+                .isBidirectional(true)
+                .modelName("Tram 2000 Bi")
+                .inspectionDate(LocalDate.now().minusDays(7))
+                .vehicleStatus(VehicleStatus.DELIVERED)
+                .fleetNumber("213")
+                .company("Lee Buses")
+                .build();
+        Mockito.when(reactiveVehicleRepository.findAll(Mockito.any(Sort.class))).thenReturn(Flux.just(tramVehicleModel));
+        Mockito.when(reactiveVehicleRepository.findByCompanyStartsWithAndFleetNumberStartsWith(Mockito.eq("Lee"), Mockito.eq(""), Mockito.any(Sort.class)))
+                .thenReturn(Flux.just(tramVehicleModel));
+        Mockito.when(reactiveVehicleRepository.findByFleetNumberStartsWith(Mockito.eq("21"), Mockito.any(Sort.class))).thenReturn(Flux.empty());
+        //Now do actual test.
+        List<VehicleResponse> vehicleResponses = vehicleService.retrieveVehiclesReactive(null, null).collectList().block();
+        assertEquals(1, vehicleResponses.size());
+        assertEquals("Tram", vehicleResponses.get(0).getVehicleType());
+        assertEquals(1, vehicleService.retrieveVehiclesReactive("Lee", null).collectList().block().size());
+        assertEquals(0, vehicleService.retrieveVehiclesReactive(null, "21").collectList().block().size());
+    }
+
+    /**
+     * Ensure that vehicles due for inspection are retrieved with the stored next inspection due date and that the
+     * inspection status is based on the stored date.
+     */
+    @Test
+    public void testRetrieveVehiclesDueForInspection() {
+        //Test data.
+        BusVehicleModel busVehicleModel = BusVehicleModel.builder()
+                .registrationNumber("W234DHDF")
+                .modelName("BendyBus 2000")
+                .deliveryDate(LocalDate.of(2021,3,25))
+                .inspectionDate(LocalDate.now().minusYears(3).plusDays(10))
+                .livery("Green with black slide")
+                .seatingCapacity(50)
+                .standingCapacity(80)
+                .vehicleStatus(VehicleStatus.DELIVERED)
+                .fleetNumber("213")
+                .company("Lee Buses")
+                .build();
+        busVehicleModel.setNextInspectionDueDate(LocalDate.now().plusDays(10));
+        TramVehicleModel tramVehicleModel = TramVehicleModel.builder()
+                .isBidirectional(true)
+                .modelName("Tram 2000 Bi")
+                .deliveryDate(LocalDate.of(2021,3,25))
+                .inspectionDate(LocalDate.now().minusYears(10))
+                .livery("Green with black slide")
+                .seatingCapacity(50)
+                .standingCapacity(80)
+                .vehicleStatus(VehicleStatus.DELIVERED)
+                .fleetNumber("214")
+                .company("Lee Buses")
+                .build();
+        tramVehicleModel.setNextInspectionDueDate(LocalDate.now().minusYears(1));
+        Mockito.when(vehicleRepository.findByNextInspectionDueDateLessThanEqual(Mockito.eq(LocalDate.now().plusDays(30)), Mockito.any(Sort.class)))
+                .thenReturn(List.of(tramVehicleModel, busVehicleModel));
+        //Now do actual test.
+        List<VehicleResponse> vehicleResponseList = vehicleService.retrieveVehiclesDueForInspection(30);
+        assertEquals(2, vehicleResponseList.size());
+        assertEquals("Inspection Due!", vehicleResponseList.get(0).getInspectionStatus());
+        assertEquals(0, vehicleResponseList.get(0).getNextInspectionDueInDays());
+        assertEquals("Inspected", vehicleResponseList.get(1).getInspectionStatus());
+        assertEquals(10, vehicleResponseList.get(1).getNextInspectionDueInDays());
+        //The stored dates are used so the dates are not calculated again.
+        Mockito.verify(nextInspectionDueDateCallback, Mockito.never()).calculateNextInspectionDueDate(Mockito.any());
+    }
+
 }